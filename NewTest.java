@@ -28,6 +28,11 @@ public class NewTest extends Fixture {
      */
     protected Environment m_environment;
     
+    /**
+     * Runs independent tables concurrently when the parallel_fixtures option is set
+     */
+    protected FixtureScheduler m_scheduler;
+    
     
     /*- Constructors ---------------------------------------------------------*/
     
@@ -60,7 +65,8 @@ public class NewTest extends Fixture {
         // Create the environment with a test name, and a lookup string for the underlying framework
         m_environment = new Environment( withName, usingFramework );
         m_environment.initialise();
-    
+        
+        m_scheduler   = null;
     }
     
     
@@ -75,14 +81,55 @@ public class NewTest extends Fixture {
         // testable so by default this is always right
         this.right(tables.parts.parts);
         
+        // Results of tables run in the background are reported in document order
+        // once they complete, with nothing outstanding this passes straight through
+        m_scheduler = new FixtureScheduler( listener, m_environment.getOptions() );
+        
         SequenceFixture sf = new SequenceFixture();
-    	sf.listener = listener;
+    	sf.listener = m_scheduler;
     	sf.counts   = counts;
         sf.summary  = summary;
 
         sf.setSystemUnderTest(this);
-      	sf.interpretTables(tables);
         
+        try {
+            sf.interpretTables(tables);
+        }
+        finally {
+            m_scheduler.shutdown();
+            m_scheduler = null;
+        }
+    }
+    
+    /**
+     * Runs the fixture in the background if parallel fixtures are enabled, tables
+     * acting on the same label still run one after another
+     * @param label The type instance the table acts on
+     * @param fixture The fixture to run
+     * @return
+     */
+    protected Fixture schedule( String label, Fixture fixture ) {
+        
+        if ( m_scheduler == null || !m_environment.getOptions().isParallelFixtures() ) {
+            return fixture;
+        }
+        
+        return new DeferredFixture( m_scheduler, label, fixture );
+    }
+    
+    /**
+     * Waits for all background tables before a fixture that changes the
+     * environment they read e.g. options, parameters or definitions
+     * @param fixture The fixture to run
+     * @return
+     */
+    protected Fixture barrier( Fixture fixture ) {
+        
+        if ( m_scheduler != null ) {
+            m_scheduler.barrier();
+        }
+        
+        return fixture;
     }
     
     //--------------------------------------------------------------------------
@@ -102,7 +149,8 @@ public class NewTest extends Fixture {
      * @return
      */
     public Fixture create( String label, Map<String, String> args ) {
-        return new CreateFixture(  m_environment, NameNormalizer.normalizeName( label ) );
+        String name = NameNormalizer.normalizeName( label );
+        return schedule( name, new CreateFixture(  m_environment, name ) );
     }
     
     /**
@@ -120,7 +168,8 @@ public class NewTest extends Fixture {
      * @return
      */
     public Fixture createOrReplace( String label, Map<String, String> args ) {
-        return new CreateOrReplaceFixture(  m_environment, NameNormalizer.normalizeName( label ) );
+        String name = NameNormalizer.normalizeName( label );
+        return schedule( name, new CreateOrReplaceFixture(  m_environment, name ) );
     }
     
     /**
@@ -139,7 +188,7 @@ public class NewTest extends Fixture {
      * @return
      */
     public Fixture define( String label, Map<String, String> args ) {
-        return new DefineFixture( m_environment, NameNormalizer.normalizeName( label ) );
+        return barrier( new DefineFixture( m_environment, NameNormalizer.normalizeName( label ) ) );
     }
     
     /**
@@ -157,7 +206,8 @@ public class NewTest extends Fixture {
      * @return
      */
     public Fixture declare( String label, Map<String, String> args ) {
-        return new DeclareFixture( m_environment, NameNormalizer.normalizeName( label ) );
+        String name = NameNormalizer.normalizeName( label );
+        return schedule( name, new DeclareFixture( m_environment, name ) );
     }
     
     /**
@@ -175,7 +225,8 @@ public class NewTest extends Fixture {
      * @return
      */
     public Fixture drop( String label, Map<String, String> args ) {
-        return new DropFixture( m_environment, NameNormalizer.normalizeName( label ) );
+        String name = NameNormalizer.normalizeName( label );
+        return schedule( name, new DropFixture( m_environment, name ) );
     }
     
     /**
@@ -210,7 +261,7 @@ public class NewTest extends Fixture {
      * @return
      */
     public Fixture resetAllOptions( Map<String, String> args ){
-        return new ResetAllOptionsFixture( m_environment );
+        return barrier( new ResetAllOptionsFixture( m_environment ) );
     }
     
     /**
@@ -228,7 +279,7 @@ public class NewTest extends Fixture {
      * @return
      */
     public Fixture resetOption( String label, Map<String, String> args ){
-        return new ResetOptionFixture( m_environment, NameNormalizer.normalizeName( label ) );
+        return barrier( new ResetOptionFixture( m_environment, NameNormalizer.normalizeName( label ) ) );
     }
     
     /**
@@ -248,7 +299,7 @@ public class NewTest extends Fixture {
      * @return
      */
     public Fixture setOption( String label, String value, Map<String, String> args ){
-        return new SetOptionFixture( m_environment, NameNormalizer.normalizeName( label ), value );
+        return barrier( new SetOptionFixture( m_environment, NameNormalizer.normalizeName( label ), value ) );
     }
     
     /**
@@ -268,7 +319,7 @@ public class NewTest extends Fixture {
      * @return
      */
     public Fixture setParameter( String label, String value, Map<String, String> args ){
-        return new SetParameterFixture( m_environment, label, value );
+        return barrier( new SetParameterFixture( m_environment, label, value ) );
     }
     
     /**
@@ -286,7 +337,8 @@ public class NewTest extends Fixture {
      * @return
      */
     public Fixture truncate( String label, Map<String, String> args ) {
-        return new TruncateFixture( m_environment, NameNormalizer.normalizeName( label ) );
+        String name = NameNormalizer.normalizeName( label );
+        return schedule( name, new TruncateFixture( m_environment, name ) );
     }
     
     /**
@@ -304,7 +356,8 @@ public class NewTest extends Fixture {
      * @return
      */
     public Fixture undeclare( String label, Map<String, String> args ) {
-        return new UndeclareFixture( m_environment, NameNormalizer.normalizeName( label ) );
+        String name = NameNormalizer.normalizeName( label );
+        return schedule( name, new UndeclareFixture( m_environment, name ) );
     }
     
     /**
@@ -320,7 +373,7 @@ public class NewTest extends Fixture {
      * @return
      */
     public Fixture unsetAllParameters( Map<String, String> args ){
-        return new UnsetAllParametersFixture( m_environment );
+        return barrier( new UnsetAllParametersFixture( m_environment ) );
     }
     
     /**
@@ -338,6 +391,6 @@ public class NewTest extends Fixture {
      * @return
      */
     public Fixture unsetParameter( String label, Map<String, String> args ){
-        return new UnsetParameterFixture( m_environment, label );
+        return barrier( new UnsetParameterFixture( m_environment, label ) );
     }
 }
@@ -0,0 +1,83 @@
+package flint.benchmarks;
+
+// Core Java classes
+import java.util.concurrent.TimeUnit;
+
+// 3rd Party classes
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Application classes
+import flint.data.aggregate.IAggregator;
+
+
+/**
+ * Runs every IAggregator over a column of numeric and of text values
+ * @author Philip Bowditch
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class AggregatorBenchmark {
+    
+    /**
+     * The aggregator, the class name without the Aggregator suffix
+     */
+    @Param({ "Avg", "Concat", "Count", "ExactSum", "Hash", "Max", "Min", "NoOp", "Sum" })
+    public String aggregator;
+    
+    /**
+     * The kind of values aggregated
+     */
+    @Param({ "numeric", "text" })
+    public String column;
+    
+    /**
+     * Number of values aggregated per invocation
+     */
+    @Param({ "10000" })
+    public int size;
+    
+    protected IAggregator m_aggregator;
+    
+    protected String[] m_values;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Setup
+    public void setup() throws Exception {
+        
+        m_aggregator = (IAggregator)Class.forName( "flint.data.aggregate." + aggregator + "Aggregator" ).newInstance();
+        m_aggregator.initialise();
+        
+        m_values = column.equals( "numeric" ) ? RowData.numericColumn( size ) : RowData.textColumn( size );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Benchmark
+    public String aggregate() {
+        
+        m_aggregator.reset();
+        
+        for ( String value : m_values ) {
+            m_aggregator.aggregate( value );
+        }
+        
+        return m_aggregator.getResult();
+    }
+}
@@ -0,0 +1,288 @@
+package flint.benchmarks;
+
+// Core Java classes
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// 3rd Party classes
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Application classes
+import flint.engine.io.ArrowReader;
+import flint.engine.io.ArrowWriter;
+import flint.engine.io.BinaryReader;
+import flint.engine.io.BinaryWriter;
+import flint.engine.io.CSVReader;
+import flint.engine.io.CSVWriter;
+import flint.engine.io.IReader;
+import flint.engine.io.IWriter;
+import flint.engine.io.MappedInputStream;
+import flint.engine.io.MappedRawReader;
+import flint.engine.io.RawReader;
+import flint.engine.io.RawWriter;
+
+
+/**
+ * Reads and writes files of the given number of rows through the engine.io
+ * readers and writers, as ShellEngine does with a controllers input and output.
+ * Each benchmark returns the number of rows so the work cannot be optimised away.
+ * @author Philip Bowditch
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2, time = 1 )
+@Measurement( iterations = 3, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class CSVBenchmark {
+    
+    /**
+     * Number of data rows in the file, excluding the header
+     */
+    @Param({ "1000", "100000", "10000000" })
+    public int rows;
+    
+    /**
+     * Is the file gzip compressed
+     */
+    @Param({ "false", "true" })
+    public boolean gzip;
+    
+    /**
+     * The file read by the read benchmarks
+     */
+    protected File m_input;
+    
+    /**
+     * The file written by the write benchmarks
+     */
+    protected File m_output;
+    
+    /**
+     * The input in the binary row and Arrow formats
+     */
+    protected File m_binaryInput;
+    
+    protected File m_arrowInput;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Setup( Level.Trial )
+    public void setup() throws Exception {
+        
+        m_input  = File.createTempFile( "flint_bench_in_",  gzip ? ".csv.gz" : ".csv" );
+        m_output = File.createTempFile( "flint_bench_out_", gzip ? ".csv.gz" : ".csv" );
+        
+        m_input.deleteOnExit();
+        m_output.deleteOnExit();
+        
+        // The input is written with the writer under test, its speed is
+        // measured separately
+        writeCsv();
+        
+        File tmp = m_output;
+        m_output = m_input;
+        m_input  = tmp;
+        
+        writeCsv();
+        
+        m_binaryInput = File.createTempFile( "flint_bench_in_", gzip ? ".bin.gz" : ".bin" );
+        m_arrowInput  = File.createTempFile( "flint_bench_in_", gzip ? ".arrow.gz" : ".arrow" );
+        
+        m_binaryInput.deleteOnExit();
+        m_arrowInput.deleteOnExit();
+        
+        write( new BinaryWriter(), m_binaryInput );
+        write( new ArrowWriter(),  m_arrowInput );
+    }
+    
+    @TearDown( Level.Trial )
+    public void tearDown() {
+        m_input.delete();
+        m_output.delete();
+        m_binaryInput.delete();
+        m_arrowInput.delete();
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Benchmark
+    public long readCsv() throws Exception {
+        return read( new CSVReader() );
+    }
+    
+    @Benchmark
+    public long readRaw() throws Exception {
+        return read( new RawReader() );
+    }
+    
+    @Benchmark
+    public long readBinary() throws Exception {
+        return read( new BinaryReader(), m_binaryInput );
+    }
+    
+    @Benchmark
+    public long readArrow() throws Exception {
+        return read( new ArrowReader(), m_arrowInput );
+    }
+    
+    /**
+     * Finds each line without decoding it, as a consumer reading few cells would
+     */
+    @Benchmark
+    public long readRawMapped() throws Exception {
+        
+        MappedRawReader reader = new MappedRawReader();
+        reader.reset( openMapped(), new HashMap<>() );
+        
+        long count = 0;
+        
+        try {
+            while ( reader.readLine() != null ) {
+                count++;
+            }
+        }
+        finally {
+            reader.close();
+        }
+        
+        return count;
+    }
+    
+    @Benchmark
+    public long readRawMappedRecords() throws Exception {
+        
+        MappedRawReader reader = new MappedRawReader();
+        reader.reset( openMapped(), new HashMap<>() );
+        
+        long count = 0;
+        
+        try {
+            while ( reader.readRecord() != null ) {
+                count++;
+            }
+        }
+        finally {
+            reader.close();
+        }
+        
+        return count;
+    }
+    
+    @Benchmark
+    public long writeCsv() throws Exception {
+        return write( new CSVWriter() );
+    }
+    
+    @Benchmark
+    public long writeRaw() throws Exception {
+        return write( new RawWriter() );
+    }
+    
+    @Benchmark
+    public long writeBinary() throws Exception {
+        return write( new BinaryWriter() );
+    }
+    
+    @Benchmark
+    public long writeArrow() throws Exception {
+        return write( new ArrowWriter() );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    protected long read( IReader reader ) throws Exception {
+        return read( reader, m_input );
+    }
+    
+    protected long read( IReader reader, File input ) throws Exception {
+        
+        InputStream in = new FileInputStream( input );
+        if ( gzip ) {
+            in = new GZIPInputStream( in );
+        }
+        
+        reader.setInputStream( new BufferedInputStream( in ) );
+        reader.setConfig( new HashMap<>() );
+        reader.initialise();
+        
+        long count = 0;
+        
+        try {
+            while ( reader.readRecord() != null ) {
+                count++;
+            }
+        }
+        finally {
+            reader.close();
+        }
+        
+        return count;
+    }
+    
+    /**
+     * Opens the input as ShellEngine does, compressed files are inflated
+     * and so are spooled to a temporary file by the mapped reader
+     */
+    protected InputStream openMapped() throws IOException {
+        
+        if ( gzip ) {
+            return new BufferedInputStream( new GZIPInputStream( new FileInputStream( m_input ) ) );
+        }
+        
+        return new MappedInputStream( m_input );
+    }
+    
+    protected long write( IWriter writer ) throws Exception {
+        return write( writer, m_output );
+    }
+    
+    protected long write( IWriter writer, File output ) throws Exception {
+        
+        OutputStream out = new FileOutputStream( output );
+        if ( gzip ) {
+            out = new GZIPOutputStream( out );
+        }
+        
+        writer.setOutputStream( new BufferedOutputStream( out ) );
+        writer.setConfig( new HashMap<>() );
+        writer.suggestColumns( RowData.COLUMNS );
+        writer.initialise();
+        
+        try {
+            for ( int i = 0; i < rows; i++ ) {
+                writer.writeRecord( RowData.row( i ) );
+            }
+        }
+        finally {
+            writer.close();
+        }
+        
+        return rows;
+    }
+}
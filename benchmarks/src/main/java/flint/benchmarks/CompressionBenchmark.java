@@ -0,0 +1,133 @@
+package flint.benchmarks;
+
+// Core Java classes
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+// 3rd Party classes
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Application classes
+import flint.engine.io.CSVWriter;
+import flint.engine.io.compress.Compression;
+
+
+/**
+ * Compresses and decompresses a CSV file of the given number of rows held in
+ * memory, so only the cost of each DATA_*_COMPRESSION mode is measured.  The
+ * parallel modes use the flint.compression_threads system property, pass it
+ * with -jvmArgs to compare thread counts
+ * @author Philip Bowditch
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2, time = 1 )
+@Measurement( iterations = 3, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class CompressionBenchmark {
+    
+    @Param({ "100000", "1000000" })
+    public int rows;
+    
+    /**
+     * The compression name as given in the properties
+     */
+    @Param({ "gzip", "gzip-parallel", "lz4" })
+    public String compression;
+    
+    protected Compression m_compression;
+    
+    /**
+     * The uncompressed CSV
+     */
+    protected byte[] m_data;
+    
+    /**
+     * The CSV compressed with m_compression
+     */
+    protected byte[] m_compressed;
+    
+    protected byte[] m_buffer;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Setup( Level.Trial )
+    public void setup() throws Exception {
+        
+        m_compression = Compression.forName( compression );
+        m_buffer      = new byte[ 65536 ];
+        
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        
+        CSVWriter writer = new CSVWriter();
+        writer.setOutputStream( csv );
+        writer.setConfig( new HashMap<>() );
+        writer.suggestColumns( RowData.COLUMNS );
+        writer.initialise();
+        
+        for ( int i = 0; i < rows; i++ ) {
+            writer.writeRecord( RowData.row( i ) );
+        }
+        
+        writer.close();
+        
+        m_data       = csv.toByteArray();
+        m_compressed = compressAll().toByteArray();
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Benchmark
+    public int compressData() throws Exception {
+        return compressAll().size();
+    }
+    
+    @Benchmark
+    public long decompressData() throws Exception {
+        
+        long total = 0;
+        
+        try ( InputStream in = m_compression.decompress( new ByteArrayInputStream( m_compressed ) ) ) {
+            int n;
+            while ( ( n = in.read( m_buffer ) ) > 0 ) {
+                total += n;
+            }
+        }
+        
+        return total;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    protected ByteArrayOutputStream compressAll() throws Exception {
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream( m_data.length / 2 );
+        
+        try ( OutputStream out = m_compression.compress( bytes ) ) {
+            for ( int i = 0; i < m_data.length; i += 65536 ) {
+                out.write( m_data, i, Math.min( 65536, m_data.length - i ) );
+            }
+        }
+        
+        return bytes;
+    }
+}
@@ -0,0 +1,109 @@
+package flint.benchmarks;
+
+// Core Java classes
+import java.util.concurrent.TimeUnit;
+
+// 3rd Party classes
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Application classes
+import flint.util.NameNormalizer;
+
+
+/**
+ * Compares NameNormalizer against the original double replaceAll implementation
+ * over the kind of labels, columns and option names seen during a suite.
+ * 
+ * cached   - the default case and replacement, served from the memo cache
+ * uncached - a non default replacement, always scanned
+ * legacy   - the original implementation
+ * @author Philip Bowditch
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class NameNormalizerBenchmark {
+    
+    /**
+     * Typical names, some already normalized, some needing case changes or
+     * illegal characters replacing
+     */
+    protected String[] m_names;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Setup
+    public void setup() {
+        m_names = new String[]{  "customer"
+                               , "Customer Address"
+                               , "allow_redefine"
+                               , "DATA_OUTPUT_FORMAT"
+                               , " order-line.quantity "
+                               , "PATH.READ_ONLY"
+                               , "inherit_environment"
+                               , "Unit Price (GBP)" };
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Benchmark
+    public void cached( Blackhole bh ) {
+        for ( String name : m_names ) {
+            bh.consume( NameNormalizer.normalizeName( name ) );
+        }
+    }
+    
+    @Benchmark
+    public void uncached( Blackhole bh ) {
+        for ( String name : m_names ) {
+            bh.consume( NameNormalizer.normalizeName( name, NameNormalizer.TextCase.LOWERCASE, "-" ) );
+        }
+    }
+    
+    @Benchmark
+    public void legacy( Blackhole bh ) {
+        for ( String name : m_names ) {
+            bh.consume( legacyNormalizeName( name, "_" ) );
+        }
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * The implementation NameNormalizer replaced, kept as the baseline
+     * @param name
+     * @param replacement
+     * @return 
+     */
+    protected static String legacyNormalizeName( final String name, final String replacement ) {
+        
+        if ( name == null ) {
+            return "";
+        }
+        
+        String str = name.trim().toLowerCase();
+        
+        StringBuilder b = new StringBuilder();
+        b.append( replacement );
+        b.append( replacement );
+        str = str.replaceAll( replacement, b.toString() );
+        
+        return str.replaceAll( "[^a-zA-Z0-9_.#]", replacement );
+    }
+}
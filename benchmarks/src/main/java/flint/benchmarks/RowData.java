@@ -0,0 +1,85 @@
+package flint.benchmarks;
+
+
+/**
+ * Generates the rows used by the benchmarks.  A small set of distinct rows is
+ * cycled so very large row counts do not need holding in memory.
+ * @author Philip Bowditch
+ */
+public class RowData {
+    
+    /**
+     * The column names
+     */
+    public static final String[] COLUMNS = new String[]{ "id", "name", "amount", "created", "active" };
+    
+    /**
+     * Number of distinct rows generated
+     */
+    protected static final int DISTINCT = 1024;
+    
+    /**
+     * The distinct rows
+     */
+    protected static final String[][] ROWS = new String[ DISTINCT ][];
+    
+    static {
+        for ( int i = 0; i < DISTINCT; i++ ) {
+            ROWS[i] = new String[]{  Integer.toString( i )
+                                   , "customer " + ( i % 97 ) + ", \"ltd\""
+                                   , Double.toString( i * 1.25 )
+                                   , String.format( "2016-11-%02d", 1 + i % 28 )
+                                   , ( i % 2 == 0 ) ? "true" : "false" };
+        }
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Do not allow instances
+     */
+    protected RowData() {}
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Returns the i'th row
+     * @param i The row number
+     * @return 
+     */
+    public static String[] row( int i ) {
+        return ROWS[ i % DISTINCT ];
+    }
+    
+    /**
+     * Returns a column of numeric values
+     * @param size The number of values
+     * @return 
+     */
+    public static String[] numericColumn( int size ) {
+        
+        String[] values = new String[ size ];
+        for ( int i = 0; i < size; i++ ) {
+            values[i] = row( i )[2];
+        }
+        
+        return values;
+    }
+    
+    /**
+     * Returns a column of text values
+     * @param size The number of values
+     * @return 
+     */
+    public static String[] textColumn( int size ) {
+        
+        String[] values = new String[ size ];
+        for ( int i = 0; i < size; i++ ) {
+            values[i] = row( i )[1];
+        }
+        
+        return values;
+    }
+}
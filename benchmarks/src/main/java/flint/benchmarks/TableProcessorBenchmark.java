@@ -0,0 +1,103 @@
+package flint.benchmarks;
+
+// Core Java classes
+import java.util.concurrent.TimeUnit;
+
+// 3rd Party classes
+import fit.Parse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Application classes
+import flint.data.DataTable;
+import flint.data.aggregate.SumAggregator;
+import flint.util.TableProcessor;
+
+
+/**
+ * Converts a Fit table of the given number of rows into a DataTable, as every
+ * fixture does before invoking its engine
+ * @author Philip Bowditch
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class TableProcessorBenchmark {
+    
+    /**
+     * Number of data rows in the table, fit.Parse recurses per row so much
+     * larger tables overflow the default thread stack
+     */
+    @Param({ "10", "100", "1000" })
+    public int rows;
+    
+    /**
+     * The parsed page table
+     */
+    protected Parse m_table;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Setup
+    public void setup() throws Exception {
+        
+        StringBuilder b = new StringBuilder( "<table>" );
+        
+        b.append( "<tr><td>declare</td><td>customer</td></tr>" );
+        b.append( "<tr>" );
+        for ( String col : RowData.COLUMNS ) {
+            b.append( "<td>" ).append( col ).append( "</td>" );
+        }
+        b.append( "</tr>" );
+        
+        for ( int i = 0; i < rows; i++ ) {
+            b.append( "<tr>" );
+            for ( String cell : RowData.row( i ) ) {
+                b.append( "<td>" ).append( cell.replace( "\"", "&quot;" ) ).append( "</td>" );
+            }
+            b.append( "</tr>" );
+        }
+        
+        b.append( "</table>" );
+        
+        m_table = new Parse( b.toString() );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Benchmark
+    public DataTable process() throws Exception {
+        
+        TableProcessor processor = new TableProcessor();
+        processor.setTable( m_table );
+        processor.setNumberRequiredParameters( 1 );
+        
+        return processor.process();
+    }
+    
+    @Benchmark
+    public DataTable processAggregated() throws Exception {
+        
+        TableProcessor processor = new TableProcessor();
+        processor.setTable( m_table );
+        processor.setNumberRequiredParameters( 1 );
+        processor.setColumnAggregator( new SumAggregator() );
+        
+        return processor.process();
+    }
+}
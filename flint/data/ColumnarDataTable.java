@@ -0,0 +1,191 @@
+package flint.data;
+
+// 3rd Party classes
+import fit.Parse;
+
+// Application classes
+import flint.data.aggregate.IAggregator;
+
+/**
+ * A DataTable holding its cells column by column, one String[] per column,
+ * rather than as a DataRow per row.  Large tables then cost one array per
+ * column instead of a row object and array for every row.  getRows builds
+ * DataRow views on each call so existing fixtures work unchanged, code that
+ * handles many rows should use getCell or getColumnData instead
+ * @author Philip Bowditch
+ */
+public class ColumnarDataTable extends DataTable {
+    
+    /**
+     * The cells of each column, indexed by column then row
+     */
+    protected String[][] m_data;
+    
+    /**
+     * The raw Parse object of each row, null if not parsed from a table
+     */
+    protected Parse[] m_rowPointers;
+    
+    /**
+     * The aggregator of each row, null if rows are not aggregated
+     */
+    protected IAggregator[] m_rowAggregators;
+    
+    /**
+     * The number of data rows
+     */
+    protected int m_rowCount;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the ColumnarDataTable class
+     * @param cols An array of data columns specifying the structure of this table
+     * @param rowCount The number of data rows the table holds
+     */
+    public ColumnarDataTable( DataColumn[] cols, int rowCount ) {
+        this( cols, rowCount, new String[ cols.length ][ rowCount ] );
+    }
+    
+    /**
+     * Constructor for the ColumnarDataTable class
+     * @param cols An array of data columns specifying the structure of this table
+     * @param rowCount The number of data rows the table holds
+     * @param data The cells by column then row, null if a subclass holds them
+     */
+    protected ColumnarDataTable( DataColumn[] cols, int rowCount, String[][] data ) {
+        super( cols, null );
+        
+        m_data           = data;
+        m_rowPointers    = new Parse[ rowCount ];
+        m_rowAggregators = null;
+        m_rowCount       = rowCount;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    public String getCell( int row, int col ) {
+        return m_data[ col ][ row ];
+    }
+    
+    public void setCell( int row, int col, String value ) {
+        m_data[ col ][ row ] = value;
+    }
+    
+    /**
+     * Returns the cells of a column in row order, the array is held by the table
+     * @param col The index of the column
+     * @return
+     */
+    public String[] getColumnData( int col ) {
+        return m_data[ col ];
+    }
+    
+    @Override
+    public Parse getRowPointer( int row ) {
+        return m_rowPointers[ row ];
+    }
+    
+    public void setRowPointer( int row, Parse pointer ) {
+        m_rowPointers[ row ] = pointer;
+    }
+    
+    public IAggregator getRowAggregator( int row ) {
+        return ( m_rowAggregators == null ) ? null : m_rowAggregators[ row ];
+    }
+    
+    public void setRowAggregator( int row, IAggregator aggregator ) {
+        
+        if ( m_rowAggregators == null ) {
+            if ( aggregator == null ) {
+                return;
+            }
+            m_rowAggregators = new IAggregator[ m_rowCount ];
+        }
+        
+        m_rowAggregators[ row ] = aggregator;
+    }
+    
+    /**
+     * Returns the cells of a row, copied out of the columns
+     * @param row The index of the row
+     * @return
+     */
+    public String[] getRowCells( int row ) {
+        
+        String[] cells = new String[ m_cols.length ];
+        for ( int i = 0; i < cells.length; i++ ) {
+            cells[i] = getCell( row, i );
+        }
+        
+        return cells;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    public int getRowCount() {
+        return m_rowCount;
+    }
+    
+    /**
+     * Builds a DataRow for every row, changes made to them are not written back
+     * @return
+     */
+    @Override
+    public DataRow[] getRows() {
+        
+        if ( m_rowCount == 0 ) {
+            return null;
+        }
+        
+        DataRow[] rows = new DataRow[ m_rowCount ];
+        
+        for ( int i = 0; i < m_rowCount; i++ ) {
+            DataRow dr = new DataRow( getRowCells( i ) );
+            dr.setPointer( m_rowPointers[i] );
+            dr.setAggregator( getRowAggregator( i ) );
+            rows[i] = dr;
+        }
+        
+        return rows;
+    }
+    
+    /**
+     * Replaces the data with the given rows, copying their cells into columns
+     * @param rows The rows
+     */
+    @Override
+    public void setRows( DataRow[] rows ) {
+        
+        int count = ( rows == null ) ? 0 : rows.length;
+        
+        allocate( count );
+        m_rowPointers    = new Parse[ count ];
+        m_rowAggregators = null;
+        m_rowCount       = count;
+        
+        for ( int i = 0; i < count; i++ ) {
+            
+            String[] cells = rows[i].getCells();
+            for ( int j = 0; j < m_cols.length && j < cells.length; j++ ) {
+                setCell( i, j, cells[j] );
+            }
+            
+            m_rowPointers[i] = rows[i].getPointer();
+            setRowAggregator( i, rows[i].getAggregator() );
+        }
+    }
+    
+    /**
+     * Replaces the cells with empty columns of the given length
+     * @param rowCount The number of rows
+     */
+    protected void allocate( int rowCount ) {
+        m_data = new String[ m_cols.length ][ rowCount ];
+    }
+}
@@ -131,6 +131,36 @@ public class DataTable {
         m_rows = rows;
     }
     
+    /**
+     * Returns the number of data rows without building them
+     * @return
+     */
+    public int getRowCount() {
+        return ( m_rows == null ) ? 0 : m_rows.length;
+    }
+    
+    /**
+     * Returns a cell without building the rows
+     * @param row The index of the row
+     * @param col The index of the column
+     * @return Null if the row has no such cell
+     */
+    public String getCell( int row, int col ) {
+        
+        String[] cells = m_rows[ row ].getCells();
+        
+        return ( cells != null && col < cells.length ) ? cells[ col ] : null;
+    }
+    
+    /**
+     * Returns the table row a data row was read from without building the rows
+     * @param row The index of the row
+     * @return
+     */
+    public Parse getRowPointer( int row ) {
+        return m_rows[ row ].getPointer();
+    }
+    
     /**
      * Returns the name of the fixture in the first cell
      * @return
@@ -229,10 +259,9 @@ public class DataTable {
         }
         
         // The data
-        DataRow dr;
-        for ( i = 0; i < m_rows.length; i++ ) {
-            dr = m_rows[i];
-            l.add( dr.getCells() );
+        DataRow[] rows = getRows();
+        for ( i = 0; rows != null && i < rows.length; i++ ) {
+            l.add( rows[i].getCells() );
         }
         
         return (String[][])l.toArray( new String[][]{} );
@@ -0,0 +1,186 @@
+package flint.data;
+
+// Core Java classes
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The cells of one column held as an int code per row and a dictionary of the
+ * distinct values, so a value repeated on many rows is held once.  Null cells
+ * have the code -1
+ * @author Philip Bowditch
+ */
+public class DictionaryColumn {
+    
+    /**
+     * The size of a new dictionary
+     */
+    protected static final int INITIAL_CAPACITY = 16;
+    
+    /**
+     * The code of each row's value
+     */
+    protected int[] m_codes;
+    
+    /**
+     * The distinct values, indexed by code
+     */
+    protected String[] m_dictionary;
+    
+    /**
+     * The number of distinct values
+     */
+    protected int m_cardinality;
+    
+    /**
+     * The code of each value, only needed while values are being added
+     */
+    protected Map<String, Integer> m_lookup;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the DictionaryColumn class
+     * @param rowCount The number of rows in the column
+     */
+    public DictionaryColumn( int rowCount ) {
+        m_codes       = new int[ rowCount ];
+        m_dictionary  = new String[ INITIAL_CAPACITY ];
+        m_cardinality = 0;
+        m_lookup      = new HashMap<>();
+        
+        Arrays.fill( m_codes, -1 );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Sets the value of a row, adding it to the dictionary if it is new
+     * @param row The index of the row
+     * @param value The value, may be null
+     */
+    public void set( int row, String value ) {
+        m_codes[ row ] = encode( value );
+    }
+    
+    public String get( int row ) {
+        return decode( m_codes[ row ] );
+    }
+    
+    /**
+     * Returns the code for a value, adding it to the dictionary if it is new
+     * @param value The value, may be null
+     * @return -1 for null
+     */
+    public int encode( String value ) {
+        
+        if ( value == null ) {
+            return -1;
+        }
+        
+        if ( m_lookup == null ) {
+            m_lookup = new HashMap<>( m_cardinality * 2 );
+            for ( int i = 0; i < m_cardinality; i++ ) {
+                m_lookup.put( m_dictionary[i], i );
+            }
+        }
+        
+        Integer code = m_lookup.get( value );
+        if ( code != null ) {
+            return code;
+        }
+        
+        if ( m_cardinality == m_dictionary.length ) {
+            // A compacted dictionary may be empty
+            m_dictionary = Arrays.copyOf( m_dictionary, Math.max( m_cardinality * 2, INITIAL_CAPACITY ) );
+        }
+        
+        m_dictionary[ m_cardinality ] = value;
+        m_lookup.put( value, m_cardinality );
+        
+        return m_cardinality++;
+    }
+    
+    /**
+     * Returns the value of a code
+     * @param code The code, -1 for null
+     * @return
+     */
+    public String decode( int code ) {
+        return ( code < 0 ) ? null : m_dictionary[ code ];
+    }
+    
+    /**
+     * Frees what is only needed while values are being added, call once the
+     * column is loaded.  Values can still be set afterwards
+     */
+    public void compact() {
+        m_lookup     = null;
+        m_dictionary = Arrays.copyOf( m_dictionary, m_cardinality );
+    }
+    
+    /**
+     * Returns how many rows hold each code, indexed by code, nulls are not
+     * counted
+     * @return
+     */
+    public int[] getCounts() {
+        
+        int[] counts = new int[ m_cardinality ];
+        for ( int code : m_codes ) {
+            if ( code >= 0 ) {
+                counts[ code ]++;
+            }
+        }
+        
+        return counts;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    public int getCode( int row ) {
+        return m_codes[ row ];
+    }
+    
+    /**
+     * Returns the code of every row, the array is held by the column
+     * @return
+     */
+    public int[] getCodes() {
+        return m_codes;
+    }
+    
+    /**
+     * Returns the distinct values indexed by code
+     * @return
+     */
+    public String[] getDictionary() {
+        return Arrays.copyOf( m_dictionary, m_cardinality );
+    }
+    
+    public int getCardinality() {
+        return m_cardinality;
+    }
+    
+    public int size() {
+        return m_codes.length;
+    }
+    
+    /**
+     * Returns every value in row order
+     * @return
+     */
+    public String[] toArray() {
+        
+        String[] values = new String[ m_codes.length ];
+        for ( int i = 0; i < values.length; i++ ) {
+            values[i] = decode( m_codes[i] );
+        }
+        
+        return values;
+    }
+}
@@ -0,0 +1,94 @@
+package flint.data;
+
+/**
+ * A ColumnarDataTable whose columns are dictionary encoded, each row holds an
+ * int code into the distinct values of its column.  Tables with many repeated
+ * values such as status codes, dates or country codes then hold each value
+ * once, and comparisons or aggregations can work over the codes.  getRows and
+ * toTable decode the values so existing fixtures work unchanged
+ * @author Philip Bowditch
+ */
+public class DictionaryDataTable extends ColumnarDataTable {
+    
+    /**
+     * The encoded cells of each column
+     */
+    protected DictionaryColumn[] m_encoded;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the DictionaryDataTable class
+     * @param cols An array of data columns specifying the structure of this table
+     * @param rowCount The number of data rows the table holds
+     */
+    public DictionaryDataTable( DataColumn[] cols, int rowCount ) {
+        super( cols, rowCount, null );
+        
+        m_encoded = null;
+        allocate( rowCount );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    public String getCell( int row, int col ) {
+        return m_encoded[ col ].get( row );
+    }
+    
+    @Override
+    public void setCell( int row, int col, String value ) {
+        m_encoded[ col ].set( row, value );
+    }
+    
+    /**
+     * Returns a decoded copy of the cells of a column, use getColumn to work
+     * over the codes
+     * @param col The index of the column
+     * @return
+     */
+    @Override
+    public String[] getColumnData( int col ) {
+        return m_encoded[ col ].toArray();
+    }
+    
+    /**
+     * Returns the encoded cells of a column
+     * @param col The index of the column
+     * @return
+     */
+    public DictionaryColumn getColumn( int col ) {
+        return m_encoded[ col ];
+    }
+    
+    public int getCode( int row, int col ) {
+        return m_encoded[ col ].getCode( row );
+    }
+    
+    /**
+     * Frees what each column only needs while cells are being set, call once
+     * the table is loaded
+     */
+    public void compact() {
+        for ( DictionaryColumn c : m_encoded ) {
+            c.compact();
+        }
+    }
+    
+    @Override
+    public void setRows( DataRow[] rows ) {
+        super.setRows( rows );
+        compact();
+    }
+    
+    @Override
+    protected void allocate( int rowCount ) {
+        
+        m_encoded = new DictionaryColumn[ m_cols.length ];
+        for ( int i = 0; i < m_encoded.length; i++ ) {
+            m_encoded[i] = new DictionaryColumn( rowCount );
+        }
+    }
+}
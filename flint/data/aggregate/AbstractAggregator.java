@@ -45,4 +45,15 @@ public abstract class AbstractAggregator implements IAggregator {
     public void initialise() {
     }
     
+    /**
+     * Gives a copy the name and null handling of this aggregator
+     * @param copy A newly created aggregator
+     * @return The copy
+     */
+    protected <T extends AbstractAggregator> T copySettings( T copy ) {
+        copy.m_name       = m_name;
+        copy.m_ignoreNull = m_ignoreNull;
+        return copy;
+    }
+    
 }
\ No newline at end of file
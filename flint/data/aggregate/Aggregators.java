@@ -0,0 +1,87 @@
+package flint.data.aggregate;
+
+// Core Java classes
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Finds aggregators by the name they give their results, ignoring case, so
+ * Total sums as a double and Exact Total sums without rounding.  Any other name
+ * is taken as a hash algorithm
+ * @author Philip Bowditch
+ */
+public class Aggregators {
+    
+    /**
+     * Creates each aggregator, keyed by its name in lower case
+     */
+    protected static final Map<String, Supplier<IAggregator>> AGGREGATORS = new LinkedHashMap<>();
+    
+    static {
+        register( AvgAggregator::new );
+        register( ConcatAggregator::new );
+        register( CountAggregator::new );
+        register( ExactSumAggregator::new );
+        register( MaxAggregator::new );
+        register( MinAggregator::new );
+        register( NoOpAggregator::new );
+        register( SumAggregator::new );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Adds an aggregator under the name it gives itself
+     * @param factory Creates the aggregator
+     * @throws IllegalStateException If another aggregator has the same name
+     */
+    protected static void register( Supplier<IAggregator> factory ) {
+        
+        String name = factory.get().getName();
+        
+        if ( AGGREGATORS.putIfAbsent( name.toLowerCase( Locale.ROOT ), factory ) != null ) {
+            throw new IllegalStateException( "Aggregator [" + name + "] is already registered" );
+        }
+    }
+    
+    /**
+     * Creates the aggregator with the given name
+     * @param name The name of the aggregator e.g. Total, or a hash algorithm e.g. MD5
+     * @return A new aggregator
+     * @throws IllegalArgumentException If nothing has the name
+     */
+    public static IAggregator forName( String name ) {
+        
+        if ( name == null ) {
+            throw new IllegalArgumentException( "No aggregator named [null]" );
+        }
+        
+        String n = name.trim();
+        
+        Supplier<IAggregator> factory = AGGREGATORS.get( n.toLowerCase( Locale.ROOT ) );
+        if ( factory != null ) {
+            return factory.get();
+        }
+        
+        try {
+            return new HashAggregator( n );
+        }
+        catch ( IllegalArgumentException ex ) {
+            throw new IllegalArgumentException( "No aggregator named [" + name + "]", ex );
+        }
+    }
+    
+    /**
+     * Returns the names of the registered aggregators in lower case, hash
+     * algorithms aside
+     * @return
+     */
+    public static Set<String> getNames() {
+        return Collections.unmodifiableSet( AGGREGATORS.keySet() );
+    }
+}
@@ -1,6 +1,8 @@
-
 package flint.data.aggregate;
 
+// Application classes
+import flint.util.NumberParser;
+
 /**
  *
  * @author Philip Bowditch
@@ -12,6 +14,8 @@ public class AvgAggregator extends AbstractAggregator {
     
     protected boolean m_isNull;
     
+    protected NumberParser m_parser;
+    
     
     //--------------------------------------------------------------------------
     
@@ -22,11 +26,17 @@ public class AvgAggregator extends AbstractAggregator {
         m_amount     = 0;
         m_count      = 0;
         m_isNull     = false; // required as a doule cant be null
+        m_parser     = new NumberParser();
     }
     
     
     //--------------------------------------------------------------------------
     
+    @Override
+    public IAggregator copy() {
+        return copySettings( new AvgAggregator() );
+    }
+    
     @Override
     public void reset() {
         m_amount = 0;
@@ -36,31 +46,48 @@ public class AvgAggregator extends AbstractAggregator {
     
     @Override
     public void aggregate( String value ) {
+        aggregate( value, 0, value == null ? 0 : value.length() );
+    }
+    
+    @Override
+    public void aggregate( CharSequence value, int start, int end ) {
         
         if ( m_isNull ) {
             return;
         }
         
-        String newValue = value;
-        if ( newValue == null ) {
+        if ( value == null ) {
             if ( m_ignoreNull ) {
-                newValue = "0";
+                m_count += 1;
             }
             else {
                 m_isNull = true;
-                return;
             }
+            return;
         }
         
+        // Values that are not numbers count as zero
         m_count += 1;
         
-        try {
-        
-            m_amount += Double.valueOf( newValue );
-            
+        if ( m_parser.parse( value, start, end ) ) {
+            m_amount += m_parser.doubleValue();
+        }
+    }
+    
+    @Override
+    public void aggregate( double value ) {
+        if ( !m_isNull ) {
+            m_amount += value;
+            m_count  += 1;
+        }
+    }
+    
+    @Override
+    public void aggregate( long value ) {
+        if ( !m_isNull ) {
+            m_amount += value;
+            m_count  += 1;
         }
-        catch ( Exception ex ) {}
-        
     }
     
     @Override
@@ -91,4 +118,4 @@ public class AvgAggregator extends AbstractAggregator {
         m_count  = 1;
     }
     
-}
\ No newline at end of file
+}
@@ -21,6 +21,11 @@ public class ConcatAggregator extends AbstractAggregator {
     
     //--------------------------------------------------------------------------
     
+    @Override
+    public IAggregator copy() {
+        return copySettings( new ConcatAggregator() );
+    }
+    
     @Override
     public void reset() {
         m_amount = "";
@@ -21,6 +21,11 @@ public class CountAggregator extends AbstractAggregator {
     
     //--------------------------------------------------------------------------
     
+    @Override
+    public IAggregator copy() {
+        return copySettings( new CountAggregator() );
+    }
+    
     @Override
     public void reset() {
         m_amount = 0;
@@ -38,6 +43,23 @@ public class CountAggregator extends AbstractAggregator {
         
     }
     
+    @Override
+    public void aggregate( CharSequence value, int start, int end ) {
+        if ( value != null || m_ignoreNull ) {
+            m_amount += 1;
+        }
+    }
+    
+    @Override
+    public void aggregate( double value ) {
+        m_amount += 1;
+    }
+    
+    @Override
+    public void aggregate( long value ) {
+        m_amount += 1;
+    }
+    
     @Override
     public String getResult() {
         return Long.toString( m_amount );
@@ -0,0 +1,174 @@
+package flint.data.aggregate;
+
+// Core Java classes
+import java.math.BigDecimal;
+
+// Application classes
+import flint.util.NumberParser;
+
+/**
+ * Totals values without the rounding error of a double.  Whole numbers are
+ * summed as a long, switching to a BigDecimal on the first fraction or overflow.
+ * NaN and infinite values can not be held exactly so are skipped.  Named Exact
+ * Total so it is not mistaken for SumAggregator, see Aggregators.forName
+ * @author Philip Bowditch
+ */
+public class ExactSumAggregator extends AbstractAggregator {
+    
+    protected long m_amount;
+    
+    protected BigDecimal m_decimal;
+    
+    protected boolean m_isNull;
+    
+    protected NumberParser m_parser;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    public ExactSumAggregator() {
+        super();
+        
+        m_name       = "Exact Total";
+        m_amount     = 0;
+        m_decimal    = null;
+        m_isNull     = false;
+        m_parser     = new NumberParser();
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    public IAggregator copy() {
+        return copySettings( new ExactSumAggregator() );
+    }
+    
+    @Override
+    public void reset() {
+        m_amount  = 0;
+        m_decimal = null;
+        m_isNull  = false;
+    }
+    
+    @Override
+    public void aggregate( String value ) {
+        aggregate( value, 0, value == null ? 0 : value.length() );
+    }
+    
+    @Override
+    public void aggregate( CharSequence value, int start, int end ) {
+        
+        if ( m_isNull ) {
+            return;
+        }
+        
+        if ( value == null ) {
+            if ( !m_ignoreNull ) {
+                m_isNull = true;
+            }
+            return;
+        }
+        
+        // Values that are not numbers are skipped
+        if ( !m_parser.parse( value, start, end ) ) {
+            return;
+        }
+        
+        if ( m_decimal == null && m_parser.isLong() ) {
+            aggregate( m_parser.longValue() );
+        }
+        else {
+            aggregate( m_parser.decimalValue() );
+        }
+    }
+    
+    @Override
+    public void aggregate( double value ) {
+        
+        if ( Double.isNaN( value ) || Double.isInfinite( value ) ) {
+            return;
+        }
+        
+        // Uses the shortest decimal that represents the double, as printed
+        aggregate( BigDecimal.valueOf( value ) );
+    }
+    
+    @Override
+    public void aggregate( long value ) {
+        
+        if ( m_isNull ) {
+            return;
+        }
+        
+        if ( m_decimal != null ) {
+            m_decimal = m_decimal.add( BigDecimal.valueOf( value ) );
+            return;
+        }
+        
+        long total = m_amount + value;
+        
+        // Overflowed if both operands have the opposite sign to the result
+        if ( ( ( m_amount ^ total ) & ( value ^ total ) ) < 0 ) {
+            m_decimal = BigDecimal.valueOf( m_amount ).add( BigDecimal.valueOf( value ) );
+        }
+        else {
+            m_amount = total;
+        }
+    }
+    
+    /**
+     * Adds a decimal value to the total
+     * @param value The value to add, ignored if null
+     */
+    public void aggregate( BigDecimal value ) {
+        
+        if ( m_isNull || value == null ) {
+            return;
+        }
+        
+        if ( m_decimal == null ) {
+            m_decimal = BigDecimal.valueOf( m_amount );
+        }
+        
+        m_decimal = m_decimal.add( value );
+    }
+    
+    @Override
+    public String getResult() {
+        if ( m_isNull ) {
+            return null;
+        }
+        
+        if ( m_decimal == null ) {
+            return Long.toString( m_amount );
+        }
+        
+        return m_decimal.toPlainString();
+    }
+    
+    @Override
+    public void setResult( String result ) {
+        
+        m_isNull = false;
+        if ( result == null ) {
+            m_isNull = true;
+            return;
+        }
+        
+        if ( !m_parser.parse( result ) ) {
+            throw new NumberFormatException( "Invalid total [" + result + "]" );
+        }
+        
+        m_amount  = 0;
+        m_decimal = null;
+        
+        if ( m_parser.isLong() ) {
+            m_amount = m_parser.longValue();
+        }
+        else {
+            m_decimal = m_parser.decimalValue();
+        }
+    }
+    
+}
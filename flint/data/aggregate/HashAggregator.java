@@ -1,55 +1,139 @@
 package flint.data.aggregate;
 
 // Core Java classes
-import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
 
 
 /**
+ * Fingerprints the values aggregated with a message digest so two datasets can
+ * be compared without moving them.  Any MessageDigest algorithm may be used as
+ * well as the faster non-cryptographic XXH64.
  *
+ * Values are UTF-8 encoded into a reused buffer and length prefixed so the
+ * boundary between values is part of the hash.  When order insensitive each
+ * value (or row) is hashed on its own and the hashes summed, so the same
+ * multiset of values gives the same result in any order.
  * @author Philip Bowditch
  */
 public class HashAggregator extends AbstractAggregator {
-
+    
+    /**
+     * How the digest is written as a String
+     */
+    public enum Encoding {
+        HEX,
+        BASE64;
+    }
+    
+    protected static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    
     protected MessageDigest m_messageDigest;
     
+    protected Encoding m_encoding;
+    
+    protected boolean m_orderInsensitive;
+    
     protected boolean m_isNull;
     
+    /**
+     * Reused buffer values are encoded into
+     */
+    protected byte[] m_buffer;
+    
+    /**
+     * The digest of a single value when order insensitive
+     */
+    protected byte[] m_element;
+    
+    /**
+     * The sum of the value digests when order insensitive
+     */
+    protected byte[] m_total;
+    
+    /**
+     * The result once calculated, cleared as more values are aggregated
+     */
+    protected String m_result;
+    
     
     //--------------------------------------------------------------------------
     
     public HashAggregator() {
+        this( "MD5" );
+    }
+    
+    public HashAggregator( String algorithm ) {
+        this( algorithm, Encoding.HEX, false );
+    }
+    
+    public HashAggregator( String algorithm, Encoding encoding, boolean orderInsensitive ) {
         super();
         
-        try {
-            m_messageDigest = MessageDigest.getInstance( "MD5" );
+        m_encoding         = encoding;
+        m_orderInsensitive = orderInsensitive;
+        m_isNull           = false;
+        m_buffer           = new byte[256];
+        m_result           = null;
+        
+        setAlgorithm( algorithm );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Creates the digest for the given algorithm
+     * @param algorithm XXH64 or any algorithm supported by MessageDigest
+     * @return
+     * @throws NoSuchAlgorithmException
+     */
+    public static MessageDigest createDigest( String algorithm ) throws NoSuchAlgorithmException {
+        
+        if ( XXHash64.ALGORITHM.equalsIgnoreCase( algorithm ) ) {
+            return new XXHash64();
         }
-        catch (Exception ex){}
         
-        m_name          = "MD5";
-        m_isNull        = false;
+        return MessageDigest.getInstance( algorithm );
     }
     
     
     //--------------------------------------------------------------------------
     
+    @Override
+    public IAggregator copy() {
+        return copySettings( new HashAggregator( getAlgorithm(), m_encoding, m_orderInsensitive ) );
+    }
+    
     @Override
     public void reset() {
         m_messageDigest.reset();
-        m_isNull  = false; // required as a doule cant be null
+        Arrays.fill( m_total, (byte)0 );
+        
+        m_isNull = false;
+        m_result = null;
     }
     
     @Override
     public void aggregate( String value ) {
+        aggregate( value, 0, value == null ? 0 : value.length() );
+    }
+    
+    @Override
+    public void aggregate( CharSequence value, int start, int end ) {
         
         if ( m_isNull ) {
             return;
         }
         
-        String newValue = value;
-        if ( newValue == null ) {
+        if ( value == null ) {
             if ( m_ignoreNull ) {
-                newValue = "";
+                value = "";
+                start = 0;
+                end   = 0;
             }
             else {
                 m_isNull = true;
@@ -57,14 +141,56 @@ public class HashAggregator extends AbstractAggregator {
             }
         }
         
+        m_result = null;
         
-        try {
-            byte[] bytesOfMessage = newValue.getBytes("UTF-8");
+        update( value, start, end );
+        
+        if ( m_orderInsensitive ) {
+            addElement();
+        }
+    }
+    
+    /**
+     * Aggregates all the fields of a row as one value, when order insensitive
+     * only the order of rows is ignored, not the order of fields within a row
+     * @param fields The row to hash
+     */
+    public void aggregate( CharSequence[] fields ) {
+        
+        if ( m_isNull ) {
+            return;
+        }
+        
+        if ( fields == null ) {
+            if ( !m_ignoreNull ) {
+                m_isNull = true;
+            }
+            return;
+        }
+        
+        m_result = null;
+        
+        // Marks the row boundary so fields can not move between rows
+        m_messageDigest.update( (byte)0xFE );
+        m_messageDigest.update( (byte)( fields.length >>> 24 ) );
+        m_messageDigest.update( (byte)( fields.length >>> 16 ) );
+        m_messageDigest.update( (byte)( fields.length >>> 8 ) );
+        m_messageDigest.update( (byte)fields.length );
+        
+        for ( CharSequence field : fields ) {
             
-            m_messageDigest.update( bytesOfMessage );
+            // Nulls are hashed differently to empty strings within a row
+            if ( field == null ) {
+                m_messageDigest.update( (byte)0xFF );
+                continue;
+            }
+            
+            update( field, 0, field.length() );
         }
-        catch ( Exception ex ) {}
         
+        if ( m_orderInsensitive ) {
+            addElement();
+        }
     }
     
     @Override
@@ -74,20 +200,260 @@ public class HashAggregator extends AbstractAggregator {
             return null;
         }
         
-        byte[] bytes = m_messageDigest.digest();
-        return new String(bytes, StandardCharsets.UTF_8);
+        if ( m_result == null ) {
+            
+            byte[] bytes = m_total;
+            if ( !m_orderInsensitive ) {
+                // Digesting resets, a copy leaves the running hash to continue
+                try {
+                    bytes = ( (MessageDigest)m_messageDigest.clone() ).digest();
+                }
+                catch ( CloneNotSupportedException ex ) {
+                    throw new IllegalStateException( m_messageDigest.getAlgorithm() + " digests can not be copied", ex );
+                }
+            }
+            
+            m_result = encode( bytes );
+        }
+        
+        return m_result;
     }
     
+    /**
+     * Sets the result, only an order insensitive aggregator can continue
+     * aggregating from a previous result
+     * @param result The encoded hash
+     */
     @Override
     public void setResult( String result ) {
         
-        m_isNull = false;
+        reset();
+        
         if ( result == null ) {
             m_isNull = true;
             return;
         }
-        // throw new NotImplementedException();
-        //m_amount = result;
+        
+        if ( m_orderInsensitive ) {
+            combine( result );
+        }
+        
+        m_result = result;
+    }
+    
+    /**
+     * Adds the result of another order insensitive aggregator using the same
+     * algorithm and encoding, as though its values had been aggregated here.
+     * This allows partitions of a dataset to be hashed independently
+     * @param result The encoded hash
+     */
+    public void combine( String result ) {
+        
+        if ( !m_orderInsensitive ) {
+            throw new IllegalStateException( "Only order insensitive hashes can be combined" );
+        }
+        
+        if ( m_isNull ) {
+            return;
+        }
+        
+        if ( result == null ) {
+            if ( !m_ignoreNull ) {
+                m_isNull = true;
+            }
+            return;
+        }
+        
+        byte[] bytes = decode( result );
+        if ( bytes.length != m_total.length ) {
+            throw new IllegalArgumentException( "Hash [" + result + "] is not a " + m_name + " hash" );
+        }
+        
+        add( m_total, bytes );
+        m_result = null;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Adds the length prefixed UTF-8 bytes of the characters to the digest
+     */
+    protected void update( CharSequence value, int start, int end ) {
+        
+        int len = encode( value, start, end );
+        
+        m_buffer[0] = (byte)( len >>> 24 );
+        m_buffer[1] = (byte)( len >>> 16 );
+        m_buffer[2] = (byte)( len >>> 8 );
+        m_buffer[3] = (byte)len;
+        
+        m_messageDigest.update( m_buffer, 0, len + 4 );
+    }
+    
+    /**
+     * Completes the digest of one value and adds it to the total
+     */
+    protected void addElement() {
+        
+        try {
+            m_messageDigest.digest( m_element, 0, m_element.length );
+        }
+        catch ( DigestException ex ) {
+            throw new IllegalStateException( ex );
+        }
+        
+        add( m_total, m_element );
+    }
+    
+    /**
+     * UTF-8 encodes the characters into the reused buffer, the same bytes as
+     * String.getBytes including '?' for unpaired surrogates.  The first four
+     * bytes of the buffer are left for the length
+     * @return The number of bytes written after the length
+     */
+    protected int encode( CharSequence value, int start, int end ) {
+        
+        int required = ( end - start ) * 3 + 4;
+        if ( m_buffer.length < required ) {
+            m_buffer = new byte[ Math.max( required, m_buffer.length * 2 ) ];
+        }
+        
+        byte[] b = m_buffer;
+        int    n = 4;
+        
+        for ( int i = start; i < end; i++ ) {
+            
+            char c = value.charAt( i );
+            
+            if ( c < 0x80 ) {
+                b[n++] = (byte)c;
+            }
+            else if ( c < 0x800 ) {
+                b[n++] = (byte)( 0xC0 | ( c >> 6 ) );
+                b[n++] = (byte)( 0x80 | ( c & 0x3F ) );
+            }
+            else if ( Character.isHighSurrogate( c ) && i + 1 < end && Character.isLowSurrogate( value.charAt( i + 1 ) ) ) {
+                int cp = Character.toCodePoint( c, value.charAt( ++i ) );
+                b[n++] = (byte)( 0xF0 | ( cp >> 18 ) );
+                b[n++] = (byte)( 0x80 | ( ( cp >> 12 ) & 0x3F ) );
+                b[n++] = (byte)( 0x80 | ( ( cp >> 6 ) & 0x3F ) );
+                b[n++] = (byte)( 0x80 | ( cp & 0x3F ) );
+            }
+            else if ( Character.isSurrogate( c ) ) {
+                b[n++] = (byte)'?';
+            }
+            else {
+                b[n++] = (byte)( 0xE0 | ( c >> 12 ) );
+                b[n++] = (byte)( 0x80 | ( ( c >> 6 ) & 0x3F ) );
+                b[n++] = (byte)( 0x80 | ( c & 0x3F ) );
+            }
+        }
+        
+        return n - 4;
+    }
+    
+    /**
+     * Adds the value to the total as unsigned big endian integers, wrapping on
+     * overflow.  Unlike XOR, duplicates do not cancel out
+     */
+    protected static void add( byte[] total, byte[] value ) {
+        
+        int carry = 0;
+        for ( int i = total.length - 1; i >= 0; i-- ) {
+            int sum  = ( total[i] & 0xFF ) + ( value[i] & 0xFF ) + carry;
+            total[i] = (byte)sum;
+            carry    = sum >>> 8;
+        }
+    }
+    
+    protected String encode( byte[] bytes ) {
+        
+        if ( m_encoding == Encoding.BASE64 ) {
+            return Base64.getEncoder().encodeToString( bytes );
+        }
+        
+        char[] chars = new char[ bytes.length * 2 ];
+        for ( int i = 0; i < bytes.length; i++ ) {
+            chars[ i * 2 ]     = HEX_DIGITS[ ( bytes[i] >> 4 ) & 0xF ];
+            chars[ i * 2 + 1 ] = HEX_DIGITS[ bytes[i] & 0xF ];
+        }
+        
+        return new String( chars );
+    }
+    
+    protected byte[] decode( String result ) {
+        
+        if ( m_encoding == Encoding.BASE64 ) {
+            return Base64.getDecoder().decode( result );
+        }
+        
+        if ( result.length() % 2 != 0 ) {
+            throw new IllegalArgumentException( "Invalid hex hash [" + result + "]" );
+        }
+        
+        byte[] bytes = new byte[ result.length() / 2 ];
+        for ( int i = 0; i < bytes.length; i++ ) {
+            
+            int hi = Character.digit( result.charAt( i * 2 ), 16 );
+            int lo = Character.digit( result.charAt( i * 2 + 1 ), 16 );
+            if ( hi < 0 || lo < 0 ) {
+                throw new IllegalArgumentException( "Invalid hex hash [" + result + "]" );
+            }
+            
+            bytes[i] = (byte)( ( hi << 4 ) | lo );
+        }
+        
+        return bytes;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Sets the digest algorithm, discarding anything aggregated so far
+     * @param algorithm XXH64 or any algorithm supported by MessageDigest, e.g. MD5 or SHA-256
+     */
+    public void setAlgorithm( String algorithm ) {
+        
+        try {
+            m_messageDigest = createDigest( algorithm );
+        }
+        catch ( NoSuchAlgorithmException ex ) {
+            throw new IllegalArgumentException( "Unknown hash algorithm [" + algorithm + "]", ex );
+        }
+        
+        m_name    = m_messageDigest.getAlgorithm();
+        m_element = new byte[ m_messageDigest.getDigestLength() ];
+        m_total   = new byte[ m_messageDigest.getDigestLength() ];
+        
+        reset();
+    }
+    
+    public String getAlgorithm() {
+        return m_messageDigest.getAlgorithm();
+    }
+    
+    public void setEncoding( Encoding encoding ) {
+        m_encoding = encoding;
+        m_result   = null;
+    }
+    
+    public Encoding getEncoding() {
+        return m_encoding;
+    }
+    
+    /**
+     * Sets whether the order of values is ignored, discarding anything aggregated so far
+     * @param orderInsensitive
+     */
+    public void setOrderInsensitive( boolean orderInsensitive ) {
+        m_orderInsensitive = orderInsensitive;
+        reset();
+    }
+    
+    public boolean isOrderInsensitive() {
+        return m_orderInsensitive;
     }
     
 }
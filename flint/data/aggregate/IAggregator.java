@@ -18,8 +18,41 @@ public interface IAggregator {
     
     void reset();
     
+    /**
+     * Creates an aggregator configured as this one but with nothing aggregated,
+     * used to give every row or column its own aggregator
+     * @return 
+     */
+    IAggregator copy();
+    
     void aggregate( String value );
     
+    /**
+     * Aggregates a region of character data without first copying it to a String
+     * @param value The characters, null for a null value
+     * @param start The index of the first character
+     * @param end The index after the last character
+     */
+    default void aggregate( CharSequence value, int start, int end ) {
+        aggregate( value == null ? null : value.subSequence( start, end ).toString() );
+    }
+    
+    /**
+     * Aggregates a value already held as a double
+     * @param value 
+     */
+    default void aggregate( double value ) {
+        aggregate( Double.toString( value ) );
+    }
+    
+    /**
+     * Aggregates a value already held as a long
+     * @param value 
+     */
+    default void aggregate( long value ) {
+        aggregate( Long.toString( value ) );
+    }
+    
     String getResult();
     
     void setResult( String result );
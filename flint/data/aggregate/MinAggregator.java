@@ -1,5 +1,8 @@
 package flint.data.aggregate;
 
+// Application classes
+import flint.util.NumberParser;
+
 /**
  *
  * @author Philip Bowditch
@@ -12,6 +15,8 @@ public class MinAggregator extends AbstractAggregator {
     
     protected boolean m_isNull;
     
+    protected NumberParser m_parser;
+    
     
     //--------------------------------------------------------------------------
     
@@ -22,11 +27,17 @@ public class MinAggregator extends AbstractAggregator {
         m_amount     = 0;
         m_assigned   = false;
         m_isNull     = false; // required as a doule cant be null
+        m_parser     = new NumberParser();
     }
     
     
     //--------------------------------------------------------------------------
     
+    @Override
+    public IAggregator copy() {
+        return copySettings( new MinAggregator() );
+    }
+    
     @Override
     public void reset() {
         m_amount   = 0;
@@ -36,16 +47,17 @@ public class MinAggregator extends AbstractAggregator {
     
     @Override
     public void aggregate( String value ) {
+        aggregate( value, 0, value == null ? 0 : value.length() );
+    }
+    
+    @Override
+    public void aggregate( CharSequence value, int start, int end ) {
         
-        if ( ! m_assigned ) {
-            m_assigned = true;
-        }
-        else if ( m_isNull ) {
+        if ( m_isNull ) {
             return;
         }
         
-        String newValue = value;
-        if ( newValue == null ) {
+        if ( value == null ) {
         
             if ( !m_ignoreNull ) {
                 m_isNull = true;
@@ -54,17 +66,29 @@ public class MinAggregator extends AbstractAggregator {
             return;
         }
         
+        // Values that are not numbers are skipped
+        if ( m_parser.parse( value, start, end ) ) {
+            aggregate( m_parser.doubleValue() );
+        }
+    }
+    
+    @Override
+    public void aggregate( double value ) {
         
-        try {
-        
-            double tmp = Double.valueOf( newValue );
-            if ( tmp < m_amount ) {
-                m_amount = tmp;
-            }
-            
+        if ( m_isNull || Double.isNaN( value ) ) {
+            return;
         }
-        catch ( Exception ex ) {}
         
+        // The first value is the smallest seen so far
+        if ( !m_assigned || value < m_amount ) {
+            m_amount   = value;
+            m_assigned = true;
+        }
+    }
+    
+    @Override
+    public void aggregate( long value ) {
+        aggregate( (double)value );
     }
     
     @Override
@@ -85,6 +109,7 @@ public class MinAggregator extends AbstractAggregator {
             return;
         }
         
-        m_amount = Double.valueOf( result );
+        m_amount   = Double.valueOf( result );
+        m_assigned = true;
     }
-}
\ No newline at end of file
+}
@@ -21,6 +21,11 @@ public class NoOpAggregator extends AbstractAggregator {
     
     //--------------------------------------------------------------------------
     
+    @Override
+    public IAggregator copy() {
+        return copySettings( new NoOpAggregator() );
+    }
+    
     @Override
     public void reset() {
         m_amount = "";
@@ -30,6 +35,18 @@ public class NoOpAggregator extends AbstractAggregator {
     public void aggregate( String value ) {
     }
     
+    @Override
+    public void aggregate( CharSequence value, int start, int end ) {
+    }
+    
+    @Override
+    public void aggregate( double value ) {
+    }
+    
+    @Override
+    public void aggregate( long value ) {
+    }
+    
     @Override
     public String getResult() {
         return m_amount;
@@ -1,5 +1,8 @@
 package flint.data.aggregate;
 
+// Application classes
+import flint.util.NumberParser;
+
 /**
  *
  * @author Philip Bowditch
@@ -10,6 +13,8 @@ public class SumAggregator extends AbstractAggregator {
     
     protected boolean m_isNull;
     
+    protected NumberParser m_parser;
+    
     
     //--------------------------------------------------------------------------
     
@@ -19,11 +24,17 @@ public class SumAggregator extends AbstractAggregator {
         m_name       = "Total";
         m_amount     = 0;
         m_isNull     = false;  // Double cant be null
+        m_parser     = new NumberParser();
     }
     
     
     //--------------------------------------------------------------------------
     
+    @Override
+    public IAggregator copy() {
+        return copySettings( new SumAggregator() );
+    }
+    
     @Override
     public void reset() {
         m_amount = 0;
@@ -32,30 +43,41 @@ public class SumAggregator extends AbstractAggregator {
     
     @Override
     public void aggregate( String value ) {
+        aggregate( value, 0, value == null ? 0 : value.length() );
+    }
+    
+    @Override
+    public void aggregate( CharSequence value, int start, int end ) {
         
         if ( m_isNull ) {
             return;
         }
         
-        String newValue = value;
-        if ( newValue == null ) {
-            if ( m_ignoreNull ) {
-                newValue = "0";
-            }
-            else {
+        if ( value == null ) {
+            if ( !m_ignoreNull ) {
                 m_isNull = true;
-                return;
             }
+            return;
         }
         
-        
-        try {
-        
-            m_amount += Double.valueOf( newValue );
-            
+        // Values that are not numbers are skipped
+        if ( m_parser.parse( value, start, end ) ) {
+            m_amount += m_parser.doubleValue();
+        }
+    }
+    
+    @Override
+    public void aggregate( double value ) {
+        if ( !m_isNull ) {
+            m_amount += value;
+        }
+    }
+    
+    @Override
+    public void aggregate( long value ) {
+        if ( !m_isNull ) {
+            m_amount += value;
         }
-        catch ( Exception ex ) {}
-        
     }
     
     @Override
@@ -79,4 +101,4 @@ public class SumAggregator extends AbstractAggregator {
         m_amount = Double.valueOf( result );
     }
     
-}
\ No newline at end of file
+}
@@ -0,0 +1,247 @@
+package flint.data.aggregate;
+
+// Core Java classes
+import java.security.DigestException;
+import java.security.MessageDigest;
+
+/**
+ * The XXH64 non-cryptographic hash as a MessageDigest so it can be used
+ * wherever a standard digest is.  Much faster than MD5 or SHA for fingerprinting
+ * data but gives no protection against deliberately crafted collisions.
+ * The digest is the 64 bit hash in big endian (canonical) order.
+ * @author Philip Bowditch
+ */
+public class XXHash64 extends MessageDigest implements Cloneable {
+    
+    /**
+     * The algorithm name accepted by HashAggregator
+     */
+    public static final String ALGORITHM = "XXH64";
+    
+    protected static final long PRIME1 = 0x9E3779B185EBCA87L;
+    protected static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    protected static final long PRIME3 = 0x165667B19E3779F9L;
+    protected static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    protected static final long PRIME5 = 0x27D4EB2F165667C5L;
+    
+    protected final long m_seed;
+    
+    protected long m_v1;
+    protected long m_v2;
+    protected long m_v3;
+    protected long m_v4;
+    
+    /**
+     * Total number of bytes hashed
+     */
+    protected long m_length;
+    
+    /**
+     * Bytes waiting for a full 32 byte stripe
+     */
+    protected byte[] m_stripe;
+    
+    protected int m_stripeLength;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    public XXHash64() {
+        this( 0 );
+    }
+    
+    public XXHash64( long seed ) {
+        super( ALGORITHM );
+        
+        m_seed         = seed;
+        m_stripe       = new byte[32];
+        m_stripeLength = 0;
+        
+        engineReset();
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    protected int engineGetDigestLength() {
+        return 8;
+    }
+    
+    @Override
+    protected final void engineReset() {
+        m_v1           = m_seed + PRIME1 + PRIME2;
+        m_v2           = m_seed + PRIME2;
+        m_v3           = m_seed;
+        m_v4           = m_seed - PRIME1;
+        m_length       = 0;
+        m_stripeLength = 0;
+    }
+    
+    @Override
+    protected void engineUpdate( byte input ) {
+        
+        m_stripe[ m_stripeLength++ ] = input;
+        m_length++;
+        
+        if ( m_stripeLength == 32 ) {
+            consume( m_stripe, 0 );
+            m_stripeLength = 0;
+        }
+    }
+    
+    @Override
+    protected void engineUpdate( byte[] input, int offset, int len ) {
+        
+        m_length += len;
+        
+        // Top up a partial stripe first
+        if ( m_stripeLength > 0 ) {
+            
+            int n = Math.min( len, 32 - m_stripeLength );
+            System.arraycopy( input, offset, m_stripe, m_stripeLength, n );
+            
+            m_stripeLength += n;
+            offset         += n;
+            len            -= n;
+            
+            if ( m_stripeLength < 32 ) {
+                return;
+            }
+            
+            consume( m_stripe, 0 );
+            m_stripeLength = 0;
+        }
+        
+        for ( ; len >= 32; offset += 32, len -= 32 ) {
+            consume( input, offset );
+        }
+        
+        System.arraycopy( input, offset, m_stripe, 0, len );
+        m_stripeLength = len;
+    }
+    
+    @Override
+    protected byte[] engineDigest() {
+        
+        byte[] result = new byte[8];
+        writeLong( result, 0, hash() );
+        
+        engineReset();
+        return result;
+    }
+    
+    @Override
+    protected int engineDigest( byte[] buf, int offset, int len ) throws DigestException {
+        
+        if ( len < 8 ) {
+            throw new DigestException( "Buffer too short for an XXH64 digest" );
+        }
+        
+        writeLong( buf, offset, hash() );
+        
+        engineReset();
+        return 8;
+    }
+    
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+        
+        XXHash64 copy = (XXHash64)super.clone();
+        copy.m_stripe = m_stripe.clone();
+        
+        return copy;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Finishes the hash of everything added since the last reset
+     * @return
+     */
+    protected long hash() {
+        
+        long h;
+        if ( m_length >= 32 ) {
+            h = Long.rotateLeft( m_v1, 1 ) + Long.rotateLeft( m_v2, 7 ) + Long.rotateLeft( m_v3, 12 ) + Long.rotateLeft( m_v4, 18 );
+            h = merge( h, m_v1 );
+            h = merge( h, m_v2 );
+            h = merge( h, m_v3 );
+            h = merge( h, m_v4 );
+        }
+        else {
+            h = m_seed + PRIME5;
+        }
+        
+        h += m_length;
+        
+        int i = 0;
+        for ( ; i + 8 <= m_stripeLength; i += 8 ) {
+            h ^= round( 0, readLong( m_stripe, i ) );
+            h  = Long.rotateLeft( h, 27 ) * PRIME1 + PRIME4;
+        }
+        
+        if ( i + 4 <= m_stripeLength ) {
+            h ^= ( readInt( m_stripe, i ) & 0xFFFFFFFFL ) * PRIME1;
+            h  = Long.rotateLeft( h, 23 ) * PRIME2 + PRIME3;
+            i += 4;
+        }
+        
+        for ( ; i < m_stripeLength; i++ ) {
+            h ^= ( m_stripe[i] & 0xFF ) * PRIME5;
+            h  = Long.rotateLeft( h, 11 ) * PRIME1;
+        }
+        
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        
+        return h;
+    }
+    
+    protected void consume( byte[] b, int offset ) {
+        m_v1 = round( m_v1, readLong( b, offset ) );
+        m_v2 = round( m_v2, readLong( b, offset + 8 ) );
+        m_v3 = round( m_v3, readLong( b, offset + 16 ) );
+        m_v4 = round( m_v4, readLong( b, offset + 24 ) );
+    }
+    
+    protected static long round( long acc, long input ) {
+        acc += input * PRIME2;
+        acc  = Long.rotateLeft( acc, 31 );
+        return acc * PRIME1;
+    }
+    
+    protected static long merge( long acc, long value ) {
+        acc ^= round( 0, value );
+        return acc * PRIME1 + PRIME4;
+    }
+    
+    protected static long readLong( byte[] b, int i ) {
+        return   ( b[i] & 0xFFL )
+               | ( ( b[i + 1] & 0xFFL ) << 8 )
+               | ( ( b[i + 2] & 0xFFL ) << 16 )
+               | ( ( b[i + 3] & 0xFFL ) << 24 )
+               | ( ( b[i + 4] & 0xFFL ) << 32 )
+               | ( ( b[i + 5] & 0xFFL ) << 40 )
+               | ( ( b[i + 6] & 0xFFL ) << 48 )
+               | ( ( b[i + 7] & 0xFFL ) << 56 );
+    }
+    
+    protected static int readInt( byte[] b, int i ) {
+        return   ( b[i] & 0xFF )
+               | ( ( b[i + 1] & 0xFF ) << 8 )
+               | ( ( b[i + 2] & 0xFF ) << 16 )
+               | ( ( b[i + 3] & 0xFF ) << 24 );
+    }
+    
+    protected static void writeLong( byte[] b, int offset, long value ) {
+        for ( int i = 7; i >= 0; i-- ) {
+            b[ offset + i ] = (byte)value;
+            value >>>= 8;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package flint.data.compare;
+
+// Core Java classes
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Application classes
+import flint.data.DataColumn;
+import flint.data.DataTable;
+
+/**
+ * Shared by the comparators, resolves the expected columns against the actual
+ * column names and extracts the KEY columns rows are matched on
+ * @author Philip Bowditch
+ */
+public abstract class AbstractRowComparator implements IRowComparator {
+    
+    /**
+     * The expected columns
+     */
+    protected DataColumn[] m_columns;
+    
+    /**
+     * Indexes of the KEY columns within the expected columns
+     */
+    protected int[] m_keys;
+    
+    /**
+     * Most surplus rows kept for reporting
+     */
+    protected int m_maxSurplus;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the AbstractRowComparator class
+     * @param columns The expected columns
+     */
+    public AbstractRowComparator( DataColumn[] columns ) {
+        m_columns    = columns;
+        m_maxSurplus = 100;
+        
+        List<Integer> keys = new ArrayList<>();
+        for ( int i = 0; i < columns.length; i++ ) {
+            if ( columns[i].getAccessModifier() == DataColumn.AccessModifier.KEY ) {
+                keys.add( i );
+            }
+        }
+        
+        m_keys = new int[ keys.size() ];
+        for ( int i = 0; i < m_keys.length; i++ ) {
+            m_keys[i] = keys.get( i );
+        }
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Finds each expected column within the actual columns, names are matched
+     * ignoring case.  IGNORE columns are not looked for
+     * @param header The actual column names
+     * @return The index of each expected column in the actual rows, -1 if ignored
+     * @throws IOException If a column that is needed is not in the output
+     */
+    protected int[] resolve( String[] header ) throws IOException {
+        
+        int[] mapping = new int[ m_columns.length ];
+        
+        for ( int i = 0; i < m_columns.length; i++ ) {
+            
+            mapping[i] = -1;
+            
+            if ( m_columns[i].getAccessModifier() == DataColumn.AccessModifier.IGNORE ) {
+                continue;
+            }
+            
+            String name = m_columns[i].getName().trim();
+            for ( int j = 0; j < header.length; j++ ) {
+                if ( header[j] != null && header[j].trim().equalsIgnoreCase( name ) ) {
+                    mapping[i] = j;
+                    break;
+                }
+            }
+            
+            if ( mapping[i] < 0 ) {
+                throw new IOException( "Column " + name + " is not in the output, found " + Arrays.toString( header ) );
+            }
+        }
+        
+        return mapping;
+    }
+    
+    /**
+     * Rearranges an actual row to line up with the expected columns, so only
+     * the cells compared are held on to
+     * @param actual The actual row
+     * @param mapping Returned by resolve
+     * @return
+     */
+    protected static String[] project( String[] actual, int[] mapping ) {
+        
+        String[] row = new String[ mapping.length ];
+        
+        for ( int i = 0; i < mapping.length; i++ ) {
+            if ( mapping[i] >= 0 && mapping[i] < actual.length ) {
+                row[i] = actual[ mapping[i] ];
+            }
+        }
+        
+        return row;
+    }
+    
+    /**
+     * Returns the KEY cells of a row lined up with the expected columns, rows
+     * with equal keys are candidates for matching
+     * @param row The cells
+     * @return
+     */
+    protected List<String> keyOf( String[] row ) {
+        
+        String[] key = new String[ m_keys.length ];
+        
+        for ( int i = 0; i < m_keys.length; i++ ) {
+            String cell = ( m_keys[i] < row.length ) ? row[ m_keys[i] ] : null;
+            key[i] = ( cell == null ) ? "" : cell;
+        }
+        
+        return Arrays.asList( key );
+    }
+    
+    /**
+     * Returns the KEY cells of an expected row, read in place from the table
+     * @param table The expected rows
+     * @param row The index of the row
+     * @return
+     */
+    protected List<String> keyOf( DataTable table, int row ) {
+        
+        String[] key = new String[ m_keys.length ];
+        
+        for ( int i = 0; i < m_keys.length; i++ ) {
+            String cell = table.getCell( row, m_keys[i] );
+            key[i] = ( cell == null ) ? "" : cell;
+        }
+        
+        return Arrays.asList( key );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    public DataColumn[] getColumns() {
+        return m_columns;
+    }
+    
+    public int getMaxSurplus() {
+        return m_maxSurplus;
+    }
+    
+    public void setMaxSurplus( int maxSurplus ) {
+        m_maxSurplus = maxSurplus;
+    }
+}
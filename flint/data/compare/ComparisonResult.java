@@ -0,0 +1,259 @@
+package flint.data.compare;
+
+// Core Java classes
+import java.util.ArrayList;
+import java.util.List;
+
+// Application classes
+import flint.data.DataColumn;
+import flint.data.DataTable;
+
+/**
+ * The outcome of matching expected rows against actual rows.  Each expected
+ * row holds the actual row it matched, projected onto the expected columns, or
+ * nothing if it is missing.  Actual rows that matched nothing are surplus, only
+ * the first few are kept as there may be far more than fit in memory
+ * @author Philip Bowditch
+ */
+public class ComparisonResult {
+    
+    /**
+     * How a cell of a matched row compared
+     * MATCH     - equal, or different for an inverse comparison
+     * MISMATCH  - different, or equal for an inverse comparison
+     * IGNORED   - not compared, # columns
+     * UNCHECKED - no expected value was given, the actual is for information
+     */
+    public enum CellStatus {
+        
+        MATCH,
+        MISMATCH,
+        IGNORED,
+        UNCHECKED
+        
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * The expected columns
+     */
+    protected DataColumn[] m_columns;
+    
+    /**
+     * The expected rows, cells are read from the table in place
+     */
+    protected DataTable m_expected;
+    
+    /**
+     * The actual row each expected row matched, null if missing
+     */
+    protected String[][] m_matches;
+    
+    /**
+     * The first surplus rows
+     */
+    protected List<String[]> m_surplus;
+    
+    /**
+     * Most surplus rows kept
+     */
+    protected int m_maxSurplus;
+    
+    /**
+     * Number of surplus rows, including those not kept
+     */
+    protected long m_surplusCount;
+    
+    /**
+     * Number of actual rows read, excluding the column names
+     */
+    protected long m_actualRows;
+    
+    /**
+     * Set if the actual rows did not fit in memory and were spilled to disk
+     */
+    protected boolean m_spilled;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the ComparisonResult class
+     * @param columns The expected columns
+     * @param expected The expected rows
+     * @param maxSurplus Most surplus rows kept
+     */
+    public ComparisonResult( DataColumn[] columns, DataTable expected, int maxSurplus ) {
+        m_columns      = columns;
+        m_expected     = expected;
+        m_matches      = new String[ expected.getRowCount() ][];
+        m_surplus      = new ArrayList<>();
+        m_maxSurplus   = maxSurplus;
+        m_surplusCount = 0;
+        m_actualRows   = 0;
+        m_spilled      = false;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Compares a cell according to its columns access modifier
+     * @param modifier How the column is used
+     * @param expected The expected value
+     * @param actual The actual value, null is treated as empty
+     * @return
+     */
+    public static CellStatus judge( DataColumn.AccessModifier modifier, String expected, String actual ) {
+        
+        String a = ( actual == null ) ? "" : actual;
+        
+        switch ( modifier ) {
+            
+            case KEY                      : return expected.equals( a ) ? CellStatus.MATCH : CellStatus.MISMATCH;
+            
+            case QUERY                    : if ( expected.isEmpty() ) {
+                                                return CellStatus.UNCHECKED;
+                                            }
+                                            return expected.equals( a ) ? CellStatus.MATCH : CellStatus.MISMATCH;
+            
+            case QUERY_INVERSE_COMPARISON : if ( expected.isEmpty() ) {
+                                                return CellStatus.UNCHECKED;
+                                            }
+                                            return expected.equals( a ) ? CellStatus.MISMATCH : CellStatus.MATCH;
+            
+            default                       : return CellStatus.IGNORED;
+            
+        }
+    }
+    
+    /**
+     * Returns how a cell of a matched row compared
+     * @param row The index of the expected row
+     * @param col The index of the column
+     * @return
+     */
+    public CellStatus getStatus( int row, int col ) {
+        
+        String value = m_expected.getCell( row, col );
+        if ( value == null ) {
+            value = "";
+        }
+        
+        return judge( m_columns[ col ].getAccessModifier(), value, m_matches[ row ][ col ] );
+    }
+    
+    /**
+     * Returns true if every expected row matched with no mismatched cells and
+     * there were no surplus rows
+     * @return
+     */
+    public boolean isEqual() {
+        
+        if ( m_surplusCount > 0 ) {
+            return false;
+        }
+        
+        for ( int i = 0; i < m_matches.length; i++ ) {
+            
+            if ( m_matches[i] == null ) {
+                return false;
+            }
+            
+            for ( int j = 0; j < m_columns.length; j++ ) {
+                if ( getStatus( i, j ) == CellStatus.MISMATCH ) {
+                    return false;
+                }
+            }
+        }
+        
+        return true;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    public void setMatch( int row, String[] actual ) {
+        m_matches[ row ] = actual;
+    }
+    
+    /**
+     * Returns the actual row an expected row matched, null if it is missing
+     * @param row The index of the expected row
+     * @return
+     */
+    public String[] getMatch( int row ) {
+        return m_matches[ row ];
+    }
+    
+    public boolean isMissing( int row ) {
+        return m_matches[ row ] == null;
+    }
+    
+    /**
+     * Returns the number of expected rows that matched nothing
+     * @return
+     */
+    public int getMissingCount() {
+        
+        int count = 0;
+        for ( String[] m : m_matches ) {
+            if ( m == null ) {
+                count++;
+            }
+        }
+        
+        return count;
+    }
+    
+    /**
+     * Records an actual row that matched nothing
+     * @param actual The row projected onto the expected columns
+     */
+    public void addSurplus( String[] actual ) {
+        
+        if ( m_surplus.size() < m_maxSurplus ) {
+            m_surplus.add( actual );
+        }
+        
+        m_surplusCount++;
+    }
+    
+    /**
+     * Returns the first surplus rows, projected onto the expected columns
+     * @return
+     */
+    public List<String[]> getSurplus() {
+        return m_surplus;
+    }
+    
+    public long getSurplusCount() {
+        return m_surplusCount;
+    }
+    
+    public long getActualRows() {
+        return m_actualRows;
+    }
+    
+    public void setActualRows( long rows ) {
+        m_actualRows = rows;
+    }
+    
+    public boolean isSpilled() {
+        return m_spilled;
+    }
+    
+    public void setSpilled( boolean spilled ) {
+        m_spilled = spilled;
+    }
+    
+    public DataColumn[] getColumns() {
+        return m_columns;
+    }
+    
+    public DataTable getExpected() {
+        return m_expected;
+    }
+}
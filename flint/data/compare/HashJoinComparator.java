@@ -0,0 +1,493 @@
+package flint.data.compare;
+
+// Core Java classes
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Application classes
+import flint.data.DataColumn;
+import flint.data.DataTable;
+import flint.engine.io.BinaryReader;
+import flint.engine.io.BinaryWriter;
+
+/**
+ * Matches expected rows against actual rows in time linear in the number of
+ * rows by indexing the actual rows on their KEY columns and probing the index
+ * with each expected row.  Expected rows with the same key match actual rows
+ * with that key in the order they were produced.
+ *
+ * The actual rows are read once as a stream.  If more arrive than the spill
+ * threshold the index is written out to partition files by the hash of the
+ * key, as are the rest of the rows, and each partition is then indexed and
+ * probed in turn so only one partition is held in memory at a time.  A
+ * partition still larger than the threshold is split again by a differently
+ * seeded hash into as many partitions as its size needs, and one whose keys
+ * can not be split, e.g. every row has the same key, is streamed past its
+ * expected rows instead of being indexed.  Surplus rows of a spilled
+ * comparison are reported partition by partition rather than in the order
+ * they were produced
+ * @author Philip Bowditch
+ */
+public class HashJoinComparator extends AbstractRowComparator {
+    
+    /**
+     * Receives the rows read back from a partition file
+     */
+    protected interface RowHandler {
+        void handle( String[] row ) throws IOException;
+    }
+    
+    /**
+     * Settings for the partition files, they have no column names
+     */
+    protected static final Map<String, String> PARTITION_SETTINGS = Collections.singletonMap( "header", "false" );
+    
+    /**
+     * Most partitions a partition is split into, each is an open file
+     */
+    protected static final int MAX_PARTITIONS = 1024;
+    
+    /**
+     * Most actual rows indexed in memory before spilling
+     */
+    protected long m_spillThreshold;
+    
+    /**
+     * Number of partition files spilled rows are first spread across, the
+     * total is not yet known when the index spills
+     */
+    protected int m_partitions;
+    
+    /**
+     * Where partition files are written, null for the temp directory
+     */
+    protected File m_spillDirectory;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the HashJoinComparator class
+     * @param columns The expected columns
+     */
+    public HashJoinComparator( DataColumn[] columns ) {
+        super( columns );
+        
+        m_spillThreshold = 500000;
+        m_partitions     = 64;
+        m_spillDirectory = null;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    public ComparisonResult compare( DataTable expected, Iterable<String[]> actual ) throws IOException {
+        
+        ComparisonResult res = new ComparisonResult( m_columns, expected, m_maxSurplus );
+        
+        Iterator<String[]> it = actual.iterator();
+        if ( !it.hasNext() ) {
+            return res;
+        }
+        
+        int[] mapping = resolve( it.next() );
+        
+        Map<List<String>, ArrayDeque<String[]>> index = new LinkedHashMap<>();
+        
+        File[]         files   = null;
+        BinaryWriter[] writers = null;
+        long[]         counts  = null;
+        long           rows    = 0;
+        
+        try {
+            while ( it.hasNext() ) {
+                
+                String[] row = project( it.next(), mapping );
+                rows++;
+                
+                if ( writers != null ) {
+                    int p = partitionOf( keyOf( row ), 0, m_partitions );
+                    writers[p].writeRecord( row );
+                    counts[p]++;
+                    continue;
+                }
+                
+                index.computeIfAbsent( keyOf( row ), k -> new ArrayDeque<>() ).add( row );
+                
+                // Too many to hold, move what is indexed to disk and send
+                // the rest of the rows straight there
+                if ( rows > m_spillThreshold ) {
+                    
+                    files   = new File[ m_partitions ];
+                    writers = new BinaryWriter[ m_partitions ];
+                    counts  = new long[ m_partitions ];
+                    
+                    createPartitions( files, writers );
+                    
+                    for ( Map.Entry<List<String>, ArrayDeque<String[]>> e : index.entrySet() ) {
+                        int p = partitionOf( e.getKey(), 0, m_partitions );
+                        for ( String[] r : e.getValue() ) {
+                            writers[p].writeRecord( r );
+                        }
+                        counts[p] += e.getValue().size();
+                    }
+                    
+                    index.clear();
+                }
+            }
+            
+            res.setActualRows( rows );
+            
+            if ( writers == null ) {
+                probe( expected, null, index, res );
+                return res;
+            }
+            
+            res.setSpilled( true );
+            
+            for ( BinaryWriter w : writers ) {
+                w.close();
+            }
+            writers = null;
+            
+            // Expected rows are few enough to hold, group them by partition
+            List<List<Integer>> groups = group( expected, null, 0, m_partitions );
+            
+            for ( int p = 0; p < m_partitions; p++ ) {
+                join( files[p], counts[p], 0, expected, groups.get( p ), res );
+                files[p].delete();
+            }
+            
+            return res;
+        }
+        finally {
+            closePartitions( writers );
+            deletePartitions( files );
+        }
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Matches expected rows against an index, whatever is left in the index
+     * afterwards is surplus
+     * @param expected The expected rows
+     * @param which The indexes of the expected rows to probe, null for all
+     * @param index The actual rows by key
+     * @param res Receives the matches and surplus rows
+     */
+    protected void probe( DataTable expected, List<Integer> which, Map<List<String>, ArrayDeque<String[]>> index, ComparisonResult res ) {
+        
+        int count = ( which == null ) ? expected.getRowCount() : which.size();
+        
+        for ( int n = 0; n < count; n++ ) {
+            
+            int i = ( which == null ) ? n : which.get( n );
+            
+            ArrayDeque<String[]> candidates = index.get( keyOf( expected, i ) );
+            if ( candidates != null && !candidates.isEmpty() ) {
+                res.setMatch( i, candidates.poll() );
+            }
+        }
+        
+        for ( ArrayDeque<String[]> remaining : index.values() ) {
+            for ( String[] row : remaining ) {
+                res.addSurplus( row );
+            }
+        }
+    }
+    
+    /**
+     * Matches the expected rows of a partition against its actual rows.  A
+     * partition too large to index is split again with the next seed, unless
+     * its keys all hash alike in which case it is streamed
+     * @param f The partition file
+     * @param rows The number of rows in the partition
+     * @param seed The seed the partition was split with
+     * @param expected The expected rows
+     * @param which The indexes of the expected rows in this partition
+     * @param res Receives the matches and surplus rows
+     * @throws IOException 
+     */
+    protected void join( File f, long rows, int seed, DataTable expected, List<Integer> which, ComparisonResult res ) throws IOException {
+        
+        if ( rows <= m_spillThreshold ) {
+            probe( expected, which, readPartition( f ), res );
+            return;
+        }
+        
+        int            count   = partitionsFor( rows );
+        File[]         files   = new File[ count ];
+        BinaryWriter[] writers = new BinaryWriter[ count ];
+        long[]         counts  = new long[ count ];
+        
+        try {
+            createPartitions( files, writers );
+            
+            readRows( f, row -> {
+                int p = partitionOf( keyOf( row ), seed + 1, count );
+                writers[p].writeRecord( row );
+                counts[p]++;
+            } );
+            
+            closePartitions( writers );
+            
+            // Rows that all went the same way share a key, or keys that
+            // collide under every seed, and can not be divided any further
+            for ( long c : counts ) {
+                if ( c == rows ) {
+                    stream( f, expected, which, res );
+                    return;
+                }
+            }
+            
+            List<List<Integer>> groups = group( expected, which, seed + 1, count );
+            
+            for ( int p = 0; p < count; p++ ) {
+                join( files[p], counts[p], seed + 1, expected, groups.get( p ), res );
+                files[p].delete();
+            }
+        }
+        finally {
+            closePartitions( writers );
+            deletePartitions( files );
+        }
+    }
+    
+    /**
+     * Matches the actual rows of a partition as they are read against an index
+     * of its expected rows, for partitions too large to index.  Expected rows
+     * with the same key still match actual rows in the order they were produced
+     * @param f The partition file
+     * @param expected The expected rows
+     * @param which The indexes of the expected rows in this partition
+     * @param res Receives the matches and surplus rows
+     * @throws IOException 
+     */
+    protected void stream( File f, DataTable expected, List<Integer> which, ComparisonResult res ) throws IOException {
+        
+        Map<List<String>, ArrayDeque<Integer>> wanted = new HashMap<>();
+        for ( int i : which ) {
+            wanted.computeIfAbsent( keyOf( expected, i ), k -> new ArrayDeque<>() ).add( i );
+        }
+        
+        readRows( f, row -> {
+            ArrayDeque<Integer> candidates = wanted.get( keyOf( row ) );
+            if ( candidates != null && !candidates.isEmpty() ) {
+                res.setMatch( candidates.poll(), row );
+            }
+            else {
+                res.addSurplus( row );
+            }
+        } );
+    }
+    
+    /**
+     * Groups expected rows by the partition their key is spilled to
+     * @param expected The expected rows
+     * @param which The indexes of the expected rows to group, null for all
+     * @param seed The seed of the partitioning
+     * @param count The number of partitions
+     * @return The indexes of the expected rows in each partition
+     */
+    protected List<List<Integer>> group( DataTable expected, List<Integer> which, int seed, int count ) {
+        
+        List<List<Integer>> groups = new ArrayList<>( count );
+        for ( int p = 0; p < count; p++ ) {
+            groups.add( new ArrayList<>() );
+        }
+        
+        int rows = ( which == null ) ? expected.getRowCount() : which.size();
+        
+        for ( int n = 0; n < rows; n++ ) {
+            int i = ( which == null ) ? n : which.get( n );
+            groups.get( partitionOf( keyOf( expected, i ), seed, count ) ).add( i );
+        }
+        
+        return groups;
+    }
+    
+    /**
+     * Returns the number of partitions to split a partition of the given size
+     * into, enough that each should fit within the spill threshold
+     * @param rows The number of rows in the partition
+     * @return
+     */
+    protected int partitionsFor( long rows ) {
+        
+        long needed = ( rows / Math.max( m_spillThreshold, 1 ) + 1 ) * 2;
+        
+        return (int)Math.min( needed, MAX_PARTITIONS );
+    }
+    
+    /**
+     * Returns the partition a key is spilled to.  Each seed mixes the hash
+     * differently so keys that shared a partition are spread by the next
+     * @param key The KEY cells
+     * @param seed Which hash to use
+     * @param count The number of partitions
+     * @return
+     */
+    protected static int partitionOf( List<String> key, int seed, int count ) {
+        
+        long h = key.hashCode() + seed * 0x9E3779B97F4A7C15L;
+        h = ( h ^ ( h >>> 33 ) ) * 0xFF51AFD7ED558CCDL;
+        h = ( h ^ ( h >>> 33 ) ) * 0xC4CEB9FE1A85EC53L;
+        h =   h ^ ( h >>> 33 );
+        
+        return (int)( ( h >>> 1 ) % count );
+    }
+    
+    /**
+     * Creates a temporary file and writer for every partition
+     * @param files Receives the files
+     * @param writers Receives the writers
+     * @throws IOException 
+     */
+    protected void createPartitions( File[] files, BinaryWriter[] writers ) throws IOException {
+        
+        for ( int p = 0; p < files.length; p++ ) {
+            files[p]   = File.createTempFile( "flint_compare_", ".part", m_spillDirectory );
+            writers[p] = openPartition( files[p] );
+        }
+    }
+    
+    /**
+     * Closes partition writers, quietly as this is used whilst failing
+     * @param writers The writers, may be null or hold nulls
+     */
+    protected static void closePartitions( BinaryWriter[] writers ) {
+        
+        if ( writers == null ) {
+            return;
+        }
+        
+        for ( int p = 0; p < writers.length; p++ ) {
+            if ( writers[p] != null ) {
+                try {
+                    writers[p].close();
+                }
+                catch ( IOException ex ) {
+                }
+                writers[p] = null;
+            }
+        }
+    }
+    
+    /**
+     * Deletes partition files
+     * @param files The files, may be null or hold nulls
+     */
+    protected static void deletePartitions( File[] files ) {
+        
+        if ( files == null ) {
+            return;
+        }
+        
+        for ( File f : files ) {
+            if ( f != null ) {
+                f.delete();
+            }
+        }
+    }
+    
+    protected static BinaryWriter openPartition( File f ) throws IOException {
+        
+        BinaryWriter w = new BinaryWriter();
+        
+        try {
+            w.reset( new FileOutputStream( f ), PARTITION_SETTINGS );
+        }
+        catch ( IOException ex ) {
+            throw ex;
+        }
+        catch ( Exception ex ) {
+            throw new IOException( "Unable to open partition " + f.getPath(), ex );
+        }
+        
+        return w;
+    }
+    
+    /**
+     * Reads a partition file back into an index
+     */
+    protected Map<List<String>, ArrayDeque<String[]>> readPartition( File f ) throws IOException {
+        
+        Map<List<String>, ArrayDeque<String[]>> index = new LinkedHashMap<>();
+        
+        readRows( f, row -> index.computeIfAbsent( keyOf( row ), k -> new ArrayDeque<>() ).add( row ) );
+        
+        return index;
+    }
+    
+    /**
+     * Passes each row of a partition file to a handler
+     * @param f The partition file
+     * @param handler Receives the rows
+     * @throws IOException 
+     */
+    protected static void readRows( File f, RowHandler handler ) throws IOException {
+        
+        try ( InputStream in = new BufferedInputStream( new FileInputStream( f ) ) ) {
+            
+            BinaryReader r = new BinaryReader();
+            r.reset( in, PARTITION_SETTINGS );
+            
+            String[] row;
+            while ( ( row = r.readRecord() ) != null ) {
+                handler.handle( row );
+            }
+        }
+        catch ( IOException ex ) {
+            throw ex;
+        }
+        catch ( Exception ex ) {
+            throw new IOException( "Unable to read partition " + f.getPath(), ex );
+        }
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    public long getSpillThreshold() {
+        return m_spillThreshold;
+    }
+    
+    /**
+     * Sets the most actual rows indexed in memory before spilling to disk
+     * @param rows The number of rows
+     */
+    public void setSpillThreshold( long rows ) {
+        m_spillThreshold = rows;
+    }
+    
+    public int getPartitions() {
+        return m_partitions;
+    }
+    
+    public void setPartitions( int partitions ) {
+        m_partitions = Math.max( partitions, 1 );
+    }
+    
+    public File getSpillDirectory() {
+        return m_spillDirectory;
+    }
+    
+    public void setSpillDirectory( File directory ) {
+        m_spillDirectory = directory;
+    }
+}
@@ -0,0 +1,19 @@
+package flint.data.compare;
+
+// Core Java classes
+import java.io.IOException;
+
+// Application classes
+import flint.data.DataTable;
+
+/**
+ * Matches the expected rows of a fixture against the rows an engine produced,
+ * the first actual row being the column names.  Expected cells are read from
+ * the table where they are held rather than copied out into rows
+ * @author Philip Bowditch
+ */
+public interface IRowComparator {
+    
+    ComparisonResult compare( DataTable expected, Iterable<String[]> actual ) throws IOException;
+    
+}
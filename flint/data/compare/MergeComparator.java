@@ -0,0 +1,169 @@
+package flint.data.compare;
+
+// Core Java classes
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.List;
+
+// Application classes
+import flint.data.DataColumn;
+import flint.data.DataTable;
+
+/**
+ * Matches expected rows against actual rows that are both sorted by their KEY
+ * columns, stepping through the two side by side so no index is built and the
+ * actual rows are never held in memory.  Keys are ordered cell by cell,
+ * numbers before anything else and in numeric order, the rest as text.  Rows
+ * found out of order are reported as an error rather than compared
+ * @author Philip Bowditch
+ */
+public class MergeComparator extends AbstractRowComparator {
+    
+    /**
+     * Constructor for the MergeComparator class
+     * @param columns The expected columns
+     */
+    public MergeComparator( DataColumn[] columns ) {
+        super( columns );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    public ComparisonResult compare( DataTable expected, Iterable<String[]> actual ) throws IOException {
+        
+        ComparisonResult res = new ComparisonResult( m_columns, expected, m_maxSurplus );
+        
+        int count = expected.getRowCount();
+        
+        List<String> last = null;
+        for ( int i = 0; i < count; i++ ) {
+            
+            List<String> key = keyOf( expected, i );
+            if ( last != null && compareKeys( last, key ) > 0 ) {
+                throw new IOException( "Expected row " + ( i + 1 ) + " is not sorted by the key columns, found " + key + " after " + last );
+            }
+            last = key;
+        }
+        
+        Iterator<String[]> it = actual.iterator();
+        if ( !it.hasNext() ) {
+            return res;
+        }
+        
+        int[] mapping = resolve( it.next() );
+        
+        List<String> previous = null;
+        long         rows     = 0;
+        int          i        = 0;
+        
+        while ( it.hasNext() ) {
+            
+            String[]     row = project( it.next(), mapping );
+            List<String> key = keyOf( row );
+            rows++;
+            
+            if ( previous != null && compareKeys( previous, key ) > 0 ) {
+                throw new IOException( "Output row " + rows + " is not sorted by the key columns, found " + key + " after " + previous );
+            }
+            previous = key;
+            
+            // Expected rows before this one were not produced
+            int cmp = -1;
+            while ( i < count && ( cmp = compareKeys( keyOf( expected, i ), key ) ) < 0 ) {
+                i++;
+            }
+            
+            if ( i < count && cmp == 0 ) {
+                res.setMatch( i++, row );
+            }
+            else {
+                res.addSurplus( row );
+            }
+        }
+        
+        res.setActualRows( rows );
+        
+        return res;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Orders two keys cell by cell
+     * @param a The first key
+     * @param b The second key
+     * @return Negative, zero or positive as a is before, equal to or after b
+     */
+    public static int compareKeys( List<String> a, List<String> b ) {
+        
+        for ( int i = 0; i < a.size(); i++ ) {
+            int cmp = compareCells( a.get( i ), b.get( i ) );
+            if ( cmp != 0 ) {
+                return cmp;
+            }
+        }
+        
+        return 0;
+    }
+    
+    /**
+     * Orders two cells so output sorted by a numeric column is in order.
+     * Numbers come before anything else and are in numeric order, equal
+     * numbers written differently e.g. 1 and 1.0 and everything else in text
+     * order, which keeps the order total for columns mixing the two
+     * @param a The first cell
+     * @param b The second cell
+     * @return
+     */
+    public static int compareCells( String a, String b ) {
+        
+        if ( a.equals( b ) ) {
+            return 0;
+        }
+        
+        BigDecimal x = toNumber( a );
+        BigDecimal y = toNumber( b );
+        
+        if ( x != null && y == null ) {
+            return -1;
+        }
+        if ( x == null && y != null ) {
+            return 1;
+        }
+        
+        if ( x != null ) {
+            int cmp = x.compareTo( y );
+            if ( cmp != 0 ) {
+                return cmp;
+            }
+        }
+        
+        return a.compareTo( b );
+    }
+    
+    /**
+     * Returns a cell as a number, null if it is not one
+     */
+    protected static BigDecimal toNumber( String s ) {
+        
+        if ( s.isEmpty() ) {
+            return null;
+        }
+        
+        char c = s.charAt( 0 );
+        if ( !( Character.isDigit( c ) || c == '-' || c == '+' || c == '.' ) ) {
+            return null;
+        }
+        
+        try {
+            return new BigDecimal( s.trim() );
+        }
+        catch ( NumberFormatException ex ) {
+            return null;
+        }
+    }
+}
@@ -1,10 +1,25 @@
 package flint.engine;
 
 // Core Java Classes
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // Application classes
+import flint.engine.metrics.IMetricsSink;
 import flint.environment.Environment;
 import flint.framework.type.TypeDefinition;
 
@@ -18,6 +33,17 @@ import flint.framework.type.TypeDefinition;
  */
 public abstract class AbstractEngine {
     
+    /**
+     * Runs asynchronous invocations, shared by every engine.  Threads are
+     * created as needed so overlapping invocations never queue behind each other
+     */
+    protected static final ExecutorService ASYNC_EXECUTOR = Executors.newCachedThreadPool( daemonThreads( "flint-invoke-" ) );
+    
+    /**
+     * Times out asynchronous invocations
+     */
+    protected static final ScheduledExecutorService ASYNC_TIMER = Executors.newSingleThreadScheduledExecutor( daemonThreads( "flint-timeout-" ) );
+    
     /**
      * Holds a reference to the environment so we can reference variables/options etc
      */
@@ -29,6 +55,16 @@ public abstract class AbstractEngine {
      */
     protected Map<String, TypeDefinition> m_definition;
     
+    /**
+     * Receives the metrics of every invocation, null if they are not published
+     */
+    protected IMetricsSink m_metricsSink;
+    
+    /**
+     * Holds the outputs of cacheable fixtures, null if nothing is cached
+     */
+    protected ResultCache m_resultCache;
+    
     
     //--------------------------------------------------------------------------
     
@@ -36,8 +72,10 @@ public abstract class AbstractEngine {
      * Constructor for the AbstractEngine class
      */
     public AbstractEngine() {
-        m_env        = null;
-        m_definition = new LinkedHashMap<>();
+        m_env         = null;
+        m_definition  = new LinkedHashMap<>();
+        m_metricsSink = null;
+        m_resultCache = null;
     }
     
     
@@ -48,6 +86,135 @@ public abstract class AbstractEngine {
     public abstract InvokationOutput invoke(  String fixtureType
                                             , InvokationInput input ) throws Exception;
     
+    /**
+     * Invokes a fixture through the result cache if there is one.  A cacheable
+     * call that was seen before returns a copy of the earlier output, marked
+     * with the CACHE_HIT metric, without invoking anything.  A mutating fixture
+     * invalidates the outputs cached for its instance, see ResultCache
+     * @param fixtureType The fixture to run
+     * @param input The data and parameters for the fixture
+     * @return
+     * @throws Exception 
+     */
+    public InvokationOutput invokeCached(  String fixtureType
+                                         , InvokationInput input ) throws Exception {
+        
+        ResultCache cache = m_resultCache;
+        
+        if ( cache == null ) {
+            return invoke( fixtureType, input );
+        }
+        
+        String label = ResultCache.labelOf( input );
+        
+        if ( cache.isMutating( fixtureType ) ) {
+            // Before so nothing stale is served whilst it runs, and after so
+            // nothing read whilst it ran is kept
+            cache.invalidate( label );
+            try {
+                return invoke( fixtureType, input );
+            }
+            finally {
+                cache.invalidate( label );
+            }
+        }
+        
+        if ( !cache.isCacheable( input ) ) {
+            return invoke( fixtureType, input );
+        }
+        
+        // Keyed before invoking as engines may add to the input
+        String           key        = ResultCache.keyOf( fixtureType, input );
+        long             generation = cache.getGeneration( label );
+        InvokationOutput res        = cache.get( key );
+        
+        if ( res != null ) {
+            res.addMetric( "CACHE_HIT", 1 );
+            publishMetrics( fixtureType, res );
+            return res;
+        }
+        
+        res = invoke( fixtureType, input );
+        
+        cache.put( key, label, generation, res );
+        
+        return res;
+    }
+    
+    /**
+     * Runs several fixtures in order, returning an output for each.  By default
+     * each is simply invoked in turn, engines that can run many fixtures for the
+     * cost of one should override this
+     * @param batch The fixtures to run
+     * @return The outputs in the same order as the batch
+     * @throws Exception 
+     */
+    public List<InvokationOutput> invokeBatch( List<Invocation> batch ) throws Exception {
+        
+        List<InvokationOutput> outputs = new ArrayList<>( batch.size() );
+        
+        for ( Invocation i : batch ) {
+            outputs.add( invokeCached( i.getFixtureType(), i.getInput() ) );
+        }
+        
+        return outputs;
+    }
+    
+    /**
+     * Invokes a fixture on another thread so the caller can overlap several
+     * invocations and wait for them together
+     * @param fixtureType The fixture to run
+     * @param input The data and parameters for the fixture
+     * @return Completes with the output of the invocation
+     */
+    public CompletableFuture<InvokationOutput> invokeAsync(  String fixtureType
+                                                           , InvokationInput input ) {
+        return invokeAsync( fixtureType, input, 0, TimeUnit.MILLISECONDS );
+    }
+    
+    /**
+     * Invokes a fixture on another thread, giving up after a timeout.  Cancelling
+     * the returned future or the timeout expiring interrupts the invoking thread,
+     * engines are expected to stop whatever they were running when interrupted
+     * e.g. the ShellEngine kills the controller
+     * @param fixtureType The fixture to run
+     * @param input The data and parameters for the fixture
+     * @param timeout How long to wait, 0 or less waits forever
+     * @param unit The unit of the timeout
+     * @return Completes with the output of the invocation, or a TimeoutException
+     */
+    public CompletableFuture<InvokationOutput> invokeAsync(  String fixtureType
+                                                           , InvokationInput input
+                                                           , long timeout
+                                                           , TimeUnit unit ) {
+        
+        CompletableFuture<InvokationOutput> result = new CompletableFuture<>();
+        
+        Future<?> task = ASYNC_EXECUTOR.submit( () -> {
+            try {
+                result.complete( invokeCached( fixtureType, input ) );
+            }
+            catch ( Throwable ex ) {
+                result.completeExceptionally( ex );
+            }
+        } );
+        
+        result.whenComplete( ( o, ex ) -> {
+            if ( ex instanceof CancellationException || ex instanceof TimeoutException ) {
+                task.cancel( true );
+            }
+        } );
+        
+        if ( timeout > 0 ) {
+            ScheduledFuture<?> timer = ASYNC_TIMER.schedule( () -> result.completeExceptionally(
+                    new TimeoutException( fixtureType + " did not finish within " + unit.toMillis( timeout ) + " ms" ) ), timeout, unit );
+            
+            result.whenComplete( ( o, ex ) -> timer.cancel( false ) );
+        }
+        
+        return result;
+    }
+    
     public abstract void destroy() throws Exception;
     
     
@@ -61,6 +228,80 @@ public abstract class AbstractEngine {
         m_env = env;
     }
     
+    public IMetricsSink getMetricsSink() {
+        return m_metricsSink;
+    }
+    
+    public void setMetricsSink( IMetricsSink sink ) {
+        m_metricsSink = sink;
+    }
+    
+    public ResultCache getResultCache() {
+        return m_resultCache;
+    }
+    
+    public void setResultCache( ResultCache cache ) {
+        m_resultCache = cache;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Hands the timings, metrics and return code of an invocation to the
+     * metrics sink if there is one.  A failing sink is reported but does not
+     * fail the invocation
+     * @param fixtureType The fixture that was run
+     * @param res The output of the invocation
+     */
+    protected void publishMetrics( String fixtureType, InvokationOutput res ) {
+        
+        IMetricsSink sink = m_metricsSink;
+        if ( sink == null ) {
+            return;
+        }
+        
+        Map<String, String> metrics = new LinkedHashMap<>();
+        
+        List<String[]> returnCode = res.getReturnCode();
+        if ( returnCode != null && !returnCode.isEmpty() && returnCode.get( 0 ).length > 0 ) {
+            metrics.put( "RETURN_CODE", returnCode.get( 0 )[0] );
+        }
+        
+        for ( String[] t : res.getTimings() ) {
+            metrics.put( t[0], t[1] );
+        }
+        for ( String[] m : res.getMetrics() ) {
+            metrics.put( m[0], m[1] );
+        }
+        
+        try {
+            sink.record( getClass().getSimpleName(), fixtureType, metrics );
+        }
+        catch ( IOException ex ) {
+            System.err.println( "Unable to record metrics: " + ex.getMessage() );
+        }
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Creates daemon threads so outstanding invocations never keep the JVM alive
+     * @param prefix Names the threads, followed by a count
+     * @return
+     */
+    protected static ThreadFactory daemonThreads( String prefix ) {
+        
+        AtomicInteger count = new AtomicInteger();
+        
+        return r -> {
+            Thread t = new Thread( r, prefix + count.incrementAndGet() );
+            t.setDaemon( true );
+            return t;
+        };
+    }
+    
     
     //--------------------------------------------------------------------------
     
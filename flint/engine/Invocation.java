@@ -0,0 +1,44 @@
+package flint.engine;
+
+
+/**
+ * A single request to an engine, the fixture to run and its input, used to hand
+ * an engine several requests at once
+ * @author Philip Bowditch
+ */
+public class Invocation {
+    
+    /**
+     * The fixture to run e.g. INSERT
+     */
+    protected String m_fixtureType;
+    
+    /**
+     * The data and parameters for the fixture
+     */
+    protected InvokationInput m_input;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the Invocation class
+     * @param fixtureType The fixture to run e.g. INSERT
+     * @param input The data and parameters for the fixture
+     */
+    public Invocation( String fixtureType, InvokationInput input ) {
+        m_fixtureType = fixtureType;
+        m_input       = input;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    public String getFixtureType() {
+        return m_fixtureType;
+    }
+    
+    public InvokationInput getInput() {
+        return m_input;
+    }
+}
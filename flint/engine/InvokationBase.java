@@ -1,25 +1,38 @@
 package flint.engine;
 
 // Core Java classes
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+
+// Application classes
+import flint.engine.io.IRowSource;
+import flint.engine.io.ListRowSource;
 
 /**
  * Used to pass key value pairs to and from processes / tasks. Where the values themselves are often lists such as lines of stdout
  * @author Philip Bowditch
  */
-public abstract class InvokationBase {
+public abstract class InvokationBase implements AutoCloseable {
     
     /**
      * Holds the data, key value pairs where the value is a possible ordered list of items e.g. stdin
      */
     private Map<String, List<String[]>> m_source;
     
+    /**
+     * Holds values that are read on demand e.g. a large output file, these are
+     * only copied into m_source if asked for as a list
+     */
+    private Map<String, IRowSource> m_rowSources;
+    
     
     //--------------------------------------------------------------------------
     
@@ -35,7 +48,8 @@ public abstract class InvokationBase {
      * @param data The data being encapsulated
      */
     public InvokationBase( Map<String, List<String[]>> data ){
-        m_source = data;
+        m_source     = data;
+        m_rowSources = new LinkedHashMap<>();
     }
     
     
@@ -47,7 +61,20 @@ public abstract class InvokationBase {
      * @return
      */
     public List<String[]> get( String key ) {
-        return m_source.get(key);
+        
+        List<String[]> value = m_source.get(key);
+        
+        // Values read on demand are materialised the first time they are asked
+        // for as a list, code that can stream should use getSource instead
+        if ( value == null ) {
+            IRowSource src = m_rowSources.get(key);
+            if ( src != null ) {
+                value = src.toList();
+                m_source.put(key, value);
+            }
+        }
+        
+        return value;
     }
     
     /**
@@ -56,15 +83,102 @@ public abstract class InvokationBase {
      * @param data The list of key value pairs
      */
     public void put( String key, List<String[]> data ) {
+        closeSource( m_rowSources.remove(key) );
         m_source.put(key, data);
     }
     
+    /**
+     * Returns the value associated with the given key without reading it all
+     * into memory, values held as lists are wrapped
+     * @param key The key to find
+     * @return
+     */
+    public IRowSource getSource( String key ) {
+        
+        IRowSource src = m_rowSources.get(key);
+        if ( src != null ) {
+            return src;
+        }
+        
+        List<String[]> value = m_source.get(key);
+        if ( value == null ) {
+            return null;
+        }
+        
+        return new ListRowSource( value );
+    }
+    
+    /**
+     * Adds/replaces the value associated with the given key with one that is
+     * read on demand
+     * @param key The key to associate with
+     * @param src The rows
+     */
+    public void putSource( String key, IRowSource src ) {
+        m_source.remove(key);
+        closeSource( m_rowSources.put(key, src) );
+    }
+    
+    /**
+     * Returns true if the value associated with the given key is read on
+     * demand and has not been read into a list
+     * @param key The key to find
+     * @return
+     */
+    public boolean isStreamed( String key ) {
+        return m_rowSources.containsKey(key) && !m_source.containsKey(key);
+    }
+    
+    /**
+     * Returns the keys of every value held, whether as a list or read on demand
+     * @return
+     */
+    public Set<String> keySet() {
+        
+        Set<String> keys = new LinkedHashSet<>( m_source.keySet() );
+        keys.addAll( m_rowSources.keySet() );
+        
+        return keys;
+    }
+    
+    /**
+     * Closes all values read on demand, releasing any files they hold
+     */
+    @Override
+    public void close() {
+        
+        for ( IRowSource src : m_rowSources.values() ) {
+            closeSource( src );
+        }
+        
+        m_rowSources.clear();
+    }
+    
+    /**
+     * Closes a replaced source, failures only leave a temporary file behind
+     * @param src The source to close, may be null
+     */
+    protected static void closeSource( IRowSource src ) {
+        
+        if ( src == null ) {
+            return;
+        }
+        
+        try {
+            src.close();
+        }
+        catch ( IOException ex ) {
+        }
+    }
+    
     /**
      * Bulk put method
      * @param mp The map whose whole contents will be added
      */
     public void putAll( Map<String, List<String[]>> mp ) {
-        m_source.putAll( mp );
+        for ( Map.Entry<String, List<String[]>> e : mp.entrySet() ) {
+            put( e.getKey(), e.getValue() );
+        }
     }
     
     /**
@@ -73,12 +187,12 @@ public abstract class InvokationBase {
      * @param arr The array to add
      */
     public void add( String key, String[] arr ) {
-        List<String[]> value = (List<String[]>)m_source.get( key );
+        List<String[]> value = get( key );
         value.add(arr);
     }
     
     public void addAll( String key, List<String[]> arr ) {
-        List<String[]> value = (List<String[]>)m_source.get( key );
+        List<String[]> value = get( key );
         value.addAll(arr);
     }
     
@@ -4,12 +4,23 @@ package flint.engine;
 import java.util.ArrayList;
 import java.util.List;
 
+// Application classes
+import flint.engine.io.IRowSource;
+import flint.framework.type.ExpandedProperties;
+
 /**
  * Holds all the input data produced by the application to pass in a neutral manner to the engine.
  * @author Philip Bowditch
  */
 public class InvokationInput extends InvokationBase {
     
+    /**
+     * The expanded properties of a type definition shared as the definitions,
+     * copied before they are first added to.  Null once copied
+     */
+    protected List<String[]> m_sharedDefinitions;
+    
+    
     //--------------------------------------------------------------------------
     
     /**
@@ -27,6 +38,8 @@ public class InvokationInput extends InvokationBase {
         super.put( "definitions" , new ArrayList<>() ); // Type definitions
         super.put( "overrides" ,   new ArrayList<>() ); // Type overrides
         super.put( "arguments" ,   new ArrayList<>() ); // Fixture arguments
+        
+        m_sharedDefinitions = null;
     }
     
     //--------------------------------------------------------------------------
@@ -39,6 +52,33 @@ public class InvokationInput extends InvokationBase {
         put( "data_table" , tbl );
     }
     
+    /**
+     * Returns the data to pass to the engine without reading it all into
+     * memory, rows held as a list are wrapped
+     * @return
+     */
+    public IRowSource getDataSource() {
+        return getSource( "data_table" );
+    }
+    
+    /**
+     * Sets the data to pass to the engine as rows read on demand, such as
+     * those of a large table or a generator, the engine pulls them as it
+     * writes its input.  The first row is the column names
+     * @param tbl The rows
+     */
+    public void setDataSource( IRowSource tbl ) {
+        putSource( "data_table" , tbl );
+    }
+    
+    /**
+     * Returns true if the data is read on demand rather than held as a list
+     * @return
+     */
+    public boolean isDataStreamed() {
+        return isStreamed( "data_table" );
+    }
+    
     public List<String[]> getDataStatuses() {
         return get( "data_status" );
     }
@@ -85,6 +125,18 @@ public class InvokationInput extends InvokationBase {
     
     public void setDefinitions( List<String[]> key_values ) {
         put( "definitions" , key_values );
+        m_sharedDefinitions = null;
+    }
+    
+    /**
+     * Shares a definitions expanded properties rather than copying them.  The
+     * list returned by getDefinitions is then read only, add and addAll copy
+     * it before the first row is added
+     * @param snapshot The expanded properties of the type definition
+     */
+    public void setDefinitions( ExpandedProperties snapshot ) {
+        m_sharedDefinitions = snapshot.getRows();
+        put( "definitions" , m_sharedDefinitions );
     }
     
     public List<String[]> getOverrides() {
@@ -105,6 +157,32 @@ public class InvokationInput extends InvokationBase {
 
     //--------------------------------------------------------------------------
     
+    @Override
+    public void add( String key, String[] arr ) {
+        unshare( key );
+        super.add( key, arr );
+    }
+    
+    @Override
+    public void addAll( String key, List<String[]> arr ) {
+        unshare( key );
+        super.addAll( key, arr );
+    }
+    
+    /**
+     * Replaces shared definitions with a copy that can be written to
+     * @param key The key about to be written to
+     */
+    protected void unshare( String key ) {
+        
+        if ( m_sharedDefinitions != null && key.equals( "definitions" ) ) {
+            if ( get( key ) == m_sharedDefinitions ) {
+                put( key, new ArrayList<>( m_sharedDefinitions ) );
+            }
+            m_sharedDefinitions = null;
+        }
+    }
+    
     public void addControlParameter( String name, String value ) {
         super.add( "control", new String[]{ name, value } );
     }
@@ -4,6 +4,9 @@ package flint.engine;
 import java.util.ArrayList;
 import java.util.List;
 
+// Application classes
+import flint.engine.io.IRowSource;
+
 /**
  *
  * @author Philip Bowditch
@@ -21,6 +24,9 @@ public class InvokationOutput extends InvokationBase {
         super.put( "data_status" ,  new ArrayList<>() ); // Indicates if cells were processed / ignored
         super.put( "return_code" ,  new ArrayList<>() ); // return code of process
         super.put( "err_table" ,    new ArrayList<>() ); // Any errors
+        super.put( "timings" ,      new ArrayList<>() ); // Process start, end and elapsed times
+        super.put( "streams" ,      new ArrayList<>() ); // How stdout / stderr were drained
+        super.put( "metrics" ,      new ArrayList<>() ); // Rows, bytes and resources used
     }
     
     //--------------------------------------------------------------------------
@@ -37,6 +43,19 @@ public class InvokationOutput extends InvokationBase {
         put( "data_table" , tbl );
     }
     
+    /**
+     * Returns the data table produced by the run without reading it all into
+     * memory, use this when the result may be large
+     * @return
+     */
+    public IRowSource getDataSource() {
+        return getSource( "data_table" );
+    }
+    
+    public void setDataSource( IRowSource tbl ) {
+        putSource( "data_table" , tbl );
+    }
+    
     public List<String[]> getErrorData() {
         return get( "err_table" );
     }
@@ -45,6 +64,14 @@ public class InvokationOutput extends InvokationBase {
         put( "err_table" , tbl );
     }
     
+    public IRowSource getErrorDataSource() {
+        return getSource( "err_table" );
+    }
+    
+    public void setErrorDataSource( IRowSource tbl ) {
+        putSource( "err_table" , tbl );
+    }
+    
     /**
      * Holds a status id and x/y position for that data cell
      * 0 = success, 1 = failed, 2 = exception, 3 = ignored
@@ -75,4 +102,52 @@ public class InvokationOutput extends InvokationBase {
     public void setReturnCode( List<String[]> retCode ) {
         put( "return_code" , retCode );
     }
+    
+    /**
+     * Returns name value pairs of timings for the run e.g. STARTED, ENDED, ELAPSED
+     * and the elapsed time of each phase such as STAGING_ELAPSED, all in
+     * milliseconds
+     * @return
+     */
+    public List<String[]> getTimings() {
+        return get( "timings" );
+    }
+    
+    public void setTimings( List<String[]> timings ) {
+        put( "timings" , timings );
+    }
+    
+    public void addTiming( String name, long millis ) {
+        add( "timings", new String[]{ name, String.valueOf( millis ) } );
+    }
+    
+    /**
+     * Holds a row per process stream drained, consisting of the stream name,
+     * bytes read, whether it was truncated, any spill file and any drain error
+     * @return
+     */
+    public List<String[]> getStreamStatistics() {
+        return get( "streams" );
+    }
+    
+    public void setStreamStatistics( List<String[]> statistics ) {
+        put( "streams" , statistics );
+    }
+    
+    /**
+     * Returns name value pairs of what the run used e.g. INPUT_ROWS,
+     * OUTPUT_BYTES or CHILD_CPU_MS, any that could not be measured are absent
+     * @return
+     */
+    public List<String[]> getMetrics() {
+        return get( "metrics" );
+    }
+    
+    public void setMetrics( List<String[]> metrics ) {
+        put( "metrics" , metrics );
+    }
+    
+    public void addMetric( String name, long value ) {
+        add( "metrics", new String[]{ name, String.valueOf( value ) } );
+    }
 }
\ No newline at end of file
@@ -0,0 +1,301 @@
+package flint.engine;
+
+// Core Java classes
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+
+// 3rd Party classes
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+
+
+/**
+ * Reads or writes one end of a named pipe (FIFO) on its own thread whilst the
+ * controller runs, so staging the data overlaps with the controller rather
+ * than happening before or after it.
+ *
+ * Opening a FIFO blocks until the other end is opened too.  A controller that
+ * never opens its end would leave the thread blocked forever, so once the
+ * controller has exited release() opens the other end itself, the transfer
+ * then sees end of file (reading) or a broken pipe (writing).  The transfer
+ * records that its end is open under the same lock release() holds whilst
+ * opening the other end, so release() never opens it once the transfer may
+ * have finished and closed its end, which would block release() forever.  If
+ * the controller removed or replaced the FIFO without opening it nothing can
+ * reach the blocked thread, it is abandoned and the transfer fails instead.
+ * @author Philip Bowditch
+ */
+public class PipeTransfer implements Runnable {
+
+    /**
+     * Consumes the data read from a pipe
+     */
+    public interface Reader {
+        void read( InputStream in ) throws Exception;
+    }
+
+    /**
+     * Produces the data written to a pipe
+     */
+    public interface Writer {
+        void write( OutputStream out ) throws Exception;
+    }
+
+    /**
+     * The FIFO
+     */
+    protected File m_pipe;
+
+    /**
+     * Set when this end is read, otherwise it is written
+     */
+    protected Reader m_reader;
+
+    protected Writer m_writer;
+
+    /**
+     * Identifies the FIFO, to tell whether the controller replaced it
+     */
+    protected Object m_key;
+
+    /**
+     * Set once this end of the pipe is open
+     */
+    protected volatile boolean m_opened;
+
+    /**
+     * Set if the thread was left blocked on a FIFO that no longer exists
+     */
+    protected boolean m_abandoned;
+
+    /**
+     * Holds any error raised by the transfer
+     */
+    protected Exception m_error;
+
+    /**
+     * Bytes passed through the pipe
+     */
+    protected volatile long m_bytes;
+
+    /**
+     * The thread doing the transfer
+     */
+    protected Thread m_thread;
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructor for the PipeTransfer class
+     * @param pipe The FIFO
+     * @param reader Consumes the pipe, null if writing
+     * @param writer Fills the pipe, null if reading
+     */
+    protected PipeTransfer( File pipe, Reader reader, Writer writer ) {
+        m_pipe      = pipe;
+        m_reader    = reader;
+        m_writer    = writer;
+        m_key       = null;
+        m_opened    = false;
+        m_abandoned = false;
+        m_error     = null;
+        m_bytes     = 0;
+        m_thread    = null;
+    }
+
+    /**
+     * Returns a transfer that reads the pipe
+     * @param pipe The FIFO
+     * @param reader Consumes the data
+     * @return
+     */
+    public static PipeTransfer reading( File pipe, Reader reader ) {
+        return new PipeTransfer( pipe, reader, null );
+    }
+
+    /**
+     * Returns a transfer that writes the pipe
+     * @param pipe The FIFO
+     * @param writer Produces the data
+     * @return
+     */
+    public static PipeTransfer writing( File pipe, Writer writer ) {
+        return new PipeTransfer( pipe, null, writer );
+    }
+
+    /**
+     * Creates a FIFO with mkfifo
+     * @param f The path of the FIFO, which must not exist
+     * @throws IOException If it could not be created
+     */
+    public static void createPipe( File f ) throws IOException {
+
+        Process p = new ProcessBuilder( "mkfifo", f.getPath() ).redirectErrorStream( true ).start();
+
+        String message = ShellEngine.convertStreamToStr( p.getInputStream() ).trim();
+
+        try {
+            if ( p.waitFor() != 0 ) {
+                throw new IOException( "Unable to create pipe " + f.getPath() + ": " + message );
+            }
+        }
+        catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted creating pipe " + f.getPath() );
+        }
+    }
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Starts the transfer on a new daemon thread
+     * @param name The name to give the thread
+     * @throws IOException If the FIFO does not exist
+     */
+    public void start( String name ) throws IOException {
+        m_key    = Files.readAttributes( m_pipe.toPath(), BasicFileAttributes.class ).fileKey();
+        m_thread = new Thread( this, name );
+        m_thread.setDaemon( true );
+        m_thread.start();
+    }
+
+    /**
+     * Unblocks the transfer if the other end of the pipe was never opened, call
+     * once nothing else will open it e.g. the controller has exited
+     * @throws IOException
+     */
+    public synchronized void release() throws IOException {
+
+        if ( m_opened || m_thread == null || !m_thread.isAlive() ) {
+            return;
+        }
+
+        if ( !isSamePipe() ) {
+            m_abandoned = true;
+            m_error     = new IOException( "Pipe " + m_pipe.getPath() + " was removed or replaced before it was opened" );
+            return;
+        }
+
+        // Opening the other end pairs with the blocked open, or returns at once
+        // if the transfer's end is open but waiting to record it.  Closing it
+        // again leaves the transfer with nothing to read or nobody to write to
+        if ( m_reader != null ) {
+            new FileOutputStream( m_pipe ).close();
+        }
+        else {
+            new FileInputStream( m_pipe ).close();
+        }
+    }
+
+    /**
+     * Waits for the transfer to finish, unless it was abandoned
+     * @throws InterruptedException
+     */
+    public void join() throws InterruptedException {
+        if ( m_thread != null && !m_abandoned ) {
+            m_thread.join();
+        }
+    }
+
+    @Override
+    public void run() {
+
+        try {
+            if ( m_reader != null ) {
+                try ( CountingInputStream in = new CountingInputStream( new FileInputStream( m_pipe ) ) ) {
+                    opened();
+                    try {
+                        m_reader.read( in );
+                    }
+                    finally {
+                        m_bytes = in.getByteCount();
+                    }
+                }
+            }
+            else {
+                try ( CountingOutputStream out = new CountingOutputStream( new FileOutputStream( m_pipe ) ) ) {
+                    opened();
+                    try {
+                        m_writer.write( out );
+                    }
+                    finally {
+                        m_bytes = out.getByteCount();
+                    }
+                }
+            }
+        }
+        catch ( Exception ex ) {
+            m_error = ex;
+        }
+    }
+
+    /**
+     * Records that this end of the pipe is open, waiting for any release() in
+     * progress as that may be opening the other end
+     */
+    protected synchronized void opened() {
+        m_opened = true;
+    }
+
+    /**
+     * Is the FIFO at the path still the one the transfer is blocked opening
+     */
+    protected boolean isSamePipe() {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes( m_pipe.toPath(), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS );
+            return attrs.isOther() && m_key != null && m_key.equals( attrs.fileKey() );
+        }
+        catch ( NoSuchFileException ex ) {
+            return false;
+        }
+        catch ( IOException ex ) {
+            return true;
+        }
+    }
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the FIFO
+     * @return
+     */
+    public File getPipe() {
+        return m_pipe;
+    }
+
+    /**
+     * Returns true if this end of the pipe was opened by the transfer
+     * @return
+     */
+    public boolean isOpened() {
+        return m_opened;
+    }
+
+    /**
+     * Returns the number of bytes read from or written to the pipe, available
+     * once the transfer has finished
+     * @return
+     */
+    public long getBytes() {
+        return m_bytes;
+    }
+
+    /**
+     * Returns the error that ended the transfer, null if it completed
+     * @return
+     */
+    public Exception getError() {
+        return m_error;
+    }
+}
@@ -0,0 +1,260 @@
+package flint.engine;
+
+// Core Java classes
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the CPU time and memory used by a process and its descendants by
+ * sampling /proc whilst waiting for it to exit.
+ *
+ * CPU time includes descendants the process has already waited for, so it only
+ * misses what was used after the last sample.  Resident memory is the peak of
+ * the summed RSS of the process tree seen in any sample.  Where /proc is not
+ * available or the pid can not be found nothing is sampled.
+ * @author Philip Bowditch
+ */
+public class ProcessSampler {
+
+    /**
+     * Clock ticks per second used by /proc/[pid]/stat, USER_HZ is 100 on Linux
+     */
+    protected static final long TICKS_PER_SECOND = 100;
+
+    /**
+     * The process sampled, -1 if unknown
+     */
+    protected long m_pid;
+
+    /**
+     * Most CPU ticks seen in a sample
+     */
+    protected long m_cpuTicks;
+
+    /**
+     * Largest resident memory seen in a sample in kB
+     */
+    protected long m_peakRss;
+
+    /**
+     * Number of samples taken
+     */
+    protected int m_samples;
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructor for the ProcessSampler class
+     * @param pid The process to sample, -1 samples nothing
+     */
+    public ProcessSampler( long pid ) {
+        m_pid      = pid;
+        m_cpuTicks = 0;
+        m_peakRss  = 0;
+        m_samples  = 0;
+    }
+
+    /**
+     * Returns the pid of a process, -1 if it can not be found.  Looked up
+     * reflectively as Process.pid() only exists from Java 9
+     * @param p The process
+     * @return
+     */
+    public static long pidOf( Process p ) {
+
+        try {
+            return (Long)Process.class.getMethod( "pid" ).invoke( p );
+        }
+        catch ( NoSuchMethodException ex ) {
+        }
+        catch ( ReflectiveOperationException | RuntimeException ex ) {
+            return -1;
+        }
+
+        try {
+            Field f = p.getClass().getDeclaredField( "pid" );
+            f.setAccessible( true );
+            return f.getInt( p );
+        }
+        catch ( ReflectiveOperationException | RuntimeException ex ) {
+            return -1;
+        }
+    }
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Waits for the process to exit sampling it every interval
+     * @param p The process
+     * @param interval Milliseconds between samples
+     * @return The exit status
+     * @throws InterruptedException
+     */
+    public int waitFor( Process p, long interval ) throws InterruptedException {
+
+        if ( m_pid < 0 || !new File( "/proc/" + m_pid ).isDirectory() ) {
+            return p.waitFor();
+        }
+
+        sample();
+
+        while ( !p.waitFor( interval, TimeUnit.MILLISECONDS ) ) {
+            sample();
+        }
+
+        return p.exitValue();
+    }
+
+    /**
+     * Samples the process tree once
+     */
+    public void sample() {
+
+        long cpu = 0;
+        long rss = 0;
+
+        for ( long pid : listTree( m_pid ) ) {
+
+            File proc = new File( "/proc/" + pid );
+
+            try {
+                cpu += readCpuTicks( proc );
+                rss += readRss( proc );
+            }
+            catch ( IOException | RuntimeException ex ) {
+                // Exited between being listed and read
+            }
+        }
+
+        m_cpuTicks = Math.max( m_cpuTicks, cpu );
+        m_peakRss  = Math.max( m_peakRss,  rss );
+        m_samples += 1;
+    }
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Lists a process and all of its descendants found in /proc, parents
+     * before their children.  Empty if the process is not running
+     * @param root The process at the top of the tree
+     * @return
+     */
+    public static List<Long> listTree( long root ) {
+
+        List<Long>       tree    = new ArrayList<>();
+        ArrayDeque<Long> pending = new ArrayDeque<>();
+        HashSet<Long>    seen    = new HashSet<>();
+        pending.add( root );
+
+        Long pid;
+        while ( ( pid = pending.poll() ) != null ) {
+
+            if ( !seen.add( pid ) ) {
+                continue;
+            }
+
+            File[] tasks = new File( "/proc/" + pid + "/task" ).listFiles();
+            if ( tasks == null ) {
+                continue;
+            }
+
+            tree.add( pid );
+
+            for ( File task : tasks ) {
+                try {
+                    String children = new String( Files.readAllBytes( new File( task, "children" ).toPath() ), StandardCharsets.US_ASCII ).trim();
+                    if ( !children.isEmpty() ) {
+                        for ( String child : children.split( "\\s+" ) ) {
+                            pending.add( Long.valueOf( child ) );
+                        }
+                    }
+                }
+                catch ( IOException | RuntimeException ex ) {
+                }
+            }
+        }
+
+        return tree;
+    }
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Reads utime, stime, cutime and cstime of a process
+     */
+    protected static long readCpuTicks( File proc ) throws IOException {
+
+        String stat = new String( Files.readAllBytes( new File( proc, "stat" ).toPath() ), StandardCharsets.US_ASCII );
+
+        // The command name is in brackets and may hold spaces, fields 14 to 17
+        // follow the state which is the first field after it
+        String[] fields = stat.substring( stat.lastIndexOf( ')' ) + 2 ).split( " " );
+
+        return   Long.parseLong( fields[11] ) + Long.parseLong( fields[12] )
+               + Long.parseLong( fields[13] ) + Long.parseLong( fields[14] );
+    }
+
+    /**
+     * Reads the resident memory of a process in kB
+     */
+    protected static long readRss( File proc ) throws IOException {
+
+        List<String> status = Files.readAllLines( new File( proc, "status" ).toPath(), StandardCharsets.US_ASCII );
+
+        for ( String line : status ) {
+            if ( line.startsWith( "VmRSS:" ) ) {
+                return Long.parseLong( line.substring( 6 ).replace( "kB", "" ).trim() );
+            }
+        }
+
+        return 0;
+    }
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the process sampled, -1 if unknown
+     * @return
+     */
+    public long getPid() {
+        return m_pid;
+    }
+
+    /**
+     * Returns the CPU time of the process tree in milliseconds
+     * @return
+     */
+    public long getCpuMillis() {
+        return m_cpuTicks * 1000 / TICKS_PER_SECOND;
+    }
+
+    /**
+     * Returns the peak resident memory of the process tree in kB
+     * @return
+     */
+    public long getPeakRss() {
+        return m_peakRss;
+    }
+
+    /**
+     * Returns the number of samples taken, 0 if none could be
+     * @return
+     */
+    public int getSamples() {
+        return m_samples;
+    }
+}
@@ -0,0 +1,466 @@
+package flint.engine;
+
+// Core Java classes
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Application classes
+import flint.engine.io.IRowSource;
+
+
+/**
+ * Holds the outputs of read only fixtures so repeating the same call, e.g. the
+ * same query run by several shared setup pages, does not run it again.
+ *
+ * Outputs are keyed by a digest of the fixture type and everything in its
+ * input.  Only calls whose fixture arguments set CACHE to true are cached, and
+ * only if they succeeded.  Entries expire after a time to live and the least
+ * recently used are evicted once there are too many or they hold too many rows.
+ * A mutating fixture e.g. DROP removes every entry of the instance it ran
+ * against, identified by the INSTANCE_LABEL control parameter.
+ * @author Philip Bowditch
+ */
+public class ResultCache {
+    
+    /**
+     * Sections of an input whose row order matters, the rest hold name value
+     * pairs in no particular order
+     */
+    protected static final Set<String> ORDERED_SECTIONS = new HashSet<>( Arrays.asList( "data_table", "data_status" ) );
+    
+    /**
+     * Sections of an output describing the run that produced it rather than
+     * the output itself, these are not cached
+     */
+    protected static final Set<String> RUN_SECTIONS = new HashSet<>( Arrays.asList( "timings", "streams", "metrics" ) );
+    
+    /**
+     * Orders rows cell by cell so name value pairs digest the same whatever
+     * order they were added in
+     */
+    protected static final Comparator<String[]> ROW_ORDER = ( a, b ) -> {
+        
+        for ( int i = 0; i < Math.min( a.length, b.length ); i++ ) {
+            
+            if ( a[i] == null || b[i] == null ) {
+                if ( a[i] != b[i] ) {
+                    return ( a[i] == null ) ? -1 : 1;
+                }
+                continue;
+            }
+            
+            int c = a[i].compareTo( b[i] );
+            if ( c != 0 ) {
+                return c;
+            }
+        }
+        
+        return Integer.compare( a.length, b.length );
+    };
+    
+    /**
+     * A cached output
+     */
+    protected static class Entry {
+        
+        /**
+         * The instance the output was produced for
+         */
+        protected String m_label;
+        
+        /**
+         * When the entry expires, as System.currentTimeMillis
+         */
+        protected long m_expires;
+        
+        /**
+         * Rows held across every section
+         */
+        protected int m_rows;
+        
+        /**
+         * Copies of the sections of the output
+         */
+        protected Map<String, List<String[]>> m_sections;
+        
+        
+        protected Entry( String label, long expires, int rows, Map<String, List<String[]>> sections ) {
+            m_label    = label;
+            m_expires  = expires;
+            m_rows     = rows;
+            m_sections = sections;
+        }
+    }
+    
+    /**
+     * Most entries held
+     */
+    protected int m_maxEntries;
+    
+    /**
+     * Most rows held across every entry, larger outputs are never cached
+     */
+    protected int m_maxRows;
+    
+    /**
+     * Milliseconds an entry lives for, 0 or less lives until evicted
+     */
+    protected long m_ttl;
+    
+    /**
+     * Fixture types that change an instance, normalised by normaliseFixture
+     */
+    protected Set<String> m_mutating;
+    
+    /**
+     * Entries by key, least recently used first
+     */
+    protected LinkedHashMap<String, Entry> m_entries;
+    
+    /**
+     * Counts the invalidations of each instance, an output is only cached if
+     * its instance was not invalidated whilst it was produced
+     */
+    protected HashMap<String, Long> m_generations;
+    
+    /**
+     * Rows held across every entry
+     */
+    protected long m_rows;
+    
+    protected long m_hits;
+    
+    protected long m_misses;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the ResultCache class
+     * @param maxEntries Most entries held
+     * @param maxRows Most rows held across every entry
+     * @param ttl Milliseconds an entry lives for, 0 or less lives until evicted
+     * @param mutating Fixture types that change an instance e.g. DROP
+     */
+    public ResultCache( int maxEntries, int maxRows, long ttl, Collection<String> mutating ) {
+        m_maxEntries  = Math.max( maxEntries, 1 );
+        m_maxRows     = Math.max( maxRows, 0 );
+        m_ttl         = ttl;
+        m_mutating    = new HashSet<>();
+        m_entries     = new LinkedHashMap<>( 16, 0.75f, true );
+        m_generations = new HashMap<>();
+        m_rows        = 0;
+        m_hits        = 0;
+        m_misses      = 0;
+        
+        for ( String fixtureType : mutating ) {
+            m_mutating.add( normaliseFixture( fixtureType ) );
+        }
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Returns a digest of the fixture type and every section of the input,
+     * identical calls give identical keys
+     * @param fixtureType The fixture being run
+     * @param input The input it is passed
+     * @return
+     */
+    public static String keyOf( String fixtureType, InvokationInput input ) {
+        
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance( "SHA-256" );
+        }
+        catch ( NoSuchAlgorithmException ex ) {
+            throw new IllegalStateException( "SHA-256 is not available", ex );
+        }
+        
+        update( md, normaliseFixture( fixtureType ) );
+        
+        for ( String section : new TreeSet<>( input.keySet() ) ) {
+            
+            update( md, section );
+            
+            IRowSource src = input.getSource( section );
+            if ( src == null ) {
+                continue;
+            }
+            
+            Iterable<String[]> rows = src;
+            
+            if ( !ORDERED_SECTIONS.contains( section ) ) {
+                List<String[]> sorted = new ArrayList<>();
+                for ( String[] row : src ) {
+                    sorted.add( row );
+                }
+                sorted.sort( ROW_ORDER );
+                rows = sorted;
+            }
+            
+            for ( String[] row : rows ) {
+                update( md, Integer.toString( row.length ) );
+                for ( String cell : row ) {
+                    update( md, cell );
+                }
+            }
+            
+            // Marks the end of the section so rows can not move between them
+            update( md, null );
+        }
+        
+        StringBuilder b = new StringBuilder();
+        for ( byte d : md.digest() ) {
+            b.append( String.format( "%02x", d ) );
+        }
+        
+        return b.toString();
+    }
+    
+    /**
+     * Digests a string with its length so adjacent strings can not run together
+     */
+    protected static void update( MessageDigest md, String s ) {
+        
+        if ( s == null ) {
+            md.update( new byte[]{ -1, -1, -1, -1 } );
+            return;
+        }
+        
+        byte[] bytes = s.getBytes( StandardCharsets.UTF_8 );
+        int    len   = bytes.length;
+        
+        md.update( new byte[]{ (byte)( len >>> 24 ), (byte)( len >>> 16 ), (byte)( len >>> 8 ), (byte)len } );
+        md.update( bytes );
+    }
+    
+    /**
+     * Returns the fixture type in upper case with spaces and hyphens as
+     * underscores e.g. Create or replace becomes CREATE_OR_REPLACE
+     * @param fixtureType The fixture type
+     * @return
+     */
+    public static String normaliseFixture( String fixtureType ) {
+        return ( fixtureType == null ) ? "" : fixtureType.trim().toUpperCase().replaceAll( "[\\s-]+", "_" );
+    }
+    
+    /**
+     * Returns the label of the instance an input is for, empty if unknown
+     * @param input The input
+     * @return
+     */
+    public static String labelOf( InvokationInput input ) {
+        return InvokationInput.arrayToMap( input.getControlParameters() ).getOrDefault( "INSTANCE_LABEL", "" );
+    }
+    
+    /**
+     * Returns true if the fixture arguments ask for the output to be cached
+     * @param input The input
+     * @return
+     */
+    public boolean isCacheable( InvokationInput input ) {
+        return Boolean.valueOf( InvokationInput.arrayToMap( input.getArguments() ).getOrDefault( "CACHE", "false" ).trim() );
+    }
+    
+    /**
+     * Returns true if the fixture changes the instance it is run against
+     * @param fixtureType The fixture type
+     * @return
+     */
+    public boolean isMutating( String fixtureType ) {
+        return m_mutating.contains( normaliseFixture( fixtureType ) );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Returns a copy of the cached output, null if there is none or it expired.
+     * The copy has no timings or metrics of its own
+     * @param key The key of the call
+     * @return
+     */
+    public synchronized InvokationOutput get( String key ) {
+        
+        Entry e = m_entries.get( key );
+        
+        if ( e != null && m_ttl > 0 && e.m_expires <= System.currentTimeMillis() ) {
+            remove( key );
+            e = null;
+        }
+        
+        if ( e == null ) {
+            m_misses++;
+            return null;
+        }
+        
+        m_hits++;
+        
+        InvokationOutput o = new InvokationOutput();
+        for ( Map.Entry<String, List<String[]>> s : e.m_sections.entrySet() ) {
+            o.put( s.getKey(), copyRows( s.getValue() ) );
+        }
+        
+        return o;
+    }
+    
+    /**
+     * Returns the number of times an instance has been invalidated, taken
+     * before invoking so put can tell if the output may already be stale
+     * @param label The instance
+     * @return
+     */
+    public synchronized long getGeneration( String label ) {
+        return m_generations.getOrDefault( label, 0L );
+    }
+    
+    /**
+     * Caches a copy of an output.  Failed calls, outputs larger than the cache
+     * and outputs of an instance invalidated since generation are ignored
+     * @param key The key of the call
+     * @param label The instance the call was for
+     * @param generation The generation of the instance before the call
+     * @param output The output
+     */
+    public void put( String key, String label, long generation, InvokationOutput output ) {
+        
+        List<String[]> returnCode = output.getReturnCode();
+        if ( returnCode == null || returnCode.isEmpty() || returnCode.get( 0 ).length == 0 || !"0".equals( returnCode.get( 0 )[0] ) ) {
+            return;
+        }
+        
+        // Copied outside the lock, reading a large output can take a while
+        LinkedHashMap<String, List<String[]>> sections = new LinkedHashMap<>();
+        int                                   rows     = 0;
+        
+        for ( String section : output.keySet() ) {
+            
+            IRowSource src = output.getSource( section );
+            if ( src == null || RUN_SECTIONS.contains( section ) ) {
+                continue;
+            }
+            
+            List<String[]> copy = new ArrayList<>();
+            
+            Iterator<String[]> it = src.iterator();
+            while ( it.hasNext() ) {
+                if ( ++rows > m_maxRows ) {
+                    return;
+                }
+                copy.add( it.next().clone() );
+            }
+            
+            sections.put( section, copy );
+        }
+        
+        synchronized ( this ) {
+            
+            if ( getGeneration( label ) != generation ) {
+                return;
+            }
+            
+            remove( key );
+            
+            m_entries.put( key, new Entry( label, System.currentTimeMillis() + m_ttl, rows, sections ) );
+            m_rows += rows;
+            
+            // Least recently used first
+            Iterator<Map.Entry<String, Entry>> it = m_entries.entrySet().iterator();
+            while ( it.hasNext() && ( m_entries.size() > m_maxEntries || m_rows > m_maxRows ) ) {
+                m_rows -= it.next().getValue().m_rows;
+                it.remove();
+            }
+        }
+    }
+    
+    /**
+     * Removes every entry of an instance, outputs of calls running at the
+     * time are not cached either
+     * @param label The instance
+     */
+    public synchronized void invalidate( String label ) {
+        
+        m_generations.put( label, getGeneration( label ) + 1 );
+        
+        Iterator<Entry> it = m_entries.values().iterator();
+        while ( it.hasNext() ) {
+            Entry e = it.next();
+            if ( e.m_label.equals( label ) ) {
+                m_rows -= e.m_rows;
+                it.remove();
+            }
+        }
+    }
+    
+    /**
+     * Removes every entry
+     */
+    public synchronized void clear() {
+        m_entries.clear();
+        m_rows = 0;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    protected void remove( String key ) {
+        
+        Entry e = m_entries.remove( key );
+        
+        if ( e != null ) {
+            m_rows -= e.m_rows;
+        }
+    }
+    
+    protected static List<String[]> copyRows( List<String[]> rows ) {
+        
+        List<String[]> copy = new ArrayList<>( rows.size() );
+        for ( String[] row : rows ) {
+            copy.add( row.clone() );
+        }
+        
+        return copy;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Returns the number of entries held
+     * @return
+     */
+    public synchronized int getSize() {
+        return m_entries.size();
+    }
+    
+    /**
+     * Returns the number of rows held across every entry
+     * @return
+     */
+    public synchronized long getRows() {
+        return m_rows;
+    }
+    
+    public synchronized long getHits() {
+        return m_hits;
+    }
+    
+    public synchronized long getMisses() {
+        return m_misses;
+    }
+}
@@ -14,6 +14,7 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 
 import java.nio.file.attribute.BasicFileAttributes;
@@ -23,29 +24,44 @@ import java.nio.file.FileVisitResult;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 // Application classes
+import flint.engine.io.ArrowReader;
+import flint.engine.io.ArrowWriter;
+import flint.engine.io.BinaryReader;
+import flint.engine.io.BinaryWriter;
 import flint.engine.io.CSVReader;
 import flint.engine.io.CSVWriter;
+import flint.engine.io.FileRowSource;
 //import flint.engine.io.ExportCmdReader;
 //import flint.engine.io.HtmlReader;
 import flint.engine.io.IOFactory;
 import flint.engine.io.IReader;
+import flint.engine.io.IRowSource;
 import flint.engine.io.IWriter;
+import flint.engine.io.MappedInputStream;
+import flint.engine.io.MappedRawReader;
 //import flint.engine.io.PrefixedReader;
 //import flint.engine.io.PrefixedWriter;
 import flint.engine.io.RawReader;
 import flint.engine.io.RawWriter;
+import flint.engine.io.compress.Compression;
+import flint.engine.metrics.CSVMetricsSink;
+import flint.engine.metrics.IMetricsSink;
+import flint.engine.metrics.JSONMetricsSink;
 
 
 /**
@@ -79,6 +95,16 @@ public class ShellEngine extends AbstractEngine {
      */
     protected IOFactory m_ioFactory;
     
+    /**
+     * Long lived shell workers used by the pooled strategy, created on first use
+     */
+    protected ShellWorkerPool m_workers;
+    
+    /**
+     * Work directories kept ready for reuse, created on first use if configured
+     */
+    protected WorkDirectoryPool m_workDirectories;
+    
     
     //--------------------------------------------------------------------------
     
@@ -89,6 +115,8 @@ public class ShellEngine extends AbstractEngine {
         super();
         
         m_properties = new Properties();
+        m_workers         = null;
+        m_workDirectories = null;
         
         // Create default readers snd writers and register them with a format name
         m_ioFactory = IOFactory.newInstance();
@@ -102,6 +130,12 @@ public class ShellEngine extends AbstractEngine {
         
         m_ioFactory.registerReader( "RAW",      RawReader.class       );
         m_ioFactory.registerWriter( "RAW",      RawWriter.class       );
+        m_ioFactory.registerReader( "RAW_MMAP", MappedRawReader.class );
+        m_ioFactory.registerWriter( "RAW_MMAP", RawWriter.class       );
+        m_ioFactory.registerReader( "BINARY",   BinaryReader.class    );
+        m_ioFactory.registerWriter( "BINARY",   BinaryWriter.class    );
+        m_ioFactory.registerReader( "ARROW",    ArrowReader.class     );
+        m_ioFactory.registerWriter( "ARROW",    ArrowWriter.class     );
         
         //name=value
         //m_ioFactory.registerReader( "EXPORT",   ExportCmdReader.class );
@@ -133,79 +167,147 @@ public class ShellEngine extends AbstractEngine {
         m_properties.load(f);
         
         f.close();
+        
+        // Publish metrics if asked to, unless a sink has already been given
+        if ( m_metricsSink == null ) {
+            m_metricsSink = createMetricsSink();
+        }
+        
+        if ( m_resultCache == null ) {
+            m_resultCache = createResultCache();
+        }
     }
     
     @Override
     public void destroy() throws Exception {
+        
+        // Stop any warm workers
+        synchronized ( this ) {
+            if ( m_workers != null ) {
+                m_workers.shutdown();
+                m_workers = null;
+            }
+            
+            if ( m_workDirectories != null ) {
+                m_workDirectories.shutdown();
+                m_workDirectories = null;
+            }
+            
+            if ( m_metricsSink != null ) {
+                m_metricsSink.close();
+                m_metricsSink = null;
+            }
+            
+            m_resultCache = null;
+        }
     }
     
     @Override
     public InvokationOutput invoke(  String fixtureType
                                    , InvokationInput input ) throws Exception {
         
-        String strategy = m_properties.getProperty( "STRATEGY", "contained" );
+        String strategy = m_properties.getProperty( "STRATEGY", "contained" ).trim().toLowerCase();
+        
+        InvokationOutput res;
         
         // Determine how and where to run code
         switch ( strategy ) {
             
-            default : return invokeContainedStrategy( fixtureType, input );
+            case "pooled" : res = invokePooledStrategy( fixtureType, input ); break;
+            
+            default : res = invokeContainedStrategy( fixtureType, input ); break;
             
         }
-
+        
+        publishMetrics( fixtureType, res );
+        
+        return res;
     }
     
-    public InvokationOutput invokeContainedStrategy(  String fixtureType
-                                                    , InvokationInput input ) throws Exception {
+    /**
+     * Runs several fixtures.  By default each is invoked in turn, setting
+     * BATCH_MODE to manifest runs the whole batch with a single controller
+     * process under the contained strategy, see invokeManifestBatch
+     * @param batch The fixtures to run
+     * @return The outputs in the same order as the batch
+     * @throws Exception 
+     */
+    @Override
+    public List<InvokationOutput> invokeBatch( List<Invocation> batch ) throws Exception {
         
-        // Gets passed to the fixtures
-        InvokationOutput res = new InvokationOutput();
+        String mode     = m_properties.getProperty( "BATCH_MODE", "loop"      ).trim().toLowerCase();
+        String strategy = m_properties.getProperty( "STRATEGY",   "contained" ).trim().toLowerCase();
         
-        // Obtain all our local variables from the config, or use defaults
+        if ( !mode.equals( "manifest" ) || strategy.equals( "pooled" ) || batch.size() < 2 ) {
+            return super.invokeBatch( batch );
+        }
         
-        // Determines whether to inherit the server environment or not, default is not
-        String forceInherit         = m_properties.getProperty( "FORCE_INHERIT_ENVIRONMENT", "false"             );
+        // The batch bypasses the result cache, so anything it changes is
+        // invalidated before and after as invokeCached would
+        invalidateResults( batch );
         
-        // Prefixes when we turn our objects into environment variables
-        String defPrefix            = m_properties.getProperty( "DEFINITIONS_PREFIX",        ""                  );
-        String overPrefix           = m_properties.getProperty( "OVERRIDES_PREFIX",          ""                  );
-        String cntrlPrefix          = m_properties.getProperty( "CONTROL_PREFIX",            ""                  );
-        String argPrefix            = m_properties.getProperty( "ARGUMENTS_PREFIX",          ""                  );
-        String optsPrefix           = m_properties.getProperty( "OPTIONS_PREFIX",            ""                  );
-        String paramPrefix          = m_properties.getProperty( "PARAMETERS_PREFIX",         ""                  );
-        //String inheritPrefix        = m_properties.getProperty( "INHERITED_PREFIX",          ""                  );
-        //String connectionsPrefix    = m_properties.getProperty( "CONNECTIONS_PREFIX",        ""                  );
+        List<InvokationOutput> outputs;
+        try {
+            outputs = invokeManifestBatch( batch );
+        }
+        finally {
+            invalidateResults( batch );
+        }
         
-        // File formats of input / output files, default is CSV
-        String tmpDefaultFormat     = "CSV";
-        String dataInputFormat      = m_properties.getProperty( "DATA_INPUT_FORMAT",         tmpDefaultFormat    );
-        String dataOutputFormat     = m_properties.getProperty( "DATA_OUTPUT_FORMAT",        tmpDefaultFormat    );
-        String dataErrorFormat      = m_properties.getProperty( "DATA_ERROR_FORMAT",         tmpDefaultFormat    );
-        String dataControlFormat    = m_properties.getProperty( "DATA_CONTROL_FORMAT",       tmpDefaultFormat    );
+        for ( int i = 0; i < outputs.size(); i++ ) {
+            publishMetrics( batch.get( i ).getFixtureType(), outputs.get( i ) );
+        }
         
-        // Determine whether this file should be compressed
-        boolean dataInputCompressed   = m_properties.getProperty("DATA_INPUT_COMPRESSION",   "").equalsIgnoreCase( "gzip" );
-        boolean dataOutputCompressed  = m_properties.getProperty("DATA_OUTPUT_COMPRESSION",  "").equalsIgnoreCase( "gzip" );
-        boolean dataErrorCompressed   = m_properties.getProperty("DATA_ERROR_COMPRESSION",   "").equalsIgnoreCase( "gzip" );
-        boolean dataControlCompressed = m_properties.getProperty("DATA_CONTROL_COMPRESSION", "").equalsIgnoreCase( "gzip" );
-
-        String shell                = m_properties.getProperty( "SHELL", "bash" );
+        return outputs;
+    }
+    
+    /**
+     * Invalidates the cached results of every instance a mutating fixture of
+     * the batch runs against
+     * @param batch The fixtures about to run or just run
+     */
+    protected void invalidateResults( List<Invocation> batch ) {
+        
+        ResultCache cache = m_resultCache;
+        if ( cache == null ) {
+            return;
+        }
         
+        for ( Invocation i : batch ) {
+            if ( cache.isMutating( i.getFixtureType() ) ) {
+                cache.invalidate( ResultCache.labelOf( i.getInput() ) );
+            }
+        }
+    }
+    
+    /**
+     * Invokes a fixture on another thread, timing out after INVOKE_TIMEOUT
+     * milliseconds, default 0 which waits forever.  A cancelled or timed out
+     * invocation kills its controller and everything it started.  Under the
+     * pooled strategy that means the worker running it, which is discarded and
+     * replaced
+     * @param fixtureType The fixture to run
+     * @param input The data and parameters for the fixture
+     * @return Completes with the output of the invocation
+     */
+    @Override
+    public CompletableFuture<InvokationOutput> invokeAsync(  String fixtureType
+                                                           , InvokationInput input ) {
         
+        long timeout = Long.parseLong( m_properties.getProperty( "INVOKE_TIMEOUT", "0" ).trim() );
         
-        // Directory to place files in, by default, tmp
-        String tmpDefaultDirectory = System.getProperty( "java.io.tmpdir" );
-        // File prefixes, input data, output data, error data, and control parameters etc
-        String parentDirectory = m_properties.getProperty( "DATA_DIRECTORY",   tmpDefaultDirectory );
-        String prefix          = m_properties.getProperty( "DATA_DIRECTORY_WORK_PREFIX", ""    );
-        String perms           = m_properties.getProperty( "DATA_DIRECTORY_PERMISSIONS", "700" );
+        return invokeAsync( fixtureType, input, timeout, TimeUnit.MILLISECONDS );
+    }
+    
+    public InvokationOutput invokeContainedStrategy(  String fixtureType
+                                                    , InvokationInput input ) throws Exception {
         
-        // Create the directory that will contain ALL our files
-        Path base = new File( parentDirectory ).toPath();
-        Path tempDirectory = Files.createTempDirectory(  base
-                                                       , prefix
-                                                       , PosixFilePermissions.asFileAttribute( PosixFilePermissions.fromString( perms ) ) );
+        long invoked = System.currentTimeMillis();
+        
+        // Gets passed to the fixtures
+        InvokationOutput res = new InvokationOutput();
         
-        // Copy the controller file to this temporary directory
+        // The controller file is copied to the directory that will contain ALL our files
         File controllerDir    = new File(  "neo"         + File.separatorChar
                                          + "engines"     + File.separatorChar
                                          + "ShellEngine" );
@@ -213,229 +315,592 @@ public class ShellEngine extends AbstractEngine {
         String controllerName = ".__controller__.sh";
         String controllerHome = m_properties.getProperty( "CONTROLLER_HOME", controllerDir.getCanonicalPath() );
         
-        Path copiedPath = tempDirectory.resolve( controllerName );
-        File controllerPath = new File( controllerHome + File.pathSeparator + controllerName );
-        Files.copy( controllerPath.toPath(), copiedPath );
-        
-        m_properties.setProperty( "CONTROLLER_NAME", controllerName );
-        m_properties.setProperty( "CONTROLLER_HOME", tempDirectory.toString() );
-        
-        // Need to create file ahead of time so we can get a truly unique file name and
-        // as an interface we pass to the script what to use
-        // Directory to place files in, by default, tmp
-        File stdinFile   = addPath( input, false, m_properties, "INPUT"   , tempDirectory.toString() );
-        File stdoutFile  = addPath( input, false, m_properties, "OUTPUT"  , tempDirectory.toString() );
-        File stderrFile  = addPath( input, false, m_properties, "ERROR"   , tempDirectory.toString() );
-        File stdctlFile  = addPath( input, false, m_properties, "CONTROL" , tempDirectory.toString() );
-        File stdvarFile  = addPath( input, false, m_properties, "VARS"    , tempDirectory.toString() );
-
-        // Build our command line
-        ProcessBuilder cmdLine = getRunner( m_properties, fixtureType );
-        
-        // Add all of the core definitions but do not change case of the environment parameters
-        Map<String, String> env  = cmdLine.environment();
-        Map<String, String> nop  = InvokationInput.arrayToMap( input.getParameters(),        null,        false );
-        
-        // Framework may have set some parameters, merge them if appropriate.  E.g. fixtures
-        // typically add their own control parameters i.e. OVERWRITE=true, LIMIT=100
-        Map<String, String> cntl = new LinkedHashMap<>();
-        cntl.putAll( InvokationInput.arrayToMap( InvokationInput.propertiesToArray( m_properties ), cntrlPrefix ) );
-        cntl.putAll( InvokationInput.arrayToMap( input.getControlParameters(),                      cntrlPrefix ) );
+        File controllerPath = new File( controllerHome + File.separatorChar + controllerName );
         
-        Map<String, String> pars = InvokationInput.arrayToMap( input.getParameters(),        paramPrefix        );
-        Map<String, String> opts = InvokationInput.arrayToMap( input.getOptions(),           optsPrefix         );
-        Map<String, String> defs = InvokationInput.arrayToMap( input.getDefinitions(),       defPrefix          );  
-        Map<String, String> over = InvokationInput.arrayToMap( input.getOverrides(),         overPrefix         );
-        Map<String, String> args = InvokationInput.arrayToMap( input.getArguments(),         argPrefix          );
+        // With the fifo transport the input and output are named pipes
+        boolean pipes = isPipeTransport( m_properties );
         
-        // Check if we want to inherit the environment variables defined as fitnesse
-        // was started up or just truncate and start anew
-        boolean force = false;
-        try {
-            force = Boolean.parseBoolean( forceInherit );
-        }
-        catch ( Exception ex ) {
-            
-        }
+        // Need to create files ahead of time so we can get a truly unique file name and
+        // as an interface we pass to the script what to use, a reused directory
+        // already has them
+        WorkDirectory work          = acquireWorkDirectory( input, controllerPath, pipes );
+        Path          tempDirectory = work.getPath();
         
-        // Reset environment if an option was specified or if a config item asked for it
-        String optionsForce = opts.get( optsPrefix + "FORCE_INHERIT_ENVIRONMENT" );
-        if ( !force && optionsForce != null && optionsForce.equalsIgnoreCase( "false" ) ) {
-            env.clear();
-        }
+        // The copied controller is only for this run, the engine may be invoked
+        // concurrently so its own properties must not change
+        Properties props = new Properties( m_properties );
+        props.setProperty( "CONTROLLER_NAME", controllerName );
+        props.setProperty( "CONTROLLER_HOME", tempDirectory.toString() );
         
-        // Add all our variables to the environment
-        /*env.putAll(nop);
-        env.putAll(cntl);
-        env.putAll(pars);
-        env.putAll(opts);
-        env.putAll(defs);
-        env.putAll(over);
-        env.putAll(args);*/
+        File stdinFile   = work.getFile( "INPUT"   );
+        File stdoutFile  = work.getFile( "OUTPUT"  );
+        File stderrFile  = work.getFile( "ERROR"   );
+        File stdctlFile  = work.getFile( "CONTROL" );
+        File stdvarFile  = work.getFile( "VARS"    );
+
+        // Build our command line
+        ProcessBuilder cmdLine = getRunner( props, fixtureType );
         
-        LinkedHashMap<String, String> mp = new LinkedHashMap<>();
-        mp.putAll( env );
-        mp.putAll(nop);
-        mp.putAll(cntl);
-        mp.putAll(pars);
-        mp.putAll(opts);
-        mp.putAll(defs);
-        mp.putAll(over);
-        mp.putAll(args);
+        // Merge the server environment with all the parameters, options etc
+        // the fixture passed us
+        Map<String, String> mp = buildEnvironment( cmdLine.environment(), input );
         
-        //Iterator it = mp.keySet().iterator();
-        String name;
-        String value;
+        writeVariables( stdvarFile, mp );
         
-        // Once we have a clear and ordered list of environment variables, we start from the top
-        // and begin interpreting out any inline variable references
-        //while ( it.hasNext() ) {
-        //    name = (String)it.next();
-        //    value = env.get( name );
-            
-            //System.err.println( " !! " + name + " !! "  + value + " !!!" );
-        //    value = ShellUtils.expandCommandLine( value, mp, shell );
-            //System.err.println( " !! " + name + " !! "  + value + " !!!" );
-        //    env.put( name, value );
-        //}
+        PipeTransfer inPipe  = null;
+        PipeTransfer outPipe = null;
         
-        // Crude export script
-        List<String[]> varData = new ArrayList<>();
-        varData.add( new String[]{ "#!/bin/sh" } );
-        Iterator it = mp.keySet().iterator();
-        while ( it.hasNext() ) {
-            name  = (String)it.next();
-            value = mp.get( name );
-            
-            varData.add( new String[]{ "export " + name + "=\"" + value + "\""} );
+        if ( pipes ) {
+            inPipe  = streamInput( stdinFile, input );
+            outPipe = streamOutput( stdoutFile, res );
         }
-        writeFile( stdvarFile, "RAW", false, varData, new LinkedHashMap<>() );
-        
-        HashMap<String, String> inSettings = new LinkedHashMap<>();
-        List<String[]> inData = input.getData();
-        // Double check whether the fixture itself passed in no columns e.g. a drop fixture typically doesnt
-        if ( inData.size() <= 0 ) {
-            inSettings.put( "header", "false" );
+        else {
+            // Streamed input may fail part way, treated as the run failing
+            try {
+                writeInput( stdinFile, input );
+            }
+            catch ( IOException | RuntimeException ex ) {
+                releaseWorkDirectory( work, isDeleteRequired( input, -1 ) );
+                throw ex;
+            }
         }
         
-        writeFile( stdinFile, dataInputFormat, dataInputCompressed, inData, inSettings );
-        
         
         // EXECUTE
         long before = System.currentTimeMillis(); 
         
         //try {
-            Process p = cmdLine.start();
+            Process p;
+            try {
+                p = cmdLine.start();
+            }
+            catch ( IOException ex ) {
+                if ( pipes ) {
+                    finishTransfers( inPipe, outPipe );
+                }
+                throw ex;
+            }
+            
+            long spawned = System.currentTimeMillis();
             
             InputStream  outP = p.getInputStream();  //stdout
             InputStream  errP = p.getErrorStream();  //stderr
             OutputStream inP  = p.getOutputStream(); //stdin
             
-            int shellExitStatus = p.waitFor();
+            // Nothing is piped to stdin, close it so the script sees end of file
+            inP.close();
+            
+            // Drain both pipes whilst the script runs, otherwise it blocks as soon
+            // as the OS pipe buffer fills up
+            StreamDrainer outDrain = startDrainer( outP, "STDOUT", tempDirectory.toFile() );
+            StreamDrainer errDrain = startDrainer( errP, "STDERR", tempDirectory.toFile() );
+            
+            // The controllers CPU and memory are sampled whilst waiting for it
+            ProcessSampler sampler = new ProcessSampler( getSampleInterval() > 0 ? ProcessSampler.pidOf( p ) : -1 );
+            
+            int shellExitStatus;
+            try {
+                shellExitStatus = awaitController( p, sampler );
+            }
+            catch ( InterruptedException ex ) {
+                // Cancelled, the controller is dead so nothing else will open
+                // the pipes or touch the files
+                if ( pipes ) {
+                    try {
+                        finishTransfers( inPipe, outPipe );
+                    }
+                    catch ( IOException ignored ) {
+                    }
+                }
+                releaseWorkDirectory( work, isDeleteRequired( input, p.exitValue() ) );
+                throw ex;
+            }
             
         long ended   = System.currentTimeMillis();
         long elapsed = ended - before;
         
-        // We could split this out but its rarely done, for now it affects all
-        boolean deleteFiles  = true;
+        // Background children of the script can hold the pipes open after it
+        // exits so the drain is timed separately from the process itself
+        awaitDrain( outDrain, errDrain );
         
-        String removeTempFiles = cntl.getOrDefault( cntrlPrefix + "REMOVE_TEMP_FILES", "" ).trim().toLowerCase();
+        long drained = System.currentTimeMillis();
         
-        // Certain scenarios we do not delete files
-        switch ( removeTempFiles ) {
-                
-            case "never"      : // do not delete
-                                deleteFiles = false;
-                                break;
-            case "on error"   : // not errored so leave
-                                if ( shellExitStatus == 0 ) {
-                                    deleteFiles = false;
-                                }
-                                break;
-            case "on success" : // process failed
-                                if ( shellExitStatus != 0 ) {
-                                    deleteFiles = false;
-                                }
-                                break;
-                
+        // The output has been parsed as it arrived, wait for the last of it
+        if ( pipes ) {
+            try {
+                finishTransfers( inPipe, outPipe );
+            }
+            catch ( IOException ex ) {
+                releaseWorkDirectory( work, isDeleteRequired( input, -1 ) );
+                throw ex;
+            }
         }
         
-        // dont need stdin now process is finished
-        //if ( deleteFiles ) {
-        //    stdinFile.delete();
-        //    stdvarFile.delete();
-        //}
+        // Measured before parsing, which may move the output away
+        long inBytes  = pipes ? inPipe.getBytes()  : stdinFile.length();
+        long outBytes = pipes ? outPipe.getBytes() : stdoutFile.length();
+        long errBytes = stderrFile.length();
+        
+        // We could split this out but its rarely done, for now it affects all
+        boolean deleteFiles = isDeleteRequired( input, shellExitStatus );
         
         // Strings are easier to process although possibly more memory intensive
         // depending on the data
-        //int shellExitStatus = shell.exitValue();
-        String out = convertStreamToStr( outP );
-        String err = convertStreamToStr( errP );
+        String out = describeDrain( outDrain );
+        String err = describeDrain( errDrain );
         
         // Better user experience
         if ( !out.isEmpty() ) System.out.println( out );
         if ( !err.isEmpty() ) System.err.println( err );
         
-        //res.setCellStatuses( parseFile( stdctlFile, dataControlFormat, true ) );
-        
-        // The process will produce a control file specifying how
-        // we parse the output data
-        // it might just reuse the original
-        List<String[]> outControl = parseFile( stdctlFile, dataControlFormat, dataControlCompressed, false, new LinkedHashMap<>() );
-        
-        // iterate over that control file building the settings we need to parse
-        // the others
-        it = outControl.iterator();
-        String[] tmp;
-        HashMap<String, String> outSettings = new LinkedHashMap<>();
-        HashMap<String, String> errSettings = new LinkedHashMap<>();
+        // Parse the files adding to our output for the fixture to use, output
+        // that can not all be read fails the invocation
+        try {
+            parseResults( res, stdctlFile, stdoutFile, stderrFile, false, pipes );
+        }
+        catch ( IOException | RuntimeException ex ) {
+            releaseWorkDirectory( work, isDeleteRequired( input, -1 ) );
+            throw ex;
+        }
         
-        while ( it.hasNext() ) {
-            tmp = (String[])it.next();
-            
-            name   = tmp[0].trim();
-            value = "";
-            if ( tmp.length > 1 ) {
-                value = tmp[1].trim();
-            }
-
-            // Determine how the output files were written by reading the output control file
-            // and hecking for the instructions / control parameters
-                 if ( name.equals( cntrlPrefix + "DATA_OUTPUT_FORMAT"            ) ) dataOutputFormat = value;
-            else if ( name.equals( cntrlPrefix + "DATA_OUTPUT_FORMAT__DELIMITER" ) ) outSettings.put( "delimiter", value );
-            else if ( name.equals( cntrlPrefix + "DATA_OUTPUT_FORMAT__QUOTECHAR" ) ) outSettings.put( "quotechar", value );
-            else if ( name.equals( cntrlPrefix + "DATA_OUTPUT_FORMAT__HEADER"    ) ) outSettings.put( "header",    value );
-            else if ( name.equals( cntrlPrefix + "DATA_OUTPUT_COMPRESSION"       ) ) dataOutputCompressed = value.equalsIgnoreCase( "gzip" );
-            else if ( name.equals( cntrlPrefix + "DATA_ERROR_FORMAT"             ) ) dataErrorFormat  = value;
-            else if ( name.equals( cntrlPrefix + "DATA_ERROR_FORMAT__DELIMITER"  ) ) errSettings.put( "delimiter", value );
-            else if ( name.equals( cntrlPrefix + "DATA_ERROR_FORMAT__QUOTECHAR"  ) ) errSettings.put( "quotechar", value );
-            else if ( name.equals( cntrlPrefix + "DATA_ERROR_FORMAT__HEADER"     ) ) errSettings.put( "header",    value );
-            else if ( name.equals( cntrlPrefix + "DATA_ERROR_COMPRESSION"        ) ) dataErrorCompressed = value.equalsIgnoreCase( "gzip" );
-            
-            
-        }        
-                
-        // Parse the files adding to our output for the fixture to use
-        res.setData(      parseFile( stdoutFile, dataOutputFormat, dataOutputCompressed, false, outSettings ) );
-        res.setErrorData( parseFile( stderrFile, dataErrorFormat,  dataErrorCompressed,  false, errSettings ) );
+        long parsed = System.currentTimeMillis();
         
         // Add the status
         ArrayList<String[]> messages = new ArrayList<>();
         messages.add( new String[]{ Integer.toString( shellExitStatus ) } );
         res.setReturnCode( messages );
         
-        // Need to recursively delete all files in that temp directory
-        if ( deleteFiles ) {
-            deleteDirectory( tempDirectory );
-        }
+        recordExecution( res, before, ended, drained, outDrain, errDrain );
+        recordMetrics( res, input, inBytes, outBytes, errBytes, sampler );
+        
+        // Need to recursively delete all files in that temp directory, or scrub
+        // it for reuse
+        releaseWorkDirectory( work, deleteFiles );
         
+        recordPhases( res, invoked, before, spawned, ended, drained, parsed, System.currentTimeMillis() );
         
         return res;
     }
     
-    // TODO
-    public InvokationOutput invokeReferencedStrategy(  String fixtureType
-                                                    , InvokationInput input ) throws Exception {
+    /**
+     * Runs the fixture on one of a pool of long lived shell workers rather than
+     * forking a fresh shell per call.  The worker is handed the controller, the
+     * fixture argument and a file of environment changes over a pipe, the data
+     * files are staged exactly as for the contained strategy.  Configured by
+     * 
+     * POOL_SIZE             - maximum number of workers, default 4
+     * POOL_WORKER_MAX_USES  - invocations before a worker is recycled, default 100
+     * POOL_INVOKE           - exec (default) runs the controller as its own
+     *                         process, as the contained strategy does.  source
+     *                         runs it inside the worker's subshell, saving an
+     *                         exec, but $0 is then the worker shell so the
+     *                         controller can not locate files with dirname "$0"
+     * 
+     * @param fixtureType The fixture being run e.g. CREATE
+     * @param input The data and parameters for the controller
+     * @return
+     * @throws Exception 
+     */
+    public InvokationOutput invokePooledStrategy(  String fixtureType
+                                                 , InvokationInput input ) throws Exception {
+        
+        long invoked = System.currentTimeMillis();
+        
+        // Gets passed to the fixtures
+        InvokationOutput res = new InvokationOutput();
+        
+        String invoke = m_properties.getProperty( "POOL_INVOKE", "exec" ).trim().toLowerCase();
+        
+        // The directory that will contain ALL our files, the controller is
+        // referenced where it is rather than copied
+        boolean pipes = isPipeTransport( m_properties );
+        
+        WorkDirectory work          = acquireWorkDirectory( input, null, pipes );
+        Path          tempDirectory = work.getPath();
+        
+        File stdinFile   = work.getFile( "INPUT"   );
+        File stdoutFile  = work.getFile( "OUTPUT"  );
+        File stderrFile  = work.getFile( "ERROR"   );
+        File stdctlFile  = work.getFile( "CONTROL" );
+        File stdvarFile  = work.getFile( "VARS"    );
+        
+        File         outLog;
+        File         errLog;
+        PipeTransfer inPipe  = null;
+        PipeTransfer outPipe = null;
+        
+        ShellWorker worker    = null;
+        boolean     healthy   = false;
+        boolean     completed = false;
+        int         shellExitStatus;
+        long        before;
+        long        spawned;
+        
+        // Anything that fails from here on gives back the work directory
+        try {
+            // The worker redirects the controllers stdout / stderr here
+            outLog = File.createTempFile( ".__stdout__", ".log", tempDirectory.toFile() );
+            errLog = File.createTempFile( ".__stderr__", ".log", tempDirectory.toFile() );
+            
+            // Build the command line a fresh process would have run, the worker runs
+            // the same controller with the same argument
+            ProcessBuilder cmdLine    = getRunner( m_properties, fixtureType );
+            List<String>   command    = cmdLine.command();
+            File           controller = new File( command.get( 0 ) );
+            String         argument   = command.get( 1 );
+            
+            Map<String, String> mp = buildEnvironment( cmdLine.environment(), input );
+            
+            // Workers already hold the server environment so only ship what differs
+            ShellWorkerPool pool = getWorkerPool();
+            writeVariableDelta( stdvarFile, pool.getEnvironment(), mp );
+            
+            // Streamed input may fail part way, treated as the run failing
+            if ( pipes ) {
+                inPipe  = streamInput( stdinFile, input );
+                outPipe = streamOutput( stdoutFile, res );
+            }
+            else {
+                writeInput( stdinFile, input );
+            }
+            
+            
+            // EXECUTE
+            before  = System.currentTimeMillis();
+            spawned = before;
+            
+            try {
+                worker          = pool.acquire();
+                spawned         = System.currentTimeMillis();
+                shellExitStatus = worker.execute( invoke, argument, controller, stdvarFile, outLog, errLog );
+                healthy         = true;
+            }
+            finally {
+                // A worker that failed mid request is discarded and replaced
+                if ( worker != null ) {
+                    pool.release( worker, healthy );
+                }
+            }
+        }
+        finally {
+            try {
+                if ( pipes ) {
+                    finishTransfers( inPipe, outPipe );
+                }
+                
+                completed = healthy;
+            }
+            finally {
+                // Nothing is read back from a failed run
+                if ( !completed ) {
+                    releaseWorkDirectory( work, isDeleteRequired( input, -1 ) );
+                }
+            }
+        }
+        
+        long ended   = System.currentTimeMillis();
+        
+        StreamDrainer outDrain = drainFile( outLog, "STDOUT" );
+        StreamDrainer errDrain = drainFile( errLog, "STDERR" );
+        
+        long drained = System.currentTimeMillis();
+        
+        // Measured before parsing, which may move the output away
+        long inBytes  = pipes ? inPipe.getBytes()  : stdinFile.length();
+        long outBytes = pipes ? outPipe.getBytes() : stdoutFile.length();
+        long errBytes = stderrFile.length();
+        
+        boolean deleteFiles = isDeleteRequired( input, shellExitStatus );
+        
+        String out = describeDrain( outDrain );
+        String err = describeDrain( errDrain );
+        
+        // Better user experience
+        if ( !out.isEmpty() ) System.out.println( out );
+        if ( !err.isEmpty() ) System.err.println( err );
+        
+        // Parse the files adding to our output for the fixture to use, output
+        // that can not all be read fails the invocation
+        try {
+            parseResults( res, stdctlFile, stdoutFile, stderrFile, false, pipes );
+        }
+        catch ( IOException | RuntimeException ex ) {
+            releaseWorkDirectory( work, isDeleteRequired( input, -1 ) );
+            throw ex;
+        }
+        
+        long parsed = System.currentTimeMillis();
+        
+        // Add the status
+        ArrayList<String[]> messages = new ArrayList<>();
+        messages.add( new String[]{ Integer.toString( shellExitStatus ) } );
+        res.setReturnCode( messages );
+        
+        // The controller ran inside a long lived worker so it can not be sampled
+        recordExecution( res, before, ended, drained, outDrain, errDrain );
+        recordMetrics( res, input, inBytes, outBytes, errBytes, null );
+        
+        // Need to recursively delete all files in that temp directory, or scrub
+        // it for reuse
+        releaseWorkDirectory( work, deleteFiles );
+        
+        recordPhases( res, invoked, before, spawned, ended, drained, parsed, System.currentTimeMillis() );
+        
+        return res;
+    }
+    
+    /**
+     * Runs a batch of fixtures with one controller process.  Every fixture gets
+     * its own directory of INPUT, OUTPUT, ERROR, CONTROL and VARS files staged
+     * exactly as for a single invocation, the VARS file also holding its
+     * DATA_*_PATH parameters.  The controller is then run once with the
+     * argument for the fixture "batch" e.g. --batch and is given
+     * 
+     * DATA_MANIFEST_PATH  - a CSV file with a header and a row per fixture of
+     *                       INDEX, FIXTURE, ARGUMENT, VARS, INPUT, OUTPUT,
+     *                       ERROR, CONTROL.  ARGUMENT is what the controller
+     *                       would have been passed for the fixture alone
+     * DATA_STATUS_PATH    - a file the controller appends a line of
+     *                       index,return code to as each fixture finishes
+     * 
+     * A controller could handle it with
+     * 
+     *   sed 1d "$DATA_MANIFEST_PATH" | while IFS=, read -r i f a vars rest; do
+     *     ( . "$vars"; "$0" "$a" ); echo "$i,$?" >> "$DATA_STATUS_PATH"
+     *   done
+     * 
+     * Fixtures with no status were not run, they are given the exit status of
+     * the controller or 1 if it succeeded.  The data files are always regular
+     * files, whatever DATA_TRANSPORT says
+     * @param batch The fixtures to run
+     * @return The outputs in the same order as the batch
+     * @throws Exception 
+     */
+    public List<InvokationOutput> invokeManifestBatch( List<Invocation> batch ) throws Exception {
+        
+        long invoked = System.currentTimeMillis();
+        
+        // Create the directory that will contain ALL our files
+        Path tempDirectory = createWorkDirectory();
+        
+        // The batch itself only needs to know where the manifest and status are
+        InvokationInput batchInput = new InvokationInput();
+        
+        int            size    = batch.size();
+        File[]         files   = new File[ size * 4 ];
+        File           statusFile;
+        ProcessBuilder cmdLine;
+        
+        // A batch that could not be staged leaves nothing behind
+        try {
+            // Copy the controller file to this temporary directory
+            File controllerDir    = new File(  "neo"         + File.separatorChar
+                                             + "engines"     + File.separatorChar
+                                             + "ShellEngine" );
+            
+            String controllerName = ".__controller__.sh";
+            String controllerHome = m_properties.getProperty( "CONTROLLER_HOME", controllerDir.getCanonicalPath() );
+            
+            Files.copy( new File( controllerHome + File.separatorChar + controllerName ).toPath(), tempDirectory.resolve( controllerName ) );
+            
+            Properties props = new Properties( m_properties );
+            props.setProperty( "CONTROLLER_NAME", controllerName );
+            props.setProperty( "CONTROLLER_HOME", tempDirectory.toString() );
+            
+            File manifestFile = addPath( batchInput, false, props, "MANIFEST", tempDirectory.toString() );
+            statusFile        = addPath( batchInput, false, props, "STATUS"  , tempDirectory.toString() );
+            File stdvarFile   = addPath( batchInput, false, props, "VARS"    , tempDirectory.toString() );
+            
+            List<String[]> manifest = new ArrayList<>();
+            manifest.add( new String[]{ "INDEX", "FIXTURE", "ARGUMENT", "VARS", "INPUT", "OUTPUT", "ERROR", "CONTROL" } );
+            
+            // STAGE every fixture as if it were run alone
+            for ( int i = 0; i < size; i++ ) {
+                
+                InvokationInput input   = batch.get( i ).getInput();
+                String          fixture = batch.get( i ).getFixtureType();
+                String          itemDir = Files.createDirectory( tempDirectory.resolve( "item_" + i ) ).toString();
+                
+                File stdinFile   = addPath( input, false, props, "INPUT"   , itemDir );
+                File stdoutFile  = addPath( input, false, props, "OUTPUT"  , itemDir );
+                File stderrFile  = addPath( input, false, props, "ERROR"   , itemDir );
+                File stdctlFile  = addPath( input, false, props, "CONTROL" , itemDir );
+                File itemVarFile = addPath( input, false, props, "VARS"    , itemDir );
+                
+                ProcessBuilder itemCmd = getRunner( props, fixture );
+                
+                writeVariables( itemVarFile, buildEnvironment( itemCmd.environment(), input ) );
+                writeInput( stdinFile, input );
+                
+                manifest.add( new String[]{  String.valueOf( i )
+                                           , fixture
+                                           , itemCmd.command().get( 1 )
+                                           , itemVarFile.getCanonicalPath()
+                                           , stdinFile.getCanonicalPath()
+                                           , stdoutFile.getCanonicalPath()
+                                           , stderrFile.getCanonicalPath()
+                                           , stdctlFile.getCanonicalPath() } );
+                
+                files[ i * 4     ] = stdinFile;
+                files[ i * 4 + 1 ] = stdoutFile;
+                files[ i * 4 + 2 ] = stderrFile;
+                files[ i * 4 + 3 ] = stdctlFile;
+            }
+            
+            // The header is the first row of the manifest itself, and lines
+            // end as the shell reading it expects
+            Map<String, String> manifestSettings = new LinkedHashMap<>();
+            manifestSettings.put( "header",    "false" );
+            manifestSettings.put( "separator", "\n"    );
+            
+            writeFile( manifestFile, "CSV", Compression.NONE, manifest, manifestSettings );
+            
+            cmdLine = getRunner( props, "batch" );
+            
+            writeVariables( stdvarFile, buildEnvironment( cmdLine.environment(), batchInput ) );
+        }
+        catch ( Exception ex ) {
+            if ( isDeleteRequired( batchInput, -1 ) ) {
+                deleteDirectory( tempDirectory );
+            }
+            throw ex;
+        }
+        
+        
+        // EXECUTE
+        long before = System.currentTimeMillis();
+        
+        Process p;
+        try {
+            p = cmdLine.start();
+        }
+        catch ( IOException ex ) {
+            if ( isDeleteRequired( batchInput, -1 ) ) {
+                deleteDirectory( tempDirectory );
+            }
+            throw ex;
+        }
+        
+        long spawned = System.currentTimeMillis();
+        
+        // Nothing is piped to stdin, close it so the script sees end of file
+        p.getOutputStream().close();
+        
+        StreamDrainer outDrain = startDrainer( p.getInputStream(), "STDOUT", tempDirectory.toFile() );
+        StreamDrainer errDrain = startDrainer( p.getErrorStream(), "STDERR", tempDirectory.toFile() );
+        
+        int shellExitStatus;
+        try {
+            shellExitStatus = awaitController( p, null );
+        }
+        catch ( InterruptedException ex ) {
+            if ( isDeleteRequired( batchInput, p.exitValue() ) ) {
+                deleteDirectory( tempDirectory );
+            }
+            throw ex;
+        }
+        
+        long ended = System.currentTimeMillis();
+        
+        awaitDrain( outDrain, errDrain );
+        
+        long drained = System.currentTimeMillis();
+        
+        String out = describeDrain( outDrain );
+        String err = describeDrain( errDrain );
+        
+        // Better user experience
+        if ( !out.isEmpty() ) System.out.println( out );
+        if ( !err.isEmpty() ) System.err.println( err );
+        
+        Map<Integer, Integer> statuses = readBatchStatus( statusFile );
+        
+        // Fixtures the controller never reached did not succeed
+        int notRun = ( shellExitStatus != 0 ) ? shellExitStatus : 1;
+        
+        List<InvokationOutput> outputs     = new ArrayList<>( size );
+        boolean                deleteFiles = true;
+        
+        for ( int i = 0; i < size; i++ ) {
+            
+            InvokationOutput res    = new InvokationOutput();
+            int              status = statuses.getOrDefault( i, notRun );
+            
+            long inBytes  = files[ i * 4     ].length();
+            long outBytes = files[ i * 4 + 1 ].length();
+            long errBytes = files[ i * 4 + 2 ].length();
+            
+            try {
+                parseResults( res, files[ i * 4 + 3 ], files[ i * 4 + 1 ], files[ i * 4 + 2 ], false, false );
+            }
+            catch ( IOException | RuntimeException ex ) {
+                if ( isDeleteRequired( batch.get( i ).getInput(), -1 ) ) {
+                    deleteDirectory( tempDirectory );
+                }
+                throw ex;
+            }
+            
+            ArrayList<String[]> messages = new ArrayList<>();
+            messages.add( new String[]{ Integer.toString( status ) } );
+            res.setReturnCode( messages );
+            
+            // Process figures are for the whole batch
+            recordExecution( res, before, ended, drained, outDrain, errDrain );
+            recordMetrics( res, batch.get( i ).getInput(), inBytes, outBytes, errBytes, null );
+            res.addMetric( "BATCH_SIZE",  size );
+            res.addMetric( "BATCH_INDEX", i    );
+            
+            deleteFiles &= isDeleteRequired( batch.get( i ).getInput(), status );
+            
+            outputs.add( res );
+        }
+        
+        long parsed = System.currentTimeMillis();
+        
+        if ( deleteFiles ) {
+            deleteDirectory( tempDirectory );
+        }
+        
+        long finished = System.currentTimeMillis();
+        
+        for ( InvokationOutput res : outputs ) {
+            recordPhases( res, invoked, before, spawned, ended, drained, parsed, finished );
+        }
+        
+        return outputs;
+    }
+    
+    /**
+     * Reads the lines of index,return code a batch controller wrote, anything
+     * else in the file is ignored
+     * @param f The status file
+     * @return The return code of each fixture that was run by its index
+     * @throws IOException 
+     */
+    protected static Map<Integer, Integer> readBatchStatus( File f ) throws IOException {
+        
+        Map<Integer, Integer> statuses = new HashMap<>();
+        
+        for ( String line : Files.readAllLines( f.toPath() ) ) {
+            
+            String[] fields = line.split( "," );
+            if ( fields.length != 2 ) {
+                continue;
+            }
+            
+            try {
+                statuses.put( Integer.valueOf( fields[0].trim() ), Integer.valueOf( fields[1].trim() ) );
+            }
+            catch ( NumberFormatException ex ) {
+            }
+        }
+        
+        return statuses;
+    }
+    
+    // TODO
+    public InvokationOutput invokeReferencedStrategy(  String fixtureType
+                                                    , InvokationInput input ) throws Exception {
         
         // Gets passed to the fixtures
         InvokationOutput res = new InvokationOutput();
@@ -463,10 +928,10 @@ public class ShellEngine extends AbstractEngine {
         String dataControlFormat    = m_properties.getProperty( "DATA_CONTROL_FORMAT",       tmpDefaultFormat    );
         
         // Determine whether this file should be compressed
-        boolean dataInputCompressed   = m_properties.getProperty("DATA_INPUT_COMPRESSION",   "").equalsIgnoreCase( "gzip" );
-        boolean dataOutputCompressed  = m_properties.getProperty("DATA_OUTPUT_COMPRESSION",  "").equalsIgnoreCase( "gzip" );
-        boolean dataErrorCompressed   = m_properties.getProperty("DATA_ERROR_COMPRESSION",   "").equalsIgnoreCase( "gzip" );
-        boolean dataControlCompressed = m_properties.getProperty("DATA_CONTROL_COMPRESSION", "").equalsIgnoreCase( "gzip" );
+        Compression dataInputCompression   = Compression.forName( m_properties.getProperty( "DATA_INPUT_COMPRESSION",   "" ) );
+        Compression dataOutputCompression  = Compression.forName( m_properties.getProperty( "DATA_OUTPUT_COMPRESSION",  "" ) );
+        Compression dataErrorCompression   = Compression.forName( m_properties.getProperty( "DATA_ERROR_COMPRESSION",   "" ) );
+        Compression dataControlCompression = Compression.forName( m_properties.getProperty( "DATA_CONTROL_COMPRESSION", "" ) );
 
         String shell                = m_properties.getProperty( "SHELL", "bash" );
                 
@@ -550,14 +1015,7 @@ public class ShellEngine extends AbstractEngine {
         //    env.put( name, value );
         //}
         
-        HashMap<String, String> inSettings = new LinkedHashMap<>();
-        List<String[]> inData = input.getData();
-        // Double check whether the fixture itself passed in no columns e.g. a drop fixture typically doesnt
-        if ( inData.size() <= 0 ) {
-            inSettings.put( "header", "false" );
-        }
-        
-        writeFile( stdinFile, dataInputFormat, dataInputCompressed, inData, inSettings );
+        writeInput( new FileOutputStream( stdinFile ), input, dataInputFormat, dataInputCompression );
         
         
         // EXECUTE
@@ -570,11 +1028,25 @@ public class ShellEngine extends AbstractEngine {
             InputStream  errP = p.getErrorStream();  //stderr
             OutputStream inP  = p.getOutputStream(); //stdin
             
-            int shellExitStatus = p.waitFor();
+            // Nothing is piped to stdin, close it so the script sees end of file
+            inP.close();
+            
+            // Drain both pipes whilst the script runs, otherwise it blocks as soon
+            // as the OS pipe buffer fills up
+            StreamDrainer outDrain = startDrainer( outP, "STDOUT", new File( tmpDefaultDirectory ) );
+            StreamDrainer errDrain = startDrainer( errP, "STDERR", new File( tmpDefaultDirectory ) );
+            
+            int shellExitStatus = awaitController( p, null );
             
         long ended   = System.currentTimeMillis();
         long elapsed = ended - before;
         
+        // Background children of the script can hold the pipes open after it
+        // exits so the drain is timed separately from the process itself
+        awaitDrain( outDrain, errDrain );
+        
+        long drained = System.currentTimeMillis();
+        
         // We could split this out but its rarely done, for now it affects all
         boolean deleteFiles  = true;
         
@@ -607,8 +1079,8 @@ public class ShellEngine extends AbstractEngine {
         // Strings are easier to process although possibly more memory intensive
         // depending on the data
         //int shellExitStatus = shell.exitValue();
-        String out = convertStreamToStr( outP );
-        String err = convertStreamToStr( errP );
+        String out = describeDrain( outDrain );
+        String err = describeDrain( errDrain );
         
         // Better user experience
         if ( !out.isEmpty() ) System.out.println( out );
@@ -619,7 +1091,7 @@ public class ShellEngine extends AbstractEngine {
         // The process will produce a control file specifying how
         // we parse the output data
         // it might just reuse the original
-        List<String[]> outControl = parseFile( stdctlFile, dataControlFormat, dataControlCompressed, deleteFiles, new LinkedHashMap<>() );
+        List<String[]> outControl = parseFile( stdctlFile, dataControlFormat, dataControlCompression, deleteFiles, new LinkedHashMap<>() );
         
         // iterate over that control file building the settings we need to parse
         // the others
@@ -643,144 +1115,1253 @@ public class ShellEngine extends AbstractEngine {
             else if ( name.equals( cntrlPrefix + "DATA_OUTPUT_FORMAT__DELIMITER" ) ) outSettings.put( "delimiter", value );
             else if ( name.equals( cntrlPrefix + "DATA_OUTPUT_FORMAT__QUOTECHAR" ) ) outSettings.put( "quotechar", value );
             else if ( name.equals( cntrlPrefix + "DATA_OUTPUT_FORMAT__HEADER"    ) ) outSettings.put( "header",    value );
-            else if ( name.equals( cntrlPrefix + "DATA_OUTPUT_COMPRESSION"       ) ) dataOutputCompressed = value.equalsIgnoreCase( "gzip" );
+            else if ( name.equals( cntrlPrefix + "DATA_OUTPUT_COMPRESSION"       ) ) dataOutputCompression = Compression.forName( value );
             else if ( name.equals( cntrlPrefix + "DATA_ERROR_FORMAT"             ) ) dataErrorFormat  = value;
             else if ( name.equals( cntrlPrefix + "DATA_ERROR_FORMAT__DELIMITER"  ) ) errSettings.put( "delimiter", value );
             else if ( name.equals( cntrlPrefix + "DATA_ERROR_FORMAT__QUOTECHAR"  ) ) errSettings.put( "quotechar", value );
             else if ( name.equals( cntrlPrefix + "DATA_ERROR_FORMAT__HEADER"     ) ) errSettings.put( "header",    value );
-            else if ( name.equals( cntrlPrefix + "DATA_ERROR_COMPRESSION"        ) ) dataErrorCompressed = value.equalsIgnoreCase( "gzip" );
+            else if ( name.equals( cntrlPrefix + "DATA_ERROR_COMPRESSION"        ) ) dataErrorCompression = Compression.forName( value );
             
             
         }        
                 
         // Parse the files adding to our output for the fixture to use
-        res.setData(      parseFile( stdoutFile, dataOutputFormat, dataOutputCompressed, deleteFiles, outSettings ) );
-        res.setErrorData( parseFile( stderrFile, dataErrorFormat,  dataErrorCompressed,  deleteFiles, errSettings ) );
+        res.setData(      parseFile( stdoutFile, dataOutputFormat, dataOutputCompression, deleteFiles, outSettings ) );
+        res.setErrorData( parseFile( stderrFile, dataErrorFormat,  dataErrorCompression,  deleteFiles, errSettings ) );
+        
+        // Add the status
+        ArrayList<String[]> messages = new ArrayList<>();
+        messages.add( new String[]{ Integer.toString( shellExitStatus ) } );
+        res.setReturnCode( messages );
+        //}
+        //catch ( Exception ex ) {
+        //    res.setReturnCode( 1 );
+        //    res.setMessages( new String[]{} );
+        //    res.setErrors(   new String[]{ ex.getMessage() }  );
+        //    res.setCellStatuses( new int[]{ 2, -1, -1 } );
+        //}
+        
+        recordExecution( res, before, ended, drained, outDrain, errDrain );
+        
+        // Spill files are only kept for as long as the data files
+        if ( deleteFiles ) {
+            deleteSpillFile( outDrain );
+            deleteSpillFile( errDrain );
+        }
+        
+        return res;
+    }
+    
+    //--------------------------------------------------------------------------
+    
+    public ProcessBuilder getRunner( Properties props, String fixtureType ) throws IOException {
+        
+        // The controller is effectively the name of the script that will be executed
+        // Allow the user some ability to change the argument e.g. in windows its more common to use
+        //   /MY-PARAM than --MY-PARAM
+        String controllerName = "";
+        String shell = props.getProperty( "SHELL", "bash" ).toLowerCase();
+        
+        switch ( shell ) {
+            
+            case "bash"       : controllerName = ".__controller__.sh"; break;
+            case "ksh"        : controllerName = ".__controller__.sh"; break;
+            case "sh"         : controllerName = ".__controller__.sh"; break;
+            case "zsh"        : controllerName = ".__controller__.sh"; break;
+            case "fish"       : controllerName = ".__controller__.sh"; break;
+            case "powershell" : controllerName = "__controller__.ps1"; break;
+                    
+        }
+        
+        File controllerDir    = new File(  "neo"         + File.separatorChar
+                                         + "engines"     + File.separatorChar
+                                         + "ShellEngine" );
+        
+        controllerName        = props.getProperty( "CONTROLLER_NAME",              controllerName );
+        String controllerHome = props.getProperty( "CONTROLLER_HOME",              controllerDir.getCanonicalPath() );
+        String textCase       = props.getProperty( "CONTROLLER_ARGUMENT_TEXTCASE", "lower"  );
+        String filler         = props.getProperty( "CONTROLLER_ARGUMENT_FILLER",   "-"  );
+        String paramPrefix    = props.getProperty( "CONTROLLER_ARGUMENT_PREFIX",   "--" );
+        String paramSuffix    = props.getProperty( "CONTROLLER_ARGUMENT_SUFFIX",   ""   ); // For completeness
+        
+        File controller       = new File( controllerHome + File.separatorChar + controllerName );
+        
+        // Convert fixture name to lowercase if required
+        switch ( textCase ) {
+            
+            case "lower" : fixtureType = fixtureType.toLowerCase(); break;
+            case "upper" : fixtureType = fixtureType.toUpperCase(); break;
+            
+        }
+        
+        // Pass an argument to the controller script along the lines of --create-or-replace, --truncate, --select-from
+        // or /CREATEOREREPLACE whatever user wants
+        StringBuilder tmpPrototype   = new StringBuilder();
+        tmpPrototype.append( paramPrefix );
+        tmpPrototype.append( fixtureType.replace( "_", filler ) );
+        tmpPrototype.append( paramSuffix );
+        
+        // ProcessBuilder expects a list, ours is quite simple <script> <param>
+        ArrayList<String> commands = new ArrayList<>();
+        commands.add( controller.getCanonicalPath() );
+        commands.add( tmpPrototype.toString()       );
+        
+        // Build our command line
+        return new ProcessBuilder( commands );
+    }
+    
+    /**
+     * Returns the pool of warm shell workers, starting it on first use
+     * @return
+     */
+    protected synchronized ShellWorkerPool getWorkerPool() {
+        
+        if ( m_workers == null ) {
+            
+            String shell   = m_properties.getProperty( "SHELL",                "bash" );
+            String size    = m_properties.getProperty( "POOL_SIZE",            "4"    );
+            String maxUses = m_properties.getProperty( "POOL_WORKER_MAX_USES", "100"  );
+            
+            // Workers start with the same environment a forked controller would
+            Map<String, String> env = new ProcessBuilder().environment();
+            
+            m_workers = new ShellWorkerPool(  shell
+                                            , env
+                                            , Integer.parseInt( size.trim()    )
+                                            , Integer.parseInt( maxUses.trim() ) );
+        }
+        
+        return m_workers;
+    }
+    
+    /**
+     * Creates the metrics sink named by the engine config, or null if metrics
+     * are not published.  Configured by
+     * 
+     * METRICS_SINK  - csv appends a row per metric, json a line per invocation,
+     *                 anything else publishes nothing
+     * METRICS_FILE  - the file appended to, default flint_metrics.csv or
+     *                 flint_metrics.jsonl in the temp directory
+     * 
+     * @return
+     * @throws IOException 
+     */
+    protected IMetricsSink createMetricsSink() throws IOException {
+        
+        String sink      = m_properties.getProperty( "METRICS_SINK", "" ).trim().toLowerCase();
+        String directory = System.getProperty( "java.io.tmpdir" );
+        
+        switch ( sink ) {
+            
+            case "csv"  : return new CSVMetricsSink(  new File( m_properties.getProperty( "METRICS_FILE", directory + File.separator + "flint_metrics.csv"   ) ) );
+            case "json" : return new JSONMetricsSink( new File( m_properties.getProperty( "METRICS_FILE", directory + File.separator + "flint_metrics.jsonl" ) ) );
+            
+            default : return null;
+            
+        }
+    }
+    
+    /**
+     * Creates the result cache described by the engine config, or null if
+     * results are not cached.  Only calls whose fixture arguments set CACHE to
+     * true are cached.  Configured by
+     * 
+     * CACHE_SIZE               - most outputs held, default 0 which caches nothing
+     * CACHE_MAX_ROWS           - most rows held across every output, default 100000
+     * CACHE_TTL                - milliseconds an output is kept, default 600000,
+     *                            0 keeps it until evicted
+     * CACHE_MUTATING_FIXTURES  - comma separated fixtures that invalidate the
+     *                            outputs of their instance, default CREATE,
+     *                            CREATE_OR_REPLACE, DROP and TRUNCATE
+     * 
+     * @return
+     */
+    protected ResultCache createResultCache() {
+        
+        int size = Integer.parseInt( m_properties.getProperty( "CACHE_SIZE", "0" ).trim() );
+        if ( size <= 0 ) {
+            return null;
+        }
+        
+        int    maxRows  = Integer.parseInt( m_properties.getProperty( "CACHE_MAX_ROWS", "100000" ).trim() );
+        long   ttl      = Long.parseLong(   m_properties.getProperty( "CACHE_TTL",      "600000" ).trim() );
+        String mutating = m_properties.getProperty( "CACHE_MUTATING_FIXTURES", "CREATE,CREATE_OR_REPLACE,DROP,TRUNCATE" );
+        
+        return new ResultCache( size, maxRows, ttl, Arrays.asList( mutating.split( "," ) ) );
+    }
+    
+    /**
+     * Returns the pool of work directories, creating it on first use, or null
+     * if directories are not reused.  Configured by
+     * 
+     * WORK_POOL_SIZE  - directories kept ready, default 0 which creates and
+     *                   deletes a directory per invocation
+     * 
+     * The controller is copied once for the life of the pool and hard linked
+     * into each directory, so changes to it are not seen until the engine is
+     * destroyed
+     * @param controller The controller each directory holds, null if referenced
+     * @param pipes Create the input and output as named pipes
+     * @return
+     * @throws IOException 
+     */
+    protected synchronized WorkDirectoryPool getWorkDirectoryPool( File controller, boolean pipes ) throws IOException {
+        
+        if ( m_workDirectories == null ) {
+            
+            int size = Integer.parseInt( m_properties.getProperty( "WORK_POOL_SIZE", "0" ).trim() );
+            if ( size <= 0 ) {
+                return null;
+            }
+            
+            Path shared = null;
+            File copy   = null;
+            
+            if ( controller != null ) {
+                shared = createWorkDirectory();
+                copy   = shared.resolve( controller.getName() ).toFile();
+                Files.copy( controller.toPath(), copy.toPath() );
+            }
+            
+            File master = copy;
+            
+            m_workDirectories = new WorkDirectoryPool( () -> newWorkDirectory( master, true, pipes ), size, shared );
+        }
+        
+        return m_workDirectories;
+    }
+    
+    /**
+     * Creates a work directory holding the data files and optionally the controller
+     * @param controller The controller to place in the directory, null if referenced
+     * @param link Hard link the controller rather than copy it, falling back to
+     *             a copy where links are not supported
+     * @param pipes Create the input and output as named pipes
+     * @return
+     * @throws IOException 
+     */
+    protected WorkDirectory newWorkDirectory( File controller, boolean link, boolean pipes ) throws IOException {
+        
+        Path tempDirectory = createWorkDirectory();
+        File copied        = null;
+        
+        if ( controller != null ) {
+            copied = tempDirectory.resolve( controller.getName() ).toFile();
+            
+            boolean linked = false;
+            if ( link ) {
+                try {
+                    Files.createLink( copied.toPath(), controller.toPath() );
+                    linked = true;
+                }
+                catch ( IOException | UnsupportedOperationException ex ) {
+                }
+            }
+            
+            if ( !linked ) {
+                Files.copy( controller.toPath(), copied.toPath() );
+            }
+        }
+        
+        WorkDirectory work = new WorkDirectory( tempDirectory, copied );
+        
+        // The paths are collected rather than given to an invocation so they
+        // can be handed to each that uses the directory
+        InvokationInput paths = new InvokationInput();
+        
+        work.addFile( "INPUT"  , addPath( paths, false, m_properties, "INPUT"   , tempDirectory.toString(), pipes ), pipes );
+        work.addFile( "OUTPUT" , addPath( paths, false, m_properties, "OUTPUT"  , tempDirectory.toString(), pipes ), pipes );
+        work.addFile( "ERROR"  , addPath( paths, false, m_properties, "ERROR"   , tempDirectory.toString() ), false );
+        work.addFile( "CONTROL", addPath( paths, false, m_properties, "CONTROL" , tempDirectory.toString() ), false );
+        work.addFile( "VARS"   , addPath( paths, false, m_properties, "VARS"    , tempDirectory.toString() ), false );
+        
+        work.addParameters( paths.getControlParameters() );
+        
+        return work;
+    }
+    
+    /**
+     * Returns a work directory for an invocation, from the pool if there is one,
+     * and tells the invocation where its files are
+     * @param input The input of the invocation
+     * @param controller The controller the directory should hold, null if referenced
+     * @param pipes Create the input and output as named pipes
+     * @return
+     * @throws IOException 
+     */
+    protected WorkDirectory acquireWorkDirectory( InvokationInput input, File controller, boolean pipes ) throws IOException {
+        
+        WorkDirectoryPool pool = getWorkDirectoryPool( controller, pipes );
+        
+        WorkDirectory work = ( pool != null ) ? pool.acquire() : newWorkDirectory( controller, false, pipes );
+        work.applyTo( input );
+        
+        return work;
+    }
+    
+    /**
+     * Finishes with the work directory of an invocation, a pooled directory is
+     * scrubbed for reuse in the background otherwise it is deleted
+     * @param work The directory
+     * @param deleteFiles False if the files must be left, see REMOVE_TEMP_FILES
+     * @throws IOException 
+     */
+    protected void releaseWorkDirectory( WorkDirectory work, boolean deleteFiles ) throws IOException {
+        
+        WorkDirectoryPool pool;
+        synchronized ( this ) {
+            pool = m_workDirectories;
+        }
+        
+        if ( pool != null ) {
+            pool.release( work, !deleteFiles );
+        }
+        else if ( deleteFiles ) {
+            deleteDirectory( work.getPath() );
+        }
+    }
+    
+    /**
+     * Creates the temporary directory all files of a single invocation are placed in
+     * @return
+     * @throws IOException 
+     */
+    protected Path createWorkDirectory() throws IOException {
+        
+        // Directory to place files in, by default, tmp
+        String tmpDefaultDirectory = System.getProperty( "java.io.tmpdir" );
+        // File prefixes, input data, output data, error data, and control parameters etc
+        String parentDirectory = m_properties.getProperty( "DATA_DIRECTORY",   tmpDefaultDirectory );
+        String prefix          = m_properties.getProperty( "DATA_DIRECTORY_WORK_PREFIX", ""    );
+        String perms           = m_properties.getProperty( "DATA_DIRECTORY_PERMISSIONS", "700" );
+        
+        Path base = new File( parentDirectory ).toPath();
+        return Files.createTempDirectory(  base
+                                         , prefix
+                                         , PosixFilePermissions.asFileAttribute( PosixFilePermissions.fromString( perms ) ) );
+    }
+    
+    /**
+     * Builds the ordered set of variables the controller script is given, the
+     * server environment followed by control parameters, environment parameters,
+     * options, definitions, overrides and finally fixture arguments
+     * @param env The environment of the process about to be run, cleared if the
+     *            environment should not be inherited
+     * @param input The input passed by the fixture
+     * @return
+     */
+    protected LinkedHashMap<String, String> buildEnvironment( Map<String, String> env, InvokationInput input ) {
+        
+        // Determines whether to inherit the server environment or not, default is not
+        String forceInherit         = m_properties.getProperty( "FORCE_INHERIT_ENVIRONMENT", "false"             );
+        
+        // Prefixes when we turn our objects into environment variables
+        String defPrefix            = m_properties.getProperty( "DEFINITIONS_PREFIX",        ""                  );
+        String overPrefix           = m_properties.getProperty( "OVERRIDES_PREFIX",          ""                  );
+        String cntrlPrefix          = m_properties.getProperty( "CONTROL_PREFIX",            ""                  );
+        String argPrefix            = m_properties.getProperty( "ARGUMENTS_PREFIX",          ""                  );
+        String optsPrefix           = m_properties.getProperty( "OPTIONS_PREFIX",            ""                  );
+        String paramPrefix          = m_properties.getProperty( "PARAMETERS_PREFIX",         ""                  );
+        
+        // Add all of the core definitions but do not change case of the environment parameters
+        Map<String, String> nop  = InvokationInput.arrayToMap( input.getParameters(),        null,        false );
+        
+        // Framework may have set some parameters, merge them if appropriate.  E.g. fixtures
+        // typically add their own control parameters i.e. OVERWRITE=true, LIMIT=100
+        Map<String, String> cntl = new LinkedHashMap<>();
+        cntl.putAll( InvokationInput.arrayToMap( InvokationInput.propertiesToArray( m_properties ), cntrlPrefix ) );
+        cntl.putAll( InvokationInput.arrayToMap( input.getControlParameters(),                      cntrlPrefix ) );
+        
+        Map<String, String> pars = InvokationInput.arrayToMap( input.getParameters(),        paramPrefix        );
+        Map<String, String> opts = InvokationInput.arrayToMap( input.getOptions(),           optsPrefix         );
+        Map<String, String> defs = InvokationInput.arrayToMap( input.getDefinitions(),       defPrefix          );  
+        Map<String, String> over = InvokationInput.arrayToMap( input.getOverrides(),         overPrefix         );
+        Map<String, String> args = InvokationInput.arrayToMap( input.getArguments(),         argPrefix          );
+        
+        // Check if we want to inherit the environment variables defined as fitnesse
+        // was started up or just truncate and start anew
+        boolean force = false;
+        try {
+            force = Boolean.parseBoolean( forceInherit );
+        }
+        catch ( Exception ex ) {
+            
+        }
+        
+        // Reset environment if an option was specified or if a config item asked for it
+        String optionsForce = opts.get( optsPrefix + "FORCE_INHERIT_ENVIRONMENT" );
+        if ( !force && optionsForce != null && optionsForce.equalsIgnoreCase( "false" ) ) {
+            env.clear();
+        }
+        
+        LinkedHashMap<String, String> mp = new LinkedHashMap<>();
+        mp.putAll( env );
+        mp.putAll(nop);
+        mp.putAll(cntl);
+        mp.putAll(pars);
+        mp.putAll(opts);
+        mp.putAll(defs);
+        mp.putAll(over);
+        mp.putAll(args);
+        
+        return mp;
+    }
+    
+    /**
+     * Determines whether the files of an invocation should be removed once it
+     * has finished, driven by the REMOVE_TEMP_FILES control parameter
+     * @param input The input passed by the fixture
+     * @param shellExitStatus The exit status of the controller
+     * @return
+     */
+    protected boolean isDeleteRequired( InvokationInput input, int shellExitStatus ) {
+        
+        String cntrlPrefix = m_properties.getProperty( "CONTROL_PREFIX", "" );
+        
+        Map<String, String> cntl = new LinkedHashMap<>();
+        cntl.putAll( InvokationInput.arrayToMap( InvokationInput.propertiesToArray( m_properties ), cntrlPrefix ) );
+        cntl.putAll( InvokationInput.arrayToMap( input.getControlParameters(),                      cntrlPrefix ) );
+        
+        String removeTempFiles = cntl.getOrDefault( cntrlPrefix + "REMOVE_TEMP_FILES", "" ).trim().toLowerCase();
+        
+        // Certain scenarios we do not delete files
+        switch ( removeTempFiles ) {
+                
+            case "never"      : // do not delete
+                                return false;
+            case "on error"   : // not errored so leave
+                                return shellExitStatus != 0;
+            case "on success" : // process failed
+                                return shellExitStatus == 0;
+                
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Writes the variables as a crude export script, sourcing it gives the same
+     * values the process environment would
+     * @param f The file to write
+     * @param mp The variables to export
+     * @throws IOException 
+     */
+    protected void writeVariables( File f, Map<String, String> mp ) throws IOException {
+        
+        List<String[]> varData = new ArrayList<>();
+        varData.add( new String[]{ "#!/bin/sh" } );
+        
+        for ( Map.Entry<String, String> e : mp.entrySet() ) {
+            varData.add( new String[]{ "export " + e.getKey() + "=" + quote( e.getValue() ) } );
+        }
+        
+        writeFile( f, "RAW", false, varData, new LinkedHashMap<>() );
+    }
+    
+    /**
+     * Writes a script that turns the base environment into the target one,
+     * exporting only new or changed variables and unsetting any removed
+     * @param f The file to write
+     * @param base The environment the script will be sourced in
+     * @param target The environment required
+     * @throws IOException 
+     */
+    protected void writeVariableDelta( File f, Map<String, String> base, Map<String, String> target ) throws IOException {
+        
+        List<String[]> varData = new ArrayList<>();
+        varData.add( new String[]{ "#!/bin/sh" } );
+        
+        String name;
+        String value;
+        
+        for ( Map.Entry<String, String> e : base.entrySet() ) {
+            name = e.getKey();
+            
+            if ( !target.containsKey( name ) ) {
+                varData.add( new String[]{ "unset " + name } );
+            }
+        }
+        
+        for ( Map.Entry<String, String> e : target.entrySet() ) {
+            name  = e.getKey();
+            value = e.getValue();
+            
+            if ( !value.equals( base.get( name ) ) ) {
+                varData.add( new String[]{ "export " + name + "=" + quote( value ) } );
+            }
+        }
+        
+        writeFile( f, "RAW", false, varData, new LinkedHashMap<>() );
+    }
+    
+    /**
+     * Quotes a value for a shell script so it is read back exactly, quotes,
+     * dollars, backticks and backslashes included
+     * @param value The value
+     * @return
+     */
+    protected static String quote( String value ) {
+        return "'" + value.replace( "'", "'\\''" ) + "'";
+    }
+    
+    /**
+     * Writes the fixtures data to the input file in the configured format
+     * @param f The file to write
+     * @param input The input passed by the fixture
+     * @throws IOException 
+     */
+    protected void writeInput( File f, InvokationInput input ) throws IOException {
+        writeInput( new FileOutputStream( f ), input );
+    }
+    
+    /**
+     * Writes the fixtures data to a stream, such as a named pipe, in the
+     * configured format
+     * @param out The stream to write, closed once written
+     * @param input The input passed by the fixture
+     * @throws IOException 
+     */
+    protected void writeInput( OutputStream out, InvokationInput input ) throws IOException {
+        
+        // File formats of input / output files, default is CSV
+        String      dataInputFormat      = m_properties.getProperty( "DATA_INPUT_FORMAT", "CSV" );
+        Compression dataInputCompression = Compression.forName( m_properties.getProperty( "DATA_INPUT_COMPRESSION", "" ) );
+        
+        writeInput( out, input, dataInputFormat, dataInputCompression );
+    }
+    
+    /**
+     * Writes the fixtures data to a stream in the given format.  The rows are
+     * pulled from the inputs data source as they are written, so data that is
+     * streamed or generated is never all held in memory
+     * @param out The stream to write, closed once written
+     * @param input The input passed by the fixture
+     * @param format The format of the data e.g. CSV
+     * @param compression How the data should be compressed
+     * @throws IOException 
+     */
+    protected void writeInput( OutputStream out, InvokationInput input, String format, Compression compression ) throws IOException {
+        
+        IRowSource         inData = input.getDataSource();
+        Iterator<String[]> rows   = ( inData != null ) ? inData.iterator() : Collections.emptyIterator();
+        
+        HashMap<String, String> inSettings = new LinkedHashMap<>();
+        // Double check whether the fixture itself passed in no columns e.g. a drop fixture typically doesnt
+        if ( !rows.hasNext() ) {
+            inSettings.put( "header", "false" );
+        }
+        
+        writeStream( out, format, compression, rows, inSettings );
+    }
+    
+    /**
+     * Reads the control file the controller produced, which may override how the
+     * output and error files were written, then parses those into the result
+     * @param res The output to populate
+     * @param stdctlFile The control file
+     * @param stdoutFile The data output file
+     * @param stderrFile The error output file
+     * @param deleteOnExit Delete the files once parsed
+     * @throws IOException 
+     */
+    protected void parseResults( InvokationOutput res, File stdctlFile, File stdoutFile, File stderrFile, boolean deleteOnExit ) throws IOException {
+        parseResults( res, stdctlFile, stdoutFile, stderrFile, deleteOnExit, false );
+    }
+    
+    /**
+     * Reads the control file the controller produced, which may override how the
+     * output and error files were written, then parses those into the result
+     * @param res The output to populate
+     * @param stdctlFile The control file
+     * @param stdoutFile The data output file
+     * @param stderrFile The error output file
+     * @param deleteOnExit Delete the files once parsed
+     * @param outputStreamed The output was parsed from a pipe as it was written,
+     *                       only the error file is parsed
+     * @throws IOException 
+     */
+    protected void parseResults( InvokationOutput res, File stdctlFile, File stdoutFile, File stderrFile, boolean deleteOnExit, boolean outputStreamed ) throws IOException {
+        
+        String cntrlPrefix          = m_properties.getProperty( "CONTROL_PREFIX",            ""                  );
+        
+        // File formats of input / output files, default is CSV
+        String tmpDefaultFormat     = "CSV";
+        String dataOutputFormat     = m_properties.getProperty( "DATA_OUTPUT_FORMAT",        tmpDefaultFormat    );
+        String dataErrorFormat      = m_properties.getProperty( "DATA_ERROR_FORMAT",         tmpDefaultFormat    );
+        String dataControlFormat    = m_properties.getProperty( "DATA_CONTROL_FORMAT",       tmpDefaultFormat    );
+        
+        // Determine whether this file should be compressed
+        Compression dataOutputCompression  = Compression.forName( m_properties.getProperty( "DATA_OUTPUT_COMPRESSION",  "" ) );
+        Compression dataErrorCompression   = Compression.forName( m_properties.getProperty( "DATA_ERROR_COMPRESSION",   "" ) );
+        Compression dataControlCompression = Compression.forName( m_properties.getProperty( "DATA_CONTROL_COMPRESSION", "" ) );
+        
+        // The process will produce a control file specifying how
+        // we parse the output data
+        // it might just reuse the original
+        List<String[]> outControl = parseFile( stdctlFile, dataControlFormat, dataControlCompression, deleteOnExit, new LinkedHashMap<>() );
+        
+        // iterate over that control file building the settings we need to parse
+        // the others
+        Iterator it = outControl.iterator();
+        String[] tmp;
+        String   name;
+        String   value;
+        HashMap<String, String> outSettings = new LinkedHashMap<>();
+        HashMap<String, String> errSettings = new LinkedHashMap<>();
+        
+        while ( it.hasNext() ) {
+            tmp = (String[])it.next();
+            
+            // An empty control file e.g. from a fixture that was never run
+            if ( tmp.length == 0 ) {
+                continue;
+            }
+            
+            name   = tmp[0].trim();
+            value = "";
+            if ( tmp.length > 1 ) {
+                value = tmp[1].trim();
+            }
+
+            // Determine how the output files were written by reading the output control file
+            // and hecking for the instructions / control parameters
+                 if ( name.equals( cntrlPrefix + "DATA_OUTPUT_FORMAT"            ) ) dataOutputFormat = value;
+            else if ( name.equals( cntrlPrefix + "DATA_OUTPUT_FORMAT__DELIMITER" ) ) outSettings.put( "delimiter", value );
+            else if ( name.equals( cntrlPrefix + "DATA_OUTPUT_FORMAT__QUOTECHAR" ) ) outSettings.put( "quotechar", value );
+            else if ( name.equals( cntrlPrefix + "DATA_OUTPUT_FORMAT__HEADER"    ) ) outSettings.put( "header",    value );
+            else if ( name.equals( cntrlPrefix + "DATA_OUTPUT_COMPRESSION"       ) ) dataOutputCompression = Compression.forName( value );
+            else if ( name.equals( cntrlPrefix + "DATA_ERROR_FORMAT"             ) ) dataErrorFormat  = value;
+            else if ( name.equals( cntrlPrefix + "DATA_ERROR_FORMAT__DELIMITER"  ) ) errSettings.put( "delimiter", value );
+            else if ( name.equals( cntrlPrefix + "DATA_ERROR_FORMAT__QUOTECHAR"  ) ) errSettings.put( "quotechar", value );
+            else if ( name.equals( cntrlPrefix + "DATA_ERROR_FORMAT__HEADER"     ) ) errSettings.put( "header",    value );
+            else if ( name.equals( cntrlPrefix + "DATA_ERROR_COMPRESSION"        ) ) dataErrorCompression = Compression.forName( value );
+            
+        }
+        
+        // Large results can be left on disk and read as the fixture walks them
+        // rather than parsed into memory up front
+        String dataOutputStorage = m_properties.getProperty( "DATA_OUTPUT_STORAGE", "memory" ).trim().toLowerCase();
+        
+        if ( outputStreamed ) {
+            
+            // Too late to change how the output is read
+            boolean overridden =    !dataOutputFormat.equals( m_properties.getProperty( "DATA_OUTPUT_FORMAT", tmpDefaultFormat ) )
+                                 || dataOutputCompression != Compression.forName( m_properties.getProperty( "DATA_OUTPUT_COMPRESSION", "" ) )
+                                 || !outSettings.isEmpty();
+            
+            if ( overridden ) {
+                System.err.println( "DATA_OUTPUT settings in the control file are ignored when DATA_TRANSPORT is fifo" );
+            }
+        }
+        else if ( dataOutputStorage.equals( "file" ) ) {
+            res.setDataSource( keepFile( stdoutFile, dataOutputFormat, dataOutputCompression, outSettings ) );
+        }
+        else {
+            res.setData( parseFile( stdoutFile, dataOutputFormat, dataOutputCompression, deleteOnExit, outSettings ) );
+        }
+        
+        res.setErrorData( parseFile( stderrFile, dataErrorFormat,  dataErrorCompression,  deleteOnExit, errSettings ) );
+    }
+    
+    /**
+     * Moves an output file out of the work directory, which may be deleted, and
+     * returns a source that reads it on demand.  The file is removed when the
+     * source is closed or failing that when the JVM exits
+     * @param f The file the controller wrote
+     * @param format The format of the file e.g. CSV, XML etc
+     * @param compression How the controller compressed the file
+     * @param settings Custom settings for the reader e.g. delimiter if CSV etc
+     * @return
+     * @throws IOException 
+     */
+    protected IRowSource keepFile( File f, String format, Compression compression, Map<String, String> settings ) throws IOException {
+        
+        String      storageDirectory   = m_properties.getProperty( "DATA_OUTPUT_STORAGE_DIRECTORY", System.getProperty( "java.io.tmpdir" ) );
+        Compression storageCompression = Compression.forName( m_properties.getProperty( "DATA_OUTPUT_STORAGE_COMPRESSION", "" ) );
+        
+        // Trade cpu for disk when asked to, the file is then inflated as read
+        if ( storageCompression.isCompressed() && !compression.isCompressed() ) {
+            
+            IRowSource source;
+            try ( InputStream in = new FileInputStream( f ) ) {
+                source = keepStream( in, format, compression, settings );
+            }
+            
+            f.delete();
+            return source;
+        }
+        
+        File kept = File.createTempFile( "flint_data_", ".dat" + compression.getExtension(), new File( storageDirectory ) );
+        kept.deleteOnExit();
+        
+        Files.move( f.toPath(), kept.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        
+        return new FileRowSource( m_ioFactory, kept, format, compression, settings, true );
+    }
+    
+    /**
+     * Copies output from a stream, such as a named pipe, to a file outside the
+     * work directory and returns a source that reads it on demand, as keepFile
+     * does for output already in a file
+     * @param in The output the controller wrote
+     * @param format The format of the data e.g. CSV, XML etc
+     * @param compression How the controller compressed the data
+     * @param settings Custom settings for the reader e.g. delimiter if CSV etc
+     * @return
+     * @throws IOException 
+     */
+    protected IRowSource keepStream( InputStream in, String format, Compression compression, Map<String, String> settings ) throws IOException {
+        
+        String      storageDirectory   = m_properties.getProperty( "DATA_OUTPUT_STORAGE_DIRECTORY", System.getProperty( "java.io.tmpdir" ) );
+        Compression storageCompression = Compression.forName( m_properties.getProperty( "DATA_OUTPUT_STORAGE_COMPRESSION", "" ) );
+        
+        // Data the controller already compressed is kept as it is
+        boolean     compress        = storageCompression.isCompressed() && !compression.isCompressed();
+        Compression keptCompression = compress ? storageCompression : compression;
+        File        kept            = File.createTempFile( "flint_data_", ".dat" + keptCompression.getExtension(), new File( storageDirectory ) );
+        kept.deleteOnExit();
+        
+        OutputStream fOut = new FileOutputStream( kept );
+        
+        try ( OutputStream out = new BufferedOutputStream( compress ? storageCompression.compress( fOut ) : fOut, 65536 ) ) {
+            
+            byte[] buffer = new byte[ 65536 ];
+            int    n;
+            
+            while ( ( n = in.read( buffer ) ) != -1 ) {
+                out.write( buffer, 0, n );
+            }
+        }
+        
+        return new FileRowSource( m_ioFactory, kept, format, keptCompression, settings, true );
+    }
+    
+    /**
+     * Creates a unique file using the information from the engines configuration
+     * identified by the key
+     * @param input The input data to add the newly created file's information to
+     * @param unique Set to true to use a unique ID else false to use key within the filename
+     * @param props Properties used to configure this engine
+     * @param key A unique identifier for this files information
+     * @param defaultDirectory The directory to add the file to if a directory variable cant be found
+     * @return
+     * @throws IOException 
+     */
+    protected File addPath( InvokationInput input, boolean unique, Properties props, String key, String defaultDirectory) throws IOException {
+        return addPath( input, unique, props, key, defaultDirectory, false );
+    }
+    
+    /**
+     * Creates a unique file or named pipe using the information from the engines
+     * configuration identified by the key
+     * @param input The input data to add the newly created file's information to
+     * @param unique Set to true to use a unique ID else false to use key within the filename
+     * @param props Properties used to configure this engine
+     * @param key A unique identifier for this files information
+     * @param defaultDirectory The directory to add the file to if a directory variable cant be found
+     * @param pipe Create a named pipe (FIFO) rather than a regular file
+     * @return
+     * @throws IOException 
+     */
+    protected File addPath( InvokationInput input, boolean unique, Properties props, String key, String defaultDirectory, boolean pipe ) throws IOException {
+    
+        // For performance this is so common we create this key prefix once
+        StringBuilder dataPrefix = new StringBuilder( "DATA_" );
+        dataPrefix.append( key );
+        String dPrefix = dataPrefix.toString();
+        
+        // File prefixes, input data, output data, error data, and control parameters etc
+        String directory = props.getProperty( dPrefix + "_DIRECTORY",   defaultDirectory );
+        String prefix    = props.getProperty( dPrefix + "_PATH_PREFIX", ""    );
+        String suffix    = props.getProperty( dPrefix + "_PATH_SUFFIX", ""    );
+        String perms     = props.getProperty( dPrefix + "_PERMISSIONS", "600" );
+        
+        // Create the file
+        File d = new File( directory );
+        File f;
+        
+        if ( unique ) {
+            f = File.createTempFile( prefix, suffix, d );
+        }
+        else {
+            f = new File( d.getCanonicalPath() + File.separator + prefix + key + suffix );
+            f.createNewFile();
+        }
+        
+        // The name is reserved by the regular file, swap it for the pipe
+        if ( pipe ) {
+            Files.delete( f.toPath() );
+            PipeTransfer.createPipe( f );
+        }
+        
+        String uniqueID = f.getName().replaceFirst( "^" + prefix, "" ).replaceFirst( suffix + "$", "" );
+                
+        // Tell the engine where it is
+        input.addControlParameter( dPrefix + "_PATH",       f.getCanonicalPath()  );
+        input.addControlParameter( dPrefix + "_UNIQUE_ID",  uniqueID );
+        
+        // change file permissions
+        Files.setPosixFilePermissions(  Paths.get( f.getCanonicalPath() )
+                                      , PosixFilePermissions.fromString( perms ) );
+        
+        return f;
+    }
+    
+    /**
+     * Starts pumping a process stream on a background thread.  Controlled by the
+     * engine config:
+     * 
+     * DRAIN_MODE              - ring (default) keep only the tail in memory,
+     *                           spill also writes the whole stream to a file
+     * DRAIN_CAPACITY          - bytes of the tail held in memory, default 65536
+     * DRAIN_[key]_CAPACITY    - overrides DRAIN_CAPACITY for STDOUT or STDERR
+     * 
+     * @param in The stream to drain
+     * @param key Identifies the stream, STDOUT or STDERR
+     * @param directory Where to place any spill file
+     * @return
+     * @throws IOException 
+     */
+    protected StreamDrainer startDrainer( InputStream in, String key, File directory ) throws IOException {
+        
+        String mode     = m_properties.getProperty( "DRAIN_MODE",     "ring"  ).trim().toLowerCase();
+        String capacity = m_properties.getProperty( "DRAIN_CAPACITY", "65536" );
+        capacity        = m_properties.getProperty( "DRAIN_" + key + "_CAPACITY", capacity );
+        
+        File spill = null;
+        if ( mode.equals( "spill" ) ) {
+            spill = File.createTempFile( ".__" + key.toLowerCase() + "__", ".log", directory );
+        }
+        
+        StreamDrainer drainer = new StreamDrainer( in, Integer.parseInt( capacity.trim() ), spill );
+        drainer.start( "ShellEngine-" + key.toLowerCase() );
+        
+        return drainer;
+    }
+    
+    /**
+     * Determines how data is passed to and from the controller, set by the
+     * engine config:
+     * 
+     * DATA_TRANSPORT          - file (default) the input is written before the
+     *                           controller starts and the output parsed once
+     *                           it exits, fifo makes the input and output named
+     *                           pipes written and parsed whilst it runs
+     * 
+     * Pipes can only be read once, in order, so the controller must read its
+     * input sequentially and the output is parsed in the format set in the
+     * engine config, the control file cannot change it
+     * @param props Properties used to configure this engine
+     * @return True if named pipes are used
+     */
+    protected boolean isPipeTransport( Properties props ) {
+        return props.getProperty( "DATA_TRANSPORT", "file" ).trim().equalsIgnoreCase( "fifo" );
+    }
+    
+    /**
+     * Starts writing the fixtures data to the input pipe for the controller to read
+     * @param pipe The input pipe
+     * @param input The input passed by the fixture
+     * @return
+     * @throws IOException 
+     */
+    protected PipeTransfer streamInput( File pipe, InvokationInput input ) throws IOException {
+        
+        PipeTransfer transfer = PipeTransfer.writing( pipe, out -> writeInput( out, input ) );
+        transfer.start( "ShellEngine-input" );
+        
+        return transfer;
+    }
+    
+    /**
+     * Starts parsing the output pipe into the result as the controller writes it,
+     * kept in memory or on disk as DATA_OUTPUT_STORAGE asks
+     * @param pipe The output pipe
+     * @param res The output to populate
+     * @return
+     * @throws IOException 
+     */
+    protected PipeTransfer streamOutput( File pipe, InvokationOutput res ) throws IOException {
+        
+        String      dataOutputFormat      = m_properties.getProperty( "DATA_OUTPUT_FORMAT", "CSV" );
+        Compression dataOutputCompression = Compression.forName( m_properties.getProperty( "DATA_OUTPUT_COMPRESSION", "" ) );
+        String      dataOutputStorage     = m_properties.getProperty( "DATA_OUTPUT_STORAGE", "memory" ).trim().toLowerCase();
+        
+        Map<String, String> outSettings = new LinkedHashMap<>();
+        
+        PipeTransfer transfer = PipeTransfer.reading( pipe, in -> {
+            if ( dataOutputStorage.equals( "file" ) ) {
+                res.setDataSource( keepStream( in, dataOutputFormat, dataOutputCompression, outSettings ) );
+            }
+            else {
+                res.setData( parseReader( openStream( in, dataOutputFormat, dataOutputCompression, outSettings ), dataOutputFormat ) );
+            }
+        } );
+        
+        transfer.start( "ShellEngine-output" );
+        
+        return transfer;
+    }
+    
+    /**
+     * Waits for the pipe transfers once the controller has exited, unblocking
+     * any whose pipe the controller never opened.  The controller need not read
+     * all of its input so failures writing it are not reported, failures
+     * reading the rows to write are
+     * @param inPipe The input transfer, null if it was never started
+     * @param outPipe The output transfer, null if it was never started
+     * @throws IOException If the input rows could not be read or the output
+     *                     could not be parsed
+     * @throws InterruptedException 
+     */
+    protected void finishTransfers( PipeTransfer inPipe, PipeTransfer outPipe ) throws IOException, InterruptedException {
+        
+        if ( outPipe == null ) {
+            
+            // Staging failed before the output was started
+            if ( inPipe != null ) {
+                inPipe.release();
+                inPipe.join();
+            }
+            return;
+        }
+        
+        inPipe.release();
+        outPipe.release();
+        
+        inPipe.join();
+        outPipe.join();
+        
+        // The controller may stop reading its input early, so write errors are
+        // not failures, but rows the source could not produce are
+        Exception inError = inPipe.getError();
+        if ( inError instanceof RuntimeException ) {
+            Throwable cause = ( inError instanceof UncheckedIOException ) ? inError.getCause() : inError;
+            throw new IOException( "Unable to read the input data for " + inPipe.getPipe().getPath(), cause );
+        }
+        
+        Exception error = outPipe.getError();
+        if ( error instanceof IOException ) {
+            throw (IOException)error;
+        }
+        if ( error != null ) {
+            throw new IOException( "Unable to parse output " + outPipe.getPipe().getPath(), error );
+        }
+    }
+    
+    /**
+     * Waits for a controller to exit.  If the waiting thread is interrupted,
+     * e.g. an asynchronous invocation was cancelled or timed out, the controller
+     * and everything it started are terminated before the interruption is
+     * passed on
+     * @param p The controller
+     * @param sampler Samples the controller whilst waiting, may be null
+     * @return The exit status
+     * @throws InterruptedException Once the controller has been terminated
+     */
+    protected int awaitController( Process p, ProcessSampler sampler ) throws InterruptedException {
+        
+        try {
+            return ( sampler != null ) ? sampler.waitFor( p, getSampleInterval() ) : p.waitFor();
+        }
+        catch ( InterruptedException ex ) {
+            terminate( p );
+            throw ex;
+        }
+    }
+    
+    /**
+     * Terminates a controller and its descendants, which are listed first as
+     * they are re-parented once the controller dies.  They are sent SIGTERM and
+     * then SIGKILL if any are still running after KILL_GRACE_PERIOD
+     * milliseconds, default 2000
+     * @param p The controller
+     */
+    protected void terminate( Process p ) {
+        terminate( p, Long.parseLong( m_properties.getProperty( "KILL_GRACE_PERIOD", "2000" ).trim() ) );
+    }
+    
+    /**
+     * Terminates a process and its descendants, SIGTERM then SIGKILL for any
+     * still running after the grace period
+     * @param p The process
+     * @param grace Milliseconds to wait before killing
+     */
+    protected static void terminate( Process p, long grace ) {
+        
+        long       pid  = ProcessSampler.pidOf( p );
+        List<Long> tree = ( pid >= 0 ) ? ProcessSampler.listTree( pid ) : new ArrayList<>();
+        
+        signal( "TERM", tree );
+        p.destroy();
+        
+        long until = System.currentTimeMillis() + grace;
+        
+        // Already interrupted once, further interruptions must not leave the
+        // controller running
+        boolean interrupted = false;
+        boolean exited      = false;
+        
+        while ( true ) {
+            try {
+                exited = p.waitFor( Math.max( until - System.currentTimeMillis(), 0 ), TimeUnit.MILLISECONDS );
+                break;
+            }
+            catch ( InterruptedException ex ) {
+                interrupted = true;
+            }
+        }
+        
+        // Descendants may outlive the controller, anything still running and
+        // whatever it started since is killed
+        List<Long> survivors = new ArrayList<>();
+        for ( long child : tree ) {
+            survivors.addAll( ProcessSampler.listTree( child ) );
+        }
+        
+        signal( "KILL", survivors );
+        
+        if ( !exited ) {
+            p.destroyForcibly();
+        }
+        
+        try {
+            p.waitFor();
+        }
+        catch ( InterruptedException ex ) {
+            interrupted = true;
+        }
+        
+        if ( interrupted ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Sends a signal to processes with kill, failures are ignored as they may
+     * already have exited
+     * @param name The signal e.g. TERM
+     * @param pids The processes
+     */
+    protected static void signal( String name, List<Long> pids ) {
+        
+        if ( pids.isEmpty() ) {
+            return;
+        }
+        
+        List<String> cmd = new ArrayList<>();
+        cmd.add( "kill" );
+        cmd.add( "-" + name );
+        for ( long pid : pids ) {
+            cmd.add( Long.toString( pid ) );
+        }
+        
+        try {
+            Process k = new ProcessBuilder( cmd ).redirectErrorStream( true ).start();
+            convertStreamToStr( k.getInputStream() );
+            k.waitFor();
+        }
+        catch ( IOException ex ) {
+        }
+        catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Drains a file a worker redirected a stream to, keeping the same in memory
+     * tail as a live stream would.  The file itself acts as the spill file
+     * @param f The file to read
+     * @param key Identifies the stream, STDOUT or STDERR
+     * @return
+     * @throws IOException 
+     */
+    protected StreamDrainer drainFile( File f, String key ) throws IOException {
         
-        // Add the status
-        ArrayList<String[]> messages = new ArrayList<>();
-        messages.add( new String[]{ Integer.toString( shellExitStatus ) } );
-        res.setReturnCode( messages );
-        //}
-        //catch ( Exception ex ) {
-        //    res.setReturnCode( 1 );
-        //    res.setMessages( new String[]{} );
-        //    res.setErrors(   new String[]{ ex.getMessage() }  );
-        //    res.setCellStatuses( new int[]{ 2, -1, -1 } );
-        //}
+        String capacity = m_properties.getProperty( "DRAIN_CAPACITY", "65536" );
+        capacity        = m_properties.getProperty( "DRAIN_" + key + "_CAPACITY", capacity );
         
-        //res.put( "ELAPSED", String.valueOf( elapsed ) );
-        //res.put( "STARTED", String.valueOf( before  ) );
-        //res.put( "ENDED",   String.valueOf( ended   ) );
+        StreamDrainer drainer = new StreamDrainer( new FileInputStream( f ), Integer.parseInt( capacity.trim() ) );
+        drainer.run();
         
-        return res;
+        return drainer;
     }
     
-    //--------------------------------------------------------------------------
-    
-    public ProcessBuilder getRunner( Properties props, String fixtureType ) throws IOException {
+    /**
+     * Waits for drainers to reach end of file, but no longer than DRAIN_TIMEOUT
+     * milliseconds in all, default 10000, 0 waits for ever.  A background child
+     * of the controller may keep its pipes open long after it has exited, the
+     * streams are then closed with whatever was read
+     * @param drainers The drainers of a finished process
+     * @throws InterruptedException 
+     */
+    protected void awaitDrain( StreamDrainer... drainers ) throws InterruptedException {
         
-        // The controller is effectively the name of the script that will be executed
-        // Allow the user some ability to change the argument e.g. in windows its more common to use
-        //   /MY-PARAM than --MY-PARAM
-        String controllerName = "";
-        String shell = props.getProperty( "SHELL", "bash" ).toLowerCase();
+        long timeout = Long.parseLong( m_properties.getProperty( "DRAIN_TIMEOUT", "10000" ).trim() );
+        long until   = System.currentTimeMillis() + timeout;
         
-        switch ( shell ) {
-            
-            case "bash"       : controllerName = ".__controller__.sh"; break;
-            case "ksh"        : controllerName = ".__controller__.sh"; break;
-            case "sh"         : controllerName = ".__controller__.sh"; break;
-            case "zsh"        : controllerName = ".__controller__.sh"; break;
-            case "fish"       : controllerName = ".__controller__.sh"; break;
-            case "powershell" : controllerName = "__controller__.ps1"; break;
-                    
+        for ( StreamDrainer drainer : drainers ) {
+            drainer.join( ( timeout <= 0 ) ? 0 : Math.max( until - System.currentTimeMillis(), 1 ) );
         }
+    }
+    
+    /**
+     * Returns the drained tail of a stream, noting how much was dropped if the
+     * stream outgrew its buffer
+     * @param drainer The finished drainer
+     * @return
+     */
+    protected static String describeDrain( StreamDrainer drainer ) {
         
-        File controllerDir    = new File(  "neo"         + File.separatorChar
-                                         + "engines"     + File.separatorChar
-                                         + "ShellEngine" );
+        String contents = drainer.getContents();
         
-        controllerName        = props.getProperty( "CONTROLLER_NAME",              controllerName );
-        String controllerHome = props.getProperty( "CONTROLLER_HOME",              controllerDir.getCanonicalPath() );
-        String textCase       = props.getProperty( "CONTROLLER_ARGUMENT_TEXTCASE", "lower"  );
-        String filler         = props.getProperty( "CONTROLLER_ARGUMENT_FILLER",   "-"  );
-        String paramPrefix    = props.getProperty( "CONTROLLER_ARGUMENT_PREFIX",   "--" );
-        String paramSuffix    = props.getProperty( "CONTROLLER_ARGUMENT_SUFFIX",   ""   ); // For completeness
+        if ( !drainer.isTruncated() ) {
+            return contents;
+        }
         
-        File controller       = new File( controllerHome + File.separatorChar + controllerName );
+        StringBuilder b = new StringBuilder( "[... " );
+        b.append( drainer.getBytesRead() - drainer.getBytesHeld() );
+        b.append( " earlier bytes not shown" );
         
-        // Convert fixture name to lowercase if required
-        switch ( textCase ) {
-            
-            case "lower" : fixtureType = fixtureType.toLowerCase(); break;
-            case "upper" : fixtureType = fixtureType.toUpperCase(); break;
-            
+        if ( drainer.getSpillFile() != null ) {
+            b.append( ", see " );
+            b.append( drainer.getSpillFile().getPath() );
         }
         
-        // Pass an argument to the controller script along the lines of --create-or-replace, --truncate, --select-from
-        // or /CREATEOREREPLACE whatever user wants
-        StringBuilder tmpPrototype   = new StringBuilder();
-        tmpPrototype.append( paramPrefix );
-        tmpPrototype.append( fixtureType.replace( "_", filler ) );
-        tmpPrototype.append( paramSuffix );
-        
-        // ProcessBuilder expects a list, ours is quite simple <script> <param>
-        ArrayList<String> commands = new ArrayList<>();
-        commands.add( controller.getCanonicalPath() );
-        commands.add( tmpPrototype.toString()       );
+        b.append( " ...]" );
+        b.append( System.lineSeparator() );
+        b.append( contents );
         
-        // Build our command line
-        return new ProcessBuilder( commands );
+        return b.toString();
     }
     
     /**
-     * Creates a unique file using the information from the engines configuration
-     * identified by the key
-     * @param input The input data to add the newly created file's information to
-     * @param unique Set to true to use a unique ID else false to use key within the filename
-     * @param props Properties used to configure this engine
-     * @param key A unique identifier for this files information
-     * @param defaultDirectory The directory to add the file to if a directory variable cant be found
-     * @return
-     * @throws IOException 
+     * Records process timings and drain statistics against the output.  The exit
+     * status and elapsed time cover the process only, the drain is reported apart
+     * @param res The output to add to
+     * @param started Time the process was started
+     * @param ended Time the process exited
+     * @param drained Time both streams were exhausted
+     * @param outDrain The stdout drainer
+     * @param errDrain The stderr drainer
      */
-    protected File addPath( InvokationInput input, boolean unique, Properties props, String key, String defaultDirectory) throws IOException {
+    protected static void recordExecution( InvokationOutput res, long started, long ended, long drained, StreamDrainer outDrain, StreamDrainer errDrain ) {
+        
+        ArrayList<String[]> timings = new ArrayList<>();
+        timings.add( new String[]{ "STARTED",       String.valueOf( started           ) } );
+        timings.add( new String[]{ "ENDED",         String.valueOf( ended             ) } );
+        timings.add( new String[]{ "ELAPSED",       String.valueOf( ended - started   ) } );
+        timings.add( new String[]{ "DRAIN_ELAPSED", String.valueOf( drained - ended   ) } );
+        res.setTimings( timings );
+        
+        ArrayList<String[]> streams = new ArrayList<>();
+        streams.add( describeStream( "STDOUT", outDrain ) );
+        streams.add( describeStream( "STDERR", errDrain ) );
+        res.setStreamStatistics( streams );
+    }
     
-        // For performance this is so common we create this key prefix once
-        StringBuilder dataPrefix = new StringBuilder( "DATA_" );
-        dataPrefix.append( key );
-        String dPrefix = dataPrefix.toString();
-        
-        // File prefixes, input data, output data, error data, and control parameters etc
-        String directory = props.getProperty( dPrefix + "_DIRECTORY",   defaultDirectory );
-        String prefix    = props.getProperty( dPrefix + "_PATH_PREFIX", ""    );
-        String suffix    = props.getProperty( dPrefix + "_PATH_SUFFIX", ""    );
-        String perms     = props.getProperty( dPrefix + "_PERMISSIONS", "600" );
-        
-        // Create the file
-        File d = new File( directory );
-        File f;
+    /**
+     * Records the elapsed time of each phase of an invocation against the output,
+     * all times are in milliseconds
+     * 
+     * STAGING_ELAPSED   - preparing the work directory, variables and input
+     * SPAWN_ELAPSED     - starting the process or acquiring a worker
+     * EXECUTION_ELAPSED - running the controller
+     * DRAIN_ELAPSED     - finishing reading stdout and stderr
+     * PARSE_ELAPSED     - reading the output, error and control files
+     * CLEANUP_ELAPSED   - deleting or scrubbing the work directory
+     * TOTAL_ELAPSED     - the whole invocation
+     * 
+     * @param res The output to add to
+     * @param invoked Time the invocation began
+     * @param started Time the process was started
+     * @param spawned Time the process was running
+     * @param ended Time the process exited
+     * @param drained Time both streams were exhausted
+     * @param parsed Time the results were parsed
+     * @param finished Time the work directory was cleaned up
+     */
+    protected static void recordPhases( InvokationOutput res, long invoked, long started, long spawned, long ended, long drained, long parsed, long finished ) {
+        res.addTiming( "STAGING_ELAPSED",   started  - invoked );
+        res.addTiming( "SPAWN_ELAPSED",     spawned  - started );
+        res.addTiming( "EXECUTION_ELAPSED", ended    - spawned );
+        res.addTiming( "PARSE_ELAPSED",     parsed   - drained );
+        res.addTiming( "CLEANUP_ELAPSED",   finished - parsed  );
+        res.addTiming( "TOTAL_ELAPSED",     finished - invoked );
+    }
+    
+    /**
+     * Records the rows and bytes passed in each direction and the resources
+     * the controller used.  Rows include any header row, output rows are left
+     * out when the output is kept on disk and input rows when they were
+     * streamed, as counting them would read them all again
+     * @param res The output to add to
+     * @param input The input passed by the fixture
+     * @param inBytes Bytes of input data as written, after any compression
+     * @param outBytes Bytes of output data as written
+     * @param errBytes Bytes of error data as written
+     * @param sampler The sampler that waited for the controller, null if none
+     */
+    protected static void recordMetrics( InvokationOutput res, InvokationInput input, long inBytes, long outBytes, long errBytes, ProcessSampler sampler ) {
         
-        if ( unique ) {
-            f = File.createTempFile( prefix, suffix, d );
+        // Streamed input is not counted as that would read it all again
+        if ( !input.isDataStreamed() ) {
+            res.addMetric( "INPUT_ROWS", input.getData().size() );
         }
-        else {
-            f = new File( d.getCanonicalPath() + File.pathSeparator + prefix + key + suffix );
-            f.createNewFile();
+        res.addMetric( "INPUT_BYTES", inBytes );
+        
+        if ( !( res.getDataSource() instanceof FileRowSource ) ) {
+            res.addMetric( "OUTPUT_ROWS", res.getData().size() );
         }
+        res.addMetric( "OUTPUT_BYTES", outBytes );
         
-        String uniqueID = f.getName().replaceFirst( "^" + prefix, "" ).replaceFirst( suffix + "$", "" );
-                
-        // Tell the engine where it is
-        input.addControlParameter( dPrefix + "_PATH",       f.getCanonicalPath()  );
-        input.addControlParameter( dPrefix + "_UNIQUE_ID",  uniqueID );
+        res.addMetric( "ERROR_ROWS",  res.getErrorData().size() );
+        res.addMetric( "ERROR_BYTES", errBytes );
         
-        // change file permissions
-        Files.setPosixFilePermissions(  Paths.get( f.getCanonicalPath() )
-                                      , PosixFilePermissions.fromString( perms ) );
+        if ( sampler != null && sampler.getSamples() > 0 ) {
+            res.addMetric( "CHILD_PID",         sampler.getPid()       );
+            res.addMetric( "CHILD_CPU_MS",      sampler.getCpuMillis() );
+            res.addMetric( "CHILD_PEAK_RSS_KB", sampler.getPeakRss()   );
+            res.addMetric( "CHILD_SAMPLES",     sampler.getSamples()   );
+        }
+    }
+    
+    /**
+     * Returns the milliseconds between samples of a running controller, set by
+     * METRICS_SAMPLE_INTERVAL default 100, 0 turns sampling off
+     * @return
+     */
+    protected long getSampleInterval() {
+        return Long.parseLong( m_properties.getProperty( "METRICS_SAMPLE_INTERVAL", "100" ).trim() );
+    }
+    
+    /**
+     * Summarises a drained stream as name, bytes read, truncated, spill path
+     * and any drain error
+     * @param name The name of the stream
+     * @param drainer The finished drainer
+     * @return
+     */
+    protected static String[] describeStream( String name, StreamDrainer drainer ) {
         
-        return f;
+        File        spill = drainer.getSpillFile();
+        IOException error = drainer.getError();
+        
+        return new String[]{  name
+                            , String.valueOf( drainer.getBytesRead() )
+                            , String.valueOf( drainer.isTruncated()  )
+                            , spill == null ? "" : spill.getPath()
+                            , error == null ? "" : error.getMessage() };
+    }
+    
+    /**
+     * Removes the spill file of a drainer if one was written
+     * @param drainer The finished drainer
+     */
+    protected static void deleteSpillFile( StreamDrainer drainer ) {
+        if ( drainer.getSpillFile() != null ) {
+            drainer.getSpillFile().delete();
+        }
     }
     
     /**
@@ -820,7 +2401,84 @@ public class ShellEngine extends AbstractEngine {
     }
     
     /**
-     * Parses a file and returns the data as a list of field collections
+     * Opens a reader over a gzip compressed or uncompressed file
+     * @param f The file to read
+     * @param format The format of the file e.g. CSV, XML etc
+     * @param compressed Is the file gzip compressed
+     * @param settings Custom settings for the reader e.g. delimiter if CSV etc
+     * @return
+     * @throws FileNotFoundException
+     * @throws IOException 
+     */
+    public IReader openFile( File f, String format, boolean compressed, Map<String, String> settings ) throws FileNotFoundException, IOException {
+        return openFile( f, format, compressed ? Compression.GZIP : Compression.NONE, settings );
+    }
+    
+    /**
+     * Opens a reader over a file, records can then be streamed from it one at a
+     * time rather than loading the whole file
+     * @param f The file to read
+     * @param format The format of the file e.g. CSV, XML etc
+     * @param compression How the file is compressed
+     * @param settings Custom settings for the reader e.g. delimiter if CSV etc
+     * @return
+     * @throws FileNotFoundException
+     * @throws IOException 
+     */
+    public IReader openFile( File f, String format, Compression compression, Map<String, String> settings ) throws FileNotFoundException, IOException {
+        
+        InputStream bIn;
+        
+        // Uncompressed files are memory mapped, which also lets mapping readers
+        // such as RAW_MMAP read the file directly
+        if ( compression.isCompressed() ) {
+            return openStream( new FileInputStream( f ), format, compression, settings );
+        }
+        
+        bIn = new MappedInputStream( f );
+        
+        try {
+            return m_ioFactory.newReader( format, bIn, settings );
+        }
+        catch ( IOException ex ) {
+            bIn.close();
+            throw ex;
+        }
+    }
+    
+    /**
+     * Opens a reader over a stream, such as a named pipe, that cannot be memory
+     * mapped
+     * @param in The stream to read, closed with the reader
+     * @param format The format of the data e.g. CSV, XML etc
+     * @param compression How the data is compressed
+     * @param settings Custom settings for the reader e.g. delimiter if CSV etc
+     * @return
+     * @throws IOException 
+     */
+    public IReader openStream( InputStream in, String format, Compression compression, Map<String, String> settings ) throws IOException {
+        
+        InputStream bIn;
+        
+        try {
+            bIn = new BufferedInputStream( compression.decompress( in ), 65536 );
+        }
+        catch ( IOException ex ) {
+            in.close();
+            throw ex;
+        }
+        
+        try {
+            return m_ioFactory.newReader( format, bIn, settings );
+        }
+        catch ( IOException ex ) {
+            bIn.close();
+            throw ex;
+        }
+    }
+    
+    /**
+     * Parses a gzip compressed or uncompressed file
      * @param f Te file to parse
      * @param format The format of the file e.g. CSV, XML etc
      * @param compressed Is the file gzip compressed
@@ -831,23 +2489,46 @@ public class ShellEngine extends AbstractEngine {
      * @throws IOException 
      */
     public List<String[]> parseFile( File f, String format, boolean compressed, boolean deleteOnExit, Map<String, String> settings ) throws FileNotFoundException, IOException {
-        
-        ArrayList<String[]> messages = new ArrayList<>();
+        return parseFile( f, format, compressed ? Compression.GZIP : Compression.NONE, deleteOnExit, settings );
+    }
+    
+    /**
+     * Parses a file and returns the data as a list of field collections
+     * @param f Te file to parse
+     * @param format The format of the file e.g. CSV, XML etc
+     * @param compression How the file is compressed
+     * @param deleteOnExit Delete the file once parsed
+     * @param settings Custom settings for the reader e.g. delimiter if CSV etc
+     * @return
+     * @throws FileNotFoundException
+     * @throws IOException 
+     */
+    public List<String[]> parseFile( File f, String format, Compression compression, boolean deleteOnExit, Map<String, String> settings ) throws FileNotFoundException, IOException {
         
         //if ( f.exists() ) {
-        FileInputStream     fIn = new FileInputStream( f );
-        BufferedInputStream bIn;
+        List<String[]> messages = parseReader( openFile( f, format, compression, settings ), format );
         
-        if ( compressed ) {
-            GZIPInputStream gis = new GZIPInputStream(fIn);
-            bIn = new BufferedInputStream( gis );
-        }
-        else {
-            bIn = new BufferedInputStream( fIn );
+        // Delete file on exit if appropriate
+        if ( deleteOnExit ) {
+            f.delete();
         }
+                
+        //}
+        
+        return messages;
+    }
+    
+    /**
+     * Reads every record from a reader, which is then closed
+     * @param stdReader The reader
+     * @param format The format it was created for
+     * @return The columns followed by each record, empty if there were no columns
+     * @throws IOException If the records could not all be read
+     */
+    protected List<String[]> parseReader( IReader stdReader, String format ) throws IOException {
+        
+        ArrayList<String[]> messages = new ArrayList<>();
         
-        IReader stdReader = m_ioFactory.newReader( format, bIn, settings );
-
         try {
             
             // Should have got some columns, otherwise what format was that file ?
@@ -857,33 +2538,27 @@ public class ShellEngine extends AbstractEngine {
                 // Set columns as first row
                 messages.add( cols );
                 
-                // Read each record one by one
-                String[] dataRec = stdReader.readRecord();
-                while ( dataRec != null ) {
-                    messages.add(dataRec);
-                    dataRec = stdReader.readRecord();
+                // Records are pulled from the file one at a time
+                for ( String[] dataRec : stdReader ) {
+                    messages.add( dataRec );
                 }
             }
                 
         }
-        catch ( Exception ex ) {
+        catch ( UncheckedIOException ex ) {
+            // A truncated or corrupt file must not pass as fewer records
+            throw ex.getCause();
         }
         finally {
             stdReader.close();
+            m_ioFactory.release( format, stdReader );
         }
         
-        // Delete file on exit if appropriate
-        if ( deleteOnExit ) {
-            f.delete();
-        }
-                
-        //}
-        
         return messages;
     }
     
     /**
-     * Writes data to a file in a specified format
+     * Writes data to a gzip compressed or uncompressed file
      * @param f The file to write to
      * @param format The format of the file e.g. CSV, XML etc
      * @param compressed Is this file gzip compressed
@@ -893,35 +2568,109 @@ public class ShellEngine extends AbstractEngine {
      * @throws IOException 
      */
     public void writeFile( File f, String format, boolean compressed, List<String[]> data, Map<String, String> settings ) throws FileNotFoundException, IOException {
+        writeFile( f, format, compressed ? Compression.GZIP : Compression.NONE, data, settings );
+    }
+    
+    /**
+     * Writes data to a file in a specified format
+     * @param f The file to write to
+     * @param format The format of the file e.g. CSV, XML etc
+     * @param compression How the file should be compressed
+     * @param data The data to write
+     * @param settings Settings for the custom writer e.g. delimiter for CSV files etc
+     * @throws FileNotFoundException
+     * @throws IOException 
+     */
+    public void writeFile( File f, String format, Compression compression, List<String[]> data, Map<String, String> settings ) throws FileNotFoundException, IOException {
+        writeStream( new FileOutputStream( f ), format, compression, data, settings );
+    }
+    
+    /**
+     * Writes data to a stream, such as a named pipe, in a specified format
+     * @param fOut The stream to write to, closed once written
+     * @param format The format of the data e.g. CSV, XML etc
+     * @param compression How the data should be compressed
+     * @param data The data to write
+     * @param settings Settings for the custom writer e.g. delimiter for CSV files etc
+     * @throws IOException 
+     */
+    public void writeStream( OutputStream fOut, String format, Compression compression, List<String[]> data, Map<String, String> settings ) throws IOException {
+        writeStream( fOut, format, compression, data.iterator(), settings );
+    }
+    
+    /**
+     * Writes rows to a stream as they are pulled from an iterator, so the rows
+     * need never all be held in memory.  Errors reading the rows are passed on
+     * unchecked as the iterator raised them
+     * @param fOut The stream to write to, closed once written
+     * @param format The format of the data e.g. CSV, XML etc
+     * @param compression How the data should be compressed
+     * @param data The rows to write
+     * @param settings Settings for the custom writer e.g. delimiter for CSV files etc
+     * @return The number of rows written
+     * @throws IOException 
+     */
+    public long writeStream( OutputStream fOut, String format, Compression compression, Iterator<String[]> data, Map<String, String> settings ) throws IOException {
         
-        FileOutputStream     fOut = new FileOutputStream( f );
         BufferedOutputStream bOut;
         
-        // We need to buffer the file output stream, but add a gunzip stream if needs be
-        // to uncompress the data first
-        if ( compressed ) {
-            GZIPOutputStream gos = new GZIPOutputStream( fOut );
-            bOut = new BufferedOutputStream( gos );
+        // We need to buffer the file output stream, but add a compressing stream
+        // if needs be to compress the data first
+        if ( compression.isCompressed() ) {
+            try {
+                bOut = new BufferedOutputStream( compression.compress( fOut ) );
+            }
+            catch ( IOException ex ) {
+                fOut.close();
+                throw ex;
+            }
         }
         else {
             bOut = new BufferedOutputStream( fOut );
         }
         
-        IWriter stdinWriter = m_ioFactory.newWriter( format, bOut, settings );
+        IWriter stdinWriter;
+        try {
+            stdinWriter = m_ioFactory.newWriter( format, bOut, settings );
+        }
+        catch ( IOException ex ) {
+            bOut.close();
+            throw ex;
+        }
         
         // Write all input data to file so the underlying script can use it
-        int len = data.size();
-        for (int i = 0; i < len; i++)
-        {
-            //System.err.println( data.get(i)[0] );
-            stdinWriter.writeRecord( data.get(i) );
+        long written = 0;
+        try {
+            while ( data.hasNext() ) {
+                stdinWriter.writeRecord( data.next() );
+                written++;
+            }
+            
+            stdinWriter.flush();
+        }
+        catch ( IOException | RuntimeException ex ) {
+            try {
+                stdinWriter.close();
+            }
+            catch ( IOException closeEx ) {
+                ex.addSuppressed( closeEx );
+            }
+            throw ex;
         }
         
-        stdinWriter.flush();
         stdinWriter.close();
+        
+        m_ioFactory.release( format, stdinWriter );
+        
+        return written;
     }
     
-    public static void deleteDirectory(File tempDirectory) {
+    /**
+     * Recursively deletes a directory and everything within it
+     * @param tempDirectory The directory to delete
+     * @throws IOException 
+     */
+    public static void deleteDirectory( Path tempDirectory ) throws IOException {
         Files.walkFileTree(tempDirectory, new SimpleFileVisitor<Path>() {
 	        @Override
 	        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
@@ -938,12 +2687,18 @@ public class ShellEngine extends AbstractEngine {
         });
     }
     
-    public static void copyDirectory( File src, File tgt ) {
+    /**
+     * Recursively copies a directory and everything within it
+     * @param src The directory to copy
+     * @param tgt Where to copy it to
+     * @throws IOException 
+     */
+    public static void copyDirectory( final Path src, final Path tgt ) throws IOException {
         Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
         @Override
         public FileVisitResult preVisitDirectory(final Path dir,
                 final BasicFileAttributes attrs) throws IOException {
-            Files.createDirectories(tgt.resolve(sourcePath
+            Files.createDirectories(tgt.resolve(src
                     .relativize(dir)));
             return FileVisitResult.CONTINUE;
         }
@@ -952,7 +2707,7 @@ public class ShellEngine extends AbstractEngine {
         public FileVisitResult visitFile(final Path file,
                 final BasicFileAttributes attrs) throws IOException {
             Files.copy(file,
-                    t.resolve(src.relativize(file)));
+                    tgt.resolve(src.relativize(file)));
             return FileVisitResult.CONTINUE;
         }
     });
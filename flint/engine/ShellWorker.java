@@ -0,0 +1,241 @@
+package flint.engine;
+
+// Core Java classes
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+
+/**
+ * A long lived shell process that runs controller invocations on request, saving
+ * the cost of forking and initialising a new shell per fixture.  Requests are
+ * single tab delimited lines written to the workers stdin:
+ *
+ *   id  mode  argument  controller  vars  stdout  stderr
+ *
+ * The worker sources the vars file (environment changes) and runs the controller
+ * with the argument inside a subshell, so nothing leaks between requests, with
+ * stdout / stderr redirected to the given files.  It then answers on its own
+ * stdout with a single line of "id  exit status".  Responses are waited for
+ * interruptibly, an interrupted request kills the worker along with the
+ * controller it was running.
+ * @author Philip Bowditch
+ */
+public class ShellWorker {
+
+    /**
+     * The request loop run by the shell.  mode is either exec, replace the
+     * subshell with the controller, or source, run the controller within the
+     * subshell where $0 remains the shell rather than the controller
+     */
+    protected static final String WORKER_SCRIPT =
+          "TAB=\"$(printf '\\t')\"\n"
+        + "while IFS=\"$TAB\" read -r id mode argument controller vars out err; do\n"
+        + "  (\n"
+        + "    if [ -n \"$vars\" ]; then . \"$vars\"; fi\n"
+        + "    if [ \"$mode\" = \"exec\" ]; then exec \"$controller\" \"$argument\"; fi\n"
+        + "    set -- \"$argument\"\n"
+        + "    . \"$controller\"\n"
+        + "  ) </dev/null >\"$out\" 2>\"$err\"\n"
+        + "  printf '%s\\t%s\\n' \"$id\" \"$?\"\n"
+        + "done\n";
+
+    /**
+     * Queued in place of a response once the shells stdout closes
+     */
+    protected static final String END_OF_RESPONSES = new String( "" );
+
+    /**
+     * Milliseconds a destroyed worker and its controller are given to exit
+     * after SIGTERM before being sent SIGKILL
+     */
+    protected static final long KILL_GRACE_PERIOD = 2000;
+
+    /**
+     * The running shell
+     */
+    protected Process m_process;
+
+    /**
+     * Requests are written here, the shells stdin
+     */
+    protected BufferedWriter m_requests;
+
+    /**
+     * Responses are read from here, the shells stdout
+     */
+    protected BufferedReader m_responses;
+
+    /**
+     * Responses read from the shells stdout, blocking reads can not be
+     * interrupted so a thread moves them here
+     */
+    protected BlockingQueue<String> m_answers;
+
+    /**
+     * Anything the shell itself writes to stderr, kept for diagnosing crashes
+     */
+    protected StreamDrainer m_errors;
+
+    /**
+     * The environment the shell was started with
+     */
+    protected Map<String, String> m_environment;
+
+    /**
+     * Number of requests handled so far
+     */
+    protected int m_uses;
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructor for the ShellWorker class, starts the shell
+     * @param shell The shell to run e.g. bash
+     * @param environment The environment to start the shell with
+     * @throws IOException
+     */
+    public ShellWorker( String shell, Map<String, String> environment ) throws IOException {
+
+        ProcessBuilder pb = new ProcessBuilder( shell, "-c", WORKER_SCRIPT );
+        pb.environment().clear();
+        pb.environment().putAll( environment );
+
+        m_environment = new LinkedHashMap<>( environment );
+        m_uses        = 0;
+        m_process     = pb.start();
+
+        m_requests    = new BufferedWriter( new OutputStreamWriter( m_process.getOutputStream(), StandardCharsets.UTF_8 ) );
+        m_responses   = new BufferedReader( new InputStreamReader(  m_process.getInputStream(),  StandardCharsets.UTF_8 ) );
+
+        m_errors      = new StreamDrainer( m_process.getErrorStream(), 4096 );
+        m_errors.start( "ShellWorker-stderr" );
+
+        m_answers     = new LinkedBlockingQueue<>();
+
+        Thread reader = new Thread( this::readResponses, "ShellWorker-stdout" );
+        reader.setDaemon( true );
+        reader.start();
+    }
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Runs the controller and waits for it to finish
+     * @param mode source or exec, how the controller is run
+     * @param argument The argument to pass to the controller e.g. --create
+     * @param controller The controller script
+     * @param vars A script of environment changes to source first, may be null
+     * @param stdout Where the controllers stdout is written
+     * @param stderr Where the controllers stderr is written
+     * @return The exit status of the controller
+     * @throws IOException If the worker died or answered out of turn
+     * @throws InterruptedException If interrupted while waiting, the worker and
+     *                              controller have then been killed
+     */
+    public int execute( String mode, String argument, File controller, File vars, File stdout, File stderr ) throws IOException, InterruptedException {
+
+        m_uses += 1;
+        String id = Integer.toString( m_uses );
+
+        StringBuilder b = new StringBuilder( id );
+        b.append( '\t' ).append( mode );
+        b.append( '\t' ).append( argument );
+        b.append( '\t' ).append( controller.getCanonicalPath() );
+        b.append( '\t' ).append( vars == null ? "" : vars.getCanonicalPath() );
+        b.append( '\t' ).append( stdout.getCanonicalPath() );
+        b.append( '\t' ).append( stderr.getCanonicalPath() );
+        b.append( '\n' );
+
+        m_requests.write( b.toString() );
+        m_requests.flush();
+
+        String line;
+        try {
+            line = m_answers.take();
+        }
+        catch ( InterruptedException ex ) {
+            destroy();
+            throw ex;
+        }
+
+        if ( line == END_OF_RESPONSES ) {
+            // Answers any later request the same way
+            m_answers.offer( END_OF_RESPONSES );
+            throw new IOException( "Shell worker exited unexpectedly: " + m_errors.getContents() );
+        }
+
+        String[] parts = line.split( "\t" );
+        if ( parts.length != 2 || !parts[0].equals( id ) ) {
+            throw new IOException( "Unexpected response from shell worker '" + line + "'" );
+        }
+
+        return Integer.parseInt( parts[1].trim() );
+    }
+
+    /**
+     * Returns true if the shell is still running
+     * @return
+     */
+    public boolean isAlive() {
+        return m_process.isAlive();
+    }
+
+    /**
+     * Returns the number of requests this worker has handled
+     * @return
+     */
+    public int getUses() {
+        return m_uses;
+    }
+
+    /**
+     * Returns the environment the shell was started with
+     * @return
+     */
+    public Map<String, String> getEnvironment() {
+        return m_environment;
+    }
+
+    /**
+     * Stops the shell along with any controller it is running, closing stdin
+     * lets an idle shell finish its loop cleanly
+     */
+    public void destroy() {
+
+        try {
+            m_requests.close();
+        }
+        catch ( IOException ex ) {
+        }
+
+        ShellEngine.terminate( m_process, KILL_GRACE_PERIOD );
+    }
+
+    /**
+     * Moves each response line onto the queue until the shells stdout closes
+     */
+    protected void readResponses() {
+
+        try {
+            String line;
+            while ( ( line = m_responses.readLine() ) != null ) {
+                m_answers.offer( line );
+            }
+        }
+        catch ( IOException ex ) {
+        }
+
+        m_answers.offer( END_OF_RESPONSES );
+    }
+}
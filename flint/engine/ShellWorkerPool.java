@@ -0,0 +1,201 @@
+package flint.engine;
+
+// Core Java classes
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A bounded pool of ShellWorkers.  Workers are started lazily up to the pool
+ * size, handed out one invocation at a time and recycled once they have been
+ * used a set number of times or if they crash.
+ * @author Philip Bowditch
+ */
+public class ShellWorkerPool {
+
+    /**
+     * The shell each worker runs e.g. bash
+     */
+    protected String m_shell;
+
+    /**
+     * The environment each worker starts with
+     */
+    protected Map<String, String> m_environment;
+
+    /**
+     * The maximum number of workers
+     */
+    protected int m_size;
+
+    /**
+     * Number of invocations before a worker is replaced
+     */
+    protected int m_maxUses;
+
+    /**
+     * Workers waiting for a request
+     */
+    protected LinkedBlockingQueue<ShellWorker> m_idle;
+
+    /**
+     * Number of workers currently running, idle or in use
+     */
+    protected int m_started;
+
+    /**
+     * Set once the pool has been shut down
+     */
+    protected volatile boolean m_closed;
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructor for the ShellWorkerPool class
+     * @param shell The shell each worker runs
+     * @param environment The environment each worker starts with
+     * @param size The maximum number of workers
+     * @param maxUses Number of invocations before a worker is replaced
+     */
+    public ShellWorkerPool( String shell, Map<String, String> environment, int size, int maxUses ) {
+        m_shell       = shell;
+        m_environment = new LinkedHashMap<>( environment );
+        m_size        = Math.max( size,    1 );
+        m_maxUses     = Math.max( maxUses, 1 );
+        m_idle        = new LinkedBlockingQueue<>();
+        m_started     = 0;
+        m_closed      = false;
+    }
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns an idle worker, starting one if the pool is not yet full or
+     * otherwise waiting for one to be released.  Idle workers that have died
+     * are discarded and replaced
+     * @return
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public ShellWorker acquire() throws IOException, InterruptedException {
+
+        while ( true ) {
+
+            ShellWorker w = m_idle.poll();
+
+            while ( w == null ) {
+
+                synchronized ( this ) {
+
+                    if ( m_closed ) {
+                        throw new IOException( "Shell worker pool has been shut down" );
+                    }
+
+                    if ( m_started < m_size ) {
+                        m_started += 1;
+
+                        try {
+                            return new ShellWorker( m_shell, m_environment );
+                        }
+                        catch ( IOException ex ) {
+                            m_started -= 1;
+                            throw ex;
+                        }
+                    }
+                }
+
+                // Pool is full, wait for a release but check again periodically in
+                // case a crashed worker could not be replaced
+                w = m_idle.poll( 100, TimeUnit.MILLISECONDS );
+            }
+
+            if ( w.isAlive() ) {
+                return w;
+            }
+
+            // Died whilst idle, free its place so the next pass starts another
+            w.destroy();
+
+            synchronized ( this ) {
+                m_started -= 1;
+            }
+        }
+    }
+
+    /**
+     * Hands a worker back to the pool.  Workers that failed, died or have been
+     * used enough are stopped and replaced with a fresh one
+     * @param w The worker to return
+     * @param healthy False if the worker failed whilst handling its request
+     */
+    public void release( ShellWorker w, boolean healthy ) {
+
+        if ( healthy && !m_closed && w.isAlive() && w.getUses() < m_maxUses ) {
+            m_idle.offer( w );
+            return;
+        }
+
+        w.destroy();
+
+        // Start the replacement now so anyone waiting on acquire is served
+        synchronized ( this ) {
+
+            if ( !m_closed ) {
+                try {
+                    m_idle.offer( new ShellWorker( m_shell, m_environment ) );
+                    return;
+                }
+                catch ( IOException ex ) {
+                }
+            }
+
+            m_started -= 1;
+        }
+    }
+
+    /**
+     * Stops all idle workers, workers in use are stopped as they are released
+     */
+    public synchronized void shutdown() {
+
+        m_closed = true;
+
+        ShellWorker w;
+        while ( ( w = m_idle.poll() ) != null ) {
+            w.destroy();
+            m_started -= 1;
+        }
+    }
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the environment each worker starts with
+     * @return
+     */
+    public Map<String, String> getEnvironment() {
+        return m_environment;
+    }
+
+    /**
+     * Returns the maximum number of workers
+     * @return
+     */
+    public int getSize() {
+        return m_size;
+    }
+
+    /**
+     * Returns the number of invocations before a worker is replaced
+     * @return
+     */
+    public int getMaxUses() {
+        return m_maxUses;
+    }
+}
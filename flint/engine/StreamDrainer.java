@@ -0,0 +1,299 @@
+package flint.engine;
+
+// Core Java classes
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Pumps a process stream e.g. stdout or stderr on its own thread whilst the
+ * process is running.  If nobody reads these pipes the child blocks as soon as
+ * the OS pipe buffer fills up, so they must be drained concurrently rather than
+ * after waitFor().  Only the most recent bytes are held in memory (a bounded
+ * ring buffer), optionally everything read is also spilled to a file.
+ * @author Philip Bowditch
+ */
+public class StreamDrainer implements Runnable {
+
+    /**
+     * The stream being drained
+     */
+    protected InputStream m_in;
+
+    /**
+     * Holds the tail of the stream, oldest bytes are overwritten first
+     */
+    protected byte[] m_ring;
+
+    /**
+     * The next position to write to within the ring buffer
+     */
+    protected int m_position;
+
+    /**
+     * Total number of bytes read from the stream
+     */
+    protected long m_total;
+
+    /**
+     * Optional file receiving the complete stream
+     */
+    protected File m_spillFile;
+
+    /**
+     * Holds any error raised whilst draining
+     */
+    protected IOException m_error;
+
+    /**
+     * The thread doing the pumping
+     */
+    protected Thread m_thread;
+
+    /**
+     * Time in milliseconds the stream hit end of file
+     */
+    protected long m_finished;
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructor for the StreamDrainer class
+     * @param in The stream to drain
+     * @param capacity The number of trailing bytes to hold in memory
+     */
+    public StreamDrainer( InputStream in, int capacity ) {
+        this( in, capacity, null );
+    }
+
+    /**
+     * Constructor for the StreamDrainer class
+     * @param in The stream to drain
+     * @param capacity The number of trailing bytes to hold in memory
+     * @param spillFile If not null the whole stream is also written to this file
+     */
+    public StreamDrainer( InputStream in, int capacity, File spillFile ) {
+        m_in        = in;
+        m_ring      = new byte[ Math.max( capacity, 0 ) ];
+        m_position  = 0;
+        m_total     = 0;
+        m_spillFile = spillFile;
+        m_error     = null;
+        m_thread    = null;
+        m_finished  = 0;
+    }
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Starts draining on a new daemon thread
+     * @param name The name to give the thread
+     */
+    public void start( String name ) {
+        m_thread = new Thread( this, name );
+        m_thread.setDaemon( true );
+        m_thread.start();
+    }
+
+    /**
+     * Waits for the stream to reach end of file
+     * @throws InterruptedException
+     */
+    public void join() throws InterruptedException {
+        if ( m_thread != null ) {
+            m_thread.join();
+        }
+    }
+
+    /**
+     * Waits a limited time for the stream to reach end of file, then closes it
+     * so a background child of the process still holding the pipe open can not
+     * hold up the caller.  Whatever was read up to then is kept
+     * @param millis How long to wait, 0 or less waits for end of file
+     * @return True if end of file was reached
+     * @throws InterruptedException
+     */
+    public boolean join( long millis ) throws InterruptedException {
+
+        if ( m_thread == null ) {
+            return true;
+        }
+
+        if ( millis <= 0 ) {
+            m_thread.join();
+            return true;
+        }
+
+        m_thread.join( millis );
+        if ( !m_thread.isAlive() ) {
+            return true;
+        }
+
+        try {
+            m_in.close();
+        }
+        catch ( IOException ex ) {
+        }
+
+        return false;
+    }
+
+    @Override
+    public void run() {
+
+        byte[]       buffer = new byte[8192];
+        OutputStream spill  = null;
+        int          n;
+
+        try {
+            if ( m_spillFile != null ) {
+                spill = new BufferedOutputStream( new FileOutputStream( m_spillFile ) );
+            }
+
+            while ( ( n = m_in.read( buffer ) ) != -1 ) {
+
+                if ( spill != null ) {
+                    spill.write( buffer, 0, n );
+                }
+
+                append( buffer, n );
+            }
+        }
+        catch ( IOException ex ) {
+            m_error = ex;
+        }
+        finally {
+
+            try {
+                if ( spill != null ) {
+                    spill.close();
+                }
+                m_in.close();
+            }
+            catch ( IOException ex ) {
+                if ( m_error == null ) {
+                    m_error = ex;
+                }
+            }
+
+            m_finished = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Copies the buffer into the ring, wrapping round and overwriting the oldest
+     * bytes if it is full
+     * @param buffer The bytes just read
+     * @param len The number of valid bytes in buffer
+     */
+    protected synchronized void append( byte[] buffer, int len ) {
+
+        m_total += len;
+
+        int capacity = m_ring.length;
+        if ( capacity == 0 ) {
+            return;
+        }
+
+        // Only the last capacity bytes can survive, skip the rest
+        int offset = 0;
+        if ( len > capacity ) {
+            offset = len - capacity;
+            len    = capacity;
+        }
+
+        int first = Math.min( len, capacity - m_position );
+        System.arraycopy( buffer, offset, m_ring, m_position, first );
+        System.arraycopy( buffer, offset + first, m_ring, 0, len - first );
+
+        m_position = ( m_position + len ) % capacity;
+    }
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the trailing bytes held in memory decoded as UTF-8
+     * @return
+     */
+    public String getContents() {
+        return getContents( StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Returns the trailing bytes held in memory
+     * @param charset The character set to decode with
+     * @return
+     */
+    public synchronized String getContents( Charset charset ) {
+
+        // Not yet wrapped round so the bytes are in order from the start
+        if ( m_total <= m_ring.length ) {
+            return new String( m_ring, 0, (int)m_total, charset );
+        }
+
+        byte[] ordered = new byte[ m_ring.length ];
+        int    tail    = m_ring.length - m_position;
+
+        System.arraycopy( m_ring, m_position, ordered, 0,    tail       );
+        System.arraycopy( m_ring, 0,          ordered, tail, m_position );
+
+        return new String( ordered, charset );
+    }
+
+    /**
+     * Returns the total number of bytes read from the stream
+     * @return
+     */
+    public synchronized long getBytesRead() {
+        return m_total;
+    }
+
+    /**
+     * Returns the number of trailing bytes held in memory
+     * @return
+     */
+    public synchronized int getBytesHeld() {
+        return (int)Math.min( m_total, m_ring.length );
+    }
+
+    /**
+     * Returns true if more was read than could be held in memory
+     * @return
+     */
+    public synchronized boolean isTruncated() {
+        return m_total > m_ring.length;
+    }
+
+    /**
+     * Returns the file the whole stream was written to, null if not spilled
+     * @return
+     */
+    public File getSpillFile() {
+        return m_spillFile;
+    }
+
+    /**
+     * Returns any error that occurred whilst draining
+     * @return
+     */
+    public IOException getError() {
+        return m_error;
+    }
+
+    /**
+     * Returns the time in milliseconds the stream was exhausted
+     * @return
+     */
+    public long getFinished() {
+        return m_finished;
+    }
+}
@@ -0,0 +1,253 @@
+package flint.engine;
+
+// Core Java classes
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * The sandbox a single invocation runs in, a directory holding the data files
+ * (INPUT, OUTPUT, ERROR, CONTROL and VARS) and optionally the controller.
+ *
+ * The paths of the data files are recorded as the control parameters addPath
+ * generated when they were created, so a work directory can be reused by
+ * applying those to the next invocations input after scrubbing it.
+ * @author Philip Bowditch
+ */
+public class WorkDirectory {
+
+    /**
+     * The directory itself
+     */
+    protected Path m_path;
+
+    /**
+     * The controller copied or linked into the directory, null if referenced
+     */
+    protected File m_controller;
+
+    /**
+     * The data files by key e.g. INPUT
+     */
+    protected LinkedHashMap<String, File> m_files;
+
+    /**
+     * Keys of the data files that are named pipes
+     */
+    protected HashSet<String> m_pipes;
+
+    /**
+     * Permissions each data file was created with
+     */
+    protected HashMap<String, Set<PosixFilePermission>> m_permissions;
+
+    /**
+     * Control parameters describing the files e.g. DATA_INPUT_PATH
+     */
+    protected List<String[]> m_parameters;
+
+    /**
+     * Names of the entries directly within the directory that are kept
+     */
+    protected HashSet<String> m_kept;
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructor for the WorkDirectory class
+     * @param path The directory
+     * @param controller The controller within it, null if there is none
+     * @throws IOException
+     */
+    public WorkDirectory( Path path, File controller ) throws IOException {
+        m_path        = path.toRealPath();
+        m_controller  = controller;
+        m_files       = new LinkedHashMap<>();
+        m_pipes       = new HashSet<>();
+        m_permissions = new HashMap<>();
+        m_parameters  = new ArrayList<>();
+        m_kept        = new HashSet<>();
+
+        if ( controller != null ) {
+            keep( controller );
+        }
+    }
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Records a data file of the directory
+     * @param key Identifies the file e.g. INPUT
+     * @param f The file
+     * @param pipe True if the file is a named pipe
+     * @throws IOException
+     */
+    public void addFile( String key, File f, boolean pipe ) throws IOException {
+
+        m_files.put( key, f );
+        m_permissions.put( key, Files.getPosixFilePermissions( f.toPath() ) );
+
+        if ( pipe ) {
+            m_pipes.add( key );
+        }
+
+        keep( f );
+    }
+
+    /**
+     * Records the control parameters that describe the files
+     * @param parameters The name value pairs
+     */
+    public void addParameters( List<String[]> parameters ) {
+        m_parameters.addAll( parameters );
+    }
+
+    /**
+     * Tells an invocation where the files are
+     * @param input The input of the invocation about to use the directory
+     */
+    public void applyTo( InvokationInput input ) {
+        for ( String[] p : m_parameters ) {
+            input.addControlParameter( p[0], p[1] );
+        }
+    }
+
+    /**
+     * Returns the directory to the state it was created in.  Anything the
+     * controller added is removed, the data files are emptied and any it moved
+     * or replaced are created again with their original permissions
+     * @throws IOException If the directory can not be reused
+     */
+    public void scrub() throws IOException {
+
+        if ( m_controller != null && !m_controller.isFile() ) {
+            throw new IOException( "Controller missing from " + m_path );
+        }
+
+        try ( DirectoryStream<Path> entries = Files.newDirectoryStream( m_path ) ) {
+            for ( Path p : entries ) {
+                if ( !m_kept.contains( p.getFileName().toString() ) ) {
+                    ShellEngine.deleteDirectory( p );
+                }
+            }
+        }
+
+        for ( Map.Entry<String, File> e : m_files.entrySet() ) {
+
+            String  key  = e.getKey();
+            Path    p    = e.getValue().toPath();
+            boolean pipe = m_pipes.contains( key );
+
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes( p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS );
+            }
+            catch ( NoSuchFileException ex ) {
+                attrs = null;
+            }
+
+            // Pipes hold nothing once both ends are closed, files are truncated
+            // in place so they keep their inode and permissions
+            if ( attrs != null && pipe && attrs.isOther() ) {
+                continue;
+            }
+
+            if ( attrs != null && !pipe && attrs.isRegularFile() ) {
+                if ( attrs.size() > 0 ) {
+                    try ( FileChannel ch = FileChannel.open( p, StandardOpenOption.WRITE ) ) {
+                        ch.truncate( 0 );
+                    }
+                }
+                continue;
+            }
+
+            if ( attrs != null ) {
+                ShellEngine.deleteDirectory( p );
+            }
+
+            if ( pipe ) {
+                PipeTransfer.createPipe( p.toFile() );
+            }
+            else {
+                Files.createFile( p );
+            }
+
+            Files.setPosixFilePermissions( p, m_permissions.get( key ) );
+        }
+    }
+
+    /**
+     * Removes the directory and any data files placed elsewhere, errors are
+     * ignored as there is nothing more to be done with it
+     */
+    public void delete() {
+
+        for ( File f : m_files.values() ) {
+            f.delete();
+        }
+
+        try {
+            ShellEngine.deleteDirectory( m_path );
+        }
+        catch ( IOException ex ) {
+        }
+    }
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Notes a file that scrubbing must leave if it is directly within the directory
+     */
+    protected void keep( File f ) throws IOException {
+        if ( m_path.equals( f.getCanonicalFile().toPath().getParent() ) ) {
+            m_kept.add( f.getName() );
+        }
+    }
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the directory
+     * @return
+     */
+    public Path getPath() {
+        return m_path;
+    }
+
+    /**
+     * Returns the controller within the directory, null if there is none
+     * @return
+     */
+    public File getController() {
+        return m_controller;
+    }
+
+    /**
+     * Returns a data file
+     * @param key Identifies the file e.g. INPUT
+     * @return
+     */
+    public File getFile( String key ) {
+        return m_files.get( key );
+    }
+}
@@ -0,0 +1,238 @@
+package flint.engine;
+
+// Core Java classes
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Keeps a number of WorkDirectories ready so invocations do not pay for
+ * creating, permissioning and deleting their files each time.
+ *
+ * A background reaper thread creates directories up to the pool size, scrubs
+ * the ones handed back and returns them to the pool.  Directories that must be
+ * kept e.g. REMOVE_TEMP_FILES is never are left alone and replaced, any over
+ * the pool size are deleted.
+ * @author Philip Bowditch
+ */
+public class WorkDirectoryPool implements Runnable {
+
+    /**
+     * Creates a new work directory
+     */
+    public interface Factory {
+        WorkDirectory create() throws IOException;
+    }
+
+    /**
+     * Creates the directories
+     */
+    protected Factory m_factory;
+
+    /**
+     * The number of directories kept ready
+     */
+    protected int m_size;
+
+    /**
+     * Shared by every directory e.g. the controller they link to, removed on
+     * shutdown.  May be null
+     */
+    protected Path m_shared;
+
+    /**
+     * Directories ready to use
+     */
+    protected LinkedBlockingQueue<WorkDirectory> m_idle;
+
+    /**
+     * Directories waiting for the reaper to scrub them
+     */
+    protected LinkedBlockingQueue<WorkDirectory> m_released;
+
+    /**
+     * The reaper thread
+     */
+    protected Thread m_reaper;
+
+    /**
+     * Set once the pool has been shut down
+     */
+    protected volatile boolean m_closed;
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Constructor for the WorkDirectoryPool class, the reaper starts at once
+     * @param factory Creates the directories
+     * @param size The number of directories kept ready
+     * @param shared Removed on shutdown, may be null
+     */
+    public WorkDirectoryPool( Factory factory, int size, Path shared ) {
+        m_factory  = factory;
+        m_size     = Math.max( size, 1 );
+        m_shared   = shared;
+        m_idle     = new LinkedBlockingQueue<>();
+        m_released = new LinkedBlockingQueue<>();
+        m_closed   = false;
+
+        m_reaper = new Thread( this, "ShellEngine-reaper" );
+        m_reaper.setDaemon( true );
+        m_reaper.start();
+    }
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns a ready directory, creating one if none are
+     * @return
+     * @throws IOException
+     */
+    public WorkDirectory acquire() throws IOException {
+
+        if ( m_closed ) {
+            throw new IOException( "Work directory pool has been shut down" );
+        }
+
+        WorkDirectory w = m_idle.poll();
+
+        return w != null ? w : m_factory.create();
+    }
+
+    /**
+     * Hands a directory back once its invocation has finished
+     * @param w The directory
+     * @param keep True if its files must be left as they are, it is then
+     *             never reused
+     */
+    public void release( WorkDirectory w, boolean keep ) {
+
+        if ( keep ) {
+            return;
+        }
+
+        synchronized ( this ) {
+            if ( !m_closed ) {
+                m_released.offer( w );
+                return;
+            }
+        }
+
+        w.delete();
+    }
+
+    /**
+     * Stops the reaper and deletes every directory not in use along with the
+     * shared directory
+     * @throws InterruptedException
+     */
+    public void shutdown() throws InterruptedException {
+
+        synchronized ( this ) {
+            m_closed = true;
+        }
+
+        m_reaper.interrupt();
+        m_reaper.join();
+
+        WorkDirectory w;
+        while ( ( w = m_released.poll() ) != null ) {
+            w.delete();
+        }
+        while ( ( w = m_idle.poll() ) != null ) {
+            w.delete();
+        }
+
+        if ( m_shared != null ) {
+            try {
+                ShellEngine.deleteDirectory( m_shared );
+            }
+            catch ( IOException ex ) {
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+
+        while ( !m_closed ) {
+
+            fill();
+
+            WorkDirectory w;
+            try {
+                w = m_released.poll( 1, TimeUnit.SECONDS );
+            }
+            catch ( InterruptedException ex ) {
+                return;
+            }
+
+            if ( w != null ) {
+                reap( w );
+            }
+        }
+    }
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Creates directories until the pool is full, giving up until the next
+     * pass if one can not be created
+     */
+    protected void fill() {
+
+        while ( !m_closed && m_idle.size() + m_released.size() < m_size ) {
+            try {
+                m_idle.offer( m_factory.create() );
+            }
+            catch ( IOException ex ) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Scrubs a released directory back into the pool, deleting it if the pool
+     * is full or it can not be scrubbed
+     * @param w The directory
+     */
+    protected void reap( WorkDirectory w ) {
+
+        if ( m_closed || m_idle.size() >= m_size ) {
+            w.delete();
+            return;
+        }
+
+        try {
+            w.scrub();
+            m_idle.offer( w );
+        }
+        catch ( IOException ex ) {
+            w.delete();
+        }
+    }
+
+
+    //--------------------------------------------------------------------------
+
+    /**
+     * Returns the number of directories kept ready
+     * @return
+     */
+    public int getSize() {
+        return m_size;
+    }
+
+    /**
+     * Returns the number of directories ready to use
+     * @return
+     */
+    public int getIdle() {
+        return m_idle.size();
+    }
+}
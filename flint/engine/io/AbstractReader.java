@@ -3,8 +3,15 @@ package flint.engine.io;
 // Core Java classes
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 
 /**
@@ -43,6 +50,21 @@ public abstract class AbstractReader extends AbstractDataProcessor implements IR
         m_in.close();
     }
     
+    /**
+     * Starts reading a new input stream
+     * @param in The stream to read
+     * @param settings Configuration for the reader
+     * @throws java.lang.Exception
+     */
+    @Override
+    public void reset( InputStream in, Map<String, String> settings ) throws Exception {
+        m_in       = in;
+        m_settings = settings;
+        m_columns  = new String[]{};
+        
+        initialise();
+    }
+    
     /**
      * Reads a record from the dataset and maps it to columns
      * @throws java.io.IOException
@@ -69,6 +91,25 @@ public abstract class AbstractReader extends AbstractDataProcessor implements IR
     }
     
     
+    /**
+     * Returns a lazy view of the remaining records
+     * @return 
+     */
+    @Override
+    public Iterator<String[]> iterator() {
+        return new RecordIterator();
+    }
+    
+    /**
+     * Returns the remaining records as a sequential, lazily read stream
+     * @return 
+     */
+    @Override
+    public Stream<String[]> stream() {
+        return StreamSupport.stream( Spliterators.spliteratorUnknownSize( iterator(), Spliterator.ORDERED | Spliterator.NONNULL ), false );
+    }
+    
+    
     //--------------------------------------------------------------------------
     
     /**
@@ -87,4 +128,58 @@ public abstract class AbstractReader extends AbstractDataProcessor implements IR
     public void setInputStream( InputStream in ) {
         m_in = in;
     }
-}
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Iterates over the reader by calling readRecord, reading one record ahead
+     * so hasNext can answer
+     */
+    protected class RecordIterator implements Iterator<String[]> {
+        
+        /**
+         * The record to return next, null if not yet read
+         */
+        protected String[] m_next;
+        
+        /**
+         * Set once readRecord has returned null
+         */
+        protected boolean m_finished;
+        
+        public RecordIterator() {
+            m_next     = null;
+            m_finished = false;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            
+            if ( m_next == null && !m_finished ) {
+                try {
+                    m_next     = readRecord();
+                    m_finished = m_next == null;
+                }
+                catch ( IOException ex ) {
+                    throw new UncheckedIOException( ex );
+                }
+            }
+            
+            return m_next != null;
+        }
+        
+        @Override
+        public String[] next() {
+            
+            if ( !hasNext() ) {
+                throw new NoSuchElementException();
+            }
+            
+            String[] rec = m_next;
+            m_next = null;
+            
+            return rec;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,51 @@
+package flint.engine.io;
+
+// Core Java classes
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * A basic implementation of the IRowSource interface building the stream and
+ * list views on top of the iterator
+ * @author Philip Bowditch
+ */
+public abstract class AbstractRowSource implements IRowSource {
+    
+    /**
+     * Returns every row as a sequential, lazily read stream
+     * @return 
+     */
+    @Override
+    public Stream<String[]> stream() {
+        return StreamSupport.stream( Spliterators.spliteratorUnknownSize( iterator(), Spliterator.ORDERED | Spliterator.NONNULL ), false );
+    }
+    
+    /**
+     * Reads every row into memory
+     * @return 
+     */
+    @Override
+    public List<String[]> toList() {
+        
+        ArrayList<String[]> rows = new ArrayList<>();
+        for ( String[] row : this ) {
+            rows.add( row );
+        }
+        
+        return rows;
+    }
+    
+    /**
+     * Default implementation holds nothing to release
+     * @throws IOException 
+     */
+    @Override
+    public void close() throws IOException {
+    }
+}
@@ -3,6 +3,7 @@ package flint.engine.io;
 // Core Java classes
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Map;
 
 
 /**
@@ -47,6 +48,22 @@ public abstract class AbstractWriter extends AbstractDataProcessor implements IW
     }
     
     
+    /**
+     * Starts writing a new output stream
+     * @param out The stream to write
+     * @param settings Configuration for the writer
+     * @throws java.lang.Exception
+     */
+    @Override
+    public void reset( OutputStream out, Map<String, String> settings ) throws Exception {
+        m_out      = out;
+        m_settings = settings;
+        m_columns  = new String[]{};
+        
+        initialise();
+    }
+    
+    
     //--------------------------------------------------------------------------
     
     @Override
@@ -0,0 +1,454 @@
+package flint.engine.io;
+
+// Core Java classes
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Constants and FlatBuffer handling for the Arrow IPC streaming format shared by
+ * ArrowReader and ArrowWriter.  Only the parts of the Arrow metadata they need
+ * are encoded and decoded, so no Arrow or FlatBuffers library is required.
+ *
+ * A stream is a schema message, any number of record batch messages and an end
+ * of stream marker.  Each message is a continuation marker, the length of its
+ * FlatBuffer metadata, the metadata and then its body, all little endian and
+ * padded to 8 bytes.
+ * @author Philip Bowditch
+ */
+public class ArrowFormat {
+    
+    /**
+     * Marks the start of a message, older streams omit it
+     */
+    public static final int CONTINUATION = 0xFFFFFFFF;
+    
+    /**
+     * MetadataVersion.V5
+     */
+    public static final short METADATA_VERSION = 4;
+    
+    // MessageHeader union types
+    public static final byte HEADER_SCHEMA           = 1;
+    public static final byte HEADER_DICTIONARY_BATCH = 2;
+    public static final byte HEADER_RECORD_BATCH     = 3;
+    
+    // Type union types
+    public static final byte TYPE_NULL           = 1;
+    public static final byte TYPE_INT            = 2;
+    public static final byte TYPE_FLOATING_POINT = 3;
+    public static final byte TYPE_BINARY         = 4;
+    public static final byte TYPE_UTF8           = 5;
+    public static final byte TYPE_BOOL           = 6;
+    public static final byte TYPE_LARGE_BINARY   = 19;
+    public static final byte TYPE_LARGE_UTF8     = 20;
+    
+    // FloatingPoint precisions
+    public static final short PRECISION_SINGLE = 1;
+    public static final short PRECISION_DOUBLE = 2;
+    
+    // Table slots of the Message, Schema, Field, Int, FloatingPoint and RecordBatch tables
+    public static final int MESSAGE_VERSION      = 0;
+    public static final int MESSAGE_HEADER_TYPE  = 1;
+    public static final int MESSAGE_HEADER       = 2;
+    public static final int MESSAGE_BODY_LENGTH  = 3;
+    public static final int SCHEMA_ENDIANNESS    = 0;
+    public static final int SCHEMA_FIELDS        = 1;
+    public static final int FIELD_NAME           = 0;
+    public static final int FIELD_NULLABLE       = 1;
+    public static final int FIELD_TYPE_TYPE      = 2;
+    public static final int FIELD_TYPE           = 3;
+    public static final int FIELD_DICTIONARY     = 4;
+    public static final int FIELD_CHILDREN       = 5;
+    public static final int INT_BIT_WIDTH        = 0;
+    public static final int INT_IS_SIGNED        = 1;
+    public static final int FLOAT_PRECISION      = 0;
+    public static final int BATCH_LENGTH         = 0;
+    public static final int BATCH_NODES          = 1;
+    public static final int BATCH_BUFFERS        = 2;
+    public static final int BATCH_COMPRESSION    = 3;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    private ArrowFormat() {
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Rounds up to a multiple of 8
+     * @param n
+     * @return
+     */
+    public static long pad( long n ) {
+        return ( n + 7 ) & ~7L;
+    }
+    
+    public static void writeIntLE( OutputStream out, int v ) throws IOException {
+        out.write( v );
+        out.write( v >>> 8 );
+        out.write( v >>> 16 );
+        out.write( v >>> 24 );
+    }
+    
+    /**
+     * Reads an int, returning the default if the stream ends before any of it
+     */
+    public static int readIntLE( InputStream in, int eof ) throws IOException {
+        
+        byte[] b = new byte[4];
+        
+        int n = in.read( b, 0, 4 );
+        if ( n < 0 ) {
+            return eof;
+        }
+        
+        readFully( in, b, n, 4 - n );
+        
+        return ( b[0] & 0xFF ) | ( ( b[1] & 0xFF ) << 8 ) | ( ( b[2] & 0xFF ) << 16 ) | ( ( b[3] & 0xFF ) << 24 );
+    }
+    
+    public static void readFully( InputStream in, byte[] b, int offset, int len ) throws IOException {
+        
+        while ( len > 0 ) {
+            
+            int n = in.read( b, offset, len );
+            if ( n < 0 ) {
+                throw new EOFException( "Truncated Arrow stream" );
+            }
+            
+            offset += n;
+            len    -= n;
+        }
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Returns the position of a FlatBuffer table field, 0 if it is absent
+     * @param b The FlatBuffer, little endian
+     * @param table The position of the table
+     * @param slot The index of the field in the table definition
+     * @return
+     */
+    public static int field( ByteBuffer b, int table, int slot ) {
+        
+        int vtable = table - b.getInt( table );
+        int size   = b.getShort( vtable ) & 0xFFFF;
+        int entry  = 4 + 2 * slot;
+        
+        if ( entry >= size ) {
+            return 0;
+        }
+        
+        int offset = b.getShort( vtable + entry ) & 0xFFFF;
+        
+        return offset == 0 ? 0 : table + offset;
+    }
+    
+    /**
+     * Follows an offset field to the table, vector or string it refers to
+     * @return The position of the target, 0 if the field is absent
+     */
+    public static int target( ByteBuffer b, int table, int slot ) {
+        
+        int pos = field( b, table, slot );
+        
+        return pos == 0 ? 0 : pos + b.getInt( pos );
+    }
+    
+    public static long getLong( ByteBuffer b, int table, int slot, long defaultValue ) {
+        int pos = field( b, table, slot );
+        return pos == 0 ? defaultValue : b.getLong( pos );
+    }
+    
+    public static int getInt( ByteBuffer b, int table, int slot, int defaultValue ) {
+        int pos = field( b, table, slot );
+        return pos == 0 ? defaultValue : b.getInt( pos );
+    }
+    
+    public static short getShort( ByteBuffer b, int table, int slot, short defaultValue ) {
+        int pos = field( b, table, slot );
+        return pos == 0 ? defaultValue : b.getShort( pos );
+    }
+    
+    public static byte getByte( ByteBuffer b, int table, int slot, byte defaultValue ) {
+        int pos = field( b, table, slot );
+        return pos == 0 ? defaultValue : b.get( pos );
+    }
+    
+    /**
+     * Returns the position of the nth table in a vector of tables
+     */
+    public static int vectorTable( ByteBuffer b, int vector, int index ) {
+        int pos = vector + 4 + 4 * index;
+        return pos + b.getInt( pos );
+    }
+    
+    public static String string( ByteBuffer b, int pos ) {
+        
+        if ( pos == 0 ) {
+            return null;
+        }
+        
+        int    len   = b.getInt( pos );
+        byte[] bytes = new byte[ len ];
+        
+        for ( int i = 0; i < len; i++ ) {
+            bytes[i] = b.get( pos + 4 + i );
+        }
+        
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Builds a FlatBuffer front to back.  A referenced string, vector or table
+     * must be added after the offset field that refers to it, which is linked
+     * once both positions are known
+     */
+    public static class Builder {
+        
+        protected byte[] m_buffer;
+        
+        protected int m_size;
+        
+        public Builder() {
+            m_buffer = new byte[1024];
+            m_size   = 4;
+        }
+        
+        /**
+         * Discards the buffer contents, leaving room for the root offset
+         */
+        public void reset() {
+            Arrays.fill( m_buffer, 0, m_size, (byte)0 );
+            m_size = 4;
+        }
+        
+        /**
+         * Points the root of the buffer at a table and pads the buffer to 8 bytes
+         * @param table
+         */
+        public void finish( int table ) {
+            link( 0, table );
+            align( 8 );
+        }
+        
+        public byte[] getBuffer() {
+            return m_buffer;
+        }
+        
+        public int size() {
+            return m_size;
+        }
+        
+        /**
+         * Sets an offset field to refer to a position after it
+         * @param field The position of the offset field
+         * @param target The position referred to
+         */
+        public void link( int field, int target ) {
+            putInt( field, target - field );
+        }
+        
+        public Table table( int slots ) {
+            return new Table( slots );
+        }
+        
+        /**
+         * Adds a null terminated UTF-8 string
+         * @return The position of the string
+         */
+        public int string( String s ) {
+            
+            byte[] bytes = s.getBytes( StandardCharsets.UTF_8 );
+            
+            align( 4 );
+            
+            int pos = reserve( 4 + bytes.length + 1 );
+            putInt( pos, bytes.length );
+            System.arraycopy( bytes, 0, m_buffer, pos + 4, bytes.length );
+            
+            return pos;
+        }
+        
+        /**
+         * Adds a vector of structs made only of longs
+         * @param values The struct fields, one struct after another
+         * @param perStruct The number of longs in each struct
+         * @return The position of the vector
+         */
+        public int structVector( long[] values, int count, int perStruct ) {
+            
+            // The length comes immediately before 8 byte aligned elements
+            while ( ( m_size + 4 ) % 8 != 0 ) {
+                reserve( 1 );
+            }
+            
+            int pos = reserve( 4 + count * perStruct * 8 );
+            putInt( pos, count );
+            
+            for ( int i = 0; i < count * perStruct; i++ ) {
+                putLong( pos + 4 + i * 8, values[i] );
+            }
+            
+            return pos;
+        }
+        
+        /**
+         * Adds a vector of offsets to be linked to tables added later
+         * @return The position of the vector, element i is at position + 4 + 4i
+         */
+        public int offsetVector( int count ) {
+            
+            align( 4 );
+            
+            int pos = reserve( 4 + count * 4 );
+            putInt( pos, count );
+            
+            return pos;
+        }
+        
+        protected void align( int alignment ) {
+            reserve( ( alignment - m_size % alignment ) % alignment );
+        }
+        
+        protected int reserve( int n ) {
+            
+            if ( m_size + n > m_buffer.length ) {
+                m_buffer = Arrays.copyOf( m_buffer, Math.max( m_size + n, m_buffer.length * 2 ) );
+            }
+            
+            int pos = m_size;
+            m_size += n;
+            
+            return pos;
+        }
+        
+        protected void putInt( int pos, int v ) {
+            m_buffer[ pos     ] = (byte)v;
+            m_buffer[ pos + 1 ] = (byte)( v >>> 8 );
+            m_buffer[ pos + 2 ] = (byte)( v >>> 16 );
+            m_buffer[ pos + 3 ] = (byte)( v >>> 24 );
+        }
+        
+        protected void putLong( int pos, long v ) {
+            putInt( pos, (int)v );
+            putInt( pos + 4, (int)( v >>> 32 ) );
+        }
+        
+        protected void putShort( int pos, int v ) {
+            m_buffer[ pos     ] = (byte)v;
+            m_buffer[ pos + 1 ] = (byte)( v >>> 8 );
+        }
+        
+        
+        //----------------------------------------------------------------------
+        
+        /**
+         * A table being built, fields are added and then written together by end
+         */
+        public class Table {
+            
+            protected final int[] m_sizes;
+            
+            protected final long[] m_values;
+            
+            protected final int[] m_positions;
+            
+            protected Table( int slots ) {
+                m_sizes     = new int[ slots ];
+                m_values    = new long[ slots ];
+                m_positions = new int[ slots ];
+            }
+            
+            public Table addByte( int slot, int v ) {
+                return add( slot, 1, v );
+            }
+            
+            public Table addShort( int slot, int v ) {
+                return add( slot, 2, v );
+            }
+            
+            public Table addLong( int slot, long v ) {
+                return add( slot, 8, v );
+            }
+            
+            /**
+             * Adds an offset field to be linked once its target is added
+             */
+            public Table addOffset( int slot ) {
+                return add( slot, 4, 0 );
+            }
+            
+            protected Table add( int slot, int size, long v ) {
+                m_sizes[ slot ]  = size;
+                m_values[ slot ] = v;
+                return this;
+            }
+            
+            /**
+             * Writes the vtable followed by the table, larger fields first so
+             * each is aligned to its size
+             * @return The position of the table
+             */
+            public int end() {
+                
+                int slots = m_sizes.length;
+                
+                align( 2 );
+                int vtable = reserve( 4 + 2 * slots );
+                
+                align( 4 );
+                int table = reserve( 4 );
+                putInt( table, table - vtable );
+                
+                for ( int size = 8; size > 0; size /= 2 ) {
+                    for ( int slot = 0; slot < slots; slot++ ) {
+                        
+                        if ( m_sizes[ slot ] != size ) {
+                            continue;
+                        }
+                        
+                        align( size );
+                        int pos = reserve( size );
+                        
+                        switch ( size ) {
+                            case 8 : putLong(  pos, m_values[ slot ] );       break;
+                            case 4 : putInt(   pos, (int)m_values[ slot ] );  break;
+                            case 2 : putShort( pos, (int)m_values[ slot ] );  break;
+                            default: m_buffer[ pos ] = (byte)m_values[ slot ]; break;
+                        }
+                        
+                        m_positions[ slot ] = pos;
+                        putShort( vtable + 4 + 2 * slot, pos - table );
+                    }
+                }
+                
+                putShort( vtable,     4 + 2 * slots );
+                putShort( vtable + 2, m_size - table );
+                
+                return table;
+            }
+            
+            /**
+             * Returns the position of a field once the table has ended
+             * @param slot
+             * @return
+             */
+            public int position( int slot ) {
+                return m_positions[ slot ];
+            }
+        }
+    }
+}
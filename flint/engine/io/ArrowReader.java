@@ -0,0 +1,406 @@
+package flint.engine.io;
+
+// Core Java classes
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Reads an Arrow IPC stream, e.g. one written by ArrowWriter or by pyarrow with
+ * pyarrow.ipc.new_stream.  The columns are always the names in the schema.
+ *
+ * Utf8, Binary (read as UTF-8), their Large variants, Int, FloatingPoint
+ * (single and double), Bool and Null columns are supported and converted to
+ * Strings a record at a time.  Dictionary encoded, nested and compressed data is
+ * rejected with an IOException
+ * @author Philip Bowditch
+ */
+public class ArrowReader extends AbstractReader {
+    
+    /**
+     * The Arrow type of each column
+     */
+    protected byte[] m_types;
+    
+    /**
+     * The bit width of each Int column or the precision of each FloatingPoint column
+     */
+    protected int[] m_widths;
+    
+    protected boolean[] m_signed;
+    
+    /**
+     * The body of the current record batch
+     */
+    protected byte[] m_body;
+    
+    protected ByteBuffer m_bodyBuffer;
+    
+    protected int m_batchRows;
+    
+    /**
+     * Index within the current batch of the next row
+     */
+    protected int m_row;
+    
+    /**
+     * Offsets within the body of each column's buffers, the validity bitmap is
+     * -1 if every value is valid.  The offsets buffer is only used by text
+     */
+    protected int[] m_validity;
+    
+    protected int[] m_offsets;
+    
+    protected int[] m_values;
+    
+    /**
+     * Set once the end of the stream is read
+     */
+    protected boolean m_finished;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the ArrowReader class
+     */
+    public ArrowReader() {
+        super();
+        
+        m_types      = new byte[0];
+        m_widths     = new int[0];
+        m_signed     = new boolean[0];
+        m_body       = new byte[0];
+        m_bodyBuffer = ByteBuffer.wrap( m_body ).order( ByteOrder.LITTLE_ENDIAN );
+        m_batchRows  = 0;
+        m_row        = 0;
+        m_validity   = new int[0];
+        m_offsets    = new int[0];
+        m_values     = new int[0];
+        m_finished   = false;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Reads the next row of the current record batch, reading the next batch
+     * once it is exhausted
+     * @return The fields, null at the end of the stream
+     * @throws java.io.IOException
+     */
+    @Override
+    public String[] readRecord() throws IOException {
+        
+        while ( m_row >= m_batchRows ) {
+            if ( !readBatch() ) {
+                return null;
+            }
+        }
+        
+        int      n      = m_types.length;
+        String[] fields = new String[ n ];
+        
+        for ( int c = 0; c < n; c++ ) {
+            fields[c] = value( c, m_row );
+        }
+        
+        m_row++;
+        
+        return fields;
+    }
+    
+    /**
+     * Reads the schema, an empty stream has no columns or records
+     * @throws java.lang.Exception
+     */
+    @Override
+    public void initialise() throws Exception {
+        
+        m_types     = new byte[0];
+        m_batchRows = 0;
+        m_row       = 0;
+        m_finished  = false;
+        
+        ByteBuffer message = readMessage();
+        if ( message == null ) {
+            m_finished = true;
+            return;
+        }
+        
+        int root = message.getInt( 0 );
+        if ( ArrowFormat.getByte( message, root, ArrowFormat.MESSAGE_HEADER_TYPE, (byte)0 ) != ArrowFormat.HEADER_SCHEMA ) {
+            throw new IOException( "Arrow stream does not start with a schema" );
+        }
+        
+        skipBody( message, root );
+        
+        int schema = ArrowFormat.target( message, root, ArrowFormat.MESSAGE_HEADER );
+        if ( ArrowFormat.getShort( message, schema, ArrowFormat.SCHEMA_ENDIANNESS, (short)0 ) != 0 ) {
+            throw new IOException( "Big endian Arrow streams are not supported" );
+        }
+        
+        int fields = ArrowFormat.target( message, schema, ArrowFormat.SCHEMA_FIELDS );
+        int n      = fields == 0 ? 0 : message.getInt( fields );
+        
+        String[] cols = new String[ n ];
+        
+        m_types    = new byte[ n ];
+        m_widths   = new int[ n ];
+        m_signed   = new boolean[ n ];
+        m_validity = new int[ n ];
+        m_offsets  = new int[ n ];
+        m_values   = new int[ n ];
+        
+        for ( int c = 0; c < n; c++ ) {
+            
+            int field = ArrowFormat.vectorTable( message, fields, c );
+            int type  = ArrowFormat.target( message, field, ArrowFormat.FIELD_TYPE );
+            
+            cols[c]     = ArrowFormat.string( message, ArrowFormat.target( message, field, ArrowFormat.FIELD_NAME ) );
+            m_types[c]  = ArrowFormat.getByte( message, field, ArrowFormat.FIELD_TYPE_TYPE, (byte)0 );
+            
+            if ( ArrowFormat.field( message, field, ArrowFormat.FIELD_DICTIONARY ) != 0 ) {
+                throw new IOException( "Dictionary encoded Arrow column [" + cols[c] + "] is not supported" );
+            }
+            
+            switch ( m_types[c] ) {
+                
+                case ArrowFormat.TYPE_INT            : m_widths[c] = ArrowFormat.getInt(  message, type, ArrowFormat.INT_BIT_WIDTH, 0 );
+                                                       m_signed[c] = ArrowFormat.getByte( message, type, ArrowFormat.INT_IS_SIGNED, (byte)0 ) != 0;
+                                                       break;
+                case ArrowFormat.TYPE_FLOATING_POINT : m_widths[c] = ArrowFormat.getShort( message, type, ArrowFormat.FLOAT_PRECISION, (short)0 );
+                                                       if ( m_widths[c] != ArrowFormat.PRECISION_SINGLE && m_widths[c] != ArrowFormat.PRECISION_DOUBLE ) {
+                                                           throw new IOException( "Half precision Arrow column [" + cols[c] + "] is not supported" );
+                                                       }
+                                                       break;
+                case ArrowFormat.TYPE_NULL           :
+                case ArrowFormat.TYPE_BINARY         :
+                case ArrowFormat.TYPE_UTF8           :
+                case ArrowFormat.TYPE_BOOL           :
+                case ArrowFormat.TYPE_LARGE_BINARY   :
+                case ArrowFormat.TYPE_LARGE_UTF8     : break;
+                default                              : throw new IOException( "Arrow column [" + cols[c] + "] has unsupported type " + m_types[c] );
+            }
+        }
+        
+        setColumns( cols );
+    }
+    
+    /**
+     * Starts reading a new input stream
+     * @param in The stream to read
+     * @param settings Configuration for the reader
+     * @throws java.lang.Exception
+     */
+    @Override
+    public void reset( InputStream in, Map<String, String> settings ) throws Exception {
+        m_batchRows = 0;
+        m_row       = 0;
+        m_finished  = false;
+        
+        super.reset( in, settings );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Reads the next record batch
+     * @return False at the end of the stream
+     */
+    protected boolean readBatch() throws IOException {
+        
+        ByteBuffer message = m_finished ? null : readMessage();
+        if ( message == null ) {
+            m_finished  = true;
+            m_batchRows = 0;
+            return false;
+        }
+        
+        int  root = message.getInt( 0 );
+        byte kind = ArrowFormat.getByte( message, root, ArrowFormat.MESSAGE_HEADER_TYPE, (byte)0 );
+        
+        if ( kind == ArrowFormat.HEADER_DICTIONARY_BATCH ) {
+            throw new IOException( "Arrow dictionary batches are not supported" );
+        }
+        
+        if ( kind != ArrowFormat.HEADER_RECORD_BATCH ) {
+            skipBody( message, root );
+            m_batchRows = 0;
+            m_row       = 0;
+            return true;
+        }
+        
+        long length = ArrowFormat.getLong( message, root, ArrowFormat.MESSAGE_BODY_LENGTH, 0 );
+        if ( length > Integer.MAX_VALUE - 8 ) {
+            throw new IOException( "Arrow record batch of " + length + " bytes is too large" );
+        }
+        
+        if ( m_body.length < length ) {
+            m_body       = new byte[ (int)length ];
+            m_bodyBuffer = ByteBuffer.wrap( m_body ).order( ByteOrder.LITTLE_ENDIAN );
+        }
+        
+        ArrowFormat.readFully( getInputStream(), m_body, 0, (int)length );
+        
+        int batch = ArrowFormat.target( message, root, ArrowFormat.MESSAGE_HEADER );
+        if ( ArrowFormat.field( message, batch, ArrowFormat.BATCH_COMPRESSION ) != 0 ) {
+            throw new IOException( "Compressed Arrow record batches are not supported" );
+        }
+        
+        int nodes   = ArrowFormat.target( message, batch, ArrowFormat.BATCH_NODES );
+        int buffers = ArrowFormat.target( message, batch, ArrowFormat.BATCH_BUFFERS );
+        int b       = 0;
+        
+        for ( int c = 0; c < m_types.length; c++ ) {
+            
+            long nulls = message.getLong( nodes + 4 + 16 * c + 8 );
+            
+            // Null columns have no buffers, the rest start with a validity bitmap
+            if ( m_types[c] == ArrowFormat.TYPE_NULL ) {
+                continue;
+            }
+            
+            m_validity[c] = nulls == 0 || bufferLength( message, buffers, b ) == 0 ? -1 : bufferOffset( message, buffers, b );
+            b++;
+            
+            switch ( m_types[c] ) {
+                case ArrowFormat.TYPE_BINARY       :
+                case ArrowFormat.TYPE_UTF8         :
+                case ArrowFormat.TYPE_LARGE_BINARY :
+                case ArrowFormat.TYPE_LARGE_UTF8   : m_offsets[c] = bufferOffset( message, buffers, b++ );
+                                                     break;
+            }
+            
+            m_values[c] = bufferOffset( message, buffers, b++ );
+        }
+        
+        m_batchRows = (int)ArrowFormat.getLong( message, batch, ArrowFormat.BATCH_LENGTH, 0 );
+        m_row       = 0;
+        
+        return true;
+    }
+    
+    protected static int bufferOffset( ByteBuffer message, int buffers, int index ) {
+        return (int)message.getLong( buffers + 4 + 16 * index );
+    }
+    
+    protected static long bufferLength( ByteBuffer message, int buffers, int index ) {
+        return message.getLong( buffers + 4 + 16 * index + 8 );
+    }
+    
+    /**
+     * Reads the metadata of the next message
+     * @return The metadata, null at the end of the stream
+     */
+    protected ByteBuffer readMessage() throws IOException {
+        
+        InputStream in = getInputStream();
+        
+        int length = ArrowFormat.readIntLE( in, 0 );
+        
+        // Streams written before the continuation marker start with the length
+        if ( length == ArrowFormat.CONTINUATION ) {
+            length = ArrowFormat.readIntLE( in, 0 );
+        }
+        
+        if ( length == 0 ) {
+            return null;
+        }
+        
+        if ( length < 0 ) {
+            throw new IOException( "Invalid Arrow message length " + length );
+        }
+        
+        byte[] metadata = new byte[ length ];
+        ArrowFormat.readFully( in, metadata, 0, length );
+        
+        return ByteBuffer.wrap( metadata ).order( ByteOrder.LITTLE_ENDIAN );
+    }
+    
+    protected void skipBody( ByteBuffer message, int root ) throws IOException {
+        
+        long length = ArrowFormat.getLong( message, root, ArrowFormat.MESSAGE_BODY_LENGTH, 0 );
+        
+        InputStream in = getInputStream();
+        while ( length > 0 ) {
+            
+            long n = in.skip( length );
+            if ( n <= 0 ) {
+                if ( in.read() < 0 ) {
+                    throw new IOException( "Truncated Arrow stream" );
+                }
+                n = 1;
+            }
+            
+            length -= n;
+        }
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Converts a value of the current batch to a String
+     */
+    protected String value( int c, int row ) {
+        
+        byte       type = m_types[c];
+        ByteBuffer b    = m_bodyBuffer;
+        
+        if ( type == ArrowFormat.TYPE_NULL ) {
+            return null;
+        }
+        
+        if ( m_validity[c] >= 0 && ( m_body[ m_validity[c] + ( row >> 3 ) ] & ( 1 << ( row & 7 ) ) ) == 0 ) {
+            return null;
+        }
+        
+        int values = m_values[c];
+        
+        switch ( type ) {
+            
+            case ArrowFormat.TYPE_BINARY :
+            case ArrowFormat.TYPE_UTF8   : {
+                int start = b.getInt( m_offsets[c] + 4 * row );
+                int end   = b.getInt( m_offsets[c] + 4 * row + 4 );
+                return new String( m_body, values + start, end - start, StandardCharsets.UTF_8 );
+            }
+            
+            case ArrowFormat.TYPE_LARGE_BINARY :
+            case ArrowFormat.TYPE_LARGE_UTF8   : {
+                int start = (int)b.getLong( m_offsets[c] + 8 * row );
+                int end   = (int)b.getLong( m_offsets[c] + 8 * row + 8 );
+                return new String( m_body, values + start, end - start, StandardCharsets.UTF_8 );
+            }
+            
+            case ArrowFormat.TYPE_BOOL :
+                return ( m_body[ values + ( row >> 3 ) ] & ( 1 << ( row & 7 ) ) ) == 0 ? "false" : "true";
+            
+            case ArrowFormat.TYPE_FLOATING_POINT :
+                if ( m_widths[c] == ArrowFormat.PRECISION_SINGLE ) {
+                    return Float.toString( b.getFloat( values + 4 * row ) );
+                }
+                return Double.toString( b.getDouble( values + 8 * row ) );
+            
+            default :
+                return integer( c, row, values );
+        }
+    }
+    
+    protected String integer( int c, int row, int values ) {
+        
+        ByteBuffer b = m_bodyBuffer;
+        
+        switch ( m_widths[c] ) {
+            case 8  : return Integer.toString( m_signed[c] ? b.get( values + row ) : b.get( values + row ) & 0xFF );
+            case 16 : return Integer.toString( m_signed[c] ? b.getShort( values + 2 * row ) : b.getShort( values + 2 * row ) & 0xFFFF );
+            case 32 : return m_signed[c] ? Integer.toString( b.getInt( values + 4 * row ) ) : Long.toString( b.getInt( values + 4 * row ) & 0xFFFFFFFFL );
+            default : return m_signed[c] ? Long.toString( b.getLong( values + 8 * row ) ) : Long.toUnsignedString( b.getLong( values + 8 * row ) );
+        }
+    }
+}
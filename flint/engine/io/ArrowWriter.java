@@ -0,0 +1,480 @@
+package flint.engine.io;
+
+// Core Java classes
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+
+/**
+ * Writes records as an Arrow IPC stream of nullable Utf8 columns, so a controller
+ * script can load the data with any Arrow library, e.g. pyarrow.ipc.open_stream.
+ * Records are buffered column by column and written as a record batch every
+ * batch_size rows (65536 by default).
+ *
+ * Arrow always names its columns.  With a header the columns are those suggested
+ * or, if none were, the first record written.  Without a header they are named
+ * column0, column1 and so on from the width of the first record.  Records with
+ * fewer fields than columns are padded with nulls
+ * @author Philip Bowditch
+ */
+public class ArrowWriter extends AbstractWriter {
+    
+    /**
+     * The rows in a record batch unless set with the batch_size setting
+     */
+    public static final int DEFAULT_BATCH_SIZE = 65536;
+    
+    /**
+     * The most bytes of text a column holds in one batch, keeping 32 bit offsets
+     * valid.  A batch is written early once any column holds half of this
+     */
+    protected static final int MAX_BATCH_BYTES = 1 << 30;
+    
+    protected int m_batchSize;
+    
+    protected boolean m_hasHeader;
+    
+    /**
+     * Has the schema message been written
+     */
+    protected boolean m_started;
+    
+    /**
+     * Number of rows in the current batch
+     */
+    protected int m_rows;
+    
+    /**
+     * Set once a column holds enough text that the batch should be written
+     */
+    protected boolean m_batchFull;
+    
+    /**
+     * The UTF-8 text of each column in the current batch
+     */
+    protected byte[][] m_data;
+    
+    protected int[] m_dataLength;
+    
+    /**
+     * The start of each value in the text of each column, one more than the rows
+     */
+    protected int[][] m_offsets;
+    
+    /**
+     * A bit per row of each column, set if the value is not null
+     */
+    protected byte[][] m_validity;
+    
+    protected int[] m_nullCount;
+    
+    protected ArrowFormat.Builder m_builder;
+    
+    /**
+     * Used to write little endian integers to the output stream
+     */
+    protected ByteBuffer m_scratch;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the ArrowWriter class
+     */
+    public ArrowWriter() {
+        super();
+        
+        m_batchSize  = DEFAULT_BATCH_SIZE;
+        m_hasHeader  = true;
+        m_started    = false;
+        m_rows       = 0;
+        m_batchFull  = false;
+        m_data       = new byte[0][];
+        m_dataLength = new int[0];
+        m_offsets    = new int[0][];
+        m_validity   = new byte[0][];
+        m_nullCount  = new int[0];
+        m_builder    = new ArrowFormat.Builder();
+        m_scratch    = ByteBuffer.allocate( 8192 ).order( ByteOrder.LITTLE_ENDIAN );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Writes any buffered rows as a record batch and flushes the output stream
+     * @throws IOException
+     */
+    @Override
+    public void flush() throws IOException {
+        
+        if ( m_rows > 0 ) {
+            writeBatch();
+        }
+        
+        super.flush();
+    }
+    
+    /**
+     * Writes any buffered rows and the end of the stream then closes the output stream
+     * @throws java.io.IOException
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if ( !m_started ) {
+                start( getColumns() );
+            }
+            
+            if ( m_rows > 0 ) {
+                writeBatch();
+            }
+            
+            ArrowFormat.writeIntLE( m_out, ArrowFormat.CONTINUATION );
+            ArrowFormat.writeIntLE( m_out, 0 );
+        }
+        finally {
+            super.close();
+        }
+    }
+    
+    @Override
+    public void writeRecord( String[] fields ) throws IOException {
+        
+        if ( !m_started ) {
+            
+            if ( m_hasHeader && getColumns().length == 0 ) {
+                start( fields.clone() );
+                return;
+            }
+            
+            start( getColumns().length == 0 ? matchLengthOf( new String[]{}, fields, "column", true ) : getColumns() );
+        }
+        
+        if ( fields.length > m_data.length ) {
+            throw new IOException( "Record has " + fields.length + " fields but there are only " + m_data.length + " columns" );
+        }
+        
+        for ( int c = 0; c < m_data.length; c++ ) {
+            append( c, c < fields.length ? fields[c] : null );
+        }
+        
+        m_rows++;
+        
+        if ( m_rows >= m_batchSize || m_batchFull ) {
+            writeBatch();
+        }
+    }
+    
+    @Override
+    public void writeMappedRecord( Map<String, String> fields ) throws Exception {
+        String[] rows = align( fields, m_columns );
+        
+        writeRecord( rows );
+    }
+    
+    /**
+     * Starts writing a new output stream
+     * @param out The stream to write
+     * @param settings Configuration for the writer
+     * @throws java.lang.Exception
+     */
+    @Override
+    public void reset( OutputStream out, Map<String, String> settings ) throws Exception {
+        m_started   = false;
+        m_rows      = 0;
+        m_batchFull = false;
+        
+        super.reset( out, settings );
+    }
+    
+    @Override
+    public void initialise() throws Exception {
+        m_hasHeader = true;
+        m_batchSize = DEFAULT_BATCH_SIZE;
+        
+        Iterator it = getConfig().entrySet().iterator();
+        Map.Entry entry;
+        String key;
+        String value;
+        
+        // Go through the config to determine what options to set
+        // currently only header and batch_size are supported, text is always UTF-8
+        while ( it.hasNext() ) {
+            entry = (Map.Entry)it.next();
+            
+            key = (String)entry.getKey();
+            key = key.toLowerCase();
+            
+            value = (String)entry.getValue();
+            
+            switch ( key ) {
+                
+                case "header"     : m_hasHeader = Boolean.parseBoolean( value );
+                                    break;
+                case "batch_size" : m_batchSize = Math.max( 1, Integer.parseInt( value.trim() ) );
+                                    break;
+                                    
+            }
+        }
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Fixes the columns and writes the schema message
+     * @param cols The column names
+     */
+    protected void start( String[] cols ) throws IOException {
+        
+        setColumns( cols );
+        
+        int n = cols.length;
+        
+        m_data       = new byte[n][];
+        m_dataLength = new int[n];
+        m_offsets    = new int[n][];
+        m_validity   = new byte[n][];
+        m_nullCount  = new int[n];
+        
+        for ( int c = 0; c < n; c++ ) {
+            m_data[c]     = new byte[1024];
+            m_offsets[c]  = new int[1025];
+            m_validity[c] = new byte[128];
+        }
+        
+        ArrowFormat.Builder fb = m_builder;
+        fb.reset();
+        
+        ArrowFormat.Builder.Table message = fb.table( 4 )
+                                              .addShort(  ArrowFormat.MESSAGE_VERSION,     ArrowFormat.METADATA_VERSION )
+                                              .addByte(   ArrowFormat.MESSAGE_HEADER_TYPE, ArrowFormat.HEADER_SCHEMA )
+                                              .addOffset( ArrowFormat.MESSAGE_HEADER )
+                                              .addLong(   ArrowFormat.MESSAGE_BODY_LENGTH, 0 );
+        int root = message.end();
+        
+        ArrowFormat.Builder.Table schema = fb.table( 2 )
+                                             .addShort(  ArrowFormat.SCHEMA_ENDIANNESS, 0 )
+                                             .addOffset( ArrowFormat.SCHEMA_FIELDS );
+        fb.link( message.position( ArrowFormat.MESSAGE_HEADER ), schema.end() );
+        
+        int fields = fb.offsetVector( n );
+        fb.link( schema.position( ArrowFormat.SCHEMA_FIELDS ), fields );
+        
+        for ( int c = 0; c < n; c++ ) {
+            
+            ArrowFormat.Builder.Table field = fb.table( 6 )
+                                                .addOffset( ArrowFormat.FIELD_NAME )
+                                                .addByte(   ArrowFormat.FIELD_NULLABLE,  1 )
+                                                .addByte(   ArrowFormat.FIELD_TYPE_TYPE, ArrowFormat.TYPE_UTF8 )
+                                                .addOffset( ArrowFormat.FIELD_TYPE )
+                                                .addOffset( ArrowFormat.FIELD_CHILDREN );
+            fb.link( fields + 4 + 4 * c, field.end() );
+            
+            fb.link( field.position( ArrowFormat.FIELD_NAME ),     fb.string( cols[c] == null ? "" : cols[c] ) );
+            fb.link( field.position( ArrowFormat.FIELD_TYPE ),     fb.table( 0 ).end() );
+            fb.link( field.position( ArrowFormat.FIELD_CHILDREN ), fb.offsetVector( 0 ) );
+        }
+        
+        fb.finish( root );
+        
+        writeMetadata();
+        
+        m_started = true;
+    }
+    
+    /**
+     * Adds a value to the end of a column in the current batch
+     */
+    protected void append( int c, String value ) throws IOException {
+        
+        int row = m_rows;
+        
+        if ( row + 2 > m_offsets[c].length ) {
+            m_offsets[c]  = Arrays.copyOf( m_offsets[c],  m_offsets[c].length * 2 );
+            m_validity[c] = Arrays.copyOf( m_validity[c], m_offsets[c].length / 8 + 1 );
+        }
+        
+        int length = m_dataLength[c];
+        
+        if ( value == null ) {
+            m_nullCount[c]++;
+            m_validity[c][ row >> 3 ] &= ~( 1 << ( row & 7 ) );
+        }
+        else {
+            m_validity[c][ row >> 3 ] |= 1 << ( row & 7 );
+            length = encode( c, value );
+        }
+        
+        m_offsets[c][ row + 1 ] = length;
+        m_dataLength[c]         = length;
+        
+        if ( length > MAX_BATCH_BYTES / 2 ) {
+            m_batchFull = true;
+        }
+    }
+    
+    /**
+     * UTF-8 encodes a value onto the end of a column's text
+     * @return The length of the text afterwards
+     */
+    protected int encode( int c, String value ) throws IOException {
+        
+        int    len    = value.length();
+        int    length = m_dataLength[c];
+        byte[] data   = ensureData( c, length + len );
+        
+        // Most text is ASCII, copy it directly and fall back on the encoder otherwise
+        for ( int i = 0; i < len; i++ ) {
+            
+            char ch = value.charAt( i );
+            if ( ch >= 0x80 ) {
+                byte[] b = value.getBytes( StandardCharsets.UTF_8 );
+                
+                data = ensureData( c, m_dataLength[c] + b.length );
+                System.arraycopy( b, 0, data, m_dataLength[c], b.length );
+                
+                return m_dataLength[c] + b.length;
+            }
+            
+            data[ length + i ] = (byte)ch;
+        }
+        
+        return length + len;
+    }
+    
+    protected byte[] ensureData( int c, long required ) throws IOException {
+        
+        if ( required > MAX_BATCH_BYTES ) {
+            throw new IOException( "Column " + c + " holds more than " + MAX_BATCH_BYTES + " bytes in one batch, use a smaller batch_size" );
+        }
+        
+        if ( required > m_data[c].length ) {
+            m_data[c] = Arrays.copyOf( m_data[c], (int)Math.min( MAX_BATCH_BYTES, Math.max( required, 2L * m_data[c].length ) ) );
+        }
+        
+        return m_data[c];
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Writes the buffered rows as a record batch message and starts a new batch
+     */
+    protected void writeBatch() throws IOException {
+        
+        int n    = m_data.length;
+        int rows = m_rows;
+        
+        long[] nodes   = new long[ n * 2 ];
+        long[] buffers = new long[ n * 6 ];
+        long   body    = 0;
+        
+        // Each column has a validity bitmap, omitted if there are no nulls, offsets and text
+        for ( int c = 0; c < n; c++ ) {
+            
+            long validity = m_nullCount[c] == 0 ? 0 : ( rows + 7 ) / 8;
+            long offsets  = 4L * ( rows + 1 );
+            
+            nodes[ c * 2 ]     = rows;
+            nodes[ c * 2 + 1 ] = m_nullCount[c];
+            
+            buffers[ c * 6 ]     = body;
+            buffers[ c * 6 + 1 ] = validity;
+            body += ArrowFormat.pad( validity );
+            
+            buffers[ c * 6 + 2 ] = body;
+            buffers[ c * 6 + 3 ] = offsets;
+            body += ArrowFormat.pad( offsets );
+            
+            buffers[ c * 6 + 4 ] = body;
+            buffers[ c * 6 + 5 ] = m_dataLength[c];
+            body += ArrowFormat.pad( m_dataLength[c] );
+        }
+        
+        ArrowFormat.Builder fb = m_builder;
+        fb.reset();
+        
+        ArrowFormat.Builder.Table message = fb.table( 4 )
+                                              .addShort(  ArrowFormat.MESSAGE_VERSION,     ArrowFormat.METADATA_VERSION )
+                                              .addByte(   ArrowFormat.MESSAGE_HEADER_TYPE, ArrowFormat.HEADER_RECORD_BATCH )
+                                              .addOffset( ArrowFormat.MESSAGE_HEADER )
+                                              .addLong(   ArrowFormat.MESSAGE_BODY_LENGTH, body );
+        int root = message.end();
+        
+        ArrowFormat.Builder.Table batch = fb.table( 3 )
+                                            .addLong(   ArrowFormat.BATCH_LENGTH, rows )
+                                            .addOffset( ArrowFormat.BATCH_NODES )
+                                            .addOffset( ArrowFormat.BATCH_BUFFERS );
+        fb.link( message.position( ArrowFormat.MESSAGE_HEADER ), batch.end() );
+        
+        fb.link( batch.position( ArrowFormat.BATCH_NODES ),   fb.structVector( nodes,   n,     2 ) );
+        fb.link( batch.position( ArrowFormat.BATCH_BUFFERS ), fb.structVector( buffers, n * 3, 2 ) );
+        
+        fb.finish( root );
+        
+        writeMetadata();
+        
+        for ( int c = 0; c < n; c++ ) {
+            
+            if ( m_nullCount[c] > 0 ) {
+                writePadded( m_validity[c], ( rows + 7 ) / 8 );
+            }
+            
+            writeOffsets( m_offsets[c], rows + 1 );
+            writePadded( m_data[c], m_dataLength[c] );
+            
+            m_dataLength[c] = 0;
+            m_nullCount[c]  = 0;
+        }
+        
+        m_rows      = 0;
+        m_batchFull = false;
+    }
+    
+    /**
+     * Writes the message prefix and the metadata in the builder
+     */
+    protected void writeMetadata() throws IOException {
+        ArrowFormat.writeIntLE( m_out, ArrowFormat.CONTINUATION );
+        ArrowFormat.writeIntLE( m_out, m_builder.size() );
+        
+        m_out.write( m_builder.getBuffer(), 0, m_builder.size() );
+    }
+    
+    protected void writeOffsets( int[] offsets, int count ) throws IOException {
+        
+        for ( int i = 0; i < count; ) {
+            
+            m_scratch.clear();
+            
+            for ( ; i < count && m_scratch.remaining() >= 4; i++ ) {
+                m_scratch.putInt( offsets[i] );
+            }
+            
+            m_out.write( m_scratch.array(), 0, m_scratch.position() );
+        }
+        
+        writePadding( 4L * count );
+    }
+    
+    protected void writePadded( byte[] b, int len ) throws IOException {
+        m_out.write( b, 0, len );
+        
+        writePadding( len );
+    }
+    
+    protected void writePadding( long len ) throws IOException {
+        for ( long i = len; i < ArrowFormat.pad( len ); i++ ) {
+            m_out.write( 0 );
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package flint.engine.io;
+
+// Core Java classes
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Reads records in the flint binary row format written by BinaryWriter.
+ * An empty stream is read as no records rather than an error so a script that
+ * produces no output behaves as it would with the text formats
+ * @author Philip Bowditch
+ */
+public class BinaryReader extends AbstractReader {
+    
+    /**
+     * Bytes read from the input stream but not yet decoded
+     */
+    protected byte[] m_buffer;
+    
+    /**
+     * Index within the buffer of the next byte to decode
+     */
+    protected int m_position;
+    
+    /**
+     * Index within the buffer after the last byte read
+     */
+    protected int m_limit;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the BinaryReader class
+     */
+    public BinaryReader() {
+        super();
+        
+        m_buffer   = new byte[65536];
+        m_position = 0;
+        m_limit    = 0;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Reads a single record
+     * @return The fields, null at the end of the stream
+     * @throws java.io.IOException
+     */
+    @Override
+    public String[] readRecord() throws IOException {
+        
+        if ( !fill( 4, false ) ) {
+            return null;
+        }
+        
+        int count = readInt();
+        if ( count < 0 ) {
+            throw new IOException( "Invalid field count " + count );
+        }
+        
+        String[] fields = new String[ count ];
+        
+        for ( int i = 0; i < count; i++ ) {
+            
+            fill( 4, true );
+            
+            int len = readInt();
+            if ( len == BinaryWriter.NULL_LENGTH ) {
+                continue;
+            }
+            
+            if ( len < 0 ) {
+                throw new IOException( "Invalid field length " + len );
+            }
+            
+            fill( len, true );
+            
+            fields[i]   = new String( m_buffer, m_position, len, StandardCharsets.UTF_8 );
+            m_position += len;
+        }
+        
+        return fields;
+    }
+    
+    /**
+     * Reads the settings and the start of the stream ready for reading
+     * @throws java.lang.Exception
+     */
+    @Override
+    public void initialise() throws Exception {
+        
+        boolean hasHeader = true;
+        
+        Iterator it = getConfig().entrySet().iterator();
+        Map.Entry entry;
+        String key;
+        String value;
+        
+        // Go through the config to determine what options to set
+        // currently only header is supported, text is always UTF-8
+        while ( it.hasNext() ) {
+            entry = (Map.Entry)it.next();
+            
+            key = (String)entry.getKey();
+            key = key.toLowerCase();
+            
+            value = (String)entry.getValue();
+            
+            switch ( key ) {
+                
+                case "header" : hasHeader = Boolean.parseBoolean( value );
+                                break;
+                                
+            }
+        }
+        
+        m_position = 0;
+        m_limit    = 0;
+        
+        if ( !fill( BinaryWriter.MAGIC.length, false ) ) {
+            return;
+        }
+        
+        byte[] magic = Arrays.copyOfRange( m_buffer, m_position, m_position + BinaryWriter.MAGIC.length );
+        if ( !Arrays.equals( magic, BinaryWriter.MAGIC ) ) {
+            throw new IOException( "Not a flint binary stream" );
+        }
+        
+        m_position += magic.length;
+        
+        // Set the columns as the first record read
+        if ( hasHeader ) {
+            String[] cols = readRecord();
+            if ( cols != null ) {
+                setColumns( cols );
+            }
+        }
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    protected int readInt() {
+        
+        int v =   ( ( m_buffer[ m_position     ] & 0xFF ) << 24 )
+                | ( ( m_buffer[ m_position + 1 ] & 0xFF ) << 16 )
+                | ( ( m_buffer[ m_position + 2 ] & 0xFF ) << 8 )
+                |   ( m_buffer[ m_position + 3 ] & 0xFF );
+        
+        m_position += 4;
+        return v;
+    }
+    
+    /**
+     * Ensures a number of bytes are buffered from the current position,
+     * compacting or growing the buffer as needed
+     * @param required The number of bytes needed
+     * @param mandatory Whether the end of the stream is an error
+     * @return False if the stream ended before any of the bytes were read
+     * @throws IOException If the stream ends part way through
+     */
+    protected boolean fill( int required, boolean mandatory ) throws IOException {
+        
+        int available = m_limit - m_position;
+        if ( available >= required ) {
+            return true;
+        }
+        
+        if ( required > m_buffer.length ) {
+            m_buffer = Arrays.copyOfRange( m_buffer, m_position, m_position + Math.max( required, m_buffer.length * 2 ) );
+        }
+        else {
+            System.arraycopy( m_buffer, m_position, m_buffer, 0, available );
+        }
+        
+        m_position = 0;
+        m_limit    = available;
+        
+        InputStream in = getInputStream();
+        while ( m_limit < required ) {
+            
+            int n = in.read( m_buffer, m_limit, m_buffer.length - m_limit );
+            if ( n < 0 ) {
+                
+                if ( m_limit == 0 && !mandatory ) {
+                    return false;
+                }
+                
+                throw new EOFException( "Truncated flint binary stream" );
+            }
+            
+            m_limit += n;
+        }
+        
+        return true;
+    }
+}
@@ -0,0 +1,251 @@
+package flint.engine.io;
+
+// Core Java classes
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+
+
+/**
+ * Writes records in the flint binary row format, avoiding the cost of quoting
+ * and escaping text.  The stream is big endian and laid out as
+ *
+ *   magic   : the 4 bytes "FLB1"
+ *   records : for each record an int32 field count followed by each field as
+ *             an int32 byte length (-1 for null) and that many UTF-8 bytes
+ *
+ * The end of the stream ends the records.  With a header the first record is
+ * the columns, it is only written at initialise when columns were suggested so
+ * a header passed as the first record is not written twice.
+ * @author Philip Bowditch
+ */
+public class BinaryWriter extends AbstractWriter {
+    
+    /**
+     * The bytes every binary row stream starts with
+     */
+    public static final byte[] MAGIC = { 'F', 'L', 'B', '1' };
+    
+    /**
+     * The length written for a null field
+     */
+    public static final int NULL_LENGTH = -1;
+    
+    /**
+     * Bytes waiting to be written to the output stream
+     */
+    protected byte[] m_buffer;
+    
+    protected int m_length;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the BinaryWriter class
+     */
+    public BinaryWriter() {
+        super();
+        
+        m_buffer = new byte[65536];
+        m_length = 0;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    public void flush() throws IOException {
+        drain();
+        
+        super.flush();
+    }
+    
+    /**
+     * Writes anything buffered and closes the output stream
+     * @throws java.io.IOException
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        }
+        finally {
+            super.close();
+        }
+    }
+    
+    /**
+     * Starts writing a new output stream
+     * @param out The stream to write
+     * @param settings Configuration for the writer
+     * @throws java.lang.Exception
+     */
+    @Override
+    public void reset( OutputStream out, Map<String, String> settings ) throws Exception {
+        m_length = 0;
+        
+        super.reset( out, settings );
+    }
+    
+    @Override
+    public void writeRecord( String[] fields ) throws IOException {
+        
+        writeInt( fields.length );
+        
+        for ( String field : fields ) {
+            
+            if ( field == null ) {
+                writeInt( NULL_LENGTH );
+                continue;
+            }
+            
+            writeString( field );
+        }
+    }
+    
+    @Override
+    public void writeMappedRecord( Map<String, String> fields ) throws Exception {
+        String[] rows = align( fields, m_columns );
+        
+        writeRecord( rows );
+    }
+    
+    @Override
+    public void initialise() throws Exception {
+        boolean hasHeader = true;
+        
+        Iterator it = getConfig().entrySet().iterator();
+        Map.Entry entry;
+        String key;
+        String value;
+        
+        // Go through the config to determine what options to set
+        // currently only header is supported, text is always UTF-8
+        while ( it.hasNext() ) {
+            entry = (Map.Entry)it.next();
+            
+            key = (String)entry.getKey();
+            key = key.toLowerCase();
+            
+            value = (String)entry.getValue();
+            
+            switch ( key ) {
+                
+                case "header" : hasHeader = Boolean.parseBoolean( value );
+                                break;
+                                
+            }
+        }
+        
+        ensureCapacity( MAGIC.length );
+        System.arraycopy( MAGIC, 0, m_buffer, m_length, MAGIC.length );
+        m_length += MAGIC.length;
+        
+        if ( hasHeader && getColumns().length > 0 ) {
+            writeRecord( getColumns() );
+        }
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Writes the length prefixed UTF-8 bytes of a String
+     */
+    protected void writeString( String s ) throws IOException {
+        
+        // Most text is ASCII, copy it directly and fall back on the encoder otherwise
+        if ( s.length() <= m_buffer.length / 2 && writeAscii( s ) ) {
+            return;
+        }
+        
+        byte[] b = s.getBytes( StandardCharsets.UTF_8 );
+        
+        writeInt( b.length );
+        write( b, 0, b.length );
+    }
+    
+    /**
+     * Writes a length prefixed String if all of its characters are ASCII
+     * @return False if nothing was written as the String is not ASCII
+     */
+    protected boolean writeAscii( String s ) throws IOException {
+        
+        int len = s.length();
+        
+        ensureCapacity( 4 + len );
+        
+        int start = m_length + 4;
+        for ( int i = 0; i < len; i++ ) {
+            
+            char c = s.charAt( i );
+            if ( c >= 0x80 ) {
+                return false;
+            }
+            
+            m_buffer[ start + i ] = (byte)c;
+        }
+        
+        writeInt( len );
+        m_length += len;
+        
+        return true;
+    }
+    
+    protected void writeInt( int v ) throws IOException {
+        
+        ensureCapacity( 4 );
+        
+        m_buffer[ m_length     ] = (byte)( v >>> 24 );
+        m_buffer[ m_length + 1 ] = (byte)( v >>> 16 );
+        m_buffer[ m_length + 2 ] = (byte)( v >>> 8 );
+        m_buffer[ m_length + 3 ] = (byte)v;
+        
+        m_length += 4;
+    }
+    
+    protected void write( byte[] b, int offset, int len ) throws IOException {
+        
+        // Large values go straight to the stream rather than through the buffer
+        if ( len > m_buffer.length / 2 ) {
+            drain();
+            m_out.write( b, offset, len );
+            return;
+        }
+        
+        ensureCapacity( len );
+        System.arraycopy( b, offset, m_buffer, m_length, len );
+        m_length += len;
+    }
+    
+    /**
+     * Makes room in the buffer for a number of bytes, draining it to the stream
+     * or growing it as needed
+     */
+    protected void ensureCapacity( int required ) throws IOException {
+        
+        if ( m_length + required <= m_buffer.length ) {
+            return;
+        }
+        
+        drain();
+        
+        if ( required > m_buffer.length ) {
+            m_buffer = new byte[ required ];
+        }
+    }
+    
+    /**
+     * Writes the buffered bytes to the output stream
+     */
+    protected void drain() throws IOException {
+        
+        if ( m_length > 0 ) {
+            m_out.write( m_buffer, 0, m_length );
+            m_length = 0;
+        }
+    }
+}
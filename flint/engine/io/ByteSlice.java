@@ -0,0 +1,167 @@
+package flint.engine.io;
+
+// Core Java classes
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A CharSequence over a region of bytes, typically part of a memory mapped file,
+ * that is only decoded when its characters are actually read.  Pure ASCII text
+ * in an ASCII compatible encoding is read directly from the bytes without being
+ * decoded at all.
+ * @author Philip Bowditch
+ */
+public class ByteSlice implements CharSequence {
+    
+    protected static final long HIGH_BITS = 0x8080808080808080L;
+    
+    /**
+     * The bytes, only ever accessed by absolute index so may be shared
+     */
+    protected final ByteBuffer m_buffer;
+    
+    /**
+     * Index of the first byte
+     */
+    protected final int m_offset;
+    
+    /**
+     * Number of bytes
+     */
+    protected final int m_length;
+    
+    /**
+     * The encoding of the bytes
+     */
+    protected final Charset m_charset;
+    
+    /**
+     * Is the encoding ASCII compatible, so ASCII bytes may be read as characters
+     */
+    protected final boolean m_asciiCompatible;
+    
+    /**
+     * 0 if not yet checked, 1 if every byte is ASCII, 2 if not
+     */
+    protected byte m_ascii;
+    
+    /**
+     * The decoded text once required
+     */
+    protected String m_decoded;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the ByteSlice class
+     * @param buffer The bytes, accessed by absolute index only
+     * @param offset Index of the first byte
+     * @param length Number of bytes
+     * @param charset The encoding of the bytes
+     * @param asciiCompatible Do ASCII bytes always represent ASCII characters in this encoding
+     */
+    public ByteSlice( ByteBuffer buffer, int offset, int length, Charset charset, boolean asciiCompatible ) {
+        m_buffer          = buffer;
+        m_offset          = offset;
+        m_length          = length;
+        m_charset         = charset;
+        m_asciiCompatible = asciiCompatible;
+        m_ascii           = asciiCompatible ? (byte)0 : (byte)2;
+        m_decoded         = null;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    public int length() {
+        return isAscii() ? m_length : toString().length();
+    }
+    
+    @Override
+    public char charAt( int index ) {
+        
+        if ( !isAscii() ) {
+            return toString().charAt( index );
+        }
+        
+        if ( index < 0 || index >= m_length ) {
+            throw new IndexOutOfBoundsException( "Index " + index + " outside slice of length " + m_length );
+        }
+        
+        return (char)m_buffer.get( m_offset + index );
+    }
+    
+    @Override
+    public CharSequence subSequence( int start, int end ) {
+        
+        if ( !isAscii() ) {
+            return toString().subSequence( start, end );
+        }
+        
+        if ( start < 0 || end > m_length || start > end ) {
+            throw new IndexOutOfBoundsException( "Range " + start + "-" + end + " outside slice of length " + m_length );
+        }
+        
+        return new ByteSlice( m_buffer, m_offset + start, end - start, m_charset, m_asciiCompatible );
+    }
+    
+    /**
+     * Decodes the bytes, the result is cached
+     * @return 
+     */
+    @Override
+    public String toString() {
+        
+        if ( m_decoded == null ) {
+            
+            byte[] bytes = new byte[ m_length ];
+            
+            ByteBuffer b = m_buffer.duplicate();
+            b.position( m_offset );
+            b.get( bytes );
+            
+            m_decoded = new String( bytes, m_charset );
+        }
+        
+        return m_decoded;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Returns the number of encoded bytes in the slice
+     * @return 
+     */
+    public int getByteLength() {
+        return m_length;
+    }
+    
+    /**
+     * Returns whether every character is ASCII and so can be read without decoding
+     * @return 
+     */
+    public boolean isAscii() {
+        
+        if ( m_ascii == 0 ) {
+            
+            int i   = m_offset;
+            int end = m_offset + m_length;
+            
+            // Test 8 bytes at a time for any with the high bit set
+            boolean ascii = true;
+            for ( ; ascii && i <= end - 8; i += 8 ) {
+                ascii = ( m_buffer.getLong( i ) & HIGH_BITS ) == 0;
+            }
+            for ( ; ascii && i < end; i++ ) {
+                ascii = m_buffer.get( i ) >= 0;
+            }
+            
+            m_ascii = ascii ? (byte)1 : (byte)2;
+        }
+        
+        return m_ascii == 1;
+    }
+}
@@ -5,7 +5,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -28,14 +27,9 @@ public class CSVReader extends AbstractReader {
     protected CSVParser m_parser;
     
     /**
-     * Holds a cache of csv records parsed
+     * Walks the parser one record at a time, nothing is cached
      */
-    protected List<CSVRecord> m_records;
-    
-    /**
-     * Holds a pointer / index to the last record read
-     */
-    protected int m_index;
+    protected Iterator<CSVRecord> m_records;
     
     
     //--------------------------------------------------------------------------
@@ -48,7 +42,6 @@ public class CSVReader extends AbstractReader {
         
         m_parser  = null;
         m_records = null;
-        m_index   = -1;
     }
     
     //--------------------------------------------------------------------------
@@ -64,23 +57,44 @@ public class CSVReader extends AbstractReader {
         super.close();
     }
     
+    /**
+     * Starts reading a new input stream
+     * @param in The stream to read
+     * @param settings Configuration for the reader
+     * @throws java.lang.Exception
+     */
+    @Override
+    public void reset( InputStream in, Map<String, String> settings ) throws Exception {
+        m_parser  = null;
+        m_records = null;
+        
+        super.reset( in, settings );
+    }
+    
     protected CSVRecord parseRecord() throws IOException {
-        // Load the csv file if not already read
-        // Api unfortunately doesnt seem to handle a record by record parse option
+        // Records are parsed lazily as they are asked for so only the current
+        // one is ever held in memory
         if ( m_records == null ) {
-            m_records = m_parser.getRecords();
+            m_records = m_parser.iterator();
         }
         
-        // Increment index and return null (indicating the end of stream) if
-        // no records left
-        m_index += 1;
-        if ( m_index >= m_records.size() ) {
-            return null;
+        try {
+            // Return null (indicating the end of stream) if no records left
+            if ( !m_records.hasNext() ) {
+                return null;
+            }
+            
+            return m_records.next();
+        }
+        catch ( RuntimeException ex ) {
+            // The parsers iterator cannot throw checked exceptions so wraps them,
+            // as an IllegalStateException or a plain RuntimeException by version
+            if ( ex.getCause() instanceof IOException ) {
+                throw (IOException)ex.getCause();
+            }
+            
+            throw new IOException( ex.getMessage(), ex );
         }
-        
-        // Reads a line of data, as this is raw we dont have a concept of columns
-        // so return as a 1 field array
-        return m_records.get( m_index );
     }
     
     /**
@@ -200,6 +214,11 @@ public class CSVReader extends AbstractReader {
             tmp = new BOMInputStream( tmp );
         }
         
+        // The parser only consumes the first record as a header if asked to
+        if ( hasHeader ) {
+            format = format.withHeader();
+        }
+        
         m_parser = new CSVParser( new InputStreamReader( tmp, encoding ), format );
         
         // Set the columns as the first record read, by default this is a single field
@@ -0,0 +1,313 @@
+package flint.engine.io;
+
+// Core Java classes
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+// Application classes
+import flint.engine.io.compress.Compression;
+
+
+/**
+ * Rows held in a data file, such as an engines output, which are only parsed as
+ * they are iterated over.  Uncompressed files are memory mapped, compressed files
+ * are decompressed as they are read.  Each iterator opens its own reader so
+ * the rows can be walked more than once.
+ * @author Philip Bowditch
+ */
+public class FileRowSource extends AbstractRowSource {
+    
+    /**
+     * Creates the readers used to parse the file
+     */
+    protected IOFactory m_factory;
+    
+    /**
+     * The file holding the rows
+     */
+    protected File m_file;
+    
+    /**
+     * The format of the file e.g. CSV
+     */
+    protected String m_format;
+    
+    /**
+     * How the file is compressed
+     */
+    protected Compression m_compression;
+    
+    /**
+     * Custom settings for the reader e.g. delimiter if CSV etc
+     */
+    protected Map<String, String> m_settings;
+    
+    /**
+     * Delete the file when the source is closed
+     */
+    protected boolean m_deleteOnClose;
+    
+    /**
+     * Readers opened by iterators that have not yet been exhausted
+     */
+    protected List<IReader> m_open;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the FileRowSource class
+     * @param factory Creates the readers used to parse the file
+     * @param f The file holding the rows
+     * @param format The format of the file e.g. CSV
+     * @param compressed Is the file gzip compressed
+     * @param settings Custom settings for the reader
+     * @param deleteOnClose Delete the file when the source is closed
+     */
+    public FileRowSource( IOFactory factory, File f, String format, boolean compressed, Map<String, String> settings, boolean deleteOnClose ) {
+        this( factory, f, format, compressed ? Compression.GZIP : Compression.NONE, settings, deleteOnClose );
+    }
+    
+    /**
+     * Constructor for the FileRowSource class
+     * @param factory Creates the readers used to parse the file
+     * @param f The file holding the rows
+     * @param format The format of the file e.g. CSV
+     * @param compression How the file is compressed
+     * @param settings Custom settings for the reader
+     * @param deleteOnClose Delete the file when the source is closed
+     */
+    public FileRowSource( IOFactory factory, File f, String format, Compression compression, Map<String, String> settings, boolean deleteOnClose ) {
+        super();
+        
+        m_factory       = factory;
+        m_file          = f;
+        m_format        = format;
+        m_compression   = compression;
+        m_settings      = new LinkedHashMap<>( settings );
+        m_deleteOnClose = deleteOnClose;
+        m_open          = new ArrayList<>();
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    public Iterator<String[]> iterator() {
+        
+        IReader r = null;
+        
+        try {
+            r = open();
+            return new FileIterator( r );
+        }
+        catch ( IOException ex ) {
+            
+            // Dont leave the file open if its columns could not be read
+            if ( r != null ) {
+                try {
+                    release( r );
+                }
+                catch ( IOException e ) {
+                }
+            }
+            
+            throw new UncheckedIOException( ex );
+        }
+    }
+    
+    /**
+     * Opens a new reader positioned at the start of the file
+     * @return
+     * @throws IOException 
+     */
+    public IReader open() throws IOException {
+        
+        InputStream in;
+        
+        if ( m_compression.isCompressed() ) {
+            in = new BufferedInputStream( m_compression.decompress( new FileInputStream( m_file ) ) );
+        }
+        else {
+            in = new MappedInputStream( m_file );
+        }
+        
+        IReader r;
+        try {
+            r = m_factory.newReader( m_format, in, m_settings );
+        }
+        catch ( IOException ex ) {
+            in.close();
+            throw ex;
+        }
+        
+        synchronized ( m_open ) {
+            m_open.add( r );
+        }
+        
+        return r;
+    }
+    
+    /**
+     * Closes any readers still open and removes the file if required
+     * @throws IOException 
+     */
+    @Override
+    public void close() throws IOException {
+        
+        synchronized ( m_open ) {
+            for ( IReader r : m_open ) {
+                r.close();
+            }
+            
+            m_open.clear();
+        }
+        
+        if ( m_deleteOnClose ) {
+            m_file.delete();
+        }
+    }
+    
+    /**
+     * Closes a reader opened by this source
+     * @param r The reader to close
+     * @throws IOException 
+     */
+    protected void release( IReader r ) throws IOException {
+        
+        synchronized ( m_open ) {
+            m_open.remove( r );
+        }
+        
+        r.close();
+        m_factory.release( m_format, r );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Returns the file holding the rows
+     * @return 
+     */
+    public File getFile() {
+        return m_file;
+    }
+    
+    /**
+     * Returns the format of the file
+     * @return 
+     */
+    public String getFormat() {
+        return m_format;
+    }
+    
+    /**
+     * Returns true if the file is compressed
+     * @return 
+     */
+    public boolean isCompressed() {
+        return m_compression.isCompressed();
+    }
+    
+    /**
+     * Returns how the file is compressed
+     * @return 
+     */
+    public Compression getCompression() {
+        return m_compression;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Returns the column names followed by each record, closing the reader once
+     * the end of the file is reached
+     */
+    protected class FileIterator implements Iterator<String[]> {
+        
+        /**
+         * The reader, null once exhausted
+         */
+        protected IReader m_reader;
+        
+        /**
+         * The records after the column names
+         */
+        protected Iterator<String[]> m_records;
+        
+        /**
+         * The column names, null once returned
+         */
+        protected String[] m_columns;
+        
+        public FileIterator( IReader reader ) throws IOException {
+            m_reader  = reader;
+            m_records = reader.iterator();
+            m_columns = reader.getColumns();
+            
+            // Mirrors parseFile, no columns means nothing could be read
+            if ( m_columns == null ) {
+                finish();
+            }
+        }
+        
+        @Override
+        public boolean hasNext() {
+            
+            if ( m_reader == null ) {
+                return false;
+            }
+            
+            if ( m_columns != null || m_records.hasNext() ) {
+                return true;
+            }
+            
+            finish();
+            return false;
+        }
+        
+        @Override
+        public String[] next() {
+            
+            if ( !hasNext() ) {
+                throw new NoSuchElementException();
+            }
+            
+            if ( m_columns != null ) {
+                String[] cols = m_columns;
+                m_columns = null;
+                return cols;
+            }
+            
+            return m_records.next();
+        }
+        
+        /**
+         * Closes the reader once all the rows have been read
+         */
+        protected void finish() {
+            
+            try {
+                release( m_reader );
+            }
+            catch ( IOException ex ) {
+                throw new UncheckedIOException( ex );
+            }
+            finally {
+                m_reader = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package flint.engine.io;
+
+// Core Java classes
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.LongFunction;
+
+// Application classes
+import flint.data.DataColumn;
+import flint.data.DataTable;
+
+
+/**
+ * Rows made up as they are read, such as synthetic data for a volume test, so
+ * they never all exist in memory at once.  The column names are the first row
+ * @author Philip Bowditch
+ */
+public class GeneratedRowSource extends AbstractRowSource {
+    
+    /**
+     * Replaced in the cells of repeated rows by the number of the row
+     */
+    public static final String ROW_NUMBER_MARKER = "{row}";
+    
+    /**
+     * The column names, null for none
+     */
+    protected String[] m_header;
+    
+    /**
+     * The number of rows generated, not counting the column names
+     */
+    protected long m_rowCount;
+    
+    /**
+     * Makes the row at an index
+     */
+    protected LongFunction<String[]> m_generator;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the GeneratedRowSource class
+     * @param header The column names, null for none
+     * @param rowCount The number of rows to generate
+     * @param generator Makes the row at an index from 0, it is called again
+     *                  for each iteration so should give the same rows
+     */
+    public GeneratedRowSource( String[] header, long rowCount, LongFunction<String[]> generator ) {
+        super();
+        
+        m_header    = header;
+        m_rowCount  = rowCount;
+        m_generator = generator;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Returns rows made by repeating the rows of a table in turn, any
+     * ROW_NUMBER_MARKER in a cell being replaced by the number of the row made
+     * from 1, so a few template rows give any number of distinct rows
+     * @param table The template rows, its columns give the names
+     * @param rowCount The number of rows to generate
+     * @return
+     */
+    public static GeneratedRowSource repeating( DataTable table, long rowCount ) {
+        
+        DataColumn[] cols      = table.getColumns();
+        int          templates = table.getRowCount();
+        
+        String[] header = new String[ cols.length ];
+        for ( int j = 0; j < cols.length; j++ ) {
+            header[j] = cols[j].getName();
+        }
+        
+        String[][] rows = new String[ templates ][ cols.length ];
+        for ( int i = 0; i < templates; i++ ) {
+            for ( int j = 0; j < cols.length; j++ ) {
+                rows[i][j] = table.getCell( i, j );
+            }
+        }
+        
+        return new GeneratedRowSource( header, ( templates > 0 ) ? rowCount : 0, i -> {
+            
+            String[] template = rows[ (int)( i % templates ) ];
+            String[] row      = new String[ template.length ];
+            String   number   = Long.toString( i + 1 );
+            
+            for ( int j = 0; j < row.length; j++ ) {
+                row[j] = ( template[j] == null ) ? null : template[j].replace( ROW_NUMBER_MARKER, number );
+            }
+            
+            return row;
+        } );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    public Iterator<String[]> iterator() {
+        
+        return new Iterator<String[]>() {
+            
+            long m_next = ( m_header != null ) ? -1 : 0;
+            
+            @Override
+            public boolean hasNext() {
+                return m_next < m_rowCount;
+            }
+            
+            @Override
+            public String[] next() {
+                
+                if ( !hasNext() ) {
+                    throw new NoSuchElementException();
+                }
+                
+                long i = m_next++;
+                return ( i < 0 ) ? m_header : m_generator.apply( i );
+            }
+        };
+    }
+    
+    public long getRowCount() {
+        return m_rowCount;
+    }
+}
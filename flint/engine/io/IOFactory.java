@@ -1,32 +1,64 @@
 package flint.engine.io;
 
 // Core Java classes
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.HashMap;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
 
 /**
  * A singleton factory class used to register data formats and returns an appropriate reader/writer class on request.
+ * Each format is registered with a factory resolved once, so creating a reader or writer involves no reflection.
+ * Registration is thread safe.
+ *
+ * Readers and writers handed back with release are optionally pooled and reused through their reset lifecycle,
+ * the pool size per format is set by the flint.io_pool_size system property and is 0 (disabled) by default.
  * @author Philip Bowditch
  */
 public class IOFactory {
     
+    /**
+     * Maximum number of idle readers and writers kept per format
+     */
+    public static final int DEFAULT_POOL_SIZE = Integer.getInteger( "flint.io_pool_size", 0 );
+    
     /**
      * Registered readers
      */
-    protected HashMap<String, Class<IReader>> m_readers = new LinkedHashMap<>();
+    protected final Map<String, Supplier<? extends IReader>> m_readers;
     
     /**
      * Registered writers
      */
-    protected HashMap<String, Class<IWriter>> m_writers = new LinkedHashMap<>();
+    protected final Map<String, Supplier<? extends IWriter>> m_writers;
+    
+    /**
+     * Idle readers available for reuse by format
+     */
+    protected final Map<String, Queue<IReader>> m_readerPool;
+    
+    /**
+     * Idle writers available for reuse by format
+     */
+    protected final Map<String, Queue<IWriter>> m_writerPool;
+    
+    /**
+     * Maximum number of idle readers and writers kept per format
+     */
+    protected volatile int m_poolSize;
     
     /**
      * Singleton instance
      */
-    protected static IOFactory m_factory = null;
+    protected static final IOFactory m_factory = new IOFactory();
     
     
     //--------------------------------------------------------------------------
@@ -34,7 +66,13 @@ public class IOFactory {
     /**
      * Constructor for the IOFactory class
      */
-    private IOFactory(){}
+    private IOFactory() {
+        m_readers    = new ConcurrentHashMap<>();
+        m_writers    = new ConcurrentHashMap<>();
+        m_readerPool = new ConcurrentHashMap<>();
+        m_writerPool = new ConcurrentHashMap<>();
+        m_poolSize   = DEFAULT_POOL_SIZE;
+    }
     
     
     //--------------------------------------------------------------------------
@@ -43,31 +81,42 @@ public class IOFactory {
      * Create a writer instance for the given format with default settings
      * @param format The format to write
      * @param out The data stream to write
+     * @return
+     * @throws IOException If the format is unknown or the writer fails to initialise
      */
-    public IWriter newWriter( String format, OutputStream out ) {
+    public IWriter newWriter( String format, OutputStream out ) throws IOException {
         return this.newWriter( format, out, new LinkedHashMap<>() );
     }
     
     /**
-     * Create a writer instance for the given format with the given settings
+     * Create a writer instance for the given format with the given settings, reusing a pooled writer if available
      * @param format The format to write
      * @param out The data stream to write
      * @param settings Configuration for the  writer
+     * @return
+     * @throws IOException If the format is unknown or the writer fails to initialise
      */
-    public IWriter newWriter( String format, OutputStream out, Map<String, String> settings ) {
+    public IWriter newWriter( String format, OutputStream out, Map<String, String> settings ) throws IOException {
+        
+        IWriter w = poll( m_writerPool, format );
+        
+        if ( w == null ) {
+            Supplier<? extends IWriter> s = m_writers.get( format );
+            if ( s == null ) {
+                throw new IOException( "No writer registered for format [" + format + "]" );
+            }
+            
+            w = s.get();
+        }
         
-        Class<IWriter> c = m_writers.get( format );
-        IWriter        w = null;
-
         try {
-            //w = c.newInstance();
-            w = c.newInstance();
-            w.setOutputStream( out );
-            w.setConfig( settings );
-            w.initialise();
+            w.reset( out, settings );
+        }
+        catch ( IOException ex ) {
+            throw ex;
         }
         catch ( Exception ex ) {
-
+            throw new IOException( "Unable to initialise the writer for format [" + format + "]", ex );
         }
         
         return w;
@@ -77,30 +126,42 @@ public class IOFactory {
      * Create a reader instance for the given format with default settings
      * @param format The format to read
      * @param in The data stream to read
+     * @return
+     * @throws IOException If the format is unknown or the reader fails to initialise
      */
-    public IReader newReader( String format, InputStream in ) {
+    public IReader newReader( String format, InputStream in ) throws IOException {
         return this.newReader( format, in, new LinkedHashMap<>() );
     }
     
     /**
-     * Create a reader instance for the given format with the given settings
+     * Create a reader instance for the given format with the given settings, reusing a pooled reader if available
      * @param format The format to read
      * @param in The data stream to read
-     * @param setting Configuration for the reader
+     * @param settings Configuration for the reader
+     * @return
+     * @throws IOException If the format is unknown or the reader fails to initialise
      */
-    public IReader newReader( String format, InputStream in, Map<String, String> settings ) {
+    public IReader newReader( String format, InputStream in, Map<String, String> settings ) throws IOException {
         
-        Class<IReader> c = m_readers.get( format );
-        IReader        r = null;
+        IReader r = poll( m_readerPool, format );
+        
+        if ( r == null ) {
+            Supplier<? extends IReader> s = m_readers.get( format );
+            if ( s == null ) {
+                throw new IOException( "No reader registered for format [" + format + "]" );
+            }
+            
+            r = s.get();
+        }
         
         try {
-            r = c.newInstance();
-            r.setInputStream( in );
-            r.setConfig( settings );
-            r.initialise();
+            r.reset( in, settings );
+        }
+        catch ( IOException ex ) {
+            throw ex;
         }
         catch ( Exception ex ) {
-
+            throw new IOException( "Unable to initialise the reader for format [" + format + "]", ex );
         }
         
         return r;
@@ -109,21 +170,147 @@ public class IOFactory {
     
     //--------------------------------------------------------------------------
     
+    /**
+     * Hands back a closed reader so it can be reused by a later newReader call
+     * @param format The format the reader was created for
+     * @param reader The reader, must not be used again by the caller
+     */
+    public void release( String format, IReader reader ) {
+        offer( m_readerPool, format, reader, m_readers.containsKey( format ) );
+    }
+    
+    /**
+     * Hands back a closed writer so it can be reused by a later newWriter call
+     * @param format The format the writer was created for
+     * @param writer The writer, must not be used again by the caller
+     */
+    public void release( String format, IWriter writer ) {
+        offer( m_writerPool, format, writer, m_writers.containsKey( format ) );
+    }
+    
+    protected static <T> T poll( Map<String, Queue<T>> pool, String format ) {
+        
+        Queue<T> q = pool.get( format );
+        if ( q == null ) {
+            return null;
+        }
+        
+        return q.poll();
+    }
+    
+    protected <T> void offer( Map<String, Queue<T>> pool, String format, T instance, boolean registered ) {
+        
+        if ( instance == null || !registered || m_poolSize <= 0 ) {
+            return;
+        }
+        
+        Queue<T> q = pool.computeIfAbsent( format, k -> new ConcurrentLinkedQueue<>() );
+        
+        // The bound is approximate under contention which is harmless
+        if ( q.size() < m_poolSize ) {
+            q.offer( instance );
+        }
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Register a reader of a particular format
+     * @param format The format that can be read
+     * @param reader The reader to register, must have a public no argument constructor
+     */
+    public void registerReader( String format, Class<? extends IReader> reader ) {
+        
+        if ( !IReader.class.isAssignableFrom( reader ) ) {
+            throw new IllegalArgumentException( reader.getName() + " is not an IReader" );
+        }
+        
+        registerReader( format, constructorOf( reader ) );
+    }
+    
     /**
      * Register a reader of a particular format
      * @param format The format that can be read
-     * @param reader The reader to register
+     * @param reader Creates a new reader each time it is called
      */
-    public void registerReader( String format, Class reader ) {
-        m_readers.put(format, reader);
+    public void registerReader( String format, Supplier<? extends IReader> reader ) {
+        m_readers.put( format, reader );
+        m_readerPool.remove( format );
     }
     
     /**
+     * Register a writer of a particular format
      * @param format The format that can be written
-     * @param writer The writer to register
+     * @param writer The writer to register, must have a public no argument constructor
      */
-    public void registerWriter( String format, Class writer ) {
-        m_writers.put(format, writer);
+    public void registerWriter( String format, Class<? extends IWriter> writer ) {
+        
+        if ( !IWriter.class.isAssignableFrom( writer ) ) {
+            throw new IllegalArgumentException( writer.getName() + " is not an IWriter" );
+        }
+        
+        registerWriter( format, constructorOf( writer ) );
+    }
+    
+    /**
+     * Register a writer of a particular format
+     * @param format The format that can be written
+     * @param writer Creates a new writer each time it is called
+     */
+    public void registerWriter( String format, Supplier<? extends IWriter> writer ) {
+        m_writers.put( format, writer );
+        m_writerPool.remove( format );
+    }
+    
+    /**
+     * Resolves the public no argument constructor of a class once, returning
+     * a factory that invokes it directly
+     * @param c The class to construct
+     * @return
+     */
+    protected static <T> Supplier<T> constructorOf( final Class<T> c ) {
+        
+        final MethodHandle constructor;
+        
+        try {
+            constructor = MethodHandles.publicLookup().findConstructor( c, MethodType.methodType( void.class ) );
+        }
+        catch ( NoSuchMethodException | IllegalAccessException ex ) {
+            throw new IllegalArgumentException( c.getName() + " does not have a public no argument constructor", ex );
+        }
+        
+        return () -> {
+            try {
+                return c.cast( constructor.invoke() );
+            }
+            catch ( RuntimeException | Error ex ) {
+                throw ex;
+            }
+            catch ( Throwable ex ) {
+                throw new IllegalStateException( "Unable to create " + c.getName(), ex );
+            }
+        };
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Sets the maximum number of idle readers and writers kept per format, 0 disables pooling
+     * @param size
+     */
+    public void setPoolSize( int size ) {
+        m_poolSize = size;
+        
+        if ( size <= 0 ) {
+            m_readerPool.clear();
+            m_writerPool.clear();
+        }
+    }
+    
+    public int getPoolSize() {
+        return m_poolSize;
     }
     
     
@@ -131,12 +318,9 @@ public class IOFactory {
     
     /**
      * Factory method, returns a singleton IOFactory
+     * @return
      */
     public static IOFactory newInstance() {
-        if ( m_factory == null ) {
-            m_factory = new IOFactory();
-        }
-        
         return m_factory;
     }
 }
@@ -3,13 +3,15 @@ package flint.engine.io;
 // Core Java classes
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * A general interface to provide consistency in reading external data files.  
  * @author Philip Bowditch
  */
-public interface IReader {
+public interface IReader extends Iterable<String[]> {
     
     /**
      * Reads a single record (collection of fields) from the data source, ordered
@@ -27,6 +29,21 @@ public interface IReader {
      */
     Map<String, String> readRecordMapped() throws IOException;
     
+    /**
+     * Returns a lazy view of the remaining records, each is read from the data
+     * source only as it is requested so memory use does not grow with its size.
+     * Read errors are raised as UncheckedIOException
+     * @return 
+     */
+    @Override
+    Iterator<String[]> iterator();
+    
+    /**
+     * Returns the remaining records as a sequential, lazily read stream
+     * @return 
+     */
+    Stream<String[]> stream();
+    
     /**
      * Closes the data source
      * @throws IOException 
@@ -38,6 +55,17 @@ public interface IReader {
      * @throws Exception 
      */
     void initialise() throws Exception;
+    
+    /**
+     * Prepares the reader for a new data source, discarding all state from the
+     * last so an instance can be reused rather than created for every file.
+     * Equivalent to setting the stream and config on a new reader then calling
+     * initialise
+     * @param in The stream to read
+     * @param settings Configuration for the reader
+     * @throws Exception 
+     */
+    void reset( InputStream in, Map<String, String> settings ) throws Exception;
         
     //--------------------------------------------------------------------------
     
@@ -0,0 +1,44 @@
+package flint.engine.io;
+
+// Core Java classes
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A set of rows, such as the data an engine produced, that can be read on
+ * demand rather than held in memory.  As with parsed files the first row is the
+ * column names.
+ * @author Philip Bowditch
+ */
+public interface IRowSource extends Iterable<String[]>, Closeable {
+    
+    /**
+     * Returns a new iterator over every row, rows are read as they are asked
+     * for.  Read errors are raised as UncheckedIOException
+     * @return 
+     */
+    @Override
+    Iterator<String[]> iterator();
+    
+    /**
+     * Returns every row as a sequential, lazily read stream
+     * @return 
+     */
+    Stream<String[]> stream();
+    
+    /**
+     * Reads every row into memory
+     * @return 
+     */
+    List<String[]> toList();
+    
+    /**
+     * Releases any resources e.g. open files held by the source
+     * @throws IOException 
+     */
+    @Override
+    void close() throws IOException;
+}
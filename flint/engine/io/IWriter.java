@@ -45,6 +45,17 @@ public interface IWriter {
      */
     void initialise() throws Exception;
     
+    /**
+     * Prepares the writer for a new data source, discarding all state from the
+     * last so an instance can be reused rather than created for every file.
+     * Equivalent to setting the stream and config on a new writer then calling
+     * initialise
+     * @param out The stream to write
+     * @param settings Configuration for the writer
+     * @throws Exception 
+     */
+    void reset( OutputStream out, Map<String, String> settings ) throws Exception;
+    
     
     //--------------------------------------------------------------------------
     
@@ -0,0 +1,48 @@
+package flint.engine.io;
+
+// Core Java classes
+import java.util.Iterator;
+import java.util.List;
+
+
+/**
+ * Adapts rows already held in memory to the IRowSource interface
+ * @author Philip Bowditch
+ */
+public class ListRowSource extends AbstractRowSource {
+    
+    /**
+     * The rows
+     */
+    protected List<String[]> m_rows;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the ListRowSource class
+     * @param rows The rows to wrap, these are not copied
+     */
+    public ListRowSource( List<String[]> rows ) {
+        super();
+        
+        m_rows = rows;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    public Iterator<String[]> iterator() {
+        return m_rows.iterator();
+    }
+    
+    /**
+     * Returns the wrapped list itself, no copy is made
+     * @return 
+     */
+    @Override
+    public List<String[]> toList() {
+        return m_rows;
+    }
+}
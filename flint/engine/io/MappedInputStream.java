@@ -0,0 +1,153 @@
+package flint.engine.io;
+
+// Core Java classes
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Reads a file through memory mapped windows rather than copying it through a
+ * read buffer.  The file is mapped a window at a time so files larger than a
+ * single mapping (2GB) can still be read.
+ * @author Philip Bowditch
+ */
+public class MappedInputStream extends InputStream {
+    
+    /**
+     * The largest region of the file mapped at any one time
+     */
+    protected static final long WINDOW_SIZE = 64L * 1024 * 1024;
+    
+    /**
+     * The file being read
+     */
+    protected FileChannel m_channel;
+    
+    /**
+     * The length of the file
+     */
+    protected long m_size;
+    
+    /**
+     * The offset within the file of the current window
+     */
+    protected long m_offset;
+    
+    /**
+     * The current window, null until the first read
+     */
+    protected MappedByteBuffer m_buffer;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the MappedInputStream class
+     * @param f The file to read
+     * @throws IOException 
+     */
+    public MappedInputStream( File f ) throws IOException {
+        super();
+        
+        m_channel = FileChannel.open( f.toPath(), StandardOpenOption.READ );
+        m_size    = m_channel.size();
+        m_offset  = 0;
+        m_buffer  = null;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    public int read() throws IOException {
+        
+        if ( !nextWindow() ) {
+            return -1;
+        }
+        
+        return m_buffer.get() & 0xFF;
+    }
+    
+    @Override
+    public int read( byte[] b, int off, int len ) throws IOException {
+        
+        if ( len == 0 ) {
+            return 0;
+        }
+        
+        if ( !nextWindow() ) {
+            return -1;
+        }
+        
+        int n = Math.min( len, m_buffer.remaining() );
+        m_buffer.get( b, off, n );
+        
+        return n;
+    }
+    
+    @Override
+    public int available() throws IOException {
+        
+        if ( m_buffer == null ) {
+            return (int)Math.min( m_size, Integer.MAX_VALUE );
+        }
+        
+        return m_buffer.remaining();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        m_buffer = null;
+        m_channel.close();
+    }
+    
+    /**
+     * Returns the channel being read so callers may map the file themselves
+     * @return 
+     */
+    public FileChannel getChannel() {
+        return m_channel;
+    }
+    
+    /**
+     * Returns the offset within the file of the next byte to be read
+     * @return 
+     */
+    public long getPosition() {
+        
+        if ( m_buffer == null ) {
+            return m_offset;
+        }
+        
+        return m_offset + m_buffer.position();
+    }
+    
+    /**
+     * Maps the next region of the file once the current one is exhausted
+     * @return False if the end of the file has been reached
+     * @throws IOException 
+     */
+    protected boolean nextWindow() throws IOException {
+        
+        if ( m_buffer != null ) {
+            
+            if ( m_buffer.hasRemaining() ) {
+                return true;
+            }
+            
+            m_offset += m_buffer.capacity();
+        }
+        
+        if ( m_offset >= m_size ) {
+            return false;
+        }
+        
+        m_buffer = m_channel.map( FileChannel.MapMode.READ_ONLY, m_offset, Math.min( WINDOW_SIZE, m_size - m_offset ) );
+        
+        return true;
+    }
+}
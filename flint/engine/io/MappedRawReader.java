@@ -0,0 +1,322 @@
+package flint.engine.io;
+
+// Core Java classes
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A reader for large line based files that memory maps the file rather than
+ * copying it through a BufferedReader.  Lines are returned by readLine as
+ * ByteSlice views over the mapping that are only decoded if their characters are
+ * read, readRecord decodes each line for compatibility with RawReader.
+ *
+ * Lines end with \n or \r\n, a lone \r is not treated as a line ending.  The
+ * encoding must be ASCII compatible.  Streams that are not over a file, such as
+ * gzip compressed data, are first copied to a temporary file to be mapped.
+ * @author Philip Bowditch
+ */
+public class MappedRawReader extends AbstractReader {
+    
+    /**
+     * The size of the region of the file mapped at any one time, grown for
+     * longer lines
+     */
+    protected static final long WINDOW_SIZE = 64L * 1024 * 1024;
+    
+    protected static final long ONES      = 0x0101010101010101L;
+    protected static final long HIGH_BITS = 0x8080808080808080L;
+    protected static final long NEWLINES  = ONES * '\n';
+    
+    /**
+     * The channel of the file being read
+     */
+    protected FileChannel m_channel;
+    
+    /**
+     * The temporary copy of a stream that was not over a file, null if not needed
+     */
+    protected File m_spool;
+    
+    /**
+     * The length of the file
+     */
+    protected long m_size;
+    
+    /**
+     * The offset within the file of the current window
+     */
+    protected long m_windowOffset;
+    
+    /**
+     * The mapped region of the file, null until the first read
+     */
+    protected ByteBuffer m_window;
+    
+    /**
+     * Index within the window of the next line
+     */
+    protected int m_position;
+    
+    /**
+     * The encoding of the file
+     */
+    protected Charset m_charset;
+    
+    /**
+     * Can ASCII bytes be read directly as characters
+     */
+    protected boolean m_asciiCompatible;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the MappedRawReader class
+     */
+    public MappedRawReader() {
+        super();
+        
+        m_channel         = null;
+        m_spool           = null;
+        m_size            = 0;
+        m_windowOffset    = 0;
+        m_window          = null;
+        m_position        = 0;
+        m_charset         = StandardCharsets.UTF_8;
+        m_asciiCompatible = true;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Releases the mapping and closes the input stream
+     * @throws java.io.IOException
+     */
+    @Override
+    public void close() throws IOException {
+        
+        m_window = null;
+        
+        try {
+            if ( m_spool != null ) {
+                m_channel.close();
+                m_spool.delete();
+                m_spool = null;
+            }
+        }
+        finally {
+            super.close();
+        }
+    }
+    
+    /**
+     * Reads the next line as a single field, decoding it
+     * @return
+     * @throws java.io.IOException
+     */
+    @Override
+    public String[] readRecord() throws IOException {
+        
+        CharSequence line = readLine();
+        if ( line == null ) {
+            return null;
+        }
+        
+        return new String[]{ line.toString() };
+    }
+    
+    /**
+     * Reads the next line without decoding it, the slice remains valid after
+     * further lines are read
+     * @return The line excluding its line ending, null at the end of the file
+     * @throws IOException
+     */
+    public ByteSlice readLine() throws IOException {
+        
+        if ( m_window == null || m_position >= m_window.limit() ) {
+            
+            long next = m_window == null ? m_windowOffset : m_windowOffset + m_window.limit();
+            if ( next >= m_size ) {
+                return null;
+            }
+            
+            map( next, WINDOW_SIZE );
+        }
+        
+        int start = m_position;
+        int nl    = indexOfNewline( m_window, start, m_window.limit() );
+        
+        // The line continues past the window, remap from its start with room for all of it
+        while ( nl < 0 && m_windowOffset + m_window.limit() < m_size ) {
+            
+            if ( start == 0 && m_window.limit() == Integer.MAX_VALUE ) {
+                throw new IOException( "Line exceeds the maximum mappable length" );
+            }
+            
+            int scanned = m_window.limit() - start;
+            
+            map( m_windowOffset + start, Math.max( WINDOW_SIZE, 2L * m_window.limit() ) );
+            
+            start = 0;
+            nl    = indexOfNewline( m_window, scanned, m_window.limit() );
+        }
+        
+        int end = nl < 0 ? m_window.limit() : nl;
+        
+        m_position = nl < 0 ? m_window.limit() : nl + 1;
+        
+        if ( end > start && m_window.get( end - 1 ) == '\r' ) {
+            end--;
+        }
+        
+        return new ByteSlice( m_window, start, end - start, m_charset, m_asciiCompatible );
+    }
+    
+    /**
+     * Maps a region of the file as the current window
+     * @param offset The offset within the file
+     * @param length The most bytes to map
+     * @throws IOException
+     */
+    protected void map( long offset, long length ) throws IOException {
+        
+        length = Math.min( Math.min( length, m_size - offset ), Integer.MAX_VALUE );
+        
+        m_window       = m_channel.map( FileChannel.MapMode.READ_ONLY, offset, length ).order( ByteOrder.LITTLE_ENDIAN );
+        m_windowOffset = offset;
+        m_position     = 0;
+    }
+    
+    /**
+     * Finds the next \n testing 8 bytes at a time
+     * @param b The bytes to search, must be little endian
+     * @param from The first index to search
+     * @param to The index after the last to search
+     * @return The index or -1 if not found
+     */
+    protected static int indexOfNewline( ByteBuffer b, int from, int to ) {
+        
+        int i = from;
+        
+        for ( ; i <= to - 8; i += 8 ) {
+            
+            // Bytes equal to \n become zero, then the lowest zero byte is found
+            long x = b.getLong( i ) ^ NEWLINES;
+            long t = ( x - ONES ) & ~x & HIGH_BITS;
+            
+            if ( t != 0 ) {
+                return i + ( Long.numberOfTrailingZeros( t ) >>> 3 );
+            }
+        }
+        
+        for ( ; i < to; i++ ) {
+            if ( b.get( i ) == '\n' ) {
+                return i;
+            }
+        }
+        
+        return -1;
+    }
+    
+    /**
+     * Reads the settings and maps the input ready for reading
+     * @throws java.lang.Exception
+     */
+    @Override
+    public void initialise() throws Exception {
+        
+        boolean hasHeader = true;
+        String encoding = "UTF-8";
+        Iterator it = getConfig().entrySet().iterator();
+        Map.Entry entry;
+        String key;
+        String value;
+        // Go through the config to determine what options to set
+        // currently only header and encoding are supported
+        while ( it.hasNext() ) {
+            entry = (Map.Entry)it.next();
+            
+            key = (String)entry.getKey();
+            key = key.toLowerCase();
+            
+            value = (String)entry.getValue();
+            
+            switch ( key ) {
+                
+                case "header"   : hasHeader = Boolean.parseBoolean( value );
+                                  break;
+                case "encoding" : encoding = value;
+                                  break;
+                                  
+            }
+        }
+        
+        m_charset = Charset.forName( encoding );
+        
+        byte[] newline = "\r\n".getBytes( m_charset );
+        if ( newline.length != 2 || newline[0] != '\r' || newline[1] != '\n' ) {
+            throw new IllegalArgumentException( "Encoding " + encoding + " is not ASCII compatible" );
+        }
+        
+        m_asciiCompatible =    m_charset.equals( StandardCharsets.UTF_8 )
+                            || m_charset.equals( StandardCharsets.US_ASCII )
+                            || m_charset.equals( StandardCharsets.ISO_8859_1 );
+        
+        // Map the file directly where the stream allows it
+        InputStream in = getInputStream();
+        if ( in instanceof MappedInputStream ) {
+            m_channel      = ( (MappedInputStream)in ).getChannel();
+            m_windowOffset = ( (MappedInputStream)in ).getPosition();
+        }
+        else if ( in instanceof FileInputStream ) {
+            m_channel      = ( (FileInputStream)in ).getChannel();
+            m_windowOffset = m_channel.position();
+        }
+        else {
+            m_spool = File.createTempFile( "flint_mmap_", ".dat" );
+            m_spool.deleteOnExit();
+            
+            Files.copy( in, m_spool.toPath(), StandardCopyOption.REPLACE_EXISTING );
+            
+            m_channel      = FileChannel.open( m_spool.toPath(), StandardOpenOption.READ );
+            m_windowOffset = 0;
+        }
+        
+        m_size     = m_channel.size();
+        m_window   = null;
+        m_position = 0;
+        
+        // Set the columns as the first record read, by default this is a single field
+        if ( hasHeader ) {
+            setColumns( readRecord() );
+        }
+    }
+    
+    /**
+     * Starts reading a new input stream
+     * @param in The stream to read
+     * @param settings Configuration for the reader
+     * @throws java.lang.Exception
+     */
+    @Override
+    public void reset( InputStream in, Map<String, String> settings ) throws Exception {
+        m_channel = null;
+        m_spool   = null;
+        m_window  = null;
+        
+        super.reset( in, settings );
+    }
+}
@@ -3,6 +3,7 @@ package flint.engine.io;
 // Core Java classes
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.util.Iterator;
 import java.util.Map;
@@ -49,6 +50,19 @@ public class RawWriter extends AbstractWriter {
         super.close();
     }
     
+    /**
+     * Starts writing a new output stream
+     * @param out The stream to write
+     * @param settings Configuration for the writer
+     * @throws java.lang.Exception
+     */
+    @Override
+    public void reset( OutputStream out, Map<String, String> settings ) throws Exception {
+        m_lineEnding = System.getProperty( "line.separator" ).getBytes();
+        
+        super.reset( out, settings );
+    }
+    
     public byte[] getLineEnding() {
         return m_lineEnding;
     }
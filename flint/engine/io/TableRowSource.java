@@ -0,0 +1,81 @@
+package flint.engine.io;
+
+// Core Java classes
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Application classes
+import flint.data.ColumnarDataTable;
+import flint.data.DataColumn;
+import flint.data.DataRow;
+import flint.data.DataTable;
+
+
+/**
+ * Adapts the rows of a fixtures table to the IRowSource interface, the column
+ * names first.  Rows of a table held by column are put together one at a time
+ * as they are read rather than all up front
+ * @author Philip Bowditch
+ */
+public class TableRowSource extends AbstractRowSource {
+    
+    /**
+     * The table
+     */
+    protected DataTable m_table;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the TableRowSource class
+     * @param table The table to read, its columns give the names
+     */
+    public TableRowSource( DataTable table ) {
+        super();
+        
+        m_table = table;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    public Iterator<String[]> iterator() {
+        
+        DataColumn[]      cols     = m_table.getColumns();
+        int               count    = m_table.getRowCount();
+        ColumnarDataTable columnar = ( m_table instanceof ColumnarDataTable ) ? (ColumnarDataTable)m_table : null;
+        DataRow[]         rows     = ( columnar == null ) ? m_table.getRows() : null;
+        
+        return new Iterator<String[]>() {
+            
+            int m_next = ( cols != null ) ? -1 : 0;
+            
+            @Override
+            public boolean hasNext() {
+                return m_next < count;
+            }
+            
+            @Override
+            public String[] next() {
+                
+                if ( !hasNext() ) {
+                    throw new NoSuchElementException();
+                }
+                
+                int i = m_next++;
+                
+                if ( i < 0 ) {
+                    String[] names = new String[ cols.length ];
+                    for ( int j = 0; j < names.length; j++ ) {
+                        names[j] = cols[j].getName();
+                    }
+                    return names;
+                }
+                
+                return ( columnar != null ) ? columnar.getRowCells( i ) : rows[i].getCells();
+            }
+        };
+    }
+}
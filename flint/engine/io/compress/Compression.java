@@ -0,0 +1,206 @@
+package flint.engine.io.compress;
+
+// Core Java classes
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The compression applied to engine data files, named by the DATA_*_COMPRESSION
+ * properties and control file keys.
+ *
+ * GZIP_PARALLEL writes BGZF, a series of independent gzip members any gzip tool
+ * can read, so blocks can be compressed and decompressed on several threads.
+ * LZ4 writes the standard LZ4 frame format, far faster than gzip for a lower
+ * ratio.  Every gzip file is read through ParallelGZIPInputStream which only
+ * inflates in parallel when the file is BGZF.
+ *
+ * The compression threads are shared by every stream and default to one per
+ * processor, the flint.compression_threads system property overrides this.
+ * Each stream keeps at most two blocks per thread in flight, fewer when that
+ * would exceed flint.compression_buffer_bytes, 64MB by default
+ * @author Philip Bowditch
+ */
+public enum Compression {
+    
+    NONE( "", "" ),
+    GZIP( "gzip", ".gz" ),
+    GZIP_PARALLEL( "gzip-parallel", ".gz" ),
+    LZ4( "lz4", ".lz4" );
+    
+    /**
+     * The number of compression threads
+     */
+    public static final int THREADS = Math.max( 1, Integer.getInteger( "flint.compression_threads", Runtime.getRuntime().availableProcessors() ) );
+    
+    /**
+     * The uncompressed bytes each stream may have in flight
+     */
+    public static final long BUFFER_BYTES = Math.max( 1, Long.getLong( "flint.compression_buffer_bytes", 64L * 1024 * 1024 ) );
+    
+    /**
+     * How long an idle compression thread waits for work before it exits
+     */
+    protected static final long KEEP_ALIVE_SECONDS = 60;
+    
+    protected final String m_name;
+    
+    protected final String m_extension;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    Compression( String name, String extension ) {
+        m_name      = name;
+        m_extension = extension;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Returns the compression with the given name, ignoring case.  Unrecognised
+     * names mean no compression as they always have
+     * @param name gzip, gzip-parallel (or bgzf), lz4 or anything else for none
+     * @return
+     */
+    public static Compression forName( String name ) {
+        
+        if ( name == null ) {
+            return NONE;
+        }
+        
+        String n = name.trim();
+        
+        for ( Compression c : values() ) {
+            if ( c != NONE && c.m_name.equalsIgnoreCase( n ) ) {
+                return c;
+            }
+        }
+        
+        if ( n.equalsIgnoreCase( "bgzf" ) || n.equalsIgnoreCase( "gzip_parallel" ) ) {
+            return GZIP_PARALLEL;
+        }
+        
+        return NONE;
+    }
+    
+    /**
+     * Returns the name used in properties and control files
+     * @return
+     */
+    public String getName() {
+        return m_name;
+    }
+    
+    /**
+     * Returns the file extension for compressed files, empty for NONE
+     * @return
+     */
+    public String getExtension() {
+        return m_extension;
+    }
+    
+    public boolean isCompressed() {
+        return this != NONE;
+    }
+    
+    /**
+     * Wraps a stream so data written to it is compressed
+     * @param out
+     * @return
+     * @throws IOException
+     */
+    public OutputStream compress( OutputStream out ) throws IOException {
+        
+        switch ( this ) {
+            case GZIP:
+                return new GZIPOutputStream( out, 65536 );
+            case GZIP_PARALLEL:
+                return new ParallelGZIPOutputStream( out );
+            case LZ4:
+                return new LZ4FrameOutputStream( out );
+            default:
+                return out;
+        }
+    }
+    
+    /**
+     * Wraps a stream so data read from it is decompressed
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public InputStream decompress( InputStream in ) throws IOException {
+        
+        switch ( this ) {
+            case GZIP:
+            case GZIP_PARALLEL:
+                return new ParallelGZIPInputStream( in );
+            case LZ4:
+                return new LZ4FrameInputStream( in );
+            default:
+                return in;
+        }
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Returns the threads shared by the parallel streams
+     * @return
+     */
+    static ExecutorService executor() {
+        return Workers.EXECUTOR;
+    }
+    
+    /**
+     * Returns how many blocks a stream may have in flight, never fewer than two
+     * so one can be filled or read whilst another is compressed
+     * @param blockSize The uncompressed size of each block
+     * @return
+     */
+    static int maxPending( int blockSize ) {
+        return (int)Math.max( 2, Math.min( THREADS * 2L, BUFFER_BYTES / Math.max( 1, blockSize ) ) );
+    }
+    
+    /**
+     * Holds the threads so they are only started when first needed.  Threads
+     * exit once idle or when the pool shuts down, ending the native deflaters
+     * and inflaters they kept
+     */
+    private static class Workers {
+        
+        static final ExecutorService EXECUTOR;
+        
+        static {
+            AtomicInteger count = new AtomicInteger();
+            
+            ThreadPoolExecutor executor = new ThreadPoolExecutor( THREADS, THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread( () -> {
+                    try {
+                        r.run();
+                    }
+                    finally {
+                        ParallelGZIPOutputStream.endDeflaters();
+                        ParallelGZIPInputStream.endInflater();
+                    }
+                }, "flint-compression-" + count.incrementAndGet() );
+                
+                t.setDaemon( true );
+                return t;
+            } );
+            
+            executor.allowCoreThreadTimeOut( true );
+            
+            EXECUTOR = executor;
+        }
+    }
+}
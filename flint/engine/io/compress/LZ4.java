@@ -0,0 +1,294 @@
+package flint.engine.io.compress;
+
+// Core Java classes
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compresses and decompresses LZ4 blocks.  The compressor is the single pass
+ * greedy algorithm of the reference "fast" mode, trading ratio for speed, and
+ * produces blocks any LZ4 implementation can decompress
+ * @author Philip Bowditch
+ */
+public class LZ4 {
+    
+    protected static final int MIN_MATCH     = 4;
+    protected static final int LAST_LITERALS = 5;
+    protected static final int MF_LIMIT      = 12;
+    protected static final int MAX_DISTANCE  = 65535;
+    protected static final int HASH_LOG      = 12;
+    
+    /**
+     * How quickly the search skips ahead through data without matches
+     */
+    protected static final int SKIP_TRIGGER = 6;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    private LZ4() {
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * The largest a block can be once compressed
+     * @param len The uncompressed length
+     * @return
+     */
+    public static int maxCompressedLength( int len ) {
+        return len + len / 255 + 16;
+    }
+    
+    /**
+     * Returns a hash table for compress, one is needed per thread
+     * @return
+     */
+    public static int[] newTable() {
+        return new int[ 1 << HASH_LOG ];
+    }
+    
+    /**
+     * Compresses a block
+     * @param src The data to compress
+     * @param srcOff The first byte
+     * @param srcLen The number of bytes
+     * @param dst Receives the block, must hold maxCompressedLength bytes from dstOff
+     * @param dstOff Where to write the block
+     * @param table A hash table from newTable, its contents are overwritten
+     * @return The length of the block
+     */
+    public static int compress( byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int[] table ) {
+        
+        int end      = srcOff + srcLen;
+        int mfLimit  = end - MF_LIMIT;
+        int mLimit   = end - LAST_LITERALS;
+        int anchor   = srcOff;
+        int ip       = srcOff;
+        int op       = dstOff;
+        
+        if ( srcLen >= MF_LIMIT + 1 ) {
+            
+            Arrays.fill( table, -1 );
+            
+            table[ hash( readInt( src, ip ) ) ] = ip;
+            ip++;
+            
+            search:
+            while ( true ) {
+                
+                // Find a match, skipping ahead faster the longer none is found
+                int ref;
+                int attempts = 1 << SKIP_TRIGGER;
+                
+                while ( true ) {
+                    
+                    if ( ip > mfLimit ) {
+                        break search;
+                    }
+                    
+                    int seq = readInt( src, ip );
+                    int h   = hash( seq );
+                    
+                    ref        = table[h];
+                    table[h]   = ip;
+                    
+                    if ( ref >= 0 && ip - ref <= MAX_DISTANCE && readInt( src, ref ) == seq ) {
+                        break;
+                    }
+                    
+                    ip += attempts++ >>> SKIP_TRIGGER;
+                }
+                
+                // Extend the match backwards over the literals
+                while ( ip > anchor && ref > srcOff && src[ ip - 1 ] == src[ ref - 1 ] ) {
+                    ip--;
+                    ref--;
+                }
+                
+                // Extend the match forwards
+                int len = MIN_MATCH;
+                while ( ip + len < mLimit && src[ ip + len ] == src[ ref + len ] ) {
+                    len++;
+                }
+                
+                op = writeSequence( src, anchor, ip - anchor, ip - ref, len, dst, op );
+                
+                ip    += len;
+                anchor = ip;
+                
+                if ( ip > mfLimit ) {
+                    break;
+                }
+                
+                table[ hash( readInt( src, ip - 2 ) ) ] = ip - 2;
+            }
+        }
+        
+        // The block always ends with literals
+        int literals = end - anchor;
+        int token    = op++;
+        
+        dst[ token ] = 0;
+        op = writeLength( literals, dst, token, 4, op );
+        
+        System.arraycopy( src, anchor, dst, op, literals );
+        
+        return op + literals - dstOff;
+    }
+    
+    /**
+     * Decompresses a block.  Matches may refer back before dstOff to data
+     * already in dst, as blocks of a linked LZ4 frame do
+     * @param src The block
+     * @param srcOff The first byte of the block
+     * @param srcLen The length of the block
+     * @param dst Receives the data
+     * @param dstOff Where to write the data
+     * @param dstLimit The index after the last byte that may be written
+     * @param dictStart The earliest index within dst a match may refer to
+     * @return The number of bytes written
+     * @throws IOException If the block is malformed
+     */
+    public static int decompress( byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLimit, int dictStart ) throws IOException {
+        
+        int ip  = srcOff;
+        int end = srcOff + srcLen;
+        int op  = dstOff;
+        
+        while ( ip < end ) {
+            
+            int token = src[ ip++ ] & 0xFF;
+            
+            // Literals
+            int literals = token >>> 4;
+            if ( literals == 15 ) {
+                int b;
+                do {
+                    if ( ip >= end ) {
+                        throw new IOException( "Malformed LZ4 block" );
+                    }
+                    b         = src[ ip++ ] & 0xFF;
+                    literals += b;
+                }
+                while ( b == 255 );
+            }
+            
+            if ( literals > end - ip || literals > dstLimit - op ) {
+                throw new IOException( "Malformed LZ4 block" );
+            }
+            
+            System.arraycopy( src, ip, dst, op, literals );
+            ip += literals;
+            op += literals;
+            
+            // The last sequence has no match
+            if ( ip == end ) {
+                break;
+            }
+            
+            if ( end - ip < 2 ) {
+                throw new IOException( "Malformed LZ4 block" );
+            }
+            
+            int offset = ( src[ ip ] & 0xFF ) | ( ( src[ ip + 1 ] & 0xFF ) << 8 );
+            ip += 2;
+            
+            int match = op - offset;
+            if ( offset == 0 || match < dictStart ) {
+                throw new IOException( "Malformed LZ4 block" );
+            }
+            
+            int len = token & 0x0F;
+            if ( len == 15 ) {
+                int b;
+                do {
+                    if ( ip >= end ) {
+                        throw new IOException( "Malformed LZ4 block" );
+                    }
+                    b    = src[ ip++ ] & 0xFF;
+                    len += b;
+                }
+                while ( b == 255 );
+            }
+            
+            len += MIN_MATCH;
+            
+            if ( len > dstLimit - op ) {
+                throw new IOException( "Malformed LZ4 block" );
+            }
+            
+            // Overlapping matches repeat the bytes just written
+            if ( offset >= len ) {
+                System.arraycopy( dst, match, dst, op, len );
+            }
+            else {
+                for ( int i = 0; i < len; i++ ) {
+                    dst[ op + i ] = dst[ match + i ];
+                }
+            }
+            
+            op += len;
+        }
+        
+        return op - dstOff;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Writes literals followed by a match
+     * @return The position after the sequence
+     */
+    protected static int writeSequence( byte[] src, int anchor, int literals, int offset, int len, byte[] dst, int op ) {
+        
+        int token = op++;
+        
+        dst[ token ] = 0;
+        op = writeLength( literals, dst, token, 4, op );
+        
+        System.arraycopy( src, anchor, dst, op, literals );
+        op += literals;
+        
+        dst[ op++ ] = (byte)offset;
+        dst[ op++ ] = (byte)( offset >>> 8 );
+        
+        return writeLength( len - MIN_MATCH, dst, token, 0, op );
+    }
+    
+    /**
+     * Writes a length into a nibble of the token, continuing in the following
+     * bytes when it does not fit
+     * @return The position after any extra bytes
+     */
+    protected static int writeLength( int len, byte[] dst, int token, int shift, int op ) {
+        
+        if ( len < 15 ) {
+            dst[ token ] |= (byte)( len << shift );
+            return op;
+        }
+        
+        dst[ token ] |= (byte)( 15 << shift );
+        
+        for ( len -= 15; len >= 255; len -= 255 ) {
+            dst[ op++ ] = (byte)255;
+        }
+        
+        dst[ op++ ] = (byte)len;
+        
+        return op;
+    }
+    
+    protected static int hash( int seq ) {
+        return ( seq * -1640531535 ) >>> ( 32 - HASH_LOG );
+    }
+    
+    protected static int readInt( byte[] b, int i ) {
+        return   ( b[i] & 0xFF )
+               | ( ( b[i + 1] & 0xFF ) << 8 )
+               | ( ( b[i + 2] & 0xFF ) << 16 )
+               | ( ( b[i + 3] & 0xFF ) << 24 );
+    }
+}
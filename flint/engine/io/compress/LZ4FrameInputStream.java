@@ -0,0 +1,330 @@
+package flint.engine.io.compress;
+
+// Core Java classes
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+
+/**
+ * Reads the standard LZ4 frame format, including concatenated and skippable
+ * frames.  The independent blocks of frames such as those from
+ * LZ4FrameOutputStream are decompressed across the compression threads, the
+ * linked blocks the lz4 tool writes by default are decompressed in order as
+ * each may refer back to the last.  Frames needing a preset dictionary are
+ * not supported
+ * @author Philip Bowditch
+ */
+public class LZ4FrameInputStream extends ParallelBlockInputStream {
+    
+    protected static final int WINDOW = 65536;
+    
+    /**
+     * Is a frame being read, otherwise the next data is a magic number
+     */
+    protected boolean m_inFrame;
+    
+    protected boolean m_independent;
+    
+    protected boolean m_blockChecksum;
+    
+    protected int m_maxBlockSize;
+    
+    /**
+     * The end of the last decompressed data, for linked blocks
+     */
+    protected byte[] m_window;
+    
+    protected int m_windowLength;
+    
+    /**
+     * Hashes the content of the current frame, null if it has no content checksum
+     */
+    protected XXHash32 m_frameHash;
+    
+    /**
+     * What to check as each block is read, in the order the blocks were found
+     */
+    protected Queue<Check> m_checks;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the LZ4FrameInputStream class
+     * @param in The LZ4 stream
+     */
+    public LZ4FrameInputStream( InputStream in ) {
+        super( in, LZ4FrameOutputStream.BLOCK_SIZE );
+        
+        m_inFrame         = false;
+        m_independent     = true;
+        m_blockChecksum   = false;
+        m_maxBlockSize    = 0;
+        m_window          = new byte[ WINDOW ];
+        m_windowLength    = 0;
+        m_frameHash       = null;
+        m_checks          = new ArrayDeque<>();
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    protected Callable<ByteBuffer> nextBlock() throws IOException {
+        
+        byte[] b = new byte[4];
+        
+        while ( true ) {
+            
+            if ( !m_inFrame && !readFrameHeader() ) {
+                return null;
+            }
+            
+            if ( readFully( b, 0, 4 ) < 4 ) {
+                throw new EOFException( "Unexpected end of LZ4 frame" );
+            }
+            
+            int header = readInt( b, 0 );
+            if ( header != 0 ) {
+                m_checks.add( new Check( m_frameHash, false, 0 ) );
+                return block( header );
+            }
+            
+            // The end of the frame
+            m_inFrame = false;
+            
+            if ( m_frameHash != null ) {
+                
+                if ( readFully( b, 0, 4 ) < 4 ) {
+                    throw new EOFException( "Unexpected end of LZ4 frame" );
+                }
+                
+                final ByteBuffer end = ByteBuffer.allocate( 0 );
+                
+                m_checks.add( new Check( m_frameHash, true, readInt( b, 0 ) ) );
+                return () -> end;
+            }
+        }
+    }
+    
+    @Override
+    protected void consumed( ByteBuffer block ) throws IOException {
+        
+        Check check = m_checks.remove();
+        if ( check.m_hash == null ) {
+            return;
+        }
+        
+        if ( !check.m_end ) {
+            check.m_hash.update( block.array(), block.arrayOffset() + block.position(), block.remaining() );
+        }
+        else if ( check.m_hash.getValue() != check.m_expected ) {
+            throw new IOException( "LZ4 content checksum mismatch" );
+        }
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Reads a block, returning the work to decompress it
+     * @param header The block size and compressed flag
+     */
+    protected Callable<ByteBuffer> block( int header ) throws IOException {
+        
+        final boolean compressed = ( header & 0x80000000 ) == 0;
+        final int     size       = header & 0x7FFFFFFF;
+        
+        if ( size > m_maxBlockSize ) {
+            throw new IOException( "LZ4 block larger than the frame allows" );
+        }
+        
+        final byte[] block = new byte[ size + ( m_blockChecksum ? 4 : 0 ) ];
+        if ( readFully( block, 0, block.length ) < block.length ) {
+            throw new EOFException( "Unexpected end of LZ4 frame" );
+        }
+        
+        final boolean checksum     = m_blockChecksum;
+        final int     maxBlockSize = m_maxBlockSize;
+        
+        if ( m_independent ) {
+            return () -> decode( block, size, compressed, checksum, maxBlockSize );
+        }
+        
+        // Linked blocks are decoded now, following the data before them
+        verify( block, size, checksum );
+        
+        byte[] out = new byte[ m_windowLength + ( compressed ? maxBlockSize : size ) ];
+        System.arraycopy( m_window, 0, out, 0, m_windowLength );
+        
+        int n;
+        if ( compressed ) {
+            n = LZ4.decompress( block, 0, size, out, m_windowLength, out.length, 0 );
+        }
+        else {
+            System.arraycopy( block, 0, out, m_windowLength, size );
+            n = size;
+        }
+        
+        int end   = m_windowLength + n;
+        int start = Math.max( 0, end - WINDOW );
+        
+        m_windowLength = end - start;
+        System.arraycopy( out, start, m_window, 0, m_windowLength );
+        
+        final ByteBuffer result = ByteBuffer.wrap( out, end - n, n );
+        return () -> result;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Reads the next frame header, skipping any skippable frames
+     * @return False at the end of the stream
+     */
+    protected boolean readFrameHeader() throws IOException {
+        
+        byte[] b = new byte[15];
+        
+        while ( true ) {
+            
+            int n = readFully( b, 0, 4 );
+            if ( n == 0 ) {
+                return false;
+            }
+            
+            if ( n < 4 ) {
+                throw new EOFException( "Unexpected end of LZ4 stream" );
+            }
+            
+            int magic = readInt( b, 0 );
+            
+            if ( ( magic & 0xFFFFFFF0 ) == 0x184D2A50 ) {
+                
+                if ( readFully( b, 0, 4 ) < 4 ) {
+                    throw new EOFException( "Unexpected end of LZ4 stream" );
+                }
+                
+                long skip = readInt( b, 0 ) & 0xFFFFFFFFL;
+                while ( skip > 0 ) {
+                    
+                    long skipped = m_in.skip( skip );
+                    if ( skipped <= 0 ) {
+                        if ( m_in.read() < 0 ) {
+                            throw new EOFException( "Unexpected end of LZ4 stream" );
+                        }
+                        skipped = 1;
+                    }
+                    
+                    skip -= skipped;
+                }
+                
+                continue;
+            }
+            
+            if ( magic != LZ4FrameOutputStream.MAGIC ) {
+                throw new IOException( "Not an LZ4 frame" );
+            }
+            
+            break;
+        }
+        
+        if ( readFully( b, 0, 2 ) < 2 ) {
+            throw new EOFException( "Unexpected end of LZ4 stream" );
+        }
+        
+        int flg = b[0] & 0xFF;
+        int bd  = b[1] & 0xFF;
+        
+        if ( ( flg >>> 6 ) != 1 ) {
+            throw new IOException( "Unsupported LZ4 frame version" );
+        }
+        
+        if ( ( flg & 0x01 ) != 0 ) {
+            throw new IOException( "LZ4 frames with a dictionary are not supported" );
+        }
+        
+        int blockSizeId = ( bd >>> 4 ) & 0x07;
+        if ( blockSizeId < 4 ) {
+            throw new IOException( "Invalid LZ4 block size" );
+        }
+        
+        boolean contentSize = ( flg & 0x08 ) != 0;
+        
+        int length = 2 + ( contentSize ? 8 : 0 );
+        if ( readFully( b, 2, length - 2 + 1 ) < length - 2 + 1 ) {
+            throw new EOFException( "Unexpected end of LZ4 stream" );
+        }
+        
+        if ( ( ( XXHash32.hash( b, 0, length, 0 ) >>> 8 ) & 0xFF ) != ( b[ length ] & 0xFF ) ) {
+            throw new IOException( "LZ4 frame header checksum mismatch" );
+        }
+        
+        m_inFrame         = true;
+        m_independent     = ( flg & 0x20 ) != 0;
+        m_blockChecksum   = ( flg & 0x10 ) != 0;
+        m_maxBlockSize    = 1 << ( 8 + 2 * blockSizeId );
+        m_maxPending      = Compression.maxPending( m_maxBlockSize );
+        m_frameHash       = ( flg & 0x04 ) != 0 ? new XXHash32() : null;
+        m_windowLength    = 0;
+        
+        return true;
+    }
+    
+    /**
+     * Decompresses an independent block, called on a compression thread
+     */
+    protected static ByteBuffer decode( byte[] block, int size, boolean compressed, boolean checksum, int maxBlockSize ) throws IOException {
+        
+        verify( block, size, checksum );
+        
+        if ( !compressed ) {
+            return ByteBuffer.wrap( block, 0, size );
+        }
+        
+        byte[] out = new byte[ maxBlockSize ];
+        int    n   = LZ4.decompress( block, 0, size, out, 0, out.length, 0 );
+        
+        return ByteBuffer.wrap( out, 0, n );
+    }
+    
+    protected static void verify( byte[] block, int size, boolean checksum ) throws IOException {
+        if ( checksum && XXHash32.hash( block, 0, size, 0 ) != readInt( block, size ) ) {
+            throw new IOException( "LZ4 block checksum mismatch" );
+        }
+    }
+    
+    protected static int readInt( byte[] b, int i ) {
+        return   ( b[i] & 0xFF )
+               | ( ( b[i + 1] & 0xFF ) << 8 )
+               | ( ( b[i + 2] & 0xFF ) << 16 )
+               | ( ( b[i + 3] & 0xFF ) << 24 );
+    }
+    
+    
+    /**
+     * The content checksum work for a block
+     */
+    protected static class Check {
+        
+        protected final XXHash32 m_hash;
+        
+        /**
+         * Is this the end of the frame, so the hash is compared to m_expected
+         */
+        protected final boolean m_end;
+        
+        protected final int m_expected;
+        
+        Check( XXHash32 hash, boolean end, int expected ) {
+            m_hash     = hash;
+            m_end      = end;
+            m_expected = expected;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package flint.engine.io.compress;
+
+// Core Java classes
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes the standard LZ4 frame format, readable by the lz4 tool and libraries.
+ * Blocks are independent and carry a checksum so they are compressed, and can
+ * be decompressed, on the compression threads
+ * @author Philip Bowditch
+ */
+public class LZ4FrameOutputStream extends ParallelBlockOutputStream {
+    
+    public static final int MAGIC = 0x184D2204;
+    
+    /**
+     * The block size id of the frame descriptor and the size it stands for
+     */
+    protected static final int BLOCK_SIZE_ID = 7;
+    protected static final int BLOCK_SIZE    = 4 * 1024 * 1024;
+    
+    /**
+     * Version 01, independent blocks with checksums
+     */
+    protected static final int FLG = 0x70;
+    
+    protected static final int UNCOMPRESSED = 0x80000000;
+    
+    protected static final ThreadLocal<int[]> TABLE = ThreadLocal.withInitial( LZ4::newTable );
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the LZ4FrameOutputStream class
+     * @param out The stream to write to
+     * @throws IOException If the frame header cannot be written
+     */
+    public LZ4FrameOutputStream( OutputStream out ) throws IOException {
+        super( out, BLOCK_SIZE );
+        
+        byte[] header = new byte[7];
+        writeInt( header, 0, MAGIC );
+        
+        header[4] = (byte)FLG;
+        header[5] = (byte)( BLOCK_SIZE_ID << 4 );
+        header[6] = (byte)( XXHash32.hash( header, 4, 2, 0 ) >>> 8 );
+        
+        out.write( header );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    protected ByteBuffer compress( byte[] block, int length ) {
+        
+        byte[] out  = new byte[ 4 + Math.max( length, LZ4.maxCompressedLength( length ) ) + 4 ];
+        int    size = LZ4.compress( block, 0, length, out, 4, TABLE.get() );
+        int    header;
+        
+        if ( size < length ) {
+            header = size;
+        }
+        else {
+            System.arraycopy( block, 0, out, 4, length );
+            
+            size   = length;
+            header = length | UNCOMPRESSED;
+        }
+        
+        writeInt( out, 0, header );
+        writeInt( out, 4 + size, XXHash32.hash( out, 4, size, 0 ) );
+        
+        return ByteBuffer.wrap( out, 0, 4 + size + 4 );
+    }
+    
+    @Override
+    protected void finish( OutputStream out ) throws IOException {
+        byte[] end = new byte[4];
+        out.write( end );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    protected static void writeInt( byte[] b, int i, int value ) {
+        b[i]     = (byte)value;
+        b[i + 1] = (byte)( value >>> 8 );
+        b[i + 2] = (byte)( value >>> 16 );
+        b[i + 3] = (byte)( value >>> 24 );
+    }
+}
@@ -0,0 +1,226 @@
+package flint.engine.io.compress;
+
+// Core Java classes
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a stream of independently compressed blocks, reading ahead so several
+ * blocks are decompressed across the compression threads whilst the current
+ * one is consumed.  How far it reads ahead is limited by the block size so
+ * memory use stays within the compression buffer budget.  Subclasses read the
+ * framing of each block, which is cheap, and return the work of decompressing it.
+ *
+ * If the stream turns out not to be made of blocks the subclass can set a tail
+ * stream which is read sequentially once the blocks before it are consumed
+ * @author Philip Bowditch
+ */
+public abstract class ParallelBlockInputStream extends InputStream {
+    
+    /**
+     * The compressed stream
+     */
+    protected InputStream m_in;
+    
+    protected ExecutorService m_executor;
+    
+    /**
+     * Blocks being decompressed, oldest first
+     */
+    protected Queue<Future<ByteBuffer>> m_pending;
+    
+    protected int m_maxPending;
+    
+    /**
+     * The block being read, null until the first read
+     */
+    protected ByteBuffer m_current;
+    
+    /**
+     * Set once nextBlock has returned null
+     */
+    protected boolean m_endOfBlocks;
+    
+    /**
+     * Read after the blocks, null if there is nothing further
+     */
+    protected InputStream m_tail;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the ParallelBlockInputStream class
+     * @param in The compressed stream
+     * @param blockSize The largest uncompressed size expected of a block
+     */
+    public ParallelBlockInputStream( InputStream in, int blockSize ) {
+        m_in          = in;
+        m_executor    = Compression.executor();
+        m_pending     = new ArrayDeque<>();
+        m_maxPending  = Compression.maxPending( blockSize );
+        m_current     = null;
+        m_endOfBlocks = false;
+        m_tail        = null;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Reads the framing of the next block
+     * @return The work to decompress it, null if there are no more blocks
+     * @throws IOException
+     */
+    protected abstract Callable<ByteBuffer> nextBlock() throws IOException;
+    
+    /**
+     * Called in order with each block as it is about to be read
+     * @param block The decompressed block
+     * @throws IOException
+     */
+    protected void consumed( ByteBuffer block ) throws IOException {
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    public int read() throws IOException {
+        
+        if ( !nextAvailable() ) {
+            return m_tail == null ? -1 : m_tail.read();
+        }
+        
+        return m_current.get() & 0xFF;
+    }
+    
+    @Override
+    public int read( byte[] b, int offset, int len ) throws IOException {
+        
+        if ( len == 0 ) {
+            return 0;
+        }
+        
+        if ( !nextAvailable() ) {
+            return m_tail == null ? -1 : m_tail.read( b, offset, len );
+        }
+        
+        int n = Math.min( len, m_current.remaining() );
+        m_current.get( b, offset, n );
+        
+        return n;
+    }
+    
+    @Override
+    public int available() throws IOException {
+        
+        if ( m_current != null && m_current.hasRemaining() ) {
+            return m_current.remaining();
+        }
+        
+        return m_tail == null || !m_pending.isEmpty() ? 0 : m_tail.available();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        
+        for ( Future<ByteBuffer> f : m_pending ) {
+            f.cancel( true );
+        }
+        
+        m_pending.clear();
+        
+        if ( m_tail != null ) {
+            m_tail.close();
+        }
+        
+        m_in.close();
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Ensures the current block has data, waiting for the next if necessary
+     * @return False once all the blocks have been read
+     */
+    protected boolean nextAvailable() throws IOException {
+        
+        while ( m_current == null || !m_current.hasRemaining() ) {
+            
+            readAhead();
+            
+            if ( m_pending.isEmpty() ) {
+                return false;
+            }
+            
+            m_current = take();
+            consumed( m_current );
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Starts decompressing blocks until enough are in flight
+     */
+    protected void readAhead() throws IOException {
+        
+        while ( !m_endOfBlocks && m_pending.size() < m_maxPending ) {
+            
+            Callable<ByteBuffer> work = nextBlock();
+            if ( work == null ) {
+                m_endOfBlocks = true;
+                break;
+            }
+            
+            m_pending.add( m_executor.submit( work ) );
+        }
+    }
+    
+    protected ByteBuffer take() throws IOException {
+        
+        try {
+            return m_pending.remove().get();
+        }
+        catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted whilst decompressing" );
+        }
+        catch ( ExecutionException ex ) {
+            if ( ex.getCause() instanceof IOException ) {
+                throw (IOException)ex.getCause();
+            }
+            throw new IOException( "Unable to decompress block", ex.getCause() );
+        }
+    }
+    
+    /**
+     * Reads exactly the given number of bytes from the compressed stream
+     * @return The number of bytes read, less only at the end of the stream
+     */
+    protected int readFully( byte[] b, int offset, int len ) throws IOException {
+        
+        int total = 0;
+        while ( total < len ) {
+            
+            int n = m_in.read( b, offset + total, len - total );
+            if ( n < 0 ) {
+                break;
+            }
+            
+            total += n;
+        }
+        
+        return total;
+    }
+}
@@ -0,0 +1,214 @@
+package flint.engine.io.compress;
+
+// Core Java classes
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Splits the data written into fixed size blocks that are compressed
+ * independently across the compression threads, writing the compressed blocks
+ * in their original order.  A limited number of blocks are in flight at once,
+ * within the compression buffer budget, so memory use depends neither on how
+ * quickly the underlying stream is written nor on the number of threads
+ * @author Philip Bowditch
+ */
+public abstract class ParallelBlockOutputStream extends OutputStream {
+    
+    /**
+     * The stream compressed blocks are written to
+     */
+    protected OutputStream m_out;
+    
+    protected ExecutorService m_executor;
+    
+    /**
+     * The block being filled
+     */
+    protected byte[] m_block;
+    
+    protected int m_length;
+    
+    /**
+     * Blocks being compressed, oldest first
+     */
+    protected Queue<Future<ByteBuffer>> m_pending;
+    
+    protected int m_maxPending;
+    
+    /**
+     * Block buffers no longer in use
+     */
+    protected Queue<byte[]> m_free;
+    
+    protected boolean m_closed;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the ParallelBlockOutputStream class
+     * @param out The stream to write to
+     * @param blockSize The uncompressed size of each block
+     */
+    public ParallelBlockOutputStream( OutputStream out, int blockSize ) {
+        m_out        = out;
+        m_executor   = Compression.executor();
+        m_block      = new byte[ blockSize ];
+        m_length     = 0;
+        m_pending    = new ArrayDeque<>();
+        m_maxPending = Compression.maxPending( blockSize );
+        m_free       = new ConcurrentLinkedQueue<>();
+        m_closed     = false;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Compresses a block, called on a compression thread
+     * @param block The data, which must not be modified
+     * @param length The number of bytes of data
+     * @return The compressed block ready to be written
+     * @throws IOException
+     */
+    protected abstract ByteBuffer compress( byte[] block, int length ) throws IOException;
+    
+    /**
+     * Writes anything that must follow the last block
+     * @param out
+     * @throws IOException
+     */
+    protected abstract void finish( OutputStream out ) throws IOException;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    public void write( int b ) throws IOException {
+        
+        if ( m_length == m_block.length ) {
+            submit();
+        }
+        
+        m_block[ m_length++ ] = (byte)b;
+    }
+    
+    @Override
+    public void write( byte[] b, int offset, int len ) throws IOException {
+        
+        while ( len > 0 ) {
+            
+            if ( m_length == m_block.length ) {
+                submit();
+            }
+            
+            int n = Math.min( len, m_block.length - m_length );
+            System.arraycopy( b, offset, m_block, m_length, n );
+            
+            m_length += n;
+            offset   += n;
+            len      -= n;
+        }
+    }
+    
+    /**
+     * Compresses any partial block and writes every block so far
+     * @throws IOException
+     */
+    @Override
+    public void flush() throws IOException {
+        
+        if ( m_length > 0 ) {
+            submit();
+        }
+        
+        while ( !m_pending.isEmpty() ) {
+            writeOldest();
+        }
+        
+        m_out.flush();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        
+        if ( m_closed ) {
+            return;
+        }
+        
+        m_closed = true;
+        
+        try {
+            flush();
+            finish( m_out );
+            m_out.flush();
+        }
+        finally {
+            for ( Future<ByteBuffer> f : m_pending ) {
+                f.cancel( true );
+            }
+            
+            m_out.close();
+        }
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Hands the current block to the compression threads and starts a new one,
+     * first writing the oldest blocks if too many are in flight
+     */
+    protected void submit() throws IOException {
+        
+        final byte[] block  = m_block;
+        final int    length = m_length;
+        
+        m_pending.add( m_executor.submit( () -> {
+            try {
+                return compress( block, length );
+            }
+            finally {
+                m_free.offer( block );
+            }
+        } ) );
+        
+        byte[] next = m_free.poll();
+        
+        m_block  = next == null ? new byte[ block.length ] : next;
+        m_length = 0;
+        
+        while ( m_pending.size() >= m_maxPending ) {
+            writeOldest();
+        }
+    }
+    
+    protected void writeOldest() throws IOException {
+        
+        ByteBuffer b;
+        
+        try {
+            b = m_pending.remove().get();
+        }
+        catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted whilst compressing" );
+        }
+        catch ( ExecutionException ex ) {
+            if ( ex.getCause() instanceof IOException ) {
+                throw (IOException)ex.getCause();
+            }
+            throw new IOException( "Unable to compress block", ex.getCause() );
+        }
+        
+        m_out.write( b.array(), b.arrayOffset() + b.position(), b.remaining() );
+    }
+}
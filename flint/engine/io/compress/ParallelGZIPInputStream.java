@@ -0,0 +1,160 @@
+package flint.engine.io.compress;
+
+// Core Java classes
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads gzip files, inflating the members of BGZF files such as those from
+ * ParallelGZIPOutputStream or bgzip across the compression threads.  From the
+ * first member that is not BGZF the rest of the file is read sequentially with
+ * GZIPInputStream, so files from gzip itself are read as they always were
+ * @author Philip Bowditch
+ */
+public class ParallelGZIPInputStream extends ParallelBlockInputStream {
+    
+    protected static final int HEADER_SIZE = 18;
+    protected static final int FOOTER_SIZE = 8;
+    
+    /**
+     * Each compression thread keeps an inflater, created when first needed
+     */
+    protected static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<>();
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the ParallelGZIPInputStream class
+     * @param in The gzip stream
+     */
+    public ParallelGZIPInputStream( InputStream in ) {
+        super( in.markSupported() ? in : new BufferedInputStream( in, 65536 ), ParallelGZIPOutputStream.BLOCK_SIZE );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    protected Callable<ByteBuffer> nextBlock() throws IOException {
+        
+        byte[] header = new byte[ HEADER_SIZE ];
+        
+        m_in.mark( HEADER_SIZE );
+        
+        int n = readFully( header, 0, HEADER_SIZE );
+        if ( n == 0 ) {
+            if ( m_current == null && m_pending.isEmpty() ) {
+                throw new EOFException( "Empty gzip stream" );
+            }
+            return null;
+        }
+        
+        if ( n < HEADER_SIZE || !isBGZF( header ) ) {
+            m_in.reset();
+            m_tail = new GZIPInputStream( m_in, 65536 );
+            return null;
+        }
+        
+        int    size   = ( ( header[16] & 0xFF ) | ( ( header[17] & 0xFF ) << 8 ) ) + 1;
+        byte[] member = new byte[ size - HEADER_SIZE ];
+        
+        if ( size < HEADER_SIZE + FOOTER_SIZE || readFully( member, 0, member.length ) < member.length ) {
+            throw new EOFException( "Unexpected end of BGZF block" );
+        }
+        
+        return () -> inflate( member );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Inflates the data of a member and checks it against the footer
+     * @param member The member after its header
+     */
+    protected static ByteBuffer inflate( byte[] member ) throws IOException {
+        
+        int    footer = member.length - FOOTER_SIZE;
+        int    crc    = readInt( member, footer );
+        int    length = readInt( member, footer + 4 );
+        byte[] data   = new byte[ length ];
+        
+        Inflater inflater = INFLATER.get();
+        
+        if ( inflater == null ) {
+            inflater = new Inflater( true );
+            INFLATER.set( inflater );
+        }
+        
+        inflater.reset();
+        inflater.setInput( member, 0, footer );
+        
+        try {
+            int n = 0;
+            while ( n < length && !inflater.finished() ) {
+                
+                int read = inflater.inflate( data, n, length - n );
+                if ( read == 0 && ( inflater.needsInput() || inflater.needsDictionary() ) ) {
+                    break;
+                }
+                
+                n += read;
+            }
+            
+            if ( n != length || ( length > 0 && !inflater.finished() && inflater.inflate( new byte[1] ) > 0 ) ) {
+                throw new ZipException( "Corrupt BGZF block, wrong size" );
+            }
+        }
+        catch ( DataFormatException ex ) {
+            throw new ZipException( "Corrupt BGZF block, " + ex.getMessage() );
+        }
+        
+        CRC32 check = new CRC32();
+        check.update( data, 0, length );
+        
+        if ( (int)check.getValue() != crc ) {
+            throw new ZipException( "Corrupt BGZF block, wrong CRC" );
+        }
+        
+        return ByteBuffer.wrap( data );
+    }
+    
+    /**
+     * Frees the native memory of the current thread's inflater, called as a
+     * compression thread exits
+     */
+    static void endInflater() {
+        
+        Inflater inflater = INFLATER.get();
+        if ( inflater != null ) {
+            inflater.end();
+            INFLATER.remove();
+        }
+    }
+    
+    /**
+     * Is this the header of a BGZF member, a gzip member with only the extra
+     * field holding the BC subfield that gives the members size
+     */
+    protected static boolean isBGZF( byte[] h ) {
+        return    ( h[0] & 0xFF ) == 0x1f && ( h[1] & 0xFF ) == 0x8b && h[2] == 8 && h[3] == 4
+               && h[10] == 6 && h[11] == 0 && h[12] == 'B' && h[13] == 'C' && h[14] == 2 && h[15] == 0;
+    }
+    
+    protected static int readInt( byte[] b, int i ) {
+        return   ( b[i] & 0xFF )
+               | ( ( b[i + 1] & 0xFF ) << 8 )
+               | ( ( b[i + 2] & 0xFF ) << 16 )
+               | ( ( b[i + 3] & 0xFF ) << 24 );
+    }
+}
@@ -0,0 +1,153 @@
+package flint.engine.io.compress;
+
+// Core Java classes
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes BGZF, the blocked gzip format of bgzip and samtools.  Each block of up
+ * to 65280 bytes becomes a complete gzip member whose header records its size,
+ * so the members are compressed on the compression threads here and can be
+ * inflated in parallel by ParallelGZIPInputStream.  Any gzip reader sees an
+ * ordinary multi member gzip file
+ * @author Philip Bowditch
+ */
+public class ParallelGZIPOutputStream extends ParallelBlockOutputStream {
+    
+    /**
+     * The most data in a block, chosen by BGZF so even incompressible data fits
+     * in a member of at most 64KB
+     */
+    public static final int BLOCK_SIZE = 0xff00;
+    
+    protected static final int MAX_MEMBER  = 0x10000;
+    protected static final int HEADER_SIZE = 18;
+    protected static final int FOOTER_SIZE = 8;
+    
+    /**
+     * The empty member BGZF ends with
+     */
+    protected static final byte[] EOF = {
+        0x1f, (byte)0x8b, 0x08, 0x04, 0x00, 0x00, 0x00, 0x00, 0x00, (byte)0xff, 0x06, 0x00, 0x42, 0x43,
+        0x02, 0x00, 0x1b, 0x00, 0x03, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00
+    };
+    
+    /**
+     * Each compression thread keeps a deflater for each level, indexed by level + 1
+     */
+    protected static final ThreadLocal<Deflater[]> DEFLATERS = ThreadLocal.withInitial( () -> new Deflater[11] );
+    
+    protected final int m_level;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    public ParallelGZIPOutputStream( OutputStream out ) {
+        this( out, Deflater.DEFAULT_COMPRESSION );
+    }
+    
+    /**
+     * Constructor for the ParallelGZIPOutputStream class
+     * @param out The stream to write to
+     * @param level The deflate level, 0 to 9
+     */
+    public ParallelGZIPOutputStream( OutputStream out, int level ) {
+        super( out, BLOCK_SIZE );
+        
+        if ( level < -1 || level > 9 ) {
+            throw new IllegalArgumentException( "Invalid deflate level " + level );
+        }
+        
+        m_level = level;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    protected ByteBuffer compress( byte[] block, int length ) {
+        
+        byte[] member = new byte[ MAX_MEMBER ];
+        
+        Deflater[] deflaters = DEFLATERS.get();
+        Deflater   deflater  = deflaters[ m_level + 1 ];
+        
+        if ( deflater == null ) {
+            deflater = new Deflater( m_level, true );
+            deflaters[ m_level + 1 ] = deflater;
+        }
+        
+        deflater.reset();
+        deflater.setInput( block, 0, length );
+        deflater.finish();
+        
+        int limit = MAX_MEMBER - HEADER_SIZE - FOOTER_SIZE;
+        int size  = 0;
+        
+        while ( !deflater.finished() && size < limit ) {
+            size += deflater.deflate( member, HEADER_SIZE + size, limit - size );
+        }
+        
+        // Data that does not shrink is stored as a single uncompressed deflate block
+        if ( !deflater.finished() ) {
+            
+            int p = HEADER_SIZE;
+            member[ p++ ] = 0x01;
+            member[ p++ ] = (byte)length;
+            member[ p++ ] = (byte)( length >>> 8 );
+            member[ p++ ] = (byte)~length;
+            member[ p++ ] = (byte)( ~length >>> 8 );
+            
+            System.arraycopy( block, 0, member, p, length );
+            
+            size = 5 + length;
+        }
+        
+        CRC32 crc = new CRC32();
+        crc.update( block, 0, length );
+        
+        int total = HEADER_SIZE + size + FOOTER_SIZE;
+        
+        System.arraycopy( EOF, 0, member, 0, 16 );
+        member[16] = (byte)( total - 1 );
+        member[17] = (byte)( ( total - 1 ) >>> 8 );
+        
+        writeInt( member, HEADER_SIZE + size, (int)crc.getValue() );
+        writeInt( member, HEADER_SIZE + size + 4, length );
+        
+        return ByteBuffer.wrap( member, 0, total );
+    }
+    
+    @Override
+    protected void finish( OutputStream out ) throws IOException {
+        out.write( EOF );
+    }
+    
+    /**
+     * Frees the native memory of the current thread's deflaters, called as a
+     * compression thread exits
+     */
+    static void endDeflaters() {
+        
+        for ( Deflater d : DEFLATERS.get() ) {
+            if ( d != null ) {
+                d.end();
+            }
+        }
+        
+        DEFLATERS.remove();
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    protected static void writeInt( byte[] b, int i, int value ) {
+        b[i]     = (byte)value;
+        b[i + 1] = (byte)( value >>> 8 );
+        b[i + 2] = (byte)( value >>> 16 );
+        b[i + 3] = (byte)( value >>> 24 );
+    }
+}
@@ -0,0 +1,166 @@
+package flint.engine.io.compress;
+
+/**
+ * The 32 bit XXH32 hash used by the LZ4 frame format for its header, block and
+ * content checksums.  Hashes can be computed in one call or built up with update
+ * @author Philip Bowditch
+ */
+public class XXHash32 {
+    
+    protected static final int PRIME1 = 0x9E3779B1;
+    protected static final int PRIME2 = 0x85EBCA77;
+    protected static final int PRIME3 = 0xC2B2AE3D;
+    protected static final int PRIME4 = 0x27D4EB2F;
+    protected static final int PRIME5 = 0x165667B1;
+    
+    protected final int m_seed;
+    
+    protected int m_v1;
+    protected int m_v2;
+    protected int m_v3;
+    protected int m_v4;
+    
+    /**
+     * Total number of bytes hashed
+     */
+    protected long m_length;
+    
+    /**
+     * Bytes waiting for a full 16 byte stripe
+     */
+    protected final byte[] m_stripe;
+    
+    protected int m_stripeLength;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    public XXHash32() {
+        this( 0 );
+    }
+    
+    public XXHash32( int seed ) {
+        m_seed         = seed;
+        m_stripe       = new byte[16];
+        m_stripeLength = 0;
+        
+        reset();
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Hashes a range of bytes in one call
+     * @param b The bytes to hash
+     * @param offset The first byte
+     * @param len The number of bytes
+     * @param seed The seed, 0 in the LZ4 frame format
+     * @return
+     */
+    public static int hash( byte[] b, int offset, int len, int seed ) {
+        
+        XXHash32 h = new XXHash32( seed );
+        h.update( b, offset, len );
+        
+        return h.getValue();
+    }
+    
+    public final void reset() {
+        m_v1           = m_seed + PRIME1 + PRIME2;
+        m_v2           = m_seed + PRIME2;
+        m_v3           = m_seed;
+        m_v4           = m_seed - PRIME1;
+        m_length       = 0;
+        m_stripeLength = 0;
+    }
+    
+    public void update( byte[] b, int offset, int len ) {
+        
+        m_length += len;
+        
+        // Top up a partial stripe first
+        if ( m_stripeLength > 0 ) {
+            
+            int n = Math.min( len, 16 - m_stripeLength );
+            System.arraycopy( b, offset, m_stripe, m_stripeLength, n );
+            
+            m_stripeLength += n;
+            offset         += n;
+            len            -= n;
+            
+            if ( m_stripeLength < 16 ) {
+                return;
+            }
+            
+            consume( m_stripe, 0 );
+            m_stripeLength = 0;
+        }
+        
+        for ( ; len >= 16; offset += 16, len -= 16 ) {
+            consume( b, offset );
+        }
+        
+        System.arraycopy( b, offset, m_stripe, 0, len );
+        m_stripeLength = len;
+    }
+    
+    /**
+     * Returns the hash of everything added since the last reset
+     * @return
+     */
+    public int getValue() {
+        
+        int h;
+        if ( m_length >= 16 ) {
+            h = Integer.rotateLeft( m_v1, 1 ) + Integer.rotateLeft( m_v2, 7 ) + Integer.rotateLeft( m_v3, 12 ) + Integer.rotateLeft( m_v4, 18 );
+        }
+        else {
+            h = m_seed + PRIME5;
+        }
+        
+        h += (int)m_length;
+        
+        int i = 0;
+        for ( ; i + 4 <= m_stripeLength; i += 4 ) {
+            h += readInt( m_stripe, i ) * PRIME3;
+            h  = Integer.rotateLeft( h, 17 ) * PRIME4;
+        }
+        
+        for ( ; i < m_stripeLength; i++ ) {
+            h += ( m_stripe[i] & 0xFF ) * PRIME5;
+            h  = Integer.rotateLeft( h, 11 ) * PRIME1;
+        }
+        
+        h ^= h >>> 15;
+        h *= PRIME2;
+        h ^= h >>> 13;
+        h *= PRIME3;
+        h ^= h >>> 16;
+        
+        return h;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    protected void consume( byte[] b, int offset ) {
+        m_v1 = round( m_v1, readInt( b, offset ) );
+        m_v2 = round( m_v2, readInt( b, offset + 4 ) );
+        m_v3 = round( m_v3, readInt( b, offset + 8 ) );
+        m_v4 = round( m_v4, readInt( b, offset + 12 ) );
+    }
+    
+    protected static int round( int acc, int input ) {
+        acc += input * PRIME2;
+        acc  = Integer.rotateLeft( acc, 13 );
+        return acc * PRIME1;
+    }
+    
+    protected static int readInt( byte[] b, int i ) {
+        return   ( b[i] & 0xFF )
+               | ( ( b[i + 1] & 0xFF ) << 8 )
+               | ( ( b[i + 2] & 0xFF ) << 16 )
+               | ( ( b[i + 3] & 0xFF ) << 24 );
+    }
+}
@@ -0,0 +1,68 @@
+package flint.engine.metrics;
+
+// Core Java classes
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+// 3rd Party classes
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+/**
+ * Appends metrics to a CSV file, one row per metric of
+ * RECORDED, ENGINE, FIXTURE, METRIC, VALUE so invocations reporting different
+ * metrics share the same columns
+ * @author Philip Bowditch
+ */
+public class CSVMetricsSink implements IMetricsSink {
+    
+    protected CSVPrinter m_printer;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the CSVMetricsSink class, the header is written if the
+     * file is new or empty
+     * @param f The file to append to
+     * @throws IOException 
+     */
+    public CSVMetricsSink( File f ) throws IOException {
+        
+        boolean empty = f.length() == 0;
+        
+        m_printer = new CSVPrinter(  new BufferedWriter( new OutputStreamWriter( new FileOutputStream( f, true ), StandardCharsets.UTF_8 ) )
+                                   , CSVFormat.DEFAULT );
+        
+        if ( empty ) {
+            m_printer.printRecord( "RECORDED", "ENGINE", "FIXTURE", "METRIC", "VALUE" );
+            m_printer.flush();
+        }
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    public synchronized void record( String engine, String fixtureType, Map<String, String> metrics ) throws IOException {
+        
+        long recorded = System.currentTimeMillis();
+        
+        for ( Map.Entry<String, String> e : metrics.entrySet() ) {
+            m_printer.printRecord( recorded, engine, fixtureType, e.getKey(), e.getValue() );
+        }
+        
+        // Kept current so a suite that dies still leaves its metrics
+        m_printer.flush();
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        m_printer.close();
+    }
+}
@@ -0,0 +1,32 @@
+package flint.engine.metrics;
+
+// Core Java classes
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Receives the timings and metrics of every invocation an engine runs, so slow
+ * or expensive fixtures can be found across a whole suite.  Engines may be
+ * invoked concurrently so implementations must be thread safe.
+ * @author Philip Bowditch
+ */
+public interface IMetricsSink extends Closeable {
+    
+    /**
+     * Records one invocation
+     * @param engine The name of the engine e.g. ShellEngine
+     * @param fixtureType The fixture that was run
+     * @param metrics Metric names and values in the order they were taken,
+     *                timings are in milliseconds
+     * @throws IOException 
+     */
+    void record( String engine, String fixtureType, Map<String, String> metrics ) throws IOException;
+    
+    /**
+     * Flushes and releases anything held by the sink
+     * @throws IOException 
+     */
+    @Override
+    void close() throws IOException;
+}
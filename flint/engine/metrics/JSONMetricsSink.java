@@ -0,0 +1,116 @@
+package flint.engine.metrics;
+
+// Core Java classes
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Appends metrics to a file as JSON lines, an object per invocation:
+ *
+ *   {"recorded":..., "engine":"...", "fixture":"...", "metrics":{"ELAPSED":12, ...}}
+ *
+ * Whole number values are written as numbers, anything else as strings
+ * @author Philip Bowditch
+ */
+public class JSONMetricsSink implements IMetricsSink {
+    
+    protected Writer m_out;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the JSONMetricsSink class
+     * @param f The file to append to
+     * @throws IOException 
+     */
+    public JSONMetricsSink( File f ) throws IOException {
+        m_out = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( f, true ), StandardCharsets.UTF_8 ) );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    public synchronized void record( String engine, String fixtureType, Map<String, String> metrics ) throws IOException {
+        
+        StringBuilder b = new StringBuilder( 256 );
+        b.append( "{\"recorded\":" ).append( System.currentTimeMillis() );
+        b.append( ",\"engine\":"   ); quote( b, engine );
+        b.append( ",\"fixture\":"  ); quote( b, fixtureType );
+        b.append( ",\"metrics\":{" );
+        
+        boolean first = true;
+        for ( Map.Entry<String, String> e : metrics.entrySet() ) {
+            if ( !first ) {
+                b.append( ',' );
+            }
+            first = false;
+            
+            quote( b, e.getKey() );
+            b.append( ':' );
+            
+            String value = e.getValue();
+            if ( value != null && value.matches( "-?\\d{1,18}" ) ) {
+                b.append( value );
+            }
+            else {
+                quote( b, value );
+            }
+        }
+        
+        b.append( "}}\n" );
+        
+        // Kept current so a suite that dies still leaves its metrics
+        m_out.write( b.toString() );
+        m_out.flush();
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        m_out.close();
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Appends a JSON string literal, null is written as null
+     */
+    protected static void quote( StringBuilder b, String s ) {
+        
+        if ( s == null ) {
+            b.append( "null" );
+            return;
+        }
+        
+        b.append( '"' );
+        
+        for ( int i = 0; i < s.length(); i++ ) {
+            char c = s.charAt( i );
+            
+            switch ( c ) {
+                case '"'  : b.append( "\\\"" ); break;
+                case '\\' : b.append( "\\\\" ); break;
+                case '\n' : b.append( "\\n"  ); break;
+                case '\r' : b.append( "\\r"  ); break;
+                case '\t' : b.append( "\\t"  ); break;
+                default   :
+                    if ( c < 0x20 ) {
+                        b.append( String.format( "\\u%04x", (int)c ) );
+                    }
+                    else {
+                        b.append( c );
+                    }
+            }
+        }
+        
+        b.append( '"' );
+    }
+}
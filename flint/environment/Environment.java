@@ -3,6 +3,7 @@ package flint.environment;
 // Core Java classes
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Stack;
@@ -43,7 +44,8 @@ public class Environment {
     
     /**
      * Holds all types declared and instantiated by a user during this test
-     * NOTE this is not the definitions but rather actual types
+     * NOTE this is not the definitions but rather actual types, synchronized as
+     * tables for different types may run concurrently
      */
     protected Map<String, TypeInstance> m_types;
     
@@ -99,7 +101,7 @@ public class Environment {
         
         // Collections of engines and registered types
         m_engines    = new LinkedHashMap<>();
-        m_types      = new LinkedHashMap<>();
+        m_types      = Collections.synchronizedMap( new LinkedHashMap<>() );
         
         // Create new options
         m_options    = new Options();
@@ -45,6 +45,16 @@ public class Options {
      */
     protected String log_level;
     
+    /**
+     * Holds true if independent fixture tables may be run concurrently
+     */
+    protected boolean parallelFixtures;
+    
+    /**
+     * Holds the maximum number of fixture tables run at once
+     */
+    protected int parallelThreads;
+    
     
     //--------------------------------------------------------------------------
     
@@ -58,6 +68,8 @@ public class Options {
         defaultEngine      = "default";  // Default engine to search for / load
         inheritEnvironment = true;       // Pass server environment to spawned processes
         log_level          = "error";    // Capture error output
+        parallelFixtures   = Boolean.getBoolean( "flint.parallel_fixtures" );    // Run tables one at a time unless asked
+        parallelThreads    = Math.max( Integer.getInteger( "flint.parallel_fixtures_threads", Runtime.getRuntime().availableProcessors() ), 1 );
     }
     
     /**
@@ -70,6 +82,8 @@ public class Options {
         defaultEngine      = "default";  // Default engine to search for / load
         inheritEnvironment = true;       // Pass server environment to spawned processes
         log_level          = "error";    // Capture error output
+        parallelFixtures   = Boolean.getBoolean( "flint.parallel_fixtures" );    // Run tables one at a time unless asked
+        parallelThreads    = Math.max( Integer.getInteger( "flint.parallel_fixtures_threads", Runtime.getRuntime().availableProcessors() ), 1 );
     }
     
     //--------------------------------------------------------------------------
@@ -98,6 +112,14 @@ public class Options {
         return log_level;
     }
     
+    public boolean isParallelFixtures() {
+        return parallelFixtures;
+    }
+    
+    public int getParallelThreads() {
+        return parallelThreads;
+    }
+    
     
     //--------------------------------------------------------------------------
     
@@ -119,6 +141,8 @@ public class Options {
             else if ( "default_framework".equalsIgnoreCase(   normalname ) ) defaultFramework         = value;
             else if ( "log_level".equalsIgnoreCase(           normalname ) ) log_level                = value;
             else if ( "inherit_environment".equalsIgnoreCase( normalname ) ) inheritEnvironment       = Boolean.parseBoolean( value );
+            else if ( "parallel_fixtures".equalsIgnoreCase(   normalname ) ) parallelFixtures         = Boolean.parseBoolean( value );
+            else if ( "parallel_fixtures_threads".equalsIgnoreCase( normalname ) ) parallelThreads    = Math.max( Integer.parseInt( value.trim() ), 1 );
             else throw new OptionNotSupportedException( name );
         }
         catch ( Exception ex ) {
@@ -142,6 +166,8 @@ public class Options {
         else if ( "default_framework".equalsIgnoreCase(   normalname ) ) setOption( name, "default" );
         else if ( "log_level".equalsIgnoreCase(           normalname ) ) setOption( name, "error"   );
         else if ( "inherit_environment".equalsIgnoreCase( normalname ) ) setOption( name, "true"    );
+        else if ( "parallel_fixtures".equalsIgnoreCase(   normalname ) ) setOption( name, System.getProperty( "flint.parallel_fixtures", "false" ) );
+        else if ( "parallel_fixtures_threads".equalsIgnoreCase( normalname ) ) setOption( name, System.getProperty( "flint.parallel_fixtures_threads", String.valueOf( Runtime.getRuntime().availableProcessors() ) ) );
         else throw new OptionNotSupportedException( name );
     }
     
@@ -158,6 +184,8 @@ public class Options {
         mp.put( "default_framework",   defaultFramework );
         mp.put( "log_level",           log_level        );
         mp.put( "inherit_environment", String.valueOf( inheritEnvironment ) );
+        mp.put( "parallel_fixtures",   String.valueOf( parallelFixtures ) );
+        mp.put( "parallel_fixtures_threads", String.valueOf( parallelThreads ) );
         
         return mp;
     }
@@ -177,6 +205,8 @@ public class Options {
                || "default_engine".equalsIgnoreCase(      normalname )
                || "default_framework".equalsIgnoreCase(   normalname )
                || "log_level".equalsIgnoreCase(           normalname )
-               || "inherit_environment".equalsIgnoreCase( normalname );
+               || "inherit_environment".equalsIgnoreCase( normalname )
+               || "parallel_fixtures".equalsIgnoreCase(   normalname )
+               || "parallel_fixtures_threads".equalsIgnoreCase( normalname );
     }
 }
@@ -0,0 +1,58 @@
+package flint.fixtures;
+
+// 3rd Party classes
+import fit.Fixture;
+import fit.Parse;
+
+
+/**
+ * Stands in for a fixture so its table is handed to a FixtureScheduler and run
+ * in the background rather than immediately
+ * @author Philip Bowditch
+ */
+public class DeferredFixture extends Fixture {
+    
+    /**
+     * Runs the table
+     */
+    protected FixtureScheduler m_scheduler;
+    
+    /**
+     * The type instance the table acts on
+     */
+    protected String m_label;
+    
+    /**
+     * The fixture that actually handles the table
+     */
+    protected Fixture m_fixture;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the DeferredFixture class
+     * @param scheduler Runs the table
+     * @param label The type instance the table acts on
+     * @param fixture The fixture that actually handles the table
+     */
+    public DeferredFixture( FixtureScheduler scheduler, String label, Fixture fixture ) {
+        super();
+        
+        m_scheduler = scheduler;
+        m_label     = label;
+        m_fixture   = fixture;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Schedules the table, counts are applied once it has finished
+     * @param table The Parse representing the table to run
+     */
+    @Override
+    public void doTable( Parse table ) {
+        m_scheduler.submit( m_label, m_fixture, table, counts );
+    }
+}
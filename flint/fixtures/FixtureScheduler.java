@@ -0,0 +1,288 @@
+package flint.fixtures;
+
+// Core Java classes
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 3rd Party classes
+import fit.Counts;
+import fit.Fixture;
+import fit.FixtureListener;
+import fit.Parse;
+
+// Application classes
+import flint.environment.Options;
+
+
+/**
+ * Runs fixture tables that act on different type instances concurrently.  Tables
+ * for the same label are chained so they still run in document order, anything
+ * that changes the environment e.g. options or parameters acts as a barrier and
+ * waits for all outstanding tables first.
+ * 
+ * Results are only ever applied on the calling thread.  Each table is run with
+ * its own Counts which are added to the tests counts, and the listener told the
+ * table is finished, in document order once the table has completed.
+ * @author Philip Bowditch
+ */
+public class FixtureScheduler implements FixtureListener {
+    
+    /**
+     * The listener results are reported to
+     */
+    protected FixtureListener m_listener;
+    
+    /**
+     * Supplies the maximum number of tables run at once
+     */
+    protected Options m_options;
+    
+    /**
+     * Runs the tables, created on first use
+     */
+    protected ExecutorService m_executor;
+    
+    /**
+     * The last table scheduled against each label
+     */
+    protected Map<String, CompletableFuture<Void>> m_chains;
+    
+    /**
+     * Tables scheduled and not yet applied, in document order
+     */
+    protected List<ScheduledTable> m_pending;
+    
+    /**
+     * Finished tables waiting on earlier tables before the listener is told
+     */
+    protected List<Parse> m_finished;
+    
+    /**
+     * Set if tablesFinished was called whilst tables were still outstanding
+     */
+    protected Counts m_finalCounts;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the FixtureScheduler class
+     * @param listener The listener results are reported to
+     * @param options Supplies the maximum number of tables run at once
+     */
+    public FixtureScheduler( FixtureListener listener, Options options ) {
+        m_listener    = listener;
+        m_options     = options;
+        m_executor    = null;
+        m_chains      = new HashMap<>();
+        m_pending     = new ArrayList<>();
+        m_finished    = new ArrayList<>();
+        m_finalCounts = null;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Schedules a table to be run once any earlier table for the same label has
+     * finished
+     * @param label The type instance the table acts on
+     * @param fixture The fixture that handles the table
+     * @param table The table to run
+     * @param counts The tests counts, updated once the table has been applied
+     */
+    public void submit( String label, Fixture fixture, Parse table, Counts counts ) {
+        
+        ScheduledTable task = new ScheduledTable( fixture, table, counts );
+        
+        CompletableFuture<Void> previous = m_chains.get( label );
+        CompletableFuture<Void> next;
+        
+        if ( previous == null ) {
+            next = CompletableFuture.runAsync( task, getExecutor() );
+        }
+        else {
+            next = previous.thenRunAsync( task, getExecutor() );
+        }
+        
+        task.m_future = next;
+        
+        m_chains.put(  label, next );
+        m_pending.add( task );
+    }
+    
+    /**
+     * Waits for every scheduled table to finish then applies their results in
+     * document order
+     */
+    public void barrier() {
+        
+        for ( ScheduledTable task : m_pending ) {
+            task.apply();
+        }
+        
+        m_pending.clear();
+        m_chains.clear();
+        
+        // Everything outstanding is done, report in the order we were told
+        for ( Parse table : m_finished ) {
+            m_listener.tableFinished( table );
+        }
+        
+        m_finished.clear();
+        
+        if ( m_finalCounts != null ) {
+            m_listener.tablesFinished( m_finalCounts );
+            m_finalCounts = null;
+        }
+    }
+    
+    /**
+     * Waits for outstanding tables and stops the worker threads
+     */
+    public void shutdown() {
+        
+        barrier();
+        
+        if ( m_executor != null ) {
+            m_executor.shutdown();
+            m_executor = null;
+        }
+    }
+    
+    /**
+     * Returns true if tables are scheduled that have not yet been applied
+     * @return 
+     */
+    public boolean isBusy() {
+        return !m_pending.isEmpty();
+    }
+    
+    /**
+     * Returns the executor running the tables, creating it on first use
+     * @return 
+     */
+    protected ExecutorService getExecutor() {
+        
+        if ( m_executor == null ) {
+            m_executor = Executors.newFixedThreadPool( m_options.getParallelThreads(), new FixtureThreadFactory() );
+        }
+        
+        return m_executor;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Passes the table to the listener, held back if earlier tables are still
+     * running
+     * @param table The table just processed
+     */
+    @Override
+    public void tableFinished( Parse table ) {
+        
+        if ( isBusy() ) {
+            m_finished.add( table );
+            return;
+        }
+        
+        m_listener.tableFinished( table );
+    }
+    
+    /**
+     * Passes the final counts to the listener, held back until the last
+     * outstanding table has been applied
+     * @param count The final counts
+     */
+    @Override
+    public void tablesFinished( Counts count ) {
+        
+        if ( isBusy() ) {
+            m_finalCounts = count;
+            return;
+        }
+        
+        m_listener.tablesFinished( count );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * A table run on a worker thread against its own Counts
+     */
+    protected static class ScheduledTable implements Runnable {
+        
+        protected Fixture                 m_fixture;
+        protected Parse                   m_table;
+        protected Counts                  m_counts;
+        protected Counts                  m_tableCounts;
+        protected CompletableFuture<Void> m_future;
+        
+        public ScheduledTable( Fixture fixture, Parse table, Counts counts ) {
+            m_fixture     = fixture;
+            m_table       = table;
+            m_counts      = counts;
+            m_tableCounts = new Counts();
+            m_future      = null;
+        }
+        
+        @Override
+        public void run() {
+            
+            m_fixture.counts = m_tableCounts;
+            
+            try {
+                m_fixture.doTable( m_table );
+            }
+            catch ( Throwable ex ) {
+                m_fixture.exception( m_table.parts.parts, ex );
+            }
+        }
+        
+        /**
+         * Waits for the table then adds its counts to the tests
+         */
+        public void apply() {
+            
+            try {
+                m_future.get();
+            }
+            catch ( InterruptedException ex ) {
+                Thread.currentThread().interrupt();
+                m_fixture.exception( m_table.parts.parts, ex );
+            }
+            catch ( ExecutionException ex ) {
+                m_fixture.exception( m_table.parts.parts, ex.getCause() );
+            }
+            
+            if ( m_counts != null ) {
+                m_counts.tally( m_tableCounts );
+            }
+        }
+    }
+    
+    /**
+     * Names the worker threads and stops them holding up JVM exit
+     */
+    protected static class FixtureThreadFactory implements ThreadFactory {
+        
+        protected AtomicInteger m_count = new AtomicInteger();
+        
+        @Override
+        public Thread newThread( Runnable r ) {
+            Thread t = new Thread( r, "FixtureScheduler-" + m_count.incrementAndGet() );
+            t.setDaemon( true );
+            return t;
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package flint.fixtures;
 
 // Core Java classes
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 // 3rd party classes
 import fit.ColumnFixture;
@@ -9,10 +15,17 @@ import fit.Parse;
 import fit.exception.FitFailureException;
 
 // Application classes
+import flint.data.DataColumn;
 import flint.data.DataTable;
+import flint.data.compare.ComparisonResult;
+import flint.data.compare.HashJoinComparator;
+import flint.data.compare.IRowComparator;
+import flint.data.compare.MergeComparator;
 import flint.engine.AbstractEngine;
 import flint.engine.InvokationInput;
 import flint.engine.InvokationOutput;
+import flint.engine.io.IRowSource;
+import flint.engine.io.TableRowSource;
 import flint.environment.Environment;
 import flint.framework.type.TypeDefinition;
 import flint.framework.type.TypeInstance;
@@ -51,6 +64,23 @@ public abstract class QueryableFixture extends ColumnFixture implements IBaseFix
     
     protected int m_requiredParameters;
     
+    /**
+     * Most output rows held in memory while comparing before spilling to disk
+     */
+    protected long m_spillThreshold;
+    
+    /**
+     * Set if the expected rows and output are both sorted by the key columns
+     * so they can be compared side by side without an index
+     */
+    protected boolean m_sorted;
+    
+    /**
+     * Set if the rows of the table are sent to the engine as input, off by
+     * default as they are the expected results of the query
+     */
+    protected boolean m_sendRows;
+    
     
     //--------------------------------------------------------------------------
     
@@ -62,6 +92,9 @@ public abstract class QueryableFixture extends ColumnFixture implements IBaseFix
         m_table              = null;
         m_isTestable         = true;
         m_requiredParameters = 1;
+        m_spillThreshold     = 500000;
+        m_sorted             = false;
+        m_sendRows           = false;
     }
     
     
@@ -102,6 +135,16 @@ public abstract class QueryableFixture extends ColumnFixture implements IBaseFix
                                   break;
                 case "testable" : m_isTestable = Boolean.valueOf( props.getOrDefault( key, "false" ) );
                                   break;
+                case "sorted"   : m_sorted = Boolean.valueOf( props.getOrDefault( key, "false" ) );
+                                  break;
+                case "send_rows": m_sendRows = Boolean.valueOf( props.getOrDefault( key, "false" ) );
+                                  break;
+                case "spill_rows" : try {
+                                        m_spillThreshold = Long.parseLong( props.get( key ).trim() );
+                                    }
+                                    catch ( NumberFormatException ex ) {
+                                    }
+                                    break;
                                   
             }
         }
@@ -125,8 +168,14 @@ public abstract class QueryableFixture extends ColumnFixture implements IBaseFix
         return ex;
     }
     
-    @Override
-    public InvokationOutput invokePrototype( TypeInstance t, DataTable table ) throws Exception {
+    /**
+     * Builds the input the engine is passed for a type instance, before the
+     * preInvokeAction hook is applied
+     * @param t The type instance being worked on
+     * @param table The data of the fixture
+     * @return
+     */
+    protected InvokationInput prepareInput( TypeInstance t, DataTable table ) {
         
         TypeDefinition      def        = t.getDefinition();
         String              fixture    = table.getFixture();
@@ -135,9 +184,6 @@ public abstract class QueryableFixture extends ColumnFixture implements IBaseFix
         
         // Get the underlying types base definitions and any overrides applied
         // byt the type declaration
-                
-        // Get the interface that supports this fixture
-        InvokationOutput  o         = new InvokationOutput();
         InvokationInput   inp       = new InvokationInput();
         
         inp = FixtureHelpers.addTypeDefinition(inp, def);
@@ -145,10 +191,31 @@ public abstract class QueryableFixture extends ColumnFixture implements IBaseFix
         inp = FixtureHelpers.addEnvironment(   inp, m_environment  );
         inp = FixtureHelpers.addArguments(     inp, parameters     );
 
+        // Identifies the instance to the engine e.g. to invalidate its cached results
+        String label = ( table.getName() != null ) ? table.getName() : m_label;
+        
         inp.addControlParameter( "CALLING_FIXTURE" , fixture );
+        inp.addControlParameter( "INSTANCE_LABEL"  , ( label != null ) ? label : "" );
         
-        //inp.setColumns( table.getColumns() );
-        //inp.setData( table.getRows() );
+        // The rows are the expected results so are only sent when asked for,
+        // the engine pulls them as it writes its input rather than them being
+        // copied here
+        if ( m_sendRows && table.getColumns() != null && table.getRowCount() > 0 ) {
+            inp.setDataSource( new TableRowSource( table ) );
+        }
+        
+        return inp;
+    }
+    
+    @Override
+    public InvokationOutput invokePrototype( TypeInstance t, DataTable table ) throws Exception {
+        
+        TypeDefinition      def        = t.getDefinition();
+        String              fixture    = table.getFixture();
+                
+        // Get the interface that supports this fixture
+        InvokationOutput  o         = new InvokationOutput();
+        InvokationInput   inp       = prepareInput( t, table );
         
         // Get the engine that supports this definition
         AbstractEngine eng = m_environment.getSupportingEngine( def );
@@ -157,8 +224,9 @@ public abstract class QueryableFixture extends ColumnFixture implements IBaseFix
         try {
             inp = preInvokeAction( t, table, inp ); // Hook for subclasses
             
-            // Invoke the protocol on the engine, this should return our data table
-            o = eng.invoke( fixture, inp );
+            // Invoke the protocol on the engine, this should return our data table,
+            // or an earlier one if the fixture asked for it to be cached
+            o = eng.invokeCached( fixture, inp );
             
             o = postInvokeAction( t, table, inp, o );
         }
@@ -171,6 +239,65 @@ public abstract class QueryableFixture extends ColumnFixture implements IBaseFix
         return o;
     }
     
+    /**
+     * Starts invoking the prototype without waiting for the engine, so several
+     * type instances can be worked on at once.  The hooks are applied as they
+     * are by invokePrototype, postInvokeAction and postInvokeException on the
+     * thread that completes the invocation.  Cancelling the returned future
+     * cancels the invocation
+     * @param t The type instance being worked on
+     * @param table The data of the fixture
+     * @return Completes with the output of the invocation
+     */
+    public CompletableFuture<InvokationOutput> invokePrototypeAsync( TypeInstance t, DataTable table ) {
+        
+        TypeDefinition      def        = t.getDefinition();
+        String              fixture    = table.getFixture();
+        
+        InvokationInput   inp       = prepareInput( t, table );
+        
+        CompletableFuture<InvokationOutput> invocation;
+        try {
+            // Get the engine that supports this definition
+            AbstractEngine eng = m_environment.getSupportingEngine( def );
+            
+            InvokationInput hooked = preInvokeAction( t, table, inp ); // Hook for subclasses
+            
+            invocation = eng.invokeAsync( fixture, hooked );
+            invocation = invocation.thenApply( o -> postInvokeAction( t, table, hooked, o ) );
+        }
+        catch (Exception ex) {
+            invocation = new CompletableFuture<>();
+            invocation.completeExceptionally( ex );
+        }
+        
+        CompletableFuture<InvokationOutput> result = invocation.handle( ( o, thrown ) -> {
+            
+            if ( thrown == null ) {
+                return o;
+            }
+            
+            Throwable cause = ( thrown instanceof CompletionException && thrown.getCause() != null ) ? thrown.getCause() : thrown;
+            Exception ex    = ( cause instanceof Exception ) ? (Exception)cause : new Exception( cause );
+            
+            ex = postInvokeException( t, table, inp, new InvokationOutput(), ex );
+            if ( ex != null )
+                throw new CompletionException( ex );
+            
+            return new InvokationOutput();
+        } );
+        
+        // Dependent futures do not cancel what they depend on
+        CompletableFuture<InvokationOutput> source = invocation;
+        result.whenComplete( ( o, thrown ) -> {
+            if ( thrown instanceof CancellationException ) {
+                source.cancel( true );
+            }
+        } );
+        
+        return result;
+    }
+    
     protected DataTable parseFixture( Parse table ) {
         
         // Create a table to encapsulate all the data
@@ -244,11 +371,167 @@ public abstract class QueryableFixture extends ColumnFixture implements IBaseFix
             return;
         }
         
+        // Match the rows given against those the engine produced
+        int right = counts.right;
+        int wrong = counts.wrong;
+        
+        boolean equal = true;
+        if ( dt.getColumns() != null && dt.getColumns().length > 0 && dt.getRowCount() > 0 ) {
+            try {
+                equal = compareResults( dt, o );
+            }
+            catch ( Exception ex ) {
+                this.exception(table.parts.parts, ex );
+                return;
+            }
+        }
+        
         // So we can go green and yet not add to the count of tests passing
-        this.right(table.parts.parts);
+        if ( equal ) {
+            this.right(table.parts.parts);
+        }
         
         if ( ! isTestable() ) {
-            counts.right--;
+            counts.right = right;
+            counts.wrong = wrong;
+        }
+    }
+    
+    /**
+     * Returns the comparator used to match the expected rows against the output
+     * @param cols The expected columns
+     * @return
+     */
+    protected IRowComparator newComparator( DataColumn[] cols ) {
+        
+        if ( m_sorted ) {
+            return new MergeComparator( cols );
+        }
+        
+        HashJoinComparator c = new HashJoinComparator( cols );
+        c.setSpillThreshold( m_spillThreshold );
+        
+        return c;
+    }
+    
+    /**
+     * Compares the rows of the fixture with the data the engine returned and
+     * marks the cells, expected rows not found are marked missing and rows
+     * returned that were not expected are added to the table as surplus
+     * @param dt The fixture data
+     * @param o The output of the engine
+     * @return True if everything matched
+     * @throws IOException If the output could not be read
+     */
+    protected boolean compareResults( DataTable dt, InvokationOutput o ) throws IOException {
+        
+        DataColumn[]     cols  = dt.getColumns();
+        int              count = dt.getRowCount();
+        IRowSource       src   = o.getDataSource();
+        
+        // Expected cells are read from the table in place, large tables are
+        // held by column and never built into rows
+        ComparisonResult res   = newComparator( cols ).compare( dt, ( src != null ) ? src : new ArrayList<>() );
+        
+        for ( int i = 0; i < count; i++ ) {
+            markRow( res, i );
+        }
+        
+        Parse last = ( count > 0 ) ? dt.getRowPointer( count - 1 ) : null;
+        if ( last == null && dt.getPointer() != null ) {
+            last = dt.getPointer().parts.last();
+        }
+        
+        if ( last != null ) {
+            addSurplusRows( res, last );
+        }
+        
+        return res.isEqual();
+    }
+    
+    /**
+     * Marks the cells of an expected row with how they compared
+     * @param res The outcome of the comparison
+     * @param i The index of the expected row
+     */
+    protected void markRow( ComparisonResult res, int i ) {
+        
+        Parse row = res.getExpected().getRowPointer( i );
+        if ( row == null || row.parts == null ) {
+            return;
+        }
+        
+        if ( res.isMissing( i ) ) {
+            row.parts.addToBody( label( "missing" ) );
+            this.wrong( row.parts );
+            return;
+        }
+        
+        String[] actual = res.getMatch( i );
+        int      cells  = Math.min( row.parts.size(), res.getColumns().length );
+        
+        for ( int j = 0; j < cells; j++ ) {
+            
+            Parse  cell  = row.parts.at( j );
+            String value = ( actual[j] == null ) ? "" : actual[j];
+            
+            switch ( res.getStatus( i, j ) ) {
+                
+                case MATCH     : this.right( cell );
+                                 break;
+                case MISMATCH  : this.wrong( cell, value );
+                                 break;
+                case UNCHECKED : cell.addToBody( gray( escape( value ) ) );
+                                 break;
+                case IGNORED   : if ( actual[j] != null ) {
+                                     cell.addToBody( gray( escape( value ) ) );
+                                 }
+                                 break;
+            }
+        }
+    }
+    
+    /**
+     * Adds the rows returned that were not expected to the end of the table
+     * @param res The outcome of the comparison
+     * @param last The last row of the table
+     */
+    protected void addSurplusRows( ComparisonResult res, Parse last ) {
+        
+        List<String[]> surplus = res.getSurplus();
+        
+        for ( String[] actual : surplus ) {
+            
+            Parse first = null;
+            Parse prev  = null;
+            
+            for ( String value : actual ) {
+                Parse cell = new Parse( "td", gray( escape( ( value == null ) ? "" : value ) ), null, null );
+                if ( prev == null ) {
+                    first = cell;
+                }
+                else {
+                    prev.more = cell;
+                }
+                prev = cell;
+            }
+            
+            if ( first == null ) {
+                continue;
+            }
+            
+            first.addToBody( label( "surplus" ) );
+            this.wrong( first );
+            
+            Parse row = new Parse( "tr", null, first, last.more );
+            last.more = row;
+            last      = row;
+        }
+        
+        long hidden = res.getSurplusCount() - surplus.size();
+        if ( hidden > 0 ) {
+            Parse note = new Parse( "td", label( hidden + " more surplus rows not shown" ), null, null );
+            last.more  = new Parse( "tr", null, note, last.more );
         }
     }
     
@@ -2,6 +2,9 @@ package flint.fixtures;
 
 // Core Java classes
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 // 3rd party classes
 import fit.Fixture;
@@ -13,6 +16,8 @@ import flint.data.DataTable;
 import flint.engine.AbstractEngine;
 import flint.engine.InvokationInput;
 import flint.engine.InvokationOutput;
+import flint.engine.io.GeneratedRowSource;
+import flint.engine.io.TableRowSource;
 import flint.environment.Environment;
 import flint.framework.type.TypeDefinition;
 import flint.framework.type.TypeInstance;
@@ -52,6 +57,12 @@ public abstract class SimpleFixture extends Fixture implements IBaseFixture {
     
     protected int m_requiredParameters;
     
+    /**
+     * Number of rows generated from the rows of the table for a volume test,
+     * 0 to send the rows as they are
+     */
+    protected long m_generatedRows;
+    
     
     //--------------------------------------------------------------------------
     
@@ -67,6 +78,7 @@ public abstract class SimpleFixture extends Fixture implements IBaseFixture {
         m_table              = null;
         m_isTestable         = false;
         m_requiredParameters = 1;
+        m_generatedRows      = 0;
     }
     
     
@@ -107,6 +119,12 @@ public abstract class SimpleFixture extends Fixture implements IBaseFixture {
                                   break;
                 case "testable" : m_isTestable = Boolean.valueOf( props.getOrDefault( key, "false" ) );
                                   break;
+                case "generate_rows" : try {
+                                           m_generatedRows = Long.parseLong( props.get( key ).trim() );
+                                       }
+                                       catch ( NumberFormatException ex ) {
+                                       }
+                                       break;
                                   
             }
         }
@@ -130,8 +148,14 @@ public abstract class SimpleFixture extends Fixture implements IBaseFixture {
         return ex;
     }
     
-    @Override
-    public InvokationOutput invokePrototype( TypeInstance t, DataTable table ) throws Exception {
+    /**
+     * Builds the input the engine is passed for a type instance, before the
+     * preInvokeAction hook is applied
+     * @param t The type instance being worked on
+     * @param table The data of the fixture
+     * @return
+     */
+    protected InvokationInput prepareInput( TypeInstance t, DataTable table ) {
         
         TypeDefinition      def        = t.getDefinition();
         String              fixture    = table.getFixture();
@@ -140,9 +164,6 @@ public abstract class SimpleFixture extends Fixture implements IBaseFixture {
         
         // Get the underlying types base definitions and any overrides applied
         // byt the type declaration
-                
-        // Get the interface that supports this fixture
-        InvokationOutput  o         = new InvokationOutput();
         InvokationInput   inp       = new InvokationInput();
         
         inp = FixtureHelpers.addTypeDefinition(inp, def);
@@ -150,10 +171,35 @@ public abstract class SimpleFixture extends Fixture implements IBaseFixture {
         inp = FixtureHelpers.addEnvironment(   inp, m_environment  );
         inp = FixtureHelpers.addArguments(     inp, parameters     );
 
+        // Identifies the instance to the engine e.g. to invalidate its cached results
+        String label = ( table.getName() != null ) ? table.getName() : m_label;
+        
         inp.addControlParameter( "CALLING_FIXTURE" , fixture );
+        inp.addControlParameter( "INSTANCE_LABEL"  , ( label != null ) ? label : "" );
+        
+        // The engine pulls the rows as it writes its input rather than them
+        // being copied here, generated rows never all exist at once
+        if ( table.getColumns() != null && table.getRowCount() > 0 ) {
+            if ( m_generatedRows > 0 ) {
+                inp.setDataSource( GeneratedRowSource.repeating( table, m_generatedRows ) );
+            }
+            else {
+                inp.setDataSource( new TableRowSource( table ) );
+            }
+        }
         
-        //inp.setColumns( table.getColumns() );
-        //inp.setData( table.getRows() );
+        return inp;
+    }
+    
+    @Override
+    public InvokationOutput invokePrototype( TypeInstance t, DataTable table ) throws Exception {
+        
+        TypeDefinition      def        = t.getDefinition();
+        String              fixture    = table.getFixture();
+                
+        // Get the interface that supports this fixture
+        InvokationOutput  o         = new InvokationOutput();
+        InvokationInput   inp       = prepareInput( t, table );
         
         // Get the engine that supports this definition
         AbstractEngine eng = m_environment.getSupportingEngine( def );
@@ -162,8 +208,9 @@ public abstract class SimpleFixture extends Fixture implements IBaseFixture {
         try {
             inp = preInvokeAction( t, table, inp ); // Hook for subclasses
             
-            // Invoke the protocol on the engine, this should return our data table
-            o = eng.invoke( fixture, inp );
+            // Invoke the protocol on the engine, this should return our data table,
+            // or an earlier one if the fixture asked for it to be cached
+            o = eng.invokeCached( fixture, inp );
             
             o = postInvokeAction( t, table, inp, o );
         }
@@ -176,6 +223,65 @@ public abstract class SimpleFixture extends Fixture implements IBaseFixture {
         return o;
     }
     
+    /**
+     * Starts invoking the prototype without waiting for the engine, so several
+     * type instances can be worked on at once.  The hooks are applied as they
+     * are by invokePrototype, postInvokeAction and postInvokeException on the
+     * thread that completes the invocation.  Cancelling the returned future
+     * cancels the invocation
+     * @param t The type instance being worked on
+     * @param table The data of the fixture
+     * @return Completes with the output of the invocation
+     */
+    public CompletableFuture<InvokationOutput> invokePrototypeAsync( TypeInstance t, DataTable table ) {
+        
+        TypeDefinition      def        = t.getDefinition();
+        String              fixture    = table.getFixture();
+        
+        InvokationInput   inp       = prepareInput( t, table );
+        
+        CompletableFuture<InvokationOutput> invocation;
+        try {
+            // Get the engine that supports this definition
+            AbstractEngine eng = m_environment.getSupportingEngine( def );
+            
+            InvokationInput hooked = preInvokeAction( t, table, inp ); // Hook for subclasses
+            
+            invocation = eng.invokeAsync( fixture, hooked );
+            invocation = invocation.thenApply( o -> postInvokeAction( t, table, hooked, o ) );
+        }
+        catch (Exception ex) {
+            invocation = new CompletableFuture<>();
+            invocation.completeExceptionally( ex );
+        }
+        
+        CompletableFuture<InvokationOutput> result = invocation.handle( ( o, thrown ) -> {
+            
+            if ( thrown == null ) {
+                return o;
+            }
+            
+            Throwable cause = ( thrown instanceof CompletionException && thrown.getCause() != null ) ? thrown.getCause() : thrown;
+            Exception ex    = ( cause instanceof Exception ) ? (Exception)cause : new Exception( cause );
+            
+            ex = postInvokeException( t, table, inp, new InvokationOutput(), ex );
+            if ( ex != null )
+                throw new CompletionException( ex );
+            
+            return new InvokationOutput();
+        } );
+        
+        // Dependent futures do not cancel what they depend on
+        CompletableFuture<InvokationOutput> source = invocation;
+        result.whenComplete( ( o, thrown ) -> {
+            if ( thrown instanceof CancellationException ) {
+                source.cancel( true );
+            }
+        } );
+        
+        return result;
+    }
+    
     protected DataTable parseFixture( Parse table ) {
         
         // Create a table to encapsulate all the data
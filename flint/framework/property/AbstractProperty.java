@@ -1,9 +1,11 @@
 package flint.framework.property;
 
 // Core Java classes
-import java.util.LinkedHashMap;
 import java.util.Map;
 
+// Application classes
+import flint.util.VersionedMap;
+
 // 3rd Party classes
 //import org.json.simple.JSONValue;
 
@@ -20,9 +22,10 @@ public abstract class AbstractProperty {
     
     /**
      * Various attributes on this property e.g.
-     * is it read only, nullable etc
+     * is it read only, nullable etc.  Changes are counted so anything derived
+     * from them e.g. a definitions expanded properties knows to rebuild
      */
-    protected Map<String, Object> m_attributes;
+    protected volatile VersionedMap<String, Object> m_attributes;
     
     
     //--------------------------------------------------------------------------
@@ -33,7 +36,7 @@ public abstract class AbstractProperty {
      */
     public AbstractProperty( String name ) {
         m_name       = name;
-        m_attributes = new LinkedHashMap<>();
+        m_attributes = new VersionedMap<>();
     }
     
     
@@ -70,7 +73,15 @@ public abstract class AbstractProperty {
      * @return
      */
     public void setAttributes( Map<String, Object> attribs ) {
-        m_attributes = attribs;
+        m_attributes = new VersionedMap<>( attribs, m_attributes.getVersion() + 1 );
+    }
+    
+    /**
+     * Returns the number of changes made to the attributes
+     * @return
+     */
+    public long getVersion() {
+        return m_attributes.getVersion();
     }
     
     //--------------------------------------------------------------------------
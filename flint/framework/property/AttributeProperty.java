@@ -97,7 +97,7 @@ public class AttributeProperty extends AbstractProperty {
     
     public void setReadOnly
     ( boolean readOnly ) {
-        m_readOnly = readOnly
+        m_readOnly = readOnly;
     }
     
     public boolean isOptional() {
@@ -0,0 +1,79 @@
+package flint.framework.type;
+
+// Core Java classes
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * An immutable snapshot of a TypeDefinition's properties flattened into name
+ * value pairs e.g. PATH.READ_ONLY = true.  Shared between invocations so must
+ * not be modified, including the individual pairs.
+ * @author Philip Bowditch
+ */
+public class ExpandedProperties {
+    
+    /**
+     * Identifies this snapshot, each rebuild of a definition gets a higher number
+     */
+    protected long m_version;
+    
+    /**
+     * The flattened properties
+     */
+    protected Map<String, String> m_values;
+    
+    /**
+     * The flattened properties as 2 cell arrays of name and value
+     */
+    protected List<String[]> m_rows;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the ExpandedProperties class
+     * @param version Identifies this snapshot
+     * @param values The flattened properties, not copied
+     */
+    public ExpandedProperties( long version, Map<String, String> values ) {
+        
+        ArrayList<String[]> rows = new ArrayList<>( values.size() );
+        for ( Map.Entry<String, String> e : values.entrySet() ) {
+            rows.add( new String[]{ e.getKey(), e.getValue() } );
+        }
+        
+        m_version = version;
+        m_values  = Collections.unmodifiableMap( values );
+        m_rows    = Collections.unmodifiableList( rows );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Returns the number identifying this snapshot
+     * @return 
+     */
+    public long getVersion() {
+        return m_version;
+    }
+    
+    /**
+     * Returns the flattened properties
+     * @return 
+     */
+    public Map<String, String> getValues() {
+        return m_values;
+    }
+    
+    /**
+     * Returns the flattened properties as name value pairs
+     * @return 
+     */
+    public List<String[]> getRows() {
+        return m_rows;
+    }
+}
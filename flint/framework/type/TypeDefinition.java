@@ -9,6 +9,7 @@ import java.util.Properties;
 
 // Application classes
 import flint.framework.property.AbstractProperty;
+import flint.util.VersionedMap;
 
 /**
  *
@@ -16,15 +17,50 @@ import flint.framework.property.AbstractProperty;
  */
 public class TypeDefinition {
     
+    /**
+     * A snapshot of the expanded properties and the versions it was built
+     * from, replaced as a whole so it can be checked without locking
+     */
+    protected static class Expansion {
+        
+        /**
+         * The properties expanded into name value pairs
+         */
+        protected final ExpandedProperties m_snapshot;
+        
+        /**
+         * The version of the properties the snapshot was built from
+         */
+        protected final long m_version;
+        
+        /**
+         * The version of each property the snapshot was built from, in order
+         */
+        protected final long[] m_propertyVersions;
+        
+        protected Expansion( ExpandedProperties snapshot, long version, long[] propertyVersions ) {
+            m_snapshot         = snapshot;
+            m_version          = version;
+            m_propertyVersions = propertyVersions;
+        }
+    }
+    
     /**
      * Holds all the attribute definitions
      */
-    protected Map<String, AbstractProperty> m_properties;
+    protected volatile VersionedMap<String, AbstractProperty> m_properties;
+    
+    /**
+     * The properties expanded into name value pairs, rebuilt only when the
+     * properties or their attributes change
+     */
+    protected volatile Expansion m_expansion;
     
     //--------------------------------------------------------------------------
     
     public TypeDefinition() {
-        m_properties = new LinkedHashMap<>();
+        m_properties = new VersionedMap<>();
+        m_expansion  = null;
     }
     
     //--------------------------------------------------------------------------
@@ -49,7 +85,71 @@ public class TypeDefinition {
     }
     
     public void setProperties( Map<String, AbstractProperty> properties ) {
-        m_properties = properties;
+        m_properties = new VersionedMap<>( properties, m_properties.getVersion() + 1 );
+    }
+    
+    /**
+     * Returns the properties expanded into name value pairs.  The snapshot is
+     * shared until the properties or any of their attributes change, checking
+     * it is still current takes no lock
+     * @return 
+     */
+    public ExpandedProperties getExpandedProperties() {
+        
+        Expansion expansion = m_expansion;
+        if ( expansion != null && isCurrent( expansion ) ) {
+            return expansion.m_snapshot;
+        }
+        
+        synchronized ( this ) {
+            
+            expansion = m_expansion;
+            if ( expansion != null && isCurrent( expansion ) ) {
+                return expansion.m_snapshot;
+            }
+            
+            // Record versions before expanding, a change made whilst expanding
+            // then simply causes another rebuild next time
+            VersionedMap<String, AbstractProperty> properties = m_properties;
+            
+            long   version  = properties.getVersion();
+            long[] versions = new long[ properties.size() ];
+            int    i        = 0;
+            
+            for ( AbstractProperty prop : properties.values() ) {
+                versions[i++] = prop.getVersion();
+            }
+            
+            long generation = ( expansion == null ) ? 0 : expansion.m_snapshot.getVersion() + 1;
+            
+            expansion   = new Expansion( new ExpandedProperties( generation, expandProperties( properties ) ), version, versions );
+            m_expansion = expansion;
+            
+            return expansion.m_snapshot;
+        }
+    }
+    
+    /**
+     * Returns true if nothing has changed since a snapshot was built
+     * @param expansion The snapshot and the versions it was built from
+     * @return 
+     */
+    protected boolean isCurrent( Expansion expansion ) {
+        
+        VersionedMap<String, AbstractProperty> properties = m_properties;
+        
+        if ( expansion.m_version != properties.getVersion() || expansion.m_propertyVersions.length != properties.size() ) {
+            return false;
+        }
+        
+        int i = 0;
+        for ( AbstractProperty prop : properties.values() ) {
+            if ( expansion.m_propertyVersions[i++] != prop.getVersion() ) {
+                return false;
+            }
+        }
+        
+        return true;
     }
     
     public static Map<String, String> expandProperties( Map<String, AbstractProperty> properties ) {
@@ -63,7 +163,7 @@ public class TypeDefinition {
             AbstractProperty value = (AbstractProperty)entry.getValue();
             
             if ( name.startsWith( "." )) {
-                name = name.split( ".", 2 )[ 1 ];
+                name = name.substring( 1 );
             }
             
             //if ( value instanceof CoreProperty ) {
@@ -82,7 +182,7 @@ public class TypeDefinition {
                         key = name + "." + key;
                     }
                     
-                    newDefs.put( key + "", val );
+                    newDefs.put( key, val );
                 }
             //}
             
@@ -23,7 +23,6 @@ import flint.engine.InvokationInput;
 import flint.environment.Environment;
 import flint.environment.EnvironmentParameter;
 import flint.environment.Options;
-import flint.framework.property.AbstractProperty;
 import flint.framework.type.TypeDefinition;
 import flint.framework.type.TypeInstance;
 import java.util.HashMap;
@@ -114,25 +113,10 @@ public class FixtureHelpers {
         
         
         InvokationInput res = original;
-            
-        ArrayList<String[]> lst = new ArrayList<>();
-                    
-        Map<String, AbstractProperty> propsMap = def.getProperties();
-        Map<String, String>           expanded = TypeDefinition.expandProperties( propsMap );
-                    
-        Iterator  it    = expanded.entrySet().iterator();
-        Map.Entry entry;
         
-        
-        while ( it.hasNext() ) {
-            entry = (Map.Entry)it.next();
-                        
-            lst.add( new String[]{  (String)entry.getKey()
-                                  , (String)entry.getValue() } );
-                    
-        }
-                
-        res.setDefinitions( lst );
+        // The expanded properties only change if the definition does, share
+        // them rather than rebuilding per invocation
+        res.setDefinitions( def.getExpandedProperties() );
                 
         return res;
     }
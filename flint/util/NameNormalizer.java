@@ -1,5 +1,9 @@
 package flint.util;
 
+// Core Java classes
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
 /**
  * Utility class for normalising identifiers.
  * @author Philip Bowditch
@@ -35,6 +39,36 @@ public class NameNormalizer {
      * Only allow alphanumeric characters, underscores and dots
      */
     protected static String replaceRegex = "[^a-zA-Z0-9_.#]";
+    
+    /**
+     * replaceRegex compiled once
+     */
+    protected static final Pattern ILLEGAL_CHARACTERS = Pattern.compile( replaceRegex );
+    
+    /**
+     * Characters that make a replacement string a regex rather than a literal
+     */
+    protected static final String REGEX_CHARACTERS = "\\^$.|?*+()[]{}";
+    
+    /**
+     * The replacement used unless told otherwise
+     */
+    protected static final String DEFAULT_REPLACEMENT = "_";
+    
+    /**
+     * Legal characters below 128 are flagged true, nothing above is legal
+     */
+    protected static final boolean[] LEGAL = new boolean[128];
+    
+    static {
+        for ( char c = 'a'; c <= 'z'; c++ ) LEGAL[c] = true;
+        for ( char c = 'A'; c <= 'Z'; c++ ) LEGAL[c] = true;
+        for ( char c = '0'; c <= '9'; c++ ) LEGAL[c] = true;
+        
+        LEGAL['_'] = true;
+        LEGAL['.'] = true;
+        LEGAL['#'] = true;
+    }
 
     /**
      * Take the identifier as is, no conversion
@@ -44,7 +78,24 @@ public class NameNormalizer {
     /**
      * All identifiers must be lowercase
      */
-    protected static TextCase targetCase      = TextCase.LOWERCASE;
+    protected static volatile TextCase targetCase      = TextCase.LOWERCASE;
+    
+    /**
+     * Maximum number of names held by each generation of the cache
+     */
+    protected static final int CACHE_SIZE = Integer.getInteger( "flint.name_cache_size", 4096 );
+    
+    /**
+     * Recently normalized names in the default case and replacement, the same
+     * labels are normalized over and over again during a suite.  When full the
+     * recent generation becomes the older one so the cache stays bounded
+     */
+    protected static volatile ConcurrentHashMap<String, String> m_recent = new ConcurrentHashMap<>();
+    
+    /**
+     * The previous generation of the cache, hits are moved back into m_recent
+     */
+    protected static volatile ConcurrentHashMap<String, String> m_older  = new ConcurrentHashMap<>();
 
     
     //--------------------------------------------------------------------------
@@ -64,7 +115,7 @@ public class NameNormalizer {
      * @return
      */
     protected static String replaceIllegalCharacters(final String name, final String replacement) {
-        return name.replaceAll(replaceRegex, replacement);
+        return ILLEGAL_CHARACTERS.matcher( name ).replaceAll( replacement );
     }
     
     protected static String convertFormatting( String str, TextFormatting format ) {
@@ -119,18 +170,102 @@ public class NameNormalizer {
         if (name == null) {
             return "";
         }
-
+        
+        // Only the common case is cached, keyed on the raw name
+        if ( charCase == targetCase && DEFAULT_REPLACEMENT.equals( replacement ) ) {
+            
+            String cached = lookup( name );
+            if ( cached == null ) {
+                cached = scan( name, charCase, replacement );
+                remember( name, cached );
+            }
+            
+            return cached;
+        }
+        
+        return scan( name, charCase, replacement );
+    }
+    
+    /**
+     * Normalizes the name in a single pass.  Existing occurrences of the
+     * replacement are doubled up (escaped) and illegal characters replaced, the
+     * trimmed, case converted string is returned as is if nothing changes
+     * @param name
+     * @param charCase
+     * @param replacement
+     * @return 
+     */
+    protected static String scan(final String name, final TextCase charCase, final String replacement) {
+        
+        // A replacement containing regex characters was always treated as a
+        // pattern, keep that behaviour
+        if ( !isLiteral( replacement ) ) {
+            return normalizeByPattern( name, charCase, replacement );
+        }
+        
         // Convert case
-        String str = name.trim();
-        switch (charCase) {
-
-            case UPPERCASE: str = str.toUpperCase(); break;
-            case LOWERCASE: str = str.toLowerCase(); break;
-            default: break;
-
+        String str = convertCase( name.trim(), charCase );
+        
+        int len  = str.length();
+        int rlen = replacement.length();
+        int i    = 0;
+        
+        // Skip over the leading run needing no change, often the whole name
+        while ( i < len && isLegal( str.charAt( i ) ) && ( rlen == 0 || !str.startsWith( replacement, i ) ) ) {
+            i++;
+        }
+        
+        if ( i == len ) {
+            return str;
+        }
+        
+        StringBuilder b = new StringBuilder( len + 8 );
+        b.append( str, 0, i );
+        
+        // The doubled replacement may itself contain illegal characters
+        String escaped = rlen == 0 ? "" : escape( replacement );
+        char   c;
+        
+        while ( i < len ) {
+            
+            if ( rlen > 0 && str.startsWith( replacement, i ) ) {
+                b.append( escaped );
+                i += rlen;
+                continue;
+            }
+            
+            c = str.charAt( i );
+            
+            if ( isLegal( c ) ) {
+                b.append( c );
+            }
+            else {
+                b.append( replacement );
+                
+                // A surrogate pair is a single character to the regex
+                if ( Character.isHighSurrogate( c ) && i + 1 < len && Character.isLowSurrogate( str.charAt( i + 1 ) ) ) {
+                    i++;
+                }
+            }
+            
+            i++;
         }
         
-        //str = escapeString( str, replacement );
+        return b.toString();
+    }
+    
+    /**
+     * The original regex based implementation, used for replacements that are
+     * themselves regular expressions
+     * @param name
+     * @param charCase
+     * @param replacement
+     * @return 
+     */
+    protected static String normalizeByPattern(final String name, final TextCase charCase, final String replacement) {
+        
+        String str = convertCase( name.trim(), charCase );
+        
         // Escape existing replacement strings
         StringBuilder b = new StringBuilder();
         b.append( replacement );
@@ -140,6 +275,110 @@ public class NameNormalizer {
         // Now convert the string
         return replaceIllegalCharacters( str, replacement );
     }
+    
+    /**
+     * Returns the doubled replacement with any illegal characters within it
+     * replaced
+     * @param replacement
+     * @return 
+     */
+    protected static String escape( final String replacement ) {
+        
+        StringBuilder b = new StringBuilder( replacement.length() * 2 );
+        
+        for ( int n = 0; n < 2; n++ ) {
+            for ( int i = 0; i < replacement.length(); i++ ) {
+                char c = replacement.charAt( i );
+                
+                if ( isLegal( c ) ) {
+                    b.append( c );
+                }
+                else {
+                    b.append( replacement );
+                }
+            }
+        }
+        
+        return b.toString();
+    }
+    
+    protected static String convertCase( final String str, final TextCase charCase ) {
+        
+        switch (charCase) {
+
+            case UPPERCASE: return str.toUpperCase();
+            case LOWERCASE: return str.toLowerCase();
+            default: return str;
+
+        }
+    }
+    
+    protected static boolean isLegal( final char c ) {
+        return c < 128 && LEGAL[c];
+    }
+    
+    /**
+     * Returns true if the replacement means the same as a regex and as a regex
+     * replacement, so can be matched as plain text
+     * @param replacement
+     * @return 
+     */
+    protected static boolean isLiteral( final String replacement ) {
+        
+        for ( int i = 0; i < replacement.length(); i++ ) {
+            if ( REGEX_CHARACTERS.indexOf( replacement.charAt( i ) ) >= 0 ) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    protected static String lookup( final String name ) {
+        
+        String res = m_recent.get( name );
+        if ( res != null ) {
+            return res;
+        }
+        
+        res = m_older.get( name );
+        if ( res != null ) {
+            remember( name, res );
+        }
+        
+        return res;
+    }
+    
+    protected static void remember( final String name, final String normalized ) {
+        
+        ConcurrentHashMap<String, String> recent = m_recent;
+        
+        if ( recent.size() >= CACHE_SIZE ) {
+            synchronized ( NameNormalizer.class ) {
+                
+                // Another thread may have already rolled the generations over
+                if ( m_recent == recent ) {
+                    m_older  = recent;
+                    m_recent = new ConcurrentHashMap<>();
+                }
+                
+                recent = m_recent;
+            }
+        }
+        
+        recent.put( name, normalized );
+    }
+    
+    /**
+     * Empties the cache of normalized names
+     */
+    public static synchronized void clearCache() {
+        m_recent = new ConcurrentHashMap<>();
+        m_older  = new ConcurrentHashMap<>();
+    }
 
     public static TextCase getDefaultCase() {
         return targetCase;
@@ -147,6 +386,9 @@ public class NameNormalizer {
 
     public static void setDefaultCase(TextCase charCase) {
         targetCase = charCase;
+        
+        // Cached names were normalized to the old case
+        clearCache();
     }
 
 }
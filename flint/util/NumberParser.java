@@ -0,0 +1,386 @@
+package flint.util;
+
+// Core Java classes
+import java.math.BigDecimal;
+
+/**
+ * Parses decimal numbers from character data without throwing or allocating
+ * for the common formats (sign, digits, fraction and exponent).  Values are
+ * held as an unscaled long and a power of ten so they can be returned as an
+ * exact long, an exact BigDecimal or the same double Double.valueOf returns.
+ *
+ * Anything the fast path can not represent exactly, such as NaN, Infinity, hex
+ * or more than 18 significant digits, falls back to Double.parseDouble.  An
+ * instance holds the last value parsed so is not thread safe.
+ * @author Philip Bowditch
+ */
+public class NumberParser {
+    
+    /**
+     * Most significant digits held in a long without risk of overflow
+     */
+    protected static final int MAX_DIGITS = 18;
+    
+    /**
+     * Largest mantissa a double represents exactly
+     */
+    protected static final long MAX_EXACT_MANTISSA = 1L << 53;
+    
+    /**
+     * Powers of ten exactly representable as a double
+     */
+    protected static final double[] POWERS_OF_TEN = new double[]{
+          1e0,  1e1,  1e2,  1e3,  1e4,  1e5,  1e6,  1e7,  1e8,  1e9
+        , 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19
+        , 1e20, 1e21, 1e22
+    };
+    
+    /**
+     * Significant digits of the last value parsed
+     */
+    protected long m_unscaled;
+    
+    /**
+     * Power of ten the unscaled digits are multiplied by
+     */
+    protected int m_exponent;
+    
+    /**
+     * Was the last value negative
+     */
+    protected boolean m_negative;
+    
+    /**
+     * Set when the last value was parsed by Double.parseDouble
+     */
+    protected boolean m_fallback;
+    
+    /**
+     * The value when parsed by the fallback path
+     */
+    protected double m_double;
+    
+    /**
+     * The text of the value when parsed by the fallback path
+     */
+    protected String m_text;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    public NumberParser() {
+        m_unscaled = 0;
+        m_exponent = 0;
+        m_negative = false;
+        m_fallback = false;
+        m_double   = 0;
+        m_text     = null;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Parses the given value
+     * @param value The text to parse
+     * @return True if the text was a number, false if not or null
+     */
+    public boolean parse( CharSequence value ) {
+        
+        if ( value == null ) {
+            return false;
+        }
+        
+        return parse( value, 0, value.length() );
+    }
+    
+    /**
+     * Parses a region of the given value.  Surrounding whitespace is ignored as
+     * with Double.valueOf
+     * @param value The text to parse
+     * @param start The index of the first character
+     * @param end The index after the last character
+     * @return True if the region was a number, false if not
+     */
+    public boolean parse( CharSequence value, int start, int end ) {
+        
+        m_unscaled = 0;
+        m_exponent = 0;
+        m_negative = false;
+        m_fallback = false;
+        m_text     = null;
+        
+        while ( start < end && value.charAt( start ) <= ' ' ) {
+            start++;
+        }
+        while ( end > start && value.charAt( end - 1 ) <= ' ' ) {
+            end--;
+        }
+        
+        int i = start;
+        if ( i < end && ( value.charAt( i ) == '-' || value.charAt( i ) == '+' ) ) {
+            m_negative = value.charAt( i ) == '-';
+            i++;
+        }
+        
+        int     digits   = 0;
+        boolean mantissa = false;
+        boolean overflow = false;
+        
+        // Integer part
+        for ( ; i < end; i++ ) {
+            char c = value.charAt( i );
+            if ( c < '0' || c > '9' ) {
+                break;
+            }
+            
+            mantissa = true;
+            if ( digits < MAX_DIGITS ) {
+                m_unscaled = m_unscaled * 10 + ( c - '0' );
+                if ( m_unscaled != 0 ) {
+                    digits++;
+                }
+            }
+            else {
+                overflow = true;
+            }
+        }
+        
+        // Fraction part
+        if ( i < end && value.charAt( i ) == '.' ) {
+            for ( i++; i < end; i++ ) {
+                char c = value.charAt( i );
+                if ( c < '0' || c > '9' ) {
+                    break;
+                }
+                
+                mantissa = true;
+                if ( digits < MAX_DIGITS ) {
+                    m_unscaled = m_unscaled * 10 + ( c - '0' );
+                    m_exponent--;
+                    if ( m_unscaled != 0 ) {
+                        digits++;
+                    }
+                }
+                else {
+                    overflow = true;
+                }
+            }
+        }
+        
+        if ( !mantissa ) {
+            return fallback( value, start, end );
+        }
+        
+        // Exponent part
+        if ( i < end && ( value.charAt( i ) == 'e' || value.charAt( i ) == 'E' ) ) {
+            
+            i++;
+            
+            boolean negative = false;
+            if ( i < end && ( value.charAt( i ) == '-' || value.charAt( i ) == '+' ) ) {
+                negative = value.charAt( i ) == '-';
+                i++;
+            }
+            
+            int exponent = 0;
+            int from     = i;
+            for ( ; i < end; i++ ) {
+                char c = value.charAt( i );
+                if ( c < '0' || c > '9' ) {
+                    break;
+                }
+                
+                if ( exponent < 100000 ) {
+                    exponent = exponent * 10 + ( c - '0' );
+                }
+                else {
+                    overflow = true;
+                }
+            }
+            
+            if ( i == from ) {
+                return false;
+            }
+            
+            m_exponent += negative ? -exponent : exponent;
+        }
+        
+        // Java float and double suffixes are accepted by Double.valueOf
+        if ( i == end - 1 ) {
+            char c = value.charAt( i );
+            if ( c == 'd' || c == 'D' || c == 'f' || c == 'F' ) {
+                i++;
+            }
+        }
+        
+        if ( i != end ) {
+            
+            // Hexadecimal floating point
+            if ( value.charAt( i ) == 'x' || value.charAt( i ) == 'X' ) {
+                return fallback( value, start, end );
+            }
+            
+            return false;
+        }
+        
+        if ( overflow ) {
+            return fallback( value, start, end );
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Parses the formats the fast path does not handle, only text that could be
+     * a number is passed to Double.parseDouble so plain text never throws
+     */
+    protected boolean fallback( CharSequence value, int start, int end ) {
+        
+        int i = start;
+        if ( i < end && ( value.charAt( i ) == '-' || value.charAt( i ) == '+' ) ) {
+            i++;
+        }
+        
+        if ( i >= end ) {
+            return false;
+        }
+        
+        char c = value.charAt( i );
+        if ( ( c < '0' || c > '9' ) && c != '.' && c != 'N' && c != 'I' ) {
+            return false;
+        }
+        
+        try {
+            String text = value.subSequence( start, end ).toString();
+            
+            m_double   = Double.parseDouble( text );
+            m_text     = text;
+            m_fallback = true;
+            
+            return true;
+        }
+        catch ( NumberFormatException ex ) {
+            return false;
+        }
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Returns the last value parsed as a double, identical to Double.valueOf
+     * @return
+     */
+    public double doubleValue() {
+        
+        if ( m_fallback ) {
+            return m_double;
+        }
+        
+        double result;
+        if ( m_unscaled == 0 ) {
+            result = 0;
+        }
+        else if ( m_unscaled < MAX_EXACT_MANTISSA && m_exponent >= 0 && m_exponent < POWERS_OF_TEN.length ) {
+            result = m_unscaled * POWERS_OF_TEN[ m_exponent ];
+        }
+        else if ( m_unscaled < MAX_EXACT_MANTISSA && m_exponent < 0 && -m_exponent < POWERS_OF_TEN.length ) {
+            result = m_unscaled / POWERS_OF_TEN[ -m_exponent ];
+        }
+        else {
+            // Both operands are no longer exact so rounding could differ
+            result = Double.parseDouble( m_unscaled + "E" + m_exponent );
+        }
+        
+        return m_negative ? -result : result;
+    }
+    
+    /**
+     * Returns whether the last value parsed is a whole number that fits in a long
+     * @return
+     */
+    public boolean isLong() {
+        
+        if ( m_fallback ) {
+            return false;
+        }
+        
+        long unscaled = m_unscaled;
+        int  exponent = m_exponent;
+        
+        while ( exponent < 0 && unscaled % 10 == 0 && unscaled != 0 ) {
+            unscaled /= 10;
+            exponent++;
+        }
+        
+        if ( unscaled == 0 ) {
+            return true;
+        }
+        
+        if ( exponent < 0 ) {
+            return false;
+        }
+        
+        for ( ; exponent > 0; exponent-- ) {
+            if ( unscaled > Long.MAX_VALUE / 10 ) {
+                return false;
+            }
+            unscaled *= 10;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Returns the last value parsed as a long, only exact when isLong is true
+     * @return
+     */
+    public long longValue() {
+        
+        if ( !isLong() ) {
+            return (long)doubleValue();
+        }
+        
+        long unscaled = m_unscaled;
+        int  exponent = m_exponent;
+        
+        for ( ; exponent < 0; exponent++ ) {
+            unscaled /= 10;
+        }
+        for ( ; exponent > 0; exponent-- ) {
+            unscaled *= 10;
+        }
+        
+        return m_negative ? -unscaled : unscaled;
+    }
+    
+    /**
+     * Returns the exact decimal value of the last value parsed
+     * @return The value or null if it was NaN or infinite
+     */
+    public BigDecimal decimalValue() {
+        
+        if ( !m_fallback ) {
+            return BigDecimal.valueOf( m_negative ? -m_unscaled : m_unscaled, -m_exponent );
+        }
+        
+        if ( Double.isNaN( m_double ) || Double.isInfinite( m_double ) ) {
+            return null;
+        }
+        
+        String text = m_text;
+        char   last = text.charAt( text.length() - 1 );
+        if ( last == 'd' || last == 'D' || last == 'f' || last == 'F' ) {
+            text = text.substring( 0, text.length() - 1 );
+        }
+        
+        try {
+            return new BigDecimal( text );
+        }
+        catch ( NumberFormatException ex ) {
+            // Hexadecimal floating point, exact in binary
+            return new BigDecimal( m_double );
+        }
+    }
+}
@@ -4,15 +4,19 @@ package flint.util;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 // 3rd Party classes
 import fit.Parse;
 
 // Application classes
+import flint.data.aggregate.Aggregators;
 import flint.data.aggregate.IAggregator;
+import flint.data.ColumnarDataTable;
 import flint.data.DataColumn;
 import flint.data.DataRow;
 import flint.data.DataTable;
+import flint.data.DictionaryDataTable;
 import java.util.Iterator;
 import java.util.Map.Entry;
 
@@ -55,6 +59,26 @@ public class TableProcessor {
      */
     protected IAggregator m_columnAggregation;
     
+    /**
+     * Creates the aggregator for each row, resolved once per table
+     */
+    protected Supplier<IAggregator> m_rowFactory;
+    
+    /**
+     * Creates the aggregator for each column, resolved once per table
+     */
+    protected Supplier<IAggregator> m_columnFactory;
+    
+    /**
+     * Tables with at least this many data rows are held column by column
+     */
+    protected int m_columnarThreshold;
+    
+    /**
+     * Are tables held column by column also dictionary encoded
+     */
+    protected boolean m_dictionaryEncoding;
+    
     
     //--------------------------------------------------------------------------
     
@@ -77,6 +101,10 @@ public class TableProcessor {
         
         m_rowAggregation        = null;
         m_columnAggregation     = null;
+        m_rowFactory            = null;
+        m_columnFactory         = null;
+        m_columnarThreshold     = 10000;
+        m_dictionaryEncoding    = true;
     }
     
     
@@ -118,12 +146,11 @@ public class TableProcessor {
         }
         
         // Add something that will aggregate the values in this column
-        if ( m_columnAggregation != null ) {
+        if ( m_columnFactory != null ) {
             try {
-                IAggregator agg = (IAggregator)m_columnAggregation.getClass().newInstance();
-                dc.setAggregator( agg );
+                dc.setAggregator( m_columnFactory.get() );
             }
-            catch (InstantiationException | IllegalAccessException ex){}
+            catch ( IllegalStateException ex ){}
         }
         
         dc.setName( b.toString() );
@@ -249,43 +276,104 @@ public class TableProcessor {
         return rw.toArray(new DataColumn[]{});
     }
     
+    /**
+     * Returns a factory creating aggregators configured as the one given
+     * @param prototype The aggregator to create more of, may be null
+     * @return Null if prototype is null
+     */
+    protected static Supplier<IAggregator> factoryOf( IAggregator prototype ) {
+        
+        if ( prototype == null ) {
+            return null;
+        }
+        
+        return prototype::copy;
+    }
+    
+    /**
+     * Returns the number of siblings from the one given, Parse.size recurses
+     * and overflows the stack on tables with many rows
+     * @param first The first sibling, may be null
+     * @return
+     */
+    protected static int count( Parse first ) {
+        
+        int n = 0;
+        for ( Parse p = first; p != null; p = p.more ) {
+            n++;
+        }
+        
+        return n;
+    }
+    
     protected DataRow processRow( Parse row ) throws Exception {
         return  processRow( row, null );
     }
     
     protected DataRow processRow( Parse row, DataColumn[] cols ) throws Exception {
-
+        
+        IAggregator rowAgg = ( m_rowFactory != null ) ? m_rowFactory.get() : null;
+        
+        String[] cells = new String[ rowWidth( row, cols, rowAgg ) ];
+        processCells( row, cols, rowAgg, cells );
+        
+        // Convert the array to a DataRow object
+        DataRow dr = new DataRow( cells );
+        dr.setPointer( row );
+        dr.setAggregator( rowAgg );
+        
+        return dr;
+    }
+    
+    /**
+     * Returns the number of values a row holds, checking it has as many cells
+     * as there are columns
+     * @param row The Parse row
+     * @param cols The columns of the table, may be null
+     * @param rowAgg The aggregator for the row, may be null
+     * @return
+     * @throws Exception If the number of cells is wrong
+     */
+    protected int rowWidth( Parse row, DataColumn[] cols, IAggregator rowAgg ) throws Exception {
+        
         // Mainly for data processing the number of cells must match the number of columns
-        int numCells = row.parts.size();
-        if ( cols.length != numCells ) {
+        int numCells = count( row.parts );
+        int width    = ( rowAgg != null ) ? numCells + 1 : numCells;
         
-            // handle if we're adding an agg column to end
-            if ( m_rowAggregation == null || cols.length != ( numCells + 1 ) ) {
-                throw new Exception( "Incorrect number of columns ["+ numCells +"] found, expecting ["+ cols.length +"]" );
-            }
+        if ( cols != null && cols.length != width ) {
             
+            // The row aggregation column is added to the columns, not the cells
+            int expected = ( m_rowAggregation != null ) ? cols.length - 1 : cols.length;
+            throw new Exception( "Incorrect number of columns ["+ numCells +"] found, expecting ["+ expected +"]" );
         }
         
-        ArrayList<String> rw = new ArrayList<>();
+        return width;
+    }
+    
+    /**
+     * Reads the cells of a row into an array sized by rowWidth, aggregating
+     * them as they are read
+     * @param row The Parse row
+     * @param cols The columns of the table, may be null
+     * @param rowAgg The aggregator for the row, its result is the last value
+     * @param values Receives the values
+     * @return The number of values read
+     */
+    protected int processCells( Parse row, DataColumn[] cols, IAggregator rowAgg, String[] values ) {
         
-        String dc;
+        String      dc;
+        IAggregator colAgg;
         
         // Move to first cell of row
         Parse cell = row.parts;
-        
-        IAggregator colAgg;
-        IAggregator rowAgg = null;
-        
-        if ( m_columnAggregation != null ) {
-            rowAgg = (IAggregator)m_columnAggregation.getClass().newInstance();
-        }
+        int   i    = 0;
         
         // Iterate over all the cells in the row
-        for (int i = 0; cell != null; i++, cell = cell.more) {
-            dc = processCell( cell, cols[i] );
-            rw.add( dc );
+        for (; cell != null; i++, cell = cell.more) {
+            dc = processCell( cell, ( cols != null ) ? cols[i] : null );
+            values[i] = dc;
             
-            colAgg = cols[i].getAggregator();
+            colAgg = ( cols != null ) ? cols[i].getAggregator() : null;
             
             // 
             if ( colAgg != null ) {
@@ -295,20 +383,15 @@ public class TableProcessor {
             //
             if ( rowAgg != null ) {
                 rowAgg.aggregate( dc );
-                
-                // Last element then add the result
-                if ( cell.more == null ) {
-                    rw.add( rowAgg.getResult() );
-                }
             }
         }
         
-        // Convert the array to a DataRow object
-        DataRow dr = new DataRow( rw.toArray( new String[]{} ) );
-        dr.setPointer( row );
-        dr.setAggregator( rowAgg );
+        // Last element then add the result
+        if ( rowAgg != null ) {
+            values[i++] = rowAgg.getResult();
+        }
         
-        return dr;
+        return i;
     }
     
     /**
@@ -332,14 +415,11 @@ public class TableProcessor {
         
         Parse currentRow = firstRow;
         
-        ArrayList<DataRow> rws = new ArrayList<>();
-        DataRow row;
+        DataRow[] rws = new DataRow[ count( firstRow ) ];
         
         // Go through the table converting row by row
         for (int i = 0; currentRow != null; i++, currentRow = currentRow.more) {
-            row = processRow( currentRow, cols );
-            rws.add( row );
-            
+            rws[i] = processRow( currentRow, cols );
         }
         
         // need to work put hiw to identify agg rows, add a column?
@@ -347,12 +427,53 @@ public class TableProcessor {
             
         //}
         
-        // Export as an array
-        return rws.toArray( new DataRow[]{} );
+        return rws;
+    }
+    
+    /**
+     * Process all subsequent rows as data rows straight into the columns of a
+     * table, one array is reused to read every row
+     * @param firstRow The first row in the table to process
+     * @param cols The columns to associate cells with
+     * @param rowCount The number of rows from firstRow on
+     * @return
+     * @throws java.lang.Exception
+     */
+    protected ColumnarDataTable processColumnarRows( Parse firstRow, DataColumn[] cols, int rowCount ) throws Exception {
+        
+        ColumnarDataTable tab = m_dictionaryEncoding ? new DictionaryDataTable( cols, rowCount ) : new ColumnarDataTable( cols, rowCount );
+        
+        Parse    currentRow = firstRow;
+        String[] values     = new String[ cols.length ];
+        
+        for (int i = 0; currentRow != null; i++, currentRow = currentRow.more) {
+            
+            IAggregator rowAgg = ( m_rowFactory != null ) ? m_rowFactory.get() : null;
+            
+            rowWidth( currentRow, cols, rowAgg );
+            int width = processCells( currentRow, cols, rowAgg, values );
+            
+            for ( int j = 0; j < width; j++ ) {
+                tab.setCell( i, j, values[j] );
+            }
+            
+            tab.setRowPointer( i, currentRow );
+            tab.setRowAggregator( i, rowAgg );
+        }
+        
+        if ( tab instanceof DictionaryDataTable ) {
+            ((DictionaryDataTable)tab).compact();
+        }
+        
+        return tab;
     }
     
     protected DataTable processTable( Parse table ) throws Exception {
     
+        // Aggregators are created per row and column, find out how once
+        m_rowFactory    = factoryOf( m_rowAggregation );
+        m_columnFactory = factoryOf( m_columnAggregation );
+        
         DataTable tab = new DataTable();
         tab.setPointer( table );
         
@@ -414,7 +535,22 @@ public class TableProcessor {
             }
         }
         
-        // Line 3+ - Process all the data rows
+        // Line 3+ - Process all the data rows, large tables column by column
+        int rowCount = count( row );
+        
+        if ( cols != null && rowCount >= m_columnarThreshold ) {
+            
+            ColumnarDataTable columnar = processColumnarRows( row, cols, rowCount );
+            
+            columnar.setPointer(    tab.getPointer()    );
+            columnar.setFixture(    tab.getFixture()    );
+            columnar.setName(       tab.getName()       );
+            columnar.setValue(      tab.getValue()      );
+            columnar.setParameters( tab.getParameters() );
+            
+            return columnar;
+        }
+        
         DataRow[] rows = processDataRows( row, cols );
         tab.setRows( rows );
         
@@ -481,6 +617,14 @@ public class TableProcessor {
         m_rowAggregation = aggregate;
     }
     
+    /**
+     * Applies the named aggregator to all cells on a row
+     * @param name The name of the aggregator, see Aggregators.forName
+     */
+    public void setRowAggregator( String name ) {
+        setRowAggregator( Aggregators.forName( name ) );
+    }
+    
     /**
      * Returns the aggregation object being applied to all cells on a row
      * @return
@@ -493,6 +637,14 @@ public class TableProcessor {
         m_columnAggregation = aggregate;
     }
     
+    /**
+     * Applies the named aggregator to all cells on a column
+     * @param name The name of the aggregator, see Aggregators.forName
+     */
+    public void setColumnAggregator( String name ) {
+        setColumnAggregator( Aggregators.forName( name ) );
+    }
+    
     /**
      * Returns the aggregation object being applied to all cells on a column
      * @return
@@ -501,4 +653,30 @@ public class TableProcessor {
         return m_columnAggregation;
     }
     
+    /**
+     * Returns the number of data rows from which a table is held column by
+     * column as a ColumnarDataTable
+     * @return
+     */
+    public int getColumnarThreshold() {
+        return m_columnarThreshold;
+    }
+    
+    public void setColumnarThreshold( int rows ) {
+        m_columnarThreshold = rows;
+    }
+    
+    /**
+     * Returns whether tables held column by column are dictionary encoded as
+     * a DictionaryDataTable
+     * @return
+     */
+    public boolean isDictionaryEncoding() {
+        return m_dictionaryEncoding;
+    }
+    
+    public void setDictionaryEncoding( boolean encode ) {
+        m_dictionaryEncoding = encode;
+    }
+    
 }
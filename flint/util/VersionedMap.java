@@ -0,0 +1,254 @@
+package flint.util;
+
+// Core Java classes
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * An insertion ordered map that counts the changes made to it, including those
+ * made through its key, value and entry views.  Lets anything derived from the
+ * map cheaply check whether it is out of date.
+ * @author Philip Bowditch
+ */
+public class VersionedMap<K, V> extends AbstractMap<K, V> {
+    
+    /**
+     * Holds the entries
+     */
+    protected Map<K, V> m_map;
+    
+    /**
+     * Incremented on every change
+     */
+    protected volatile long m_version;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Constructor for the VersionedMap class
+     */
+    public VersionedMap() {
+        this( null, 0 );
+    }
+    
+    /**
+     * Constructor for the VersionedMap class
+     * @param mp The entries to start with, copied
+     * @param version The version to start counting from
+     */
+    public VersionedMap( Map<? extends K, ? extends V> mp, long version ) {
+        super();
+        
+        m_map     = mp == null ? new LinkedHashMap<>() : new LinkedHashMap<>( mp );
+        m_version = version;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Returns the number of changes made to the map
+     * @return 
+     */
+    public long getVersion() {
+        return m_version;
+    }
+    
+    /**
+     * Records a change
+     */
+    protected void modified() {
+        m_version++;
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Override
+    public int size() {
+        return m_map.size();
+    }
+    
+    @Override
+    public boolean containsKey( Object key ) {
+        return m_map.containsKey( key );
+    }
+    
+    @Override
+    public boolean containsValue( Object value ) {
+        return m_map.containsValue( value );
+    }
+    
+    @Override
+    public V get( Object key ) {
+        return m_map.get( key );
+    }
+    
+    @Override
+    public V put( K key, V value ) {
+        modified();
+        return m_map.put( key, value );
+    }
+    
+    @Override
+    public V remove( Object key ) {
+        
+        if ( !m_map.containsKey( key ) ) {
+            return null;
+        }
+        
+        modified();
+        return m_map.remove( key );
+    }
+    
+    @Override
+    public void clear() {
+        modified();
+        m_map.clear();
+    }
+    
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new EntrySet();
+    }
+    
+    @Override
+    public Set<K> keySet() {
+        return new KeySet();
+    }
+    
+    @Override
+    public Collection<V> values() {
+        return new Values();
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * A view of the entries that records changes made through it
+     */
+    protected class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        
+        @Override
+        public int size() {
+            return m_map.size();
+        }
+        
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            
+            final Iterator<Map.Entry<K, V>> it = m_map.entrySet().iterator();
+            
+            return new Iterator<Map.Entry<K, V>>() {
+                
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+                
+                @Override
+                public Map.Entry<K, V> next() {
+                    
+                    final Map.Entry<K, V> e = it.next();
+                    
+                    return new SimpleEntry<K, V>( e ) {
+                        
+                        @Override
+                        public V setValue( V value ) {
+                            modified();
+                            super.setValue( value );
+                            return e.setValue( value );
+                        }
+                    };
+                }
+                
+                @Override
+                public void remove() {
+                    modified();
+                    it.remove();
+                }
+            };
+        }
+    }
+    
+    /**
+     * A view of the keys read straight from the entries, removals made through
+     * it are recorded
+     */
+    protected class KeySet extends AbstractSet<K> {
+        
+        @Override
+        public int size() {
+            return m_map.size();
+        }
+        
+        @Override
+        public boolean contains( Object key ) {
+            return m_map.containsKey( key );
+        }
+        
+        @Override
+        public Iterator<K> iterator() {
+            return new RecordingIterator<>( m_map.keySet().iterator() );
+        }
+    }
+    
+    /**
+     * A view of the values read straight from the entries, removals made
+     * through it are recorded
+     */
+    protected class Values extends AbstractCollection<V> {
+        
+        @Override
+        public int size() {
+            return m_map.size();
+        }
+        
+        @Override
+        public boolean contains( Object value ) {
+            return m_map.containsValue( value );
+        }
+        
+        @Override
+        public Iterator<V> iterator() {
+            return new RecordingIterator<>( m_map.values().iterator() );
+        }
+    }
+    
+    /**
+     * Passes through to an iterator of the entries, recording removals
+     */
+    protected class RecordingIterator<T> implements Iterator<T> {
+        
+        protected final Iterator<T> m_it;
+        
+        protected RecordingIterator( Iterator<T> it ) {
+            m_it = it;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return m_it.hasNext();
+        }
+        
+        @Override
+        public T next() {
+            return m_it.next();
+        }
+        
+        @Override
+        public void remove() {
+            modified();
+            m_it.remove();
+        }
+    }
+}
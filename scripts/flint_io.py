@@ -0,0 +1,166 @@
+#!/usr/bin/env python3
+"""
+Reference encoder/decoder for the binary data formats a flint ShellEngine
+exchanges with controller scripts, selected with DATA_INPUT_FORMAT and
+DATA_OUTPUT_FORMAT.
+
+BINARY  the flint row format, big endian:
+            magic   b"FLB1"
+            records int32 field count, then per field an int32 byte length
+                    (-1 for null) followed by that many UTF-8 bytes
+        With a header the first record is the column names.
+
+ARROW   an Arrow IPC stream, requires pyarrow.  flint writes every column as
+        nullable utf8 and reads utf8, binary, int, float, bool and null columns.
+
+Used as a module the read_*/write_* functions work on binary file objects,
+from the command line it converts between these formats and CSV:
+
+    flint_io.py decode BINARY input.bin > input.csv
+    flint_io.py encode ARROW  output.csv output.arrow
+
+Author: Philip Bowditch
+"""
+
+import csv
+import io
+import struct
+import sys
+
+MAGIC       = b"FLB1"
+NULL_LENGTH = -1
+
+_INT = struct.Struct(">i")
+
+
+def read_binary(stream):
+    """Yields each record of a BINARY stream as a list of str or None"""
+
+    magic = stream.read(len(MAGIC))
+    if not magic:
+        return
+    if magic != MAGIC:
+        raise ValueError("Not a flint binary stream")
+
+    while True:
+        head = stream.read(4)
+        if not head:
+            return
+
+        count, = _INT.unpack(_read_exactly(stream, 4, head))
+        record = []
+        for _ in range(count):
+            length, = _INT.unpack(_read_exactly(stream, 4))
+            if length == NULL_LENGTH:
+                record.append(None)
+            else:
+                record.append(_read_exactly(stream, length).decode("utf-8"))
+
+        yield record
+
+
+def write_binary(stream, records):
+    """Writes records, the first being the header if there is one, as a BINARY stream"""
+
+    stream.write(MAGIC)
+
+    for record in records:
+        parts = [_INT.pack(len(record))]
+        for field in record:
+            if field is None:
+                parts.append(_INT.pack(NULL_LENGTH))
+            else:
+                data = str(field).encode("utf-8")
+                parts.append(_INT.pack(len(data)))
+                parts.append(data)
+        stream.write(b"".join(parts))
+
+
+def read_arrow(stream):
+    """Yields the column names then each record of an ARROW stream"""
+
+    import pyarrow as pa
+
+    reader = pa.ipc.open_stream(stream)
+    yield list(reader.schema.names)
+
+    for batch in reader:
+        columns = [column.to_pylist() for column in batch.columns]
+        for row in zip(*columns):
+            yield [None if v is None else _text(v) for v in row]
+
+
+def write_arrow(stream, records):
+    """Writes records, the first being the header, as an ARROW stream of utf8 columns"""
+
+    import pyarrow as pa
+
+    records = iter(records)
+    names   = next(records, [])
+    schema  = pa.schema([pa.field(name, pa.utf8()) for name in names])
+
+    with pa.ipc.new_stream(stream, schema) as writer:
+        batch = []
+        for record in records:
+            batch.append(record)
+            if len(batch) == 65536:
+                writer.write_batch(_batch(schema, batch))
+                batch = []
+        if batch:
+            writer.write_batch(_batch(schema, batch))
+
+
+def _batch(schema, rows):
+    import pyarrow as pa
+
+    columns = [[row[i] if i < len(row) else None for row in rows] for i in range(len(schema))]
+    return pa.record_batch([pa.array(c, pa.utf8()) for c in columns], schema=schema)
+
+
+def _text(value):
+    if isinstance(value, bool):
+        return "true" if value else "false"
+    if isinstance(value, bytes):
+        return value.decode("utf-8")
+    return str(value)
+
+
+def _read_exactly(stream, n, data=b""):
+    while len(data) < n:
+        more = stream.read(n - len(data))
+        if not more:
+            raise EOFError("Truncated stream")
+        data += more
+    return data
+
+
+READERS = {"BINARY": read_binary, "ARROW": read_arrow}
+WRITERS = {"BINARY": write_binary, "ARROW": write_arrow}
+
+
+def main(argv):
+    if len(argv) not in (3, 4) or argv[0] not in ("encode", "decode") or argv[1].upper() not in READERS:
+        sys.stderr.write(__doc__)
+        return 2
+
+    action, fmt, source = argv[0], argv[1].upper(), argv[2]
+    target = argv[3] if len(argv) == 4 else "-"
+
+    if action == "decode":
+        src = sys.stdin.buffer if source == "-" else open(source, "rb")
+        dst = sys.stdout if target == "-" else open(target, "w", newline="", encoding="utf-8")
+        with src, dst:
+            out = csv.writer(dst)
+            for record in READERS[fmt](src):
+                out.writerow(["" if f is None else f for f in record])
+    else:
+        src = io.TextIOWrapper(sys.stdin.buffer, encoding="utf-8", newline="") if source == "-" else open(source, newline="", encoding="utf-8")
+        dst = sys.stdout.buffer if target == "-" else open(target, "wb")
+        with src, dst:
+            WRITERS[fmt](dst, csv.reader(src))
+
+    return 0
+
+
+if __name__ == "__main__":
+    sys.exit(main(sys.argv[1:]))
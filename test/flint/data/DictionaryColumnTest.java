@@ -0,0 +1,80 @@
+package flint.data;
+
+// 3rd Party classes
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the encoding of DictionaryColumn values
+ * @author Philip Bowditch
+ */
+public class DictionaryColumnTest {
+    
+    @Test
+    public void repeatedValuesShareACode() {
+        
+        DictionaryColumn c = new DictionaryColumn( 5 );
+        c.set( 0, "a" );
+        c.set( 1, "b" );
+        c.set( 2, "a" );
+        c.set( 4, "b" );
+        
+        assertEquals( 2, c.getCardinality() );
+        assertEquals( c.getCode( 0 ), c.getCode( 2 ) );
+        assertEquals( -1, c.getCode( 3 ) );
+        assertArrayEquals( new String[]{ "a", "b", "a", null, "b" }, c.toArray() );
+        assertArrayEquals( new int[]{ 2, 2 }, c.getCounts() );
+    }
+    
+    @Test
+    public void dictionaryGrows() {
+        
+        DictionaryColumn c = new DictionaryColumn( 1000 );
+        for ( int i = 0; i < 1000; i++ ) {
+            c.set( i, "v" + i );
+        }
+        
+        assertEquals( 1000, c.getCardinality() );
+        assertEquals( "v999", c.get( 999 ) );
+    }
+    
+    @Test
+    public void valuesCanBeSetAfterCompacting() {
+        
+        DictionaryColumn c = new DictionaryColumn( 3 );
+        c.set( 0, "a" );
+        c.compact();
+        
+        c.set( 1, "b" );
+        c.set( 2, "a" );
+        
+        assertArrayEquals( new String[]{ "a", "b", "a" }, c.toArray() );
+        assertEquals( 2, c.getCardinality() );
+    }
+    
+    @Test
+    public void emptyColumnsCanBeSetAfterCompacting() {
+        
+        DictionaryColumn c = new DictionaryColumn( 40 );
+        c.set( 0, null );
+        c.compact();
+        
+        assertEquals( 0, c.getDictionary().length );
+        
+        for ( int i = 0; i < 40; i++ ) {
+            c.set( i, "v" + i );
+        }
+        
+        assertEquals( 40, c.getCardinality() );
+        assertEquals( "v0", c.get( 0 ) );
+        assertEquals( "v39", c.get( 39 ) );
+        
+        DictionaryColumn none = new DictionaryColumn( 0 );
+        none.compact();
+        
+        assertNull( none.decode( none.encode( null ) ) );
+        assertEquals( "x", none.decode( none.encode( "x" ) ) );
+    }
+}
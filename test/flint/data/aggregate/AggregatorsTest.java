@@ -0,0 +1,61 @@
+package flint.data.aggregate;
+
+// 3rd Party classes
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests finding aggregators by name
+ * @author Philip Bowditch
+ */
+public class AggregatorsTest {
+    
+    @Test
+    public void totalAndExactTotalAreDistinct() {
+        
+        IAggregator total = Aggregators.forName( "Total" );
+        IAggregator exact = Aggregators.forName( " exact total " );
+        
+        assertTrue( total instanceof SumAggregator );
+        assertTrue( exact instanceof ExactSumAggregator );
+        assertEquals( "Exact Total", exact.getName() );
+        
+        exact.aggregate( "0.1" );
+        exact.aggregate( "0.2" );
+        assertEquals( "0.3", exact.getResult() );
+    }
+    
+    @Test
+    public void everyAggregatorIsFoundByItsOwnName() {
+        
+        for ( String name : Aggregators.getNames() ) {
+            
+            IAggregator a = Aggregators.forName( name );
+            
+            assertEquals( name, a.getName().toLowerCase() );
+            assertNotSame( a, Aggregators.forName( name ) );
+        }
+        
+        assertTrue( Aggregators.getNames().contains( "exact total" ) );
+    }
+    
+    @Test
+    public void otherNamesAreHashAlgorithms() {
+        
+        IAggregator a = Aggregators.forName( "SHA-256" );
+        
+        assertTrue( a instanceof HashAggregator );
+        assertEquals( "SHA-256", a.getName() );
+        
+        try {
+            Aggregators.forName( "Median" );
+            fail( "Found an aggregator named Median" );
+        }
+        catch ( IllegalArgumentException ex ) {
+            // Expected
+        }
+    }
+}
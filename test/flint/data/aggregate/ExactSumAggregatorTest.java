@@ -0,0 +1,174 @@
+package flint.data.aggregate;
+
+// Core Java classes
+import java.math.BigDecimal;
+
+// 3rd Party classes
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the ExactSumAggregator long and decimal totals
+ * @author Philip Bowditch
+ */
+public class ExactSumAggregatorTest {
+    
+    protected ExactSumAggregator m_sum;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Before
+    public void setUp() {
+        m_sum = new ExactSumAggregator();
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Test
+    public void emptyTotalIsZero() {
+        assertEquals( "0", m_sum.getResult() );
+    }
+    
+    @Test
+    public void sumsWholeNumbers() {
+        
+        m_sum.aggregate( "1" );
+        m_sum.aggregate( "-5" );
+        m_sum.aggregate( 10L );
+        m_sum.aggregate( "2.000" );
+        
+        assertEquals( "8", m_sum.getResult() );
+    }
+    
+    @Test
+    public void sumsFractionsExactly() {
+        
+        for ( int i = 0; i < 10; i++ ) {
+            m_sum.aggregate( "0.1" );
+        }
+        
+        assertEquals( "1.0", m_sum.getResult() );
+        
+        m_sum.aggregate( 0.2 );
+        m_sum.aggregate( "3" );
+        
+        assertEquals( "4.2", m_sum.getResult() );
+    }
+    
+    @Test
+    public void switchesToDecimalOnOverflow() {
+        
+        m_sum.aggregate( Long.MAX_VALUE );
+        m_sum.aggregate( 1L );
+        
+        assertEquals( "9223372036854775808", m_sum.getResult() );
+        
+        m_sum.aggregate( -2L );
+        
+        assertEquals( "9223372036854775806", m_sum.getResult() );
+        
+        m_sum.reset();
+        m_sum.aggregate( Long.MIN_VALUE );
+        m_sum.aggregate( "-1" );
+        
+        assertEquals( "-9223372036854775809", m_sum.getResult() );
+    }
+    
+    @Test
+    public void sumsDigitsBeyondALong() {
+        
+        m_sum.aggregate( "123456789012345678901234567890" );
+        m_sum.aggregate( "1" );
+        
+        assertEquals( "123456789012345678901234567891", m_sum.getResult() );
+    }
+    
+    @Test
+    public void sumsRegions() {
+        
+        String line = "12,0.5,-3";
+        
+        m_sum.aggregate( line, 0, 2 );
+        m_sum.aggregate( line, 3, 6 );
+        m_sum.aggregate( line, 7, 9 );
+        
+        assertEquals( "9.5", m_sum.getResult() );
+    }
+    
+    @Test
+    public void skipsValuesThatCanNotBeHeld() {
+        
+        m_sum.aggregate( "5" );
+        m_sum.aggregate( "abc" );
+        m_sum.aggregate( "" );
+        m_sum.aggregate( "NaN" );
+        m_sum.aggregate( Double.POSITIVE_INFINITY );
+        m_sum.aggregate( (BigDecimal)null );
+        
+        assertEquals( "5", m_sum.getResult() );
+    }
+    
+    @Test
+    public void nullMakesTheTotalNull() {
+        
+        m_sum.aggregate( "5" );
+        m_sum.aggregate( (String)null );
+        m_sum.aggregate( "6" );
+        
+        assertNull( m_sum.getResult() );
+        
+        m_sum.reset();
+        m_sum.setNullIgnored( true );
+        m_sum.aggregate( "5" );
+        m_sum.aggregate( (String)null );
+        m_sum.aggregate( "6" );
+        
+        assertEquals( "11", m_sum.getResult() );
+    }
+    
+    @Test
+    public void resultRoundTrips() {
+        
+        String[] results = { "0", "-42", "9223372036854775807", "123456789012345678901234567890", "0.0025", "-1.50" };
+        
+        for ( String r : results ) {
+            
+            m_sum.setResult( r );
+            assertEquals( r, m_sum.getResult() );
+            
+            m_sum.aggregate( "1" );
+            assertEquals( 0, new BigDecimal( r ).add( BigDecimal.ONE ).compareTo( new BigDecimal( m_sum.getResult() ) ) );
+        }
+        
+        m_sum.setResult( null );
+        assertNull( m_sum.getResult() );
+    }
+    
+    @Test( expected = NumberFormatException.class )
+    public void invalidResultIsRejected() {
+        m_sum.setResult( "abc" );
+    }
+    
+    @Test
+    public void copyKeepsSettingsButNotTotal() {
+        
+        m_sum.setName( "Amount" );
+        m_sum.setNullIgnored( true );
+        m_sum.aggregate( "7" );
+        
+        IAggregator copy = m_sum.copy();
+        
+        assertNotSame( m_sum, copy );
+        assertTrue( copy instanceof ExactSumAggregator );
+        assertEquals( "Amount", copy.getName() );
+        assertTrue( copy.isNullIgnored() );
+        assertEquals( "0", copy.getResult() );
+        assertEquals( "7", m_sum.getResult() );
+    }
+}
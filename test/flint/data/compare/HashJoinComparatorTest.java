@@ -0,0 +1,242 @@
+package flint.data.compare;
+
+// Core Java classes
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// 3rd Party classes
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Application classes
+import flint.data.DataColumn;
+import flint.data.DataTable;
+import flint.data.DictionaryDataTable;
+
+/**
+ * Checks the HashJoinComparator matches the same rows whether or not the
+ * actual rows spill to disk
+ * @author Philip Bowditch
+ */
+public class HashJoinComparatorTest {
+    
+    protected static final DataColumn[] COLUMNS = {
+        new DataColumn( "k" ),
+        new DataColumn( "v", DataColumn.AccessModifier.QUERY )
+    };
+    
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Test
+    public void matchesInMemory() throws IOException {
+        
+        DataTable expected = table( "a", "1", "b", "2", "c", "3" );
+        
+        ComparisonResult res = compare( expected, rows( "b", "2", "a", "1", "c", "3" ), Long.MAX_VALUE, 8 );
+        
+        assertFalse( res.isSpilled() );
+        assertTrue( res.isEqual() );
+        assertEquals( 3, res.getActualRows() );
+        assertArrayEquals( new String[]{ "a", "1" }, res.getMatch( 0 ) );
+    }
+    
+    @Test
+    public void reportsMissingSurplusAndMismatches() throws IOException {
+        
+        DataTable expected = table( "a", "1", "b", "2", "c", "3" );
+        
+        for ( long threshold : new long[]{ Long.MAX_VALUE, 1 } ) {
+            
+            ComparisonResult res = compare( expected, rows( "a", "1", "c", "4", "d", "5" ), threshold, 4 );
+            
+            assertEquals( threshold == 1, res.isSpilled() );
+            assertFalse( res.isEqual() );
+            assertEquals( 1, res.getMissingCount() );
+            assertTrue( res.isMissing( 1 ) );
+            assertEquals( ComparisonResult.CellStatus.MISMATCH, res.getStatus( 2, 1 ) );
+            assertEquals( 1, res.getSurplusCount() );
+            assertArrayEquals( new String[]{ "d", "5" }, res.getSurplus().get( 0 ) );
+        }
+    }
+    
+    @Test
+    public void emptyOutputMissesEveryRow() throws IOException {
+        
+        DataTable expected = table( "a", "1", "b", "2" );
+        
+        ComparisonResult res = compare( expected, rows(), 1, 4 );
+        
+        assertEquals( 2, res.getMissingCount() );
+        assertEquals( 0, res.getActualRows() );
+        assertEquals( 2, compare( expected, Collections.<String[]>emptyList(), 1, 4 ).getMissingCount() );
+    }
+    
+    @Test( expected = IOException.class )
+    public void missingColumnIsAnError() throws IOException {
+        
+        List<String[]> actual = new ArrayList<>();
+        actual.add( new String[]{ "k" } );
+        actual.add( new String[]{ "a" } );
+        
+        compare( table( "a", "1" ), actual, Long.MAX_VALUE, 4 );
+    }
+    
+    @Test
+    public void spillingMatchesTheSameRows() throws IOException {
+        
+        // Unique keys, a few repeated keys and a single key that can not be
+        // split by re-partitioning
+        for ( int distinct : new int[]{ 4000, 7, 1 } ) {
+            
+            DataTable      expected = generate( 1000, distinct );
+            List<String[]> actual   = generateRows( 4000, distinct );
+            
+            ComparisonResult memory = compare( expected, actual, Long.MAX_VALUE, 16 );
+            assertFalse( memory.isSpilled() );
+            
+            for ( long threshold : new long[]{ 10, 500, 3999 } ) {
+                for ( int partitions : new int[]{ 1, 3, 16 } ) {
+                    
+                    ComparisonResult spilled = compare( expected, actual, threshold, partitions );
+                    
+                    String what = distinct + " keys, threshold " + threshold + ", " + partitions + " partitions";
+                    
+                    assertTrue( what, spilled.isSpilled() );
+                    assertSame( what, memory, spilled );
+                }
+            }
+        }
+        
+        assertEquals( 0, m_folder.getRoot().list().length );
+    }
+    
+    @Test
+    public void partitionsAreInRange() {
+        
+        for ( int count : new int[]{ 1, 2, 7, 64, 1024 } ) {
+            for ( int seed = 0; seed < 3; seed++ ) {
+                for ( int i = 0; i < 1000; i++ ) {
+                    
+                    List<String> key = Arrays.asList( "k" + i, null );
+                    int          p   = HashJoinComparator.partitionOf( key, seed, count );
+                    
+                    assertTrue( p >= 0 && p < count );
+                    assertEquals( p, HashJoinComparator.partitionOf( Arrays.asList( "k" + i, null ), seed, count ) );
+                }
+            }
+        }
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    protected ComparisonResult compare( DataTable expected, List<String[]> actual, long threshold, int partitions ) throws IOException {
+        
+        HashJoinComparator c = new HashJoinComparator( COLUMNS );
+        c.setSpillThreshold( threshold );
+        c.setPartitions( partitions );
+        c.setSpillDirectory( m_folder.getRoot() );
+        c.setMaxSurplus( Integer.MAX_VALUE );
+        
+        return c.compare( expected, actual );
+    }
+    
+    /**
+     * Checks two results matched the same actual rows to each expected row
+     */
+    protected static void assertSame( String what, ComparisonResult a, ComparisonResult b ) {
+        
+        assertEquals( what, a.getActualRows(), b.getActualRows() );
+        assertEquals( what, a.getMissingCount(), b.getMissingCount() );
+        assertEquals( what, a.getSurplusCount(), b.getSurplusCount() );
+        assertEquals( what, a.isEqual(), b.isEqual() );
+        
+        for ( int i = 0; i < a.getExpected().getRowCount(); i++ ) {
+            assertArrayEquals( what + ", row " + i, a.getMatch( i ), b.getMatch( i ) );
+        }
+        
+        assertEquals( what, sorted( a.getSurplus() ), sorted( b.getSurplus() ) );
+    }
+    
+    protected static List<String> sorted( List<String[]> rows ) {
+        
+        List<String> l = new ArrayList<>();
+        for ( String[] r : rows ) {
+            l.add( Arrays.toString( r ) );
+        }
+        
+        Collections.sort( l );
+        return l;
+    }
+    
+    /**
+     * Returns a table of key and value pairs
+     */
+    protected static DataTable table( String... cells ) {
+        
+        DictionaryDataTable t = new DictionaryDataTable( COLUMNS, cells.length / 2 );
+        for ( int i = 0; i < cells.length; i++ ) {
+            t.setCell( i / 2, i % 2, cells[i] );
+        }
+        
+        return t;
+    }
+    
+    /**
+     * Returns actual rows of key and value pairs headed with the columns in
+     * the opposite order to the expected table
+     */
+    protected static List<String[]> rows( String... cells ) {
+        
+        List<String[]> rows = new ArrayList<>();
+        rows.add( new String[]{ "V", "K" } );
+        
+        for ( int i = 0; i < cells.length; i += 2 ) {
+            rows.add( new String[]{ cells[ i + 1 ], cells[i] } );
+        }
+        
+        return rows;
+    }
+    
+    /**
+     * Returns expected rows matching every fourth generated row, with some
+     * values changed and some keys no row will have
+     */
+    protected static DataTable generate( int count, int distinct ) {
+        
+        DictionaryDataTable t = new DictionaryDataTable( COLUMNS, count );
+        for ( int i = 0; i < count; i++ ) {
+            
+            int n = i * 4;
+            
+            t.setCell( i, 0, i % 100 == 99 ? "none" + i : "k" + ( n % distinct ) );
+            t.setCell( i, 1, i % 50 == 49 ? "changed" : "v" + n );
+        }
+        
+        return t;
+    }
+    
+    protected static List<String[]> generateRows( int count, int distinct ) {
+        
+        List<String[]> rows = new ArrayList<>();
+        rows.add( new String[]{ "k", "v" } );
+        
+        for ( int i = 0; i < count; i++ ) {
+            rows.add( new String[]{ "k" + ( i % distinct ), "v" + i } );
+        }
+        
+        return rows;
+    }
+}
@@ -0,0 +1,215 @@
+package flint.data.compare;
+
+// Core Java classes
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// 3rd Party classes
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// Application classes
+import flint.data.DataColumn;
+import flint.data.DataTable;
+import flint.data.DictionaryDataTable;
+
+/**
+ * Tests the MergeComparator matching of sorted rows and its key order
+ * @author Philip Bowditch
+ */
+public class MergeComparatorTest {
+    
+    protected static final DataColumn[] COLUMNS = {
+        new DataColumn( "k" ),
+        new DataColumn( "v", DataColumn.AccessModifier.QUERY )
+    };
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Test
+    public void matchesSortedRows() throws IOException {
+        
+        DataTable expected = table( "1", "a", "2", "b", "10", "c", "x", "d" );
+        
+        ComparisonResult res = compare( expected, rows( "1", "a", "2", "b", "10", "c", "x", "d" ) );
+        
+        assertTrue( res.isEqual() );
+        assertEquals( 4, res.getActualRows() );
+        assertArrayEquals( new String[]{ "10", "c" }, res.getMatch( 2 ) );
+    }
+    
+    @Test
+    public void reportsMissingSurplusAndMismatches() throws IOException {
+        
+        DataTable expected = table( "1", "a", "2", "b", "3", "c", "5", "e" );
+        
+        ComparisonResult res = compare( expected, rows( "0", "z", "2", "b", "3", "x", "4", "d", "5", "e", "6", "f" ) );
+        
+        assertFalse( res.isEqual() );
+        assertTrue( res.isMissing( 0 ) );
+        assertEquals( 1, res.getMissingCount() );
+        assertEquals( ComparisonResult.CellStatus.MISMATCH, res.getStatus( 2, 1 ) );
+        assertEquals( ComparisonResult.CellStatus.MATCH, res.getStatus( 3, 1 ) );
+        assertEquals( 3, res.getSurplusCount() );
+    }
+    
+    @Test
+    public void matchesTheSameRowsAsAHashJoin() throws IOException {
+        
+        int            count  = 2000;
+        List<String>   cells  = new ArrayList<>();
+        List<String[]> actual = new ArrayList<>();
+        
+        actual.add( new String[]{ "k", "v" } );
+        
+        for ( int i = 0; i < count; i++ ) {
+            
+            if ( i % 3 != 0 ) {
+                cells.add( Integer.toString( i ) );
+                cells.add( i % 7 == 0 ? "changed" : "v" + i );
+            }
+            if ( i % 5 != 0 ) {
+                actual.add( new String[]{ Integer.toString( i ), "v" + i } );
+            }
+        }
+        
+        DataTable expected = table( cells.toArray( new String[ cells.size() ] ) );
+        
+        ComparisonResult merged = compare( expected, actual );
+        
+        HashJoinComparator hash = new HashJoinComparator( COLUMNS );
+        hash.setMaxSurplus( Integer.MAX_VALUE );
+        
+        ComparisonResult joined = hash.compare( expected, actual );
+        
+        assertEquals( joined.getMissingCount(), merged.getMissingCount() );
+        assertEquals( joined.getSurplusCount(), merged.getSurplusCount() );
+        
+        for ( int i = 0; i < expected.getRowCount(); i++ ) {
+            assertArrayEquals( joined.getMatch( i ), merged.getMatch( i ) );
+        }
+    }
+    
+    @Test
+    public void unsortedExpectedRowsAreAnError() {
+        
+        try {
+            compare( table( "1", "a", "3", "c", "2", "b" ), rows( "1", "a" ) );
+            fail( "Compared unsorted expected rows" );
+        }
+        catch ( IOException ex ) {
+            assertTrue( ex.getMessage(), ex.getMessage().startsWith( "Expected row 3 " ) );
+        }
+    }
+    
+    @Test
+    public void unsortedOutputRowsAreAnError() {
+        
+        try {
+            compare( table( "1", "a", "2", "b", "3", "c" ), rows( "1", "a", "3", "c", "2", "b" ) );
+            fail( "Compared unsorted output rows" );
+        }
+        catch ( IOException ex ) {
+            assertTrue( ex.getMessage(), ex.getMessage().startsWith( "Output row 3 " ) );
+        }
+        
+        try {
+            // Text order would put 10 before 9
+            compare( table( "9", "a", "10", "b" ), rows( "10", "b", "9", "a" ) );
+            fail( "Compared output rows in text order" );
+        }
+        catch ( IOException ex ) {
+            assertTrue( ex.getMessage(), ex.getMessage().startsWith( "Output row 2 " ) );
+        }
+    }
+    
+    @Test
+    public void equalKeysAreInOrder() throws IOException {
+        
+        ComparisonResult res = compare( table( "1", "a", "1", "b" ), rows( "1", "a", "1", "b" ) );
+        
+        assertTrue( res.isEqual() );
+    }
+    
+    @Test
+    public void cellsHaveATotalOrder() {
+        
+        String[] values = { "2", "10", "1a", "1", "1.0", "01", "-3", "-3.5", "+5", ".5", "1e2", "100", "abc", "", "b", " 7" };
+        
+        for ( String x : values ) {
+            
+            assertEquals( x, 0, MergeComparator.compareCells( x, x ) );
+            
+            for ( String y : values ) {
+                
+                int xy = MergeComparator.compareCells( x, y );
+                assertEquals( x + " " + y, Integer.signum( xy ), -Integer.signum( MergeComparator.compareCells( y, x ) ) );
+                
+                for ( String z : values ) {
+                    if ( xy < 0 && MergeComparator.compareCells( y, z ) < 0 ) {
+                        assertTrue( x + " " + y + " " + z, MergeComparator.compareCells( x, z ) < 0 );
+                    }
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void numbersComeFirstInNumericOrder() {
+        
+        List<String> l = new ArrayList<>( Arrays.asList( "b", "10", "", "-1", "2", "a", "1.5", "1.50" ) );
+        l.sort( MergeComparator::compareCells );
+        
+        assertEquals( Arrays.asList( "-1", "1.5", "1.50", "2", "10", "", "a", "b" ), l );
+        
+        assertTrue( MergeComparator.compareKeys( Arrays.asList( "1", "b" ), Arrays.asList( "1", "c" ) ) < 0 );
+        assertTrue( MergeComparator.compareKeys( Arrays.asList( "2", "a" ), Arrays.asList( "10", "a" ) ) < 0 );
+        assertEquals( 0, MergeComparator.compareKeys( Arrays.asList( "1", "a" ), Arrays.asList( "1", "a" ) ) );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    protected static ComparisonResult compare( DataTable expected, List<String[]> actual ) throws IOException {
+        
+        MergeComparator c = new MergeComparator( COLUMNS );
+        c.setMaxSurplus( Integer.MAX_VALUE );
+        
+        return c.compare( expected, actual );
+    }
+    
+    /**
+     * Returns a table of key and value pairs
+     */
+    protected static DataTable table( String... cells ) {
+        
+        DictionaryDataTable t = new DictionaryDataTable( COLUMNS, cells.length / 2 );
+        for ( int i = 0; i < cells.length; i++ ) {
+            t.setCell( i / 2, i % 2, cells[i] );
+        }
+        
+        return t;
+    }
+    
+    /**
+     * Returns actual rows of key and value pairs below a header
+     */
+    protected static List<String[]> rows( String... cells ) {
+        
+        List<String[]> rows = new ArrayList<>();
+        rows.add( new String[]{ "k", "v" } );
+        
+        for ( int i = 0; i < cells.length; i += 2 ) {
+            rows.add( new String[]{ cells[i], cells[ i + 1 ] } );
+        }
+        
+        return rows;
+    }
+}
@@ -0,0 +1,129 @@
+package flint.engine;
+
+// Core Java classes
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// 3rd Party classes
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that PipeTransfer.release() unblocks a transfer without blocking itself
+ * @author Philip Bowditch
+ */
+public class PipeTransferTest {
+
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+
+
+    //--------------------------------------------------------------------------
+
+    @Test( timeout = 30000 )
+    public void releaseUnblocksAnUnopenedPipe() throws Exception {
+
+        File pipe = pipe();
+
+        ByteArrayOutputStream data     = new ByteArrayOutputStream();
+        PipeTransfer          transfer = PipeTransfer.reading( pipe, in -> IOUtils.copy( in, data ) );
+
+        transfer.start( "test-read" );
+        transfer.release();
+        transfer.join();
+
+        assertTrue( transfer.isOpened() );
+        assertNull( transfer.getError() );
+        assertEquals( 0, transfer.getBytes() );
+    }
+
+    @Test( timeout = 30000 )
+    public void releaseWhilstTheTransferRecordsItsOpenDoesNotBlock() throws Exception {
+
+        final File           pipe      = pipe();
+        final CountDownLatch open      = new CountDownLatch( 1 );
+        final CountDownLatch releasing = new CountDownLatch( 1 );
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        // Holds the transfer between opening the pipe and recording it until
+        // release() has decided the pipe is unopened, then gives the transfer
+        // the chance to finish before release() opens the other end
+        final PipeTransfer transfer = new PipeTransfer( pipe, in -> IOUtils.copy( in, data ), null ) {
+
+            @Override
+            protected void opened() {
+                open.countDown();
+                try {
+                    releasing.await( 10, TimeUnit.SECONDS );
+                }
+                catch ( InterruptedException ex ) {
+                    Thread.currentThread().interrupt();
+                }
+                super.opened();
+            }
+
+            @Override
+            protected boolean isSamePipe() {
+                releasing.countDown();
+                try {
+                    m_thread.join( 1000 );
+                }
+                catch ( InterruptedException ex ) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.isSamePipe();
+            }
+        };
+
+        transfer.start( "test-read" );
+
+        try ( OutputStream out = new FileOutputStream( pipe ) ) {
+            out.write( "abc".getBytes( "UTF-8" ) );
+        }
+
+        assertTrue( open.await( 10, TimeUnit.SECONDS ) );
+
+        Thread release = new Thread( () -> {
+            try {
+                transfer.release();
+            }
+            catch ( IOException ex ) {
+                throw new RuntimeException( ex );
+            }
+        } );
+
+        release.setDaemon( true );
+        release.start();
+        release.join( 10000 );
+
+        assertFalse( "release() blocked", release.isAlive() );
+
+        transfer.join();
+
+        assertNull( transfer.getError() );
+        assertEquals( "abc", data.toString( "UTF-8" ) );
+    }
+
+
+    //--------------------------------------------------------------------------
+
+    protected File pipe() throws IOException {
+
+        File pipe = new File( m_folder.getRoot(), "pipe" );
+        PipeTransfer.createPipe( pipe );
+
+        return pipe;
+    }
+}
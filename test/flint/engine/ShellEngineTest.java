@@ -0,0 +1,125 @@
+package flint.engine;
+
+// Core Java classes
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// 3rd Party classes
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the ShellEngine against a small controller script
+ * @author Philip Bowditch
+ */
+public class ShellEngineTest {
+    
+    /**
+     * Writes the hex of the QUOTED variable as its output, running each item
+     * of a manifest batch with its VARS file sourced
+     */
+    protected static final String CONTROLLER = String.join( "\n"
+        , "#!/bin/bash"
+        , "here=$(cd \"$(dirname \"$0\")\" && pwd)"
+        , "if [ \"$1\" = \"--batch\" ]; then"
+        , "  . \"$here/VARS\""
+        , "  [ \"$(head -n 1 \"$DATA_MANIFEST_PATH\")\" = \"INDEX,FIXTURE,ARGUMENT,VARS,INPUT,OUTPUT,ERROR,CONTROL\" ] || exit 3"
+        , "  sed 1d \"$DATA_MANIFEST_PATH\" | while IFS=, read -r i f a vars rest; do"
+        , "    ( . \"$vars\"; \"$0\" \"$a\" ); echo \"$i,$?\" >> \"$DATA_STATUS_PATH\""
+        , "  done"
+        , "  exit 0"
+        , "fi"
+        , "[ -z \"$DATA_INPUT_PATH\" ] && . \"$here/VARS\""
+        , "printf 'DATA_OUTPUT_FORMAT,CSV\\n' > \"$DATA_CONTROL_PATH\""
+        , "{ echo hex; printf '%s' \"$QUOTED\" | od -An -tx1 -v | tr -d ' \\n'; echo; } > \"$DATA_OUTPUT_PATH\""
+        , ""
+    );
+    
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+    
+    protected ShellEngine m_engine;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Before
+    public void setUp() throws IOException {
+        
+        File home       = m_folder.newFolder( "controller" );
+        File controller = new File( home, ".__controller__.sh" );
+        
+        Files.write( controller.toPath(), CONTROLLER.getBytes( StandardCharsets.UTF_8 ) );
+        controller.setExecutable( true );
+        
+        m_engine = new ShellEngine();
+        m_engine.m_properties.setProperty( "CONTROLLER_HOME", home.getPath() );
+        m_engine.m_properties.setProperty( "DATA_DIRECTORY", m_folder.newFolder( "work" ).getPath() );
+        m_engine.m_properties.setProperty( "DATA_DIRECTORY_PERMISSIONS", "rwx------" );
+        
+        for ( String k : new String[]{ "INPUT", "OUTPUT", "ERROR", "CONTROL", "VARS", "MANIFEST", "STATUS" } ) {
+            m_engine.m_properties.setProperty( "DATA_" + k + "_PERMISSIONS", "rw-------" );
+        }
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Test
+    public void manifestBatchSeesTheSameVariablesAsALoop() throws Exception {
+        
+        String[] values = {
+            "plain",
+            "it's \"quoted\" with $HOME, `id`, $(echo x) and a \\ backslash",
+            "two\nlines ending '"
+        };
+        
+        List<Invocation> batch = new ArrayList<>();
+        for ( String v : values ) {
+            
+            InvokationInput input = new InvokationInput();
+            input.setParameters( new ArrayList<>( Arrays.<String[]>asList( new String[]{ "QUOTED", v } ) ) );
+            
+            batch.add( new Invocation( "echo", input ) );
+        }
+        
+        m_engine.m_properties.setProperty( "BATCH_MODE", "loop" );
+        List<InvokationOutput> loop = m_engine.invokeBatch( batch );
+        
+        m_engine.m_properties.setProperty( "BATCH_MODE", "manifest" );
+        List<InvokationOutput> manifest = m_engine.invokeBatch( batch );
+        
+        for ( int i = 0; i < values.length; i++ ) {
+            assertEquals( "0", loop.get( i ).getReturnCode().get( 0 )[0] );
+            assertEquals( "0", manifest.get( i ).getReturnCode().get( 0 )[0] );
+            assertEquals( values[i], valueOf( loop.get( i ) ) );
+            assertEquals( values[i], valueOf( manifest.get( i ) ) );
+        }
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Decodes the value the controller wrote as hex
+     */
+    protected static String valueOf( InvokationOutput output ) {
+        
+        String hex   = output.getData().get( 1 )[0];
+        byte[] bytes = new byte[ hex.length() / 2 ];
+        
+        for ( int i = 0; i < bytes.length; i++ ) {
+            bytes[i] = (byte)Integer.parseInt( hex.substring( i * 2, i * 2 + 2 ), 16 );
+        }
+        
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+}
@@ -0,0 +1,62 @@
+package flint.engine;
+
+// Core Java classes
+import java.io.IOException;
+
+// 3rd Party classes
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests how the ShellWorkerPool hands out and replaces workers
+ * @author Philip Bowditch
+ */
+public class ShellWorkerPoolTest {
+
+    protected ShellWorkerPool m_pool;
+
+
+    //--------------------------------------------------------------------------
+
+    @Before
+    public void setUp() {
+        m_pool = new ShellWorkerPool( "bash", System.getenv(), 1, 100 );
+    }
+
+    @After
+    public void tearDown() {
+        m_pool.shutdown();
+    }
+
+
+    //--------------------------------------------------------------------------
+
+    @Test
+    public void idleWorkersAreReused() throws IOException, InterruptedException {
+
+        ShellWorker w = m_pool.acquire();
+        m_pool.release( w, true );
+
+        assertSame( w, m_pool.acquire() );
+    }
+
+    @Test
+    public void workersThatDieWhilstIdleAreReplaced() throws IOException, InterruptedException {
+
+        ShellWorker w = m_pool.acquire();
+        m_pool.release( w, true );
+
+        w.m_process.destroyForcibly().waitFor();
+
+        ShellWorker replacement = m_pool.acquire();
+
+        assertNotSame( w, replacement );
+        assertTrue( replacement.isAlive() );
+        assertEquals( 1, m_pool.m_started );
+    }
+}
@@ -0,0 +1,266 @@
+package flint.engine.io.compress;
+
+// Core Java classes
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// 3rd Party classes
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trips data through each compression and the LZ4 block codec
+ * @author Philip Bowditch
+ */
+public class CompressionTest {
+    
+    /**
+     * Sizes either side of the block boundaries of each format
+     */
+    protected static final int[] SIZES = {
+        0, 1, 15, 4096,
+        ParallelGZIPOutputStream.BLOCK_SIZE - 1, ParallelGZIPOutputStream.BLOCK_SIZE, ParallelGZIPOutputStream.BLOCK_SIZE + 1,
+        4 * 1024 * 1024 + 7
+    };
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Test
+    public void namesResolve() {
+        
+        assertEquals( Compression.GZIP, Compression.forName( "GZIP" ) );
+        assertEquals( Compression.GZIP_PARALLEL, Compression.forName( " bgzf " ) );
+        assertEquals( Compression.GZIP_PARALLEL, Compression.forName( "gzip-parallel" ) );
+        assertEquals( Compression.LZ4, Compression.forName( "lz4" ) );
+        assertEquals( Compression.NONE, Compression.forName( "zip" ) );
+        assertEquals( Compression.NONE, Compression.forName( null ) );
+    }
+    
+    @Test
+    public void everyCompressionRoundTrips() throws IOException {
+        
+        for ( Compression c : Compression.values() ) {
+            for ( int size : SIZES ) {
+                for ( boolean random : new boolean[]{ false, true } ) {
+                    
+                    byte[] data = data( size, random );
+                    
+                    assertArrayEquals( c + " " + size + " " + random, data, decompress( c, compress( c, data, 4096 ) ) );
+                    assertArrayEquals( c + " " + size + " " + random, data, decompress( c, compress( c, data, 1000000 ) ) );
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void parallelGzipIsReadableAsGzip() throws IOException {
+        
+        byte[] data = data( 3 * ParallelGZIPOutputStream.BLOCK_SIZE + 11, false );
+        
+        assertArrayEquals( data, read( new GZIPInputStream( new ByteArrayInputStream( compress( Compression.GZIP_PARALLEL, data, 4096 ) ) ) ) );
+    }
+    
+    @Test
+    public void plainAndConcatenatedGzipAreRead() throws IOException {
+        
+        byte[] first  = data( 100000, true );
+        byte[] second = data( 5000, false );
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write( gzip( first ) );
+        out.write( gzip( second ) );
+        
+        byte[] both = Arrays.copyOf( first, first.length + second.length );
+        System.arraycopy( second, 0, both, first.length, second.length );
+        
+        assertArrayEquals( both, decompress( Compression.GZIP_PARALLEL, out.toByteArray() ) );
+    }
+    
+    @Test
+    public void truncatedInputFails() throws IOException {
+        
+        byte[] data = data( 200000, true );
+        
+        for ( Compression c : new Compression[]{ Compression.GZIP_PARALLEL, Compression.LZ4 } ) {
+            
+            byte[] compressed = compress( c, data, 8192 );
+            byte[] truncated  = Arrays.copyOf( compressed, compressed.length / 2 );
+            
+            try {
+                decompress( c, truncated );
+                fail( c + " read truncated input" );
+            }
+            catch ( IOException ex ) {
+                // Expected
+            }
+        }
+    }
+    
+    @Test
+    public void blocksInFlightFitTheBuffer() {
+        
+        for ( int blockSize : new int[]{ 1, ParallelGZIPOutputStream.BLOCK_SIZE, LZ4FrameOutputStream.BLOCK_SIZE, Integer.MAX_VALUE } ) {
+            
+            int blocks = Compression.maxPending( blockSize );
+            
+            assertTrue( blockSize + " " + blocks, blocks >= 2 && blocks <= Math.max( 2, Compression.THREADS * 2 ) );
+            assertTrue( blockSize + " " + blocks, blocks == 2 || (long)blocks * blockSize <= Compression.BUFFER_BYTES );
+        }
+        
+        assertEquals( 2, Compression.maxPending( Integer.MAX_VALUE ) );
+    }
+    
+    @Test
+    public void gzipCodecsCanBeEndedAndRecreated() throws IOException {
+        
+        byte[] data   = data( 5000, false );
+        byte[] member = new ParallelGZIPOutputStream( new ByteArrayOutputStream() ).compress( data, data.length ).array();
+        
+        for ( int i = 0; i < 2; i++ ) {
+            
+            ByteBuffer b = new ParallelGZIPOutputStream( new ByteArrayOutputStream() ).compress( data, data.length );
+            assertArrayEquals( member, b.array() );
+            
+            byte[] body = Arrays.copyOfRange( b.array(), ParallelGZIPInputStream.HEADER_SIZE, b.limit() );
+            assertArrayEquals( data, ParallelGZIPInputStream.inflate( body ).array() );
+            
+            ParallelGZIPOutputStream.endDeflaters();
+            ParallelGZIPInputStream.endInflater();
+        }
+    }
+    
+    @Test
+    public void lz4BlocksRoundTrip() throws IOException {
+        
+        int[] table = LZ4.newTable();
+        
+        for ( int size : SIZES ) {
+            for ( boolean random : new boolean[]{ false, true } ) {
+                
+                byte[] data       = data( size, random );
+                byte[] compressed = new byte[ LZ4.maxCompressedLength( size ) + 3 ];
+                
+                int len = LZ4.compress( data, 0, size, compressed, 3, table );
+                assertTrue( len <= LZ4.maxCompressedLength( size ) );
+                
+                byte[] restored = new byte[ size + 5 ];
+                int    n        = LZ4.decompress( compressed, 3, len, restored, 5, restored.length, 5 );
+                
+                assertEquals( size, n );
+                assertArrayEquals( data, Arrays.copyOfRange( restored, 5, 5 + n ) );
+            }
+        }
+    }
+    
+    @Test
+    public void lz4RejectsMatchesBeforeTheDictionary() {
+        
+        // A token of no literals and a match at offset one with nothing before it
+        byte[] block = { 0x00, 0x01, 0x00 };
+        
+        try {
+            LZ4.decompress( block, 0, block.length, new byte[ 64 ], 0, 64, 0 );
+            fail( "Read a match before the start of the data" );
+        }
+        catch ( IOException ex ) {
+            // Expected
+        }
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    /**
+     * Returns either random bytes or repetitive text
+     */
+    protected static byte[] data( int size, boolean random ) {
+        
+        byte[] b = new byte[ size ];
+        
+        if ( random ) {
+            new Random( size ).nextBytes( b );
+            return b;
+        }
+        
+        byte[] line = "1234,some text,2017-01-01 00:00:00,99.5\n".getBytes( StandardCharsets.US_ASCII );
+        for ( int i = 0; i < size; i++ ) {
+            b[i] = line[ i % line.length ];
+        }
+        
+        return b;
+    }
+    
+    /**
+     * Compresses data, writing the first bytes one at a time and the rest in
+     * pieces of the given length
+     */
+    protected static byte[] compress( Compression c, byte[] data, int piece ) throws IOException {
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        
+        try ( OutputStream out = c.compress( bytes ) ) {
+            
+            int i = 0;
+            for ( ; i < data.length && i < 100; i++ ) {
+                out.write( data[i] );
+            }
+            for ( ; i < data.length; i += piece ) {
+                out.write( data, i, Math.min( piece, data.length - i ) );
+            }
+        }
+        
+        return bytes.toByteArray();
+    }
+    
+    protected static byte[] decompress( Compression c, byte[] data ) throws IOException {
+        return read( c.decompress( new ByteArrayInputStream( data ) ) );
+    }
+    
+    protected static byte[] gzip( byte[] data ) throws IOException {
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        
+        try ( OutputStream out = new GZIPOutputStream( bytes ) ) {
+            out.write( data );
+        }
+        
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * Reads a stream to the end, mixing single byte and block reads
+     */
+    protected static byte[] read( InputStream in ) throws IOException {
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        
+        try ( InputStream i = in ) {
+            
+            int b = i.read();
+            if ( b >= 0 ) {
+                out.write( b );
+            }
+            
+            byte[] buffer = new byte[ 7919 ];
+            int    n;
+            while ( ( n = i.read( buffer, 0, buffer.length ) ) >= 0 ) {
+                out.write( buffer, 0, n );
+            }
+        }
+        
+        return out.toByteArray();
+    }
+}
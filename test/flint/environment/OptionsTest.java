@@ -0,0 +1,52 @@
+package flint.environment;
+
+// 3rd Party classes
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+// Application classes
+import flint.exception.OptionNotSupportedException;
+
+/**
+ * Tests the defaults Options takes from system properties
+ * @author Philip Bowditch
+ */
+public class OptionsTest {
+    
+    @After
+    public void tearDown() {
+        System.clearProperty( "flint.parallel_fixtures_threads" );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Test
+    public void parallelThreadsAreAtLeastOne() throws OptionNotSupportedException {
+        
+        for ( String threads : new String[]{ "0", "-4" } ) {
+            
+            System.setProperty( "flint.parallel_fixtures_threads", threads );
+            
+            Options o = new Options();
+            assertEquals( threads, 1, o.getParallelThreads() );
+            
+            o.setOption( "parallel fixtures threads", "3" );
+            o.reset();
+            assertEquals( threads, 1, o.getParallelThreads() );
+            
+            o.setOption( "parallel fixtures threads", "3" );
+            o.resetOption( "parallel fixtures threads" );
+            assertEquals( threads, 1, o.getParallelThreads() );
+        }
+    }
+    
+    @Test
+    public void parallelThreadsComeFromTheSystemProperty() {
+        
+        System.setProperty( "flint.parallel_fixtures_threads", "3" );
+        
+        assertEquals( 3, new Options().getParallelThreads() );
+    }
+}
@@ -0,0 +1,134 @@
+package flint.util;
+
+// Core Java classes
+import java.math.BigDecimal;
+
+// 3rd Party classes
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the NumberParser fast path and its fallback to Double.parseDouble
+ * @author Philip Bowditch
+ */
+public class NumberParserTest {
+    
+    protected NumberParser m_parser;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Before
+    public void setUp() {
+        m_parser = new NumberParser();
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Test
+    public void doubleValueMatchesDoubleValueOf() {
+        
+        String[] values = {
+            "0", "-0", "+0", "1", "-1", "0.1", "0.2", "0.3", "3.14159", "-2.5",
+            "1e10", "1E-10", "1.5e+3", "123456789012345678", "9007199254740993",
+            "0.000001", ".5", "5.", "1e22", "1e23", "1.7976931348623157e308",
+            "4.9e-324", "1e-400", "1e400", "12345678901234567890123", "  42  ",
+            "1.0d", "2.5F", "0x1p3", "NaN", "-Infinity"
+        };
+        
+        for ( String v : values ) {
+            assertTrue( v, m_parser.parse( v ) );
+            assertEquals( v, Double.doubleToLongBits( Double.valueOf( v ) ), Double.doubleToLongBits( m_parser.doubleValue() ) );
+        }
+    }
+    
+    @Test
+    public void rejectsText() {
+        
+        String[] values = { null, "", " ", "-", "+", ".", "e5", "1e", "1e+", "abc", "1a", "1.2.3", "--1", "N", "Inf" };
+        
+        for ( String v : values ) {
+            assertFalse( String.valueOf( v ), m_parser.parse( v ) );
+        }
+    }
+    
+    @Test
+    public void parsesRegion() {
+        
+        assertTrue( m_parser.parse( "ab-12.5cd", 2, 7 ) );
+        assertEquals( -12.5, m_parser.doubleValue(), 0 );
+        
+        assertFalse( m_parser.parse( "ab-12.5cd", 2, 8 ) );
+    }
+    
+    @Test
+    public void wholeNumbersAreLongs() {
+        
+        assertLong( "0", 0 );
+        assertLong( "-17", -17 );
+        assertLong( "17.000", 17 );
+        assertLong( "1.5e1", 15 );
+        assertLong( "1200e-2", 12 );
+        assertLong( "999999999999999999", 999999999999999999L );
+        assertLong( "-999999999999999999", -999999999999999999L );
+        assertLong( "9e18", 9000000000000000000L );
+        assertLong( "0.0e999", 0 );
+    }
+    
+    @Test
+    public void otherNumbersAreNotLongs() {
+        
+        String[] values = { "1.5", "-0.001", "1e19", "9223372036854775807", "NaN", "0x10p0" };
+        
+        for ( String v : values ) {
+            assertTrue( v, m_parser.parse( v ) );
+            assertFalse( v, m_parser.isLong() );
+        }
+    }
+    
+    @Test
+    public void decimalValueIsExact() {
+        
+        assertDecimal( "0.1", "0.1" );
+        assertDecimal( "-123.4500", "-123.4500" );
+        assertDecimal( "1e3", "1E+3" );
+        assertDecimal( "2.5e-3", "0.0025" );
+        assertDecimal( "12345678901234567890.5", "12345678901234567890.5" );
+        assertDecimal( "7d", "7" );
+        
+        assertTrue( m_parser.parse( "NaN" ) );
+        assertNull( m_parser.decimalValue() );
+        
+        assertTrue( m_parser.parse( "Infinity" ) );
+        assertNull( m_parser.decimalValue() );
+    }
+    
+    @Test
+    public void resetsBetweenValues() {
+        
+        assertTrue( m_parser.parse( "NaN" ) );
+        assertTrue( m_parser.parse( "-3" ) );
+        
+        assertTrue( m_parser.isLong() );
+        assertEquals( -3, m_parser.longValue() );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    protected void assertLong( String value, long expected ) {
+        assertTrue( value, m_parser.parse( value ) );
+        assertTrue( value, m_parser.isLong() );
+        assertEquals( value, expected, m_parser.longValue() );
+    }
+    
+    protected void assertDecimal( String value, String expected ) {
+        assertTrue( value, m_parser.parse( value ) );
+        assertEquals( value, 0, new BigDecimal( expected ).compareTo( m_parser.decimalValue() ) );
+    }
+}
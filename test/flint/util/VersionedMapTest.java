@@ -0,0 +1,93 @@
+package flint.util;
+
+// Core Java classes
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+// 3rd Party classes
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that VersionedMap counts every change, whichever view it is made through
+ * @author Philip Bowditch
+ */
+public class VersionedMapTest {
+    
+    protected VersionedMap<String, String> m_map;
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Before
+    public void setUp() {
+        
+        m_map = new VersionedMap<>();
+        m_map.put( "a", "1" );
+        m_map.put( "b", "2" );
+        m_map.put( "c", "3" );
+    }
+    
+    
+    //--------------------------------------------------------------------------
+    
+    @Test
+    public void readingDoesNotChangeTheVersion() {
+        
+        long version = m_map.getVersion();
+        
+        assertEquals( Arrays.asList( "a", "b", "c" ), Arrays.asList( m_map.keySet().toArray() ) );
+        assertEquals( Arrays.asList( "1", "2", "3" ), Arrays.asList( m_map.values().toArray() ) );
+        assertTrue( m_map.containsKey( "b" ) );
+        assertTrue( m_map.containsValue( "3" ) );
+        assertTrue( m_map.keySet().contains( "c" ) );
+        assertTrue( m_map.values().contains( "1" ) );
+        assertEquals( "2", m_map.get( "b" ) );
+        assertNull( m_map.remove( "z" ) );
+        
+        assertEquals( version, m_map.getVersion() );
+    }
+    
+    @Test
+    public void changesThroughTheMapAreCounted() {
+        
+        long version = m_map.getVersion();
+        
+        m_map.put( "d", "4" );
+        assertEquals( ++version, m_map.getVersion() );
+        
+        m_map.remove( "a" );
+        assertEquals( ++version, m_map.getVersion() );
+        
+        m_map.clear();
+        assertEquals( ++version, m_map.getVersion() );
+    }
+    
+    @Test
+    public void changesThroughTheViewsAreCounted() {
+        
+        long version = m_map.getVersion();
+        
+        m_map.keySet().remove( "a" );
+        assertTrue( m_map.getVersion() > version );
+        
+        version = m_map.getVersion();
+        m_map.values().remove( "2" );
+        assertTrue( m_map.getVersion() > version );
+        
+        version = m_map.getVersion();
+        Iterator<Map.Entry<String, String>> it = m_map.entrySet().iterator();
+        it.next().setValue( "x" );
+        assertTrue( m_map.getVersion() > version );
+        assertEquals( "x", m_map.get( "c" ) );
+        
+        version = m_map.getVersion();
+        m_map.values().clear();
+        assertTrue( m_map.getVersion() > version );
+        assertTrue( m_map.isEmpty() );
+    }
+}